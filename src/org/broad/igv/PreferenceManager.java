@@ -103,6 +103,10 @@ public class PreferenceManager implements PropertyManager {
     public static final String SAM_SHOW_JUNCTION_TRACK = "SAM.SHOW_JUNCTION_TRACK";
     public static final String SAM_JUNCTION_MIN_FLANKING_WIDTH = "SAM.JUNCTION_MIN_FLANKING_WIDTH";
     public static final String SAM_JUNCTION_MIN_COVERAGE = "SAM.JUNCTION_MIN_COVERAGE";
+    public static final String SAM_LOAD_THREADS = "SAM.LOAD_THREADS";
+    public static final String SESSION_LOAD_THREADS = "SESSION.LOAD_THREADS";
+    public static final String SESSION_LOAD_THREADS_PER_SOURCE = "SESSION.LOAD_THREADS_PER_SOURCE";
+    public static final String SNAPSHOT_THREADS = "SNAPSHOT.THREADS";
 
 
     public static final String EXPAND_FEAUTRE_TRACKS = "EXPAND_FEATURE_TRACKS";
@@ -1049,6 +1053,10 @@ public class PreferenceManager implements PropertyManager {
         defaultValues.put(SAM_SHOW_JUNCTION_TRACK, "false");
         defaultValues.put(SAM_JUNCTION_MIN_FLANKING_WIDTH, "0");
         defaultValues.put(SAM_JUNCTION_MIN_COVERAGE, "1");
+        defaultValues.put(SAM_LOAD_THREADS, "4");
+        defaultValues.put(SESSION_LOAD_THREADS, "8");
+        defaultValues.put(SESSION_LOAD_THREADS_PER_SOURCE, "4");
+        defaultValues.put(SNAPSHOT_THREADS, "4");
 
         defaultValues.put(NORMALIZE_COVERAGE, "false");
 
@@ -46,6 +46,7 @@ import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.Main;
 import org.broad.igv.ui.panel.FrameManager;
 import org.broad.igv.ui.util.MessageUtils;
+import org.broad.igv.ui.util.HeadlessSnapshotRenderer;
 import org.broad.igv.ui.util.SnapshotUtilities;
 import org.broad.igv.util.LRUCache;
 import org.broad.igv.util.ResourceLocator;
@@ -61,10 +62,14 @@ public class CommandExecutor {
 
 
     public CommandExecutor() {
-        mainFrame = IGV.getFirstInstance();
+        this(IGV.getFirstInstance());
     }
 
-    private List<String> getArgs(String[] tokens) {
+    CommandExecutor(IGV mainFrame) {
+        this.mainFrame = mainFrame;
+    }
+
+    private static List<String> getArgs(String[] tokens) {
         List<String> args = new ArrayList(tokens.length);
         for (String s : tokens) {
             if (s.trim().length() > 0) {
@@ -74,6 +79,34 @@ public class CommandExecutor {
         return args;
     }
 
+    /**
+     * Return true if the command only reads state,  and so can run concurrently with other commands.  Queries are
+     * answered without a refresh or the post command pause.
+     */
+    public static boolean isQuery(String command) {
+        List<String> tokens = StringUtils.breakQuotedString(command.trim(), ' ');
+        if (tokens.isEmpty()) {
+            return false;
+        }
+        String cmd = tokens.get(0).trim().toLowerCase();
+        return cmd.equals("echo") || cmd.equals("minfo") || cmd.equals("map");
+    }
+
+    /**
+     * Check a command that can be rejected without running it,  i.e. a goto with no locus.  Loci are not checked
+     * against the current genome here,  a genome command queued ahead of the goto may change it.
+     *
+     * @return an error message,  or null if the command should be run
+     */
+    public static String validate(String command) {
+
+        List<String> args = getArgs(StringUtils.breakQuotedString(command, ' ').toArray(new String[]{}));
+        if (args.size() == 1 && args.get(0).equalsIgnoreCase("goto")) {
+            return "ERROR: missing locus parameter";
+        }
+        return null;
+    }
+
     public String execute(String command) {
 
         List<String> args = getArgs(StringUtils.breakQuotedString(command, ' ').toArray(new String[]{}));
@@ -103,6 +136,8 @@ public class CommandExecutor {
                     String filename = param1;
                     createSnapshot(filename);
 
+                } else if (cmd.equals("snapshotbed")) {
+                    result = createSnapshots(param1, param2);
                 } else if ((cmd.equals("loadfile") || cmd.equals("load")) && param1 != null) {
                     result = load(param1, param2, param3);
                 } else if (cmd.equals("genome") && args.size() > 1) {
@@ -128,7 +163,7 @@ public class CommandExecutor {
                 } else if (cmd.equals("tofront")) {
                     return bringToFront();
                 } else if ( cmd.equals("map") )  {                	
-                	result = map(param1, param2, param3);
+                	result = map(param1, param2, args.subList(Math.min(3, args.size()), args.size()));
                 } else if ( cmd.equals("minfo") )  {                	
                 	result = mappingInfo();
                 } else {
@@ -138,6 +173,9 @@ public class CommandExecutor {
             } else {
                 return "Empty command string";
             }
+            if (isQuery(command)) {
+                return result;
+            }
             IGV.getFirstInstance().doRefresh();
 
             if (RuntimeUtils.getAvailableMemoryFraction() < 0.5) {
@@ -162,17 +200,20 @@ public class CommandExecutor {
     	return IGV.getInstance().getGenomeManager().getGenomeMappingManager().getMappingInfo();
 	}
 
-	private String map(String fromGenome, String toGenome, String fromLocus) 
+	private String map(String fromGenome, String toGenome, List<String> fromLoci) 
     {
+    	if ( fromLoci.isEmpty() )
+    		return "ERROR: missing locus";
+    	
     	IGenomeMapper		mapper = IGV.getInstance().getGenomeManager().getGenomeMappingManager().getMapper(fromGenome, toGenome);
     	
     	if ( mapper == null )
     		return "no mapper found";
-    	else
+    	else if ( fromLoci.size() == 1 )
     	{
     		try
     		{
-    			GenomeLocus		toLocus = mapper.mapLocus(new GenomeLocus(fromLocus));
+    			GenomeLocus		toLocus = mapper.mapLocus(new GenomeLocus(fromLoci.get(0)));
     			
     			return toLocus.toString();
     			
@@ -181,6 +222,23 @@ public class CommandExecutor {
     			return "genome mapping exception: " + e.getMessage();
     		}
     	}
+    	else
+    	{
+    		// many loci are mapped in one batch, answered space separated in the same order. failures are answered as -
+    		List<GenomeLocus>	loci = new ArrayList<GenomeLocus>(fromLoci.size());
+    		for ( String fromLocus : fromLoci )
+    			loci.add(new GenomeLocus(fromLocus));
+    		
+    		StringBuilder		sb = new StringBuilder();
+    		for ( GenomeLocus toLocus : GenomeMappingManager.mapLoci(mapper, loci) )
+    		{
+    			if ( sb.length() > 0 )
+    				sb.append(' ');
+    			sb.append(toLocus == null ? "-" : toLocus.toString());
+    		}
+    		
+    		return sb.toString();
+    	}
     }
 
 	private String bringToFront() {
@@ -451,6 +509,24 @@ public class CommandExecutor {
         SnapshotUtilities.doSnapshotOffscreen(mainFrame.getMainPanel(), file);
     }
 
+    /**
+     * Create a snapshot of each region of a bed file,  rendered concurrently off screen.
+     *
+     * @param bedFile path or url of the bed file
+     * @param format  "png" (default) or "svg"
+     */
+    private String createSnapshots(String bedFile, String format) {
+        if (bedFile == null) {
+            return "ERROR: missing bed file parameter";
+        }
+        boolean svg = format != null && format.equalsIgnoreCase("svg");
+        if (format != null && !svg && !format.equalsIgnoreCase("png")) {
+            return "ERROR: unsupported snapshot format " + format;
+        }
+        File directory = snapshotDirectory == null ? new File(".") : snapshotDirectory;
+        return new HeadlessSnapshotRenderer(directory, svg).renderBed(bedFile);
+    }
+
     private static RegionScoreType getRegionSortOption(String str) {
         if (str == null) return null;
         String option = str.toUpperCase();
@@ -31,15 +31,26 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLDecoder;
 import java.nio.channels.ClosedByInterruptException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.PreferenceManager;
 import org.broad.igv.ui.IGV;
+import org.broad.igv.util.NamedThreadFactory;
 
 public class CommandListener implements Runnable {
 
@@ -50,24 +61,33 @@ public class CommandListener implements Runnable {
     private int port = -1;
     private int portMultiRange = -1;
     private ServerSocket serverSocket = null;
-    private Socket clientSocket = null;
+    private Set<ClientSession> sessions = Collections.synchronizedSet(new HashSet<ClientSession>());
     private Thread listenerThread;
-    boolean halt = false;
+    private CommandQueue commandQueue;
+    private CommandExecutor cmdExe;
+    volatile boolean halt = false;
+
+    // Number of port (non http) sessions open,  batch mode is on while there is at least one
+    private static int batchSessions;
+
+    /**
+     * Prefix of an optional request id before a port command,  e.g. "@12 goto chr1:100-200".  The response to a
+     * command with an id is prefixed with the same id.
+     */
+    static final String REQUEST_ID_PREFIX = "@";
     
     static long lastActivityReport;
     static boolean enableReportActivity = true;
 
     public static synchronized void start(int port, int portMultiRange) {
         listener = new CommandListener(port, portMultiRange);
-        listener.listenerThread.start();
+        listener.start();
     }
 
 
     public static synchronized void halt() {
         if (listener != null) {
-            listener.halt = true;
-            listener.listenerThread.interrupt();
-            listener.closeSockets();
+            listener.stop();
             listener = null;
         }
     }
@@ -79,12 +99,39 @@ public class CommandListener implements Runnable {
     }
 
     /**
-     * Loop forever, processing client requests synchronously.  The server is single threaded, because in most cases
-     * we would not know how to process commands synchronously
+     * Listener running commands with the given executor rather than one for the IGV instance,  for tests.
+     */
+    CommandListener(int port, CommandExecutor cmdExe) {
+        this(port, -1);
+        this.cmdExe = cmdExe;
+    }
+
+    void start() {
+        listenerThread.start();
+    }
+
+    void stop() {
+        halt = true;
+        listenerThread.interrupt();
+        closeSockets();
+    }
+
+    /**
+     * Loop forever, accepting clients.  Each client connection is served by its own session thread,  commands from
+     * all sessions go through one CommandQueue,  so state changing commands still run one at a time while queries
+     * from other clients are answered.
+     * <p/>
+     * A client may send commands without waiting for the response to the previous one.  Responses to commands
+     * without a request id are sent in the order the commands were received.  Responses to commands with an id
+     * (see REQUEST_ID_PREFIX) are sent as soon as the command completes,  prefixed with the id.
      */
     public void run() {
 
-        CommandExecutor cmdExe = new CommandExecutor();
+        if (cmdExe == null) {
+            cmdExe = new CommandExecutor();
+        }
+        commandQueue = new CommandQueue();
+        NamedThreadFactory sessionThreads = new NamedThreadFactory("batch-client");
 
         try {
         	if ( portMultiRange <= 0 )
@@ -115,17 +162,11 @@ public class CommandListener implements Runnable {
         	}
             log.info("Listening on port " + port);
 
-            while (true) {
-                clientSocket = serverSocket.accept();
-                processClientSession(cmdExe);
-                if (clientSocket != null) {
-                    try {
-                        clientSocket.close();
-                        clientSocket = null;
-                    } catch (IOException e) {
-                        log.error("Error in client socket loop", e);
-                    }
-                }
+            while (!halt) {
+                Socket clientSocket = serverSocket.accept();
+                ClientSession session = new ClientSession(clientSocket, cmdExe);
+                sessions.add(session);
+                sessionThreads.newThread(session).start();
             }
 
 
@@ -142,95 +183,328 @@ public class CommandListener implements Runnable {
     }
 
     /**
-     * Process a client session.  Loop continuously until client sends the "halt" message, or closes the connection.
-     *
-     * @param cmdExe
-     * @throws IOException
+     * A client connection.  Reads commands until the client closes the connection,  submitting each to the command
+     * queue and writing responses as the commands complete.
      */
-    private void processClientSession(CommandExecutor cmdExe) throws IOException {
-        PrintWriter out = null;
-        BufferedReader in = null;
+    private class ClientSession implements Runnable {
+
+        private final Socket socket;
+        private final CommandExecutor cmdExe;
+        private PrintWriter out;
+
+        // Commands without a request id,  in the order received.  Their responses are written in this order.
+        private final LinkedList<Reply> ordered = new LinkedList<Reply>();
+        // Responses ready to write,  taken by the reply writer thread
+        private final BlockingQueue<String> replies = new LinkedBlockingQueue<String>();
+        private Thread replyWriter;
+        private int outstanding;
+        private boolean batch;
+
+        ClientSession(Socket socket, CommandExecutor cmdExe) {
+            this.socket = socket;
+            this.cmdExe = cmdExe;
+        }
 
-        try {
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            String inputLine;
-
-            while (!halt && (inputLine = in.readLine()) != null) {
-
-                String cmd = inputLine;
-                if (cmd.startsWith("GET")) {
-                    String command = null;
-                    Map<String, String> params = null;
-                    String[] tokens = inputLine.split(" ");
-                    if (tokens.length < 2) {
-                        sendHTTPResponse(out, "ERROR unexpected command line: " + inputLine);
+        public void run() {
+            BufferedReader in = null;
+            try {
+                out = new PrintWriter(socket.getOutputStream(), true);
+                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                String inputLine;
+
+                while (!halt && (inputLine = in.readLine()) != null) {
+
+                    if (inputLine.startsWith("GET")) {
+                        processHttpRequest(inputLine, in);
+                        // http sockets are used for one request only
                         return;
                     } else {
-                        String[] parts = tokens[1].split("\\?");
-                        if (parts.length < 2) {
-                            sendHTTPResponse(out, "ERROR unexpected command line: " + inputLine);
-                            return;
-                        } else {
-                            command = parts[0];
-                            params = parseParameters(parts[1]);
+                        // Port command
+                        if (!batch) {
+                            batch = true;
+                            startBatchSession();
+                            startReplyWriter();
                         }
+                        submit(inputLine);
                     }
-
-                    // Consume the remainder of the request, if any.  This is important to free the connection.
-                    String nextLine = in.readLine();
-                    while (nextLine != null && nextLine.length() > 0) {
-                        nextLine = in.readLine();
+                }
+                awaitReplies();
+                finishReplyWriter();
+            } catch (IOException e) {
+                if (!halt) {
+                    log.error("Error processing client session", e);
+                }
+            } catch (InterruptedException e) {
+                log.info("Client session interrupted");
+            } finally {
+                if (replyWriter != null) {
+                    replyWriter.interrupt();
+                }
+                if (batch) {
+                    endBatchSession();
+                }
+                sessions.remove(this);
+                if (out != null) out.close();
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        log.error("Error closing client session", e);
                     }
+                }
+                close();
+            }
+        }
+
+        private void submit(String inputLine) {
+
+            String id = null;
+            String command = inputLine;
+            if (inputLine.startsWith(REQUEST_ID_PREFIX)) {
+                int idx = inputLine.indexOf(' ');
+                id = idx < 0 ? inputLine : inputLine.substring(0, idx);
+                command = idx < 0 ? "" : inputLine.substring(idx + 1).trim();
+            }
+
+            final Reply reply = new Reply(id);
+            synchronized (this) {
+                outstanding++;
+                if (id == null) {
+                    ordered.add(reply);
+                }
+            }
+
+            // Commands that can be rejected without running are answered immediately
+            String error = CommandExecutor.validate(command);
+            if (error != null) {
+                complete(reply, error);
+                return;
+            }
 
-                    // If a callback (javascript) function is specified write it back immediately.  This function
-                    // is used to cancel a timeout handler
-                    String callback = params.get("callback");
-                    if (callback != null) {
-                        sendHTTPResponse(out, callback);
+            final String cmd = command;
+            try {
+                commandQueue.submit(new CommandQueue.Command() {
+                    public void run() {
+                        String response;
+                        try {
+                            response = cmdExe.execute(cmd);
+                        } catch (Throwable e) {
+                            log.error("Error executing " + cmd, e);
+                            response = "ERROR " + e.toString();
+                        }
+                        complete(reply, response);
                     }
 
-                    String		result = processGet(command, params, cmdExe);
-                    if ( command.equals("/user") || command.equals("/exit") || command.equals("/idle") )
-                    	sendHTTPResponse(out, result);
-                    else
-                    {
-                    	if ( result != null && !result.equals("OK") )
-                    		log.error("result: " + result);
-	                    // If no callback was specified write back a "no response" header
-	                    if (callback == null) {
-	                        sendHTTPResponse(out, null);
-	                    }
+                    public void reject(String message) {
+                        complete(reply, "ERROR " + message);
                     }
+                }, CommandExecutor.isQuery(command));
+            } catch (RejectedExecutionException e) {
+                complete(reply, "ERROR " + e.getMessage());
+            }
+        }
 
-                    // http sockets are used for one request onle
-                    return;
+        /**
+         * Record the response to a command and queue all responses that are ready for the reply writer.  Called on
+         * the command threads,  so it never writes to the socket itself:  a client that does not read its replies
+         * only holds up its own session.
+         */
+        private synchronized void complete(Reply reply, String response) {
+            reply.response = response;
+            outstanding--;
+            if (reply.id != null) {
+                replies.add(reply.id + " " + response);
+            } else {
+                while (!ordered.isEmpty() && ordered.getFirst().response != null) {
+                    replies.add(ordered.removeFirst().response);
+                }
+            }
+            notifyAll();
+        }
 
+        private synchronized void awaitReplies() throws InterruptedException {
+            while (outstanding > 0) {
+                wait();
+            }
+        }
+
+        /**
+         * Write replies until the end marker,  on the session's reply thread.
+         */
+        private void writeReplies() {
+            try {
+                String line;
+                while ((line = replies.take()) != END_OF_REPLIES) {
+                    out.println(line);
+                }
+            } catch (InterruptedException e) {
+                log.info("Reply writer interrupted");
+            }
+        }
+
+        private void startReplyWriter() {
+            replyWriter = replyThreads.newThread(new Runnable() {
+                public void run() {
+                    writeReplies();
+                }
+            });
+            replyWriter.start();
+        }
+
+        /**
+         * Wait for the replies queued so far to be written.
+         */
+        private void finishReplyWriter() throws InterruptedException {
+            if (replyWriter != null) {
+                replies.add(END_OF_REPLIES);
+                replyWriter.join();
+                replyWriter = null;
+            }
+        }
+
+        /**
+         * Stop reading commands.  The session ends once the commands already read are answered.
+         */
+        void stopReading() {
+            try {
+                socket.shutdownInput();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void processHttpRequest(String inputLine, BufferedReader in) throws IOException {
+            String command = null;
+            Map<String, String> params = null;
+            String[] tokens = inputLine.split(" ");
+            if (tokens.length < 2) {
+                sendHTTPResponse(out, "ERROR unexpected command line: " + inputLine);
+                return;
+            } else {
+                String[] parts = tokens[1].split("\\?");
+                if (parts.length < 2) {
+                    sendHTTPResponse(out, "ERROR unexpected command line: " + inputLine);
+                    return;
                 } else {
-                    // Port command
-                    Globals.setBatch(true);
-                    Globals.setSuppressMessages(true);
-                    final String response = cmdExe.execute(inputLine);
-                    out.println(response);
+                    command = parts[0];
+                    params = parseParameters(parts[1]);
                 }
             }
-        } catch (IOException e) {
-            log.error("Error processing client session", e);
-        } finally {
+
+            // Consume the remainder of the request, if any.  This is important to free the connection.
+            String nextLine = in.readLine();
+            while (nextLine != null && nextLine.length() > 0) {
+                nextLine = in.readLine();
+            }
+
+            // If a callback (javascript) function is specified write it back immediately.  This function
+            // is used to cancel a timeout handler
+            String callback = params.get("callback");
+            if (callback != null) {
+                sendHTTPResponse(out, callback);
+            }
+
+            String result = processGet(command, params);
+            if (command.equals("/user") || command.equals("/exit") || command.equals("/idle"))
+                sendHTTPResponse(out, result);
+            else {
+                if (result != null && !result.equals("OK"))
+                    log.error("result: " + result);
+                // If no callback was specified write back a "no response" header
+                if (callback == null) {
+                    sendHTTPResponse(out, null);
+                }
+            }
+        }
+
+        /**
+         * Run an http request through the command queue and wait for the result.  Requests for the user key and
+         * idle time are queries,  answered without waiting for running commands.
+         */
+        private String processGet(final String command, final Map<String, String> params) throws IOException {
+            boolean query = command.equals("/user") || command.equals("/exit") || command.equals("/idle");
+            final String[] result = new String[1];
+            final IOException[] error = new IOException[1];
+            Future<?> future;
+            try {
+                future = commandQueue.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            result[0] = CommandListener.this.processGet(command, params, cmdExe);
+                        } catch (IOException e) {
+                            error[0] = e;
+                        }
+                    }
+                }, query);
+                future.get();
+            } catch (RejectedExecutionException e) {
+                return "ERROR " + e.getMessage();
+            } catch (CancellationException e) {
+                return "ERROR Command queue is shut down";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "ERROR interrupted";
+            } catch (ExecutionException e) {
+                log.error("Error processing " + command, e.getCause());
+                return "ERROR " + e.getCause();
+            }
+            if (error[0] != null) {
+                throw error[0];
+            }
+            return result[0];
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.error("Error closing client socket", e);
+            }
+        }
+    }
+
+    // Marks the end of a session's replies for its reply writer
+    private static final String END_OF_REPLIES = new String();
+
+    private static final NamedThreadFactory replyThreads = new NamedThreadFactory("batch-reply");
+
+    /**
+     * Response to a command,  null until the command completes
+     */
+    private static class Reply {
+        final String id;
+        String response;
+
+        Reply(String id) {
+            this.id = id;
+        }
+    }
+
+    private static synchronized void startBatchSession() {
+        if (batchSessions++ == 0) {
+            Globals.setBatch(true);
+            Globals.setSuppressMessages(true);
+        }
+    }
+
+    private static synchronized void endBatchSession() {
+        if (--batchSessions == 0) {
             Globals.setSuppressMessages(false);
             Globals.setBatch(false);
-            if (out != null) out.close();
-            if (in != null) in.close();
         }
     }
 
+    /**
+     * Stop accepting clients and commands.  Commands that are running finish and are answered,  queued commands are
+     * answered with an error.  Each session closes its socket once its replies are written.
+     */
     private void closeSockets() {
-        if (clientSocket != null) {
-            try {
-                clientSocket.close();
-                clientSocket = null;
-            } catch (IOException e) {
-                log.error("Error closing clientSocket", e);
+        if (commandQueue != null) {
+            commandQueue.shutdown();
+        }
+        synchronized (sessions) {
+            for (ClientSession session : sessions) {
+                session.stopReading();
             }
         }
 
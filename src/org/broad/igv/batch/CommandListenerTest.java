@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandListenerTest {
+
+    private CommandListener listener;
+    private TestExecutor executor;
+    private Socket socket;
+
+    /**
+     * Executor that records the commands it runs.  "slow" waits until released,  "genome" sets the genome a
+     * later "goto" is checked against,  "big" returns a long response.
+     */
+    static class TestExecutor extends CommandExecutor {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+        volatile String genome = "hg18";
+
+        TestExecutor() {
+            super(null);
+        }
+
+        @Override
+        public String execute(String command) {
+            executed.add(command);
+            try {
+                if (command.equals("slow")) {
+                    release.await(10, TimeUnit.SECONDS);
+                } else if (command.startsWith("genome ")) {
+                    genome = command.substring(7);
+                } else if (command.startsWith("goto ")) {
+                    return genome.equals("mm9") || !command.contains("chrY") ? "OK" : "ERROR: unknown chromosome";
+                }
+            } catch (InterruptedException e) {
+                return "ERROR interrupted";
+            }
+            if (command.equals("big")) {
+                return new String(new char[1 << 20]).replace('\0', 'x');
+            }
+            return command.startsWith("echo") ? "echo" : "OK";
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ServerSocket probe = new ServerSocket(0);
+        int port = probe.getLocalPort();
+        probe.close();
+
+        executor = new TestExecutor();
+        listener = new CommandListener(port, executor);
+        listener.start();
+
+        for (int tries = 0; socket == null; tries++) {
+            try {
+                socket = new Socket("localhost", port);
+            } catch (IOException e) {
+                if (tries > 50) throw e;
+                Thread.sleep(100);
+            }
+        }
+        socket.setSoTimeout(10000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.release.countDown();
+        socket.close();
+        listener.stop();
+    }
+
+    @Test
+    public void testValidate() {
+        assertEquals("ERROR: missing locus parameter", CommandExecutor.validate("goto"));
+        assertEquals("ERROR: missing locus parameter", CommandExecutor.validate(" goto  "));
+        // Loci are resolved when the goto runs,  after any queued genome command
+        assertNull(CommandExecutor.validate("goto chrY:1-100"));
+        assertNull(CommandExecutor.validate("goto unknownChr:1-100"));
+        assertNull(CommandExecutor.validate("goto EGFR"));
+        assertNull(CommandExecutor.validate("load foo.bed"));
+    }
+
+    @Test
+    public void testPipelinedCommands() throws Exception {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+        // Sent without waiting for replies
+        out.println("slow");
+        out.println("@7 echo");
+        out.println("echo");
+        out.println("goto");
+        out.println("genome mm9");
+        out.println("goto chrY:1-100");
+        out.println("@8 goto chrY:200-300");
+
+        // The query with an id is answered while the slow command is still running
+        assertEquals("@7 echo", in.readLine());
+
+        executor.release.countDown();
+
+        // Replies without an id come in the order the commands were sent,  the reply with an id when it completes
+        List<String> replies = new ArrayList<String>();
+        for (int i = 0; i < 6; i++) {
+            replies.add(in.readLine());
+        }
+        assertEquals("@8 OK", replies.remove(replies.indexOf("@8 OK")));
+        assertEquals(Arrays.asList("OK", "echo", "ERROR: missing locus parameter", "OK", "OK"), replies);
+
+        // State changing commands run in the order they were sent
+        List<String> commands = new ArrayList<String>(executor.executed);
+        commands.removeAll(Arrays.asList("echo"));
+        assertEquals(Arrays.asList("slow", "genome mm9", "goto chrY:1-100", "goto chrY:200-300"), commands);
+    }
+
+    @Test
+    public void testClientNotReadingReplies() throws Exception {
+        // Replies to this client fill the socket buffers,  it never reads them
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        for (int i = 0; i < 8; i++) {
+            out.println("big");
+        }
+
+        // All run,  the command thread is not held up writing them
+        long deadline = System.currentTimeMillis() + 10000;
+        while (Collections.frequency(executor.executed, "big") < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(8, Collections.frequency(executor.executed, "big"));
+
+        Socket other = new Socket("localhost", socket.getPort());
+        try {
+            other.setSoTimeout(10000);
+            PrintWriter otherOut = new PrintWriter(other.getOutputStream(), true);
+            BufferedReader otherIn = new BufferedReader(new InputStreamReader(other.getInputStream()));
+            otherOut.println("genome mm9");
+            assertEquals("OK", otherIn.readLine());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+        out.println("slow");
+        out.println("genome mm9");
+        out.println("@3 genome hg19");
+        while (!executor.executed.contains("slow")) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+
+        listener.stop();
+        executor.release.countDown();
+
+        // The running command finishes,  the queued ones are answered with an error
+        List<String> replies = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            replies.add(in.readLine());
+        }
+        assertEquals("@3 ERROR Command queue is shut down",
+                replies.remove(replies.indexOf("@3 ERROR Command queue is shut down")));
+        assertEquals(Arrays.asList("OK", "ERROR Command queue is shut down"), replies);
+        assertEquals(Arrays.asList("slow"), executor.executed);
+
+        // The session closes once its replies are written
+        assertNull(in.readLine());
+    }
+}
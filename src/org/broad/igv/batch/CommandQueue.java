@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+package org.broad.igv.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.broad.igv.util.NamedThreadFactory;
+
+/**
+ * Queue of batch commands from all clients of the command listener,  in front of the CommandExecutor.
+ * <p/>
+ * Commands that change IGV state (load,  goto,  snapshot, ...) run one at a time,  in the order they are submitted,
+ * on a single thread.  Queries that only read state (echo,  minfo,  map) run on a separate small pool so they are
+ * answered while a long load or snapshot is running.
+ * <p/>
+ * Both queues are bounded.  When a queue is full submit() blocks,  which stops the submitting client session from
+ * reading further commands until there is room,  rather than queueing without limit.
+ * <p/>
+ * On shutdown commands already running are left to finish.  Commands still queued are dropped,  and told so if
+ * they are a Command.
+ */
+class CommandQueue {
+
+    static final int DEFAULT_CAPACITY = 64;
+    private static final int QUERY_THREADS = 2;
+
+    private final ThreadPoolExecutor commandExecutor;
+    private final ThreadPoolExecutor queryExecutor;
+
+    CommandQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    CommandQueue(int capacity) {
+        commandExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity), new NamedThreadFactory("batch-command"), BLOCK);
+        queryExecutor = new ThreadPoolExecutor(QUERY_THREADS, QUERY_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity), new NamedThreadFactory("batch-query"), BLOCK);
+    }
+
+    /**
+     * Submit a command,  blocking while the queue for it is full.
+     *
+     * @param runnable the command
+     * @param query    true if the command only reads state and may run concurrently with other commands
+     */
+    Future<?> submit(Runnable runnable, boolean query) {
+        QueuedTask task = new QueuedTask(runnable);
+        (query ? queryExecutor : commandExecutor).execute(task);
+        return task;
+    }
+
+    /**
+     * @return the number of state changing commands waiting to run
+     */
+    int getPendingCount() {
+        return commandExecutor.getQueue().size();
+    }
+
+    /**
+     * Stop accepting commands.  Running commands are not interrupted,  queued commands are cancelled and rejected.
+     */
+    void shutdown() {
+        commandExecutor.shutdown();
+        queryExecutor.shutdown();
+        List<Runnable> queued = new ArrayList<Runnable>();
+        commandExecutor.getQueue().drainTo(queued);
+        queryExecutor.getQueue().drainTo(queued);
+        for (Runnable runnable : queued) {
+            QueuedTask task = (QueuedTask) runnable;
+            if (task.cancel(false) && task.runnable instanceof Command) {
+                ((Command) task.runnable).reject("Command queue is shut down");
+            }
+        }
+    }
+
+    /**
+     * A command that is answered with an error if it is dropped from the queue without running.
+     */
+    interface Command extends Runnable {
+
+        void reject(String message);
+    }
+
+    private static class QueuedTask extends FutureTask<Object> {
+
+        final Runnable runnable;
+
+        QueuedTask(Runnable runnable) {
+            super(runnable, null);
+            this.runnable = runnable;
+        }
+    }
+
+    /**
+     * Handler for a full queue,  waits for room instead of rejecting the command.
+     */
+    private static final RejectedExecutionHandler BLOCK = new RejectedExecutionHandler() {
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Command queue is shut down");
+            }
+            try {
+                executor.getQueue().put(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted waiting for room in the command queue", e);
+            }
+        }
+    };
+}
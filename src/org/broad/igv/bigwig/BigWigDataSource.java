@@ -18,6 +18,7 @@
 
 package org.broad.igv.bigwig;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -37,8 +38,9 @@ import org.broad.igv.bbfile.WigItem;
 import org.broad.igv.bbfile.ZoomDataRecord;
 import org.broad.igv.bbfile.ZoomLevelIterator;
 import org.broad.igv.data.AbstractDataSource;
-import org.broad.igv.data.BasicScore;
+import org.broad.igv.data.ScoreBlock;
 import org.broad.igv.data.DataTile;
+import org.broad.igv.data.PseudoMoleculeBins;
 import org.broad.igv.feature.BasicFeature;
 import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.Exon;
@@ -203,15 +205,14 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
         String querySeq = tmp == null ? chr : tmp;
 
         if (reader.isBigBedFile() || bbLevel > 1 || (bbLevel == 1 && (reductionLevel / scale) < 2)) {
-            ArrayList<LocusScore> scores = new ArrayList(1000);
+            ScoreBlock scores = new ScoreBlock(1000);
             ZoomLevelIterator zlIter = reader.getZoomLevelIterator(bbLevel, querySeq, start, querySeq, end, false);
             while (zlIter.hasNext()) {
                 ZoomDataRecord rec = zlIter.next();
 
                 float v = getValue(rec);
 
-                BasicScore bs = new BasicScore(rec.getChromStart(), rec.getChromEnd(), v);
-                scores.add(bs);
+                scores.add(rec.getChromStart(), rec.getChromEnd(), v);
             }
             return scores;
 
@@ -276,13 +277,57 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
     }
 
 
+    /**
+     * Whole genome scores for a genome in pseudo-molecule mode.  Records from the lowest resolution zoom level are
+     * read in a single pass over the file,  rather than one query per contig,  and packed into fixed size genome
+     * bins.  The result is saved next to local files and reused by later sessions.
+     */
+    private ScoreBlock getPseudoMoleculeScores() {
+
+        File dataFile = new File(reader.getBBFilePath());
+        File summaryFile = null;
+        if (dataFile.exists()) {
+            summaryFile = PseudoMoleculeBins.getSummaryFile(dataFile, windowFunction);
+            ScoreBlock scores = PseudoMoleculeBins.read(summaryFile, dataFile, genome, windowFunction);
+            if (scores != null) {
+                return scores;
+            }
+        }
+
+        PseudoMoleculeBins bins = new PseudoMoleculeBins(genome, windowFunction);
+        ZoomLevelIterator zlIter = reader.getZoomLevelIterator(getLowestResolutionLevel().getZoomLevel());
+        String lastChr = null;
+        String genomeChr = null;
+        while (zlIter.hasNext()) {
+            ZoomDataRecord rec = zlIter.next();
+            String chr = rec.getChromName();
+            if (chr == null) {
+                continue;
+            }
+            if (!chr.equals(lastChr)) {
+                lastChr = chr;
+                genomeChr = genome.getChromosomeAlias(chr);
+            }
+            bins.add(genomeChr, rec.getChromStart(), rec.getChromEnd(), getValue(rec));
+        }
+        ScoreBlock scores = bins.getScores();
+
+        if (summaryFile != null) {
+            PseudoMoleculeBins.write(summaryFile, genome, windowFunction, scores);
+        }
+        return scores;
+    }
+
     private List<LocusScore> getWholeGenomeScores() {
 
 
         if (genome.getHomeChromosome().equals(Globals.CHR_ALL)) {
+            if (wholeGenomeScores == null && genome.isPseudoMoleculeMode()) {
+                wholeGenomeScores = getPseudoMoleculeScores();
+            }
             if (wholeGenomeScores == null) {
                 double scale = genome.getLength() / screenWidth;
-                wholeGenomeScores = new ArrayList<LocusScore>();
+                ScoreBlock scores = new ScoreBlock();
                 for (Chromosome chr : genome.getChromosomes()) {
 
 
@@ -306,10 +351,11 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
 
                         int genomeEnd = genome.getGenomeCoordinate(chrName, rec.getChromEnd());
                         float value = getValue(rec);
-                        wholeGenomeScores.add(new BasicScore(genomeStart, genomeEnd, value));
+                        scores.add(genomeStart, genomeEnd, value);
                         lastGenomeEnd = genomeEnd;
                     }
                 }
+                wholeGenomeScores = scores;
 
             }
             return wholeGenomeScores;
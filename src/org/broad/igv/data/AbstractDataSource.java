@@ -43,10 +43,17 @@ public abstract class AbstractDataSource implements DataSource {
 
     private static Logger log = Logger.getLogger(AbstractDataSource.class);
 
+    // A summary tile holds one LocusScore,  roughly 48 bytes,  per summarized bin
+    private static final LRUCache.Weigher<SummaryTile> SUMMARY_TILE_WEIGHER = new LRUCache.Weigher<SummaryTile>() {
+        public long getSize(SummaryTile tile) {
+            return 64 + 48L * tile.getSize();
+        }
+    };
+
     // DataManager dataManager;
     boolean cacheSummaryTiles = true;
     WindowFunction windowFunction = WindowFunction.mean;
-    LRUCache<String, SummaryTile> summaryTileCache = new LRUCache(this, 10);
+    LRUCache<String, SummaryTile> summaryTileCache = new LRUCache(this, 10, SUMMARY_TILE_WEIGHER);
     protected Genome genome;
 
     public AbstractDataSource(Genome genome) {
@@ -135,7 +142,7 @@ public abstract class AbstractDataSource implements DataSource {
 
         List<SummaryTile> tiles = getSummaryTilesForRange(chr, startLocation, endLocation, zoom);
 
-        scores = new ArrayList(tiles.size() * 700);
+        scores = new ScoreBlock(tiles.size() * 700);
 
         for (SummaryTile tile : tiles) {
             scores.addAll(tile.getScores());
@@ -315,7 +322,7 @@ public abstract class AbstractDataSource implements DataSource {
 
             } else {
                 float normalizationFactor = 1.0f;
-                List<LocusScore> scores = new ArrayList(nBins);
+                ScoreBlock scores = new ScoreBlock(nBins);
                 double scale = (double) (endLocation - startLocation) / nBins;
 
                 Accumulator accumulator = new Accumulator(windowFunction, 5);
@@ -359,7 +366,7 @@ public abstract class AbstractDataSource implements DataSource {
                     	if ( startFractions != null && endFractions != null && startFractions.length > i && endFractions.length > i )
                     		scores.add(new NamedScore(s, e, v, probeName, startFractions[i], endFractions[i]));
                     	else
-                    		scores.add(new NamedScore(s, e, v, probeName));
+                    		scores.add(s, e, v, probeName);
                     } else {
                         if (!accumulator.hasData()) accumulatedStart = s;
                         accumulatedEnd = e;
@@ -78,4 +78,31 @@ public class DataTile {
 	public double[] getEndFractions() {
 		return endFractions;
 	}
+
+    /**
+     * @return a rough estimate of the heap size of this tile in bytes
+     */
+    public long getSizeEstimate() {
+        long size = 64;
+        if (startLocations != null) {
+            size += 4L * startLocations.length;
+        }
+        if (endLocations != null) {
+            size += 4L * endLocations.length;
+        }
+        if (values != null) {
+            size += 4L * values.length;
+        }
+        if (featureNames != null) {
+            // References only,  names are usually shared with the features
+            size += 8L * featureNames.length;
+        }
+        if (startFractions != null) {
+            size += 8L * startFractions.length;
+        }
+        if (endFractions != null) {
+            size += 8L * endFractions.length;
+        }
+        return size;
+    }
 }
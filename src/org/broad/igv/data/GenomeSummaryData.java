@@ -22,9 +22,9 @@
  */
 package org.broad.igv.data;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -54,9 +54,14 @@ public class GenomeSummaryData {
 
     String[] samples;
 
-    Map<String, Map<String, FloatArrayList>> dataMap = new HashMap();
+    // Per chromosome data,  indexed by chromosome ordinal and then sample.  Allocated when data for the
+    // chromosome is first added,  scaffold level genomes can have a very large number of chromosomes.
+    FloatArrayList[][] dataLists;
 
-    Map<String, IntArrayList> locationMap;
+    IntArrayList[] locationLists;
+
+    // Per sample bins,  used instead of the per chromosome lists in pseudo-molecule mode
+    PseudoMoleculeBins[] sampleBins;
 
     int[] locations;
 
@@ -77,23 +82,23 @@ public class GenomeSummaryData {
         this.samples = samples;
         scale = (genome.getLength() / locationUnit) / nPixels;
 
-        List<String> chrNames = genome.getChromosomeNames();
-        locationMap = new HashMap();
-        dataMap = new HashMap();
-        for (String chr : chrNames) {
-            locationMap.put(chr, new IntArrayList(nPixels / 10));
-            dataMap.put(chr, new HashMap());
-            for (String s : samples) {
-                dataMap.get(chr).put(s, new FloatArrayList(nPixels / 10));
+        int nChromosomes = genome.getChromosomeNames().size();
+        if (genome.isPseudoMoleculeMode()) {
+            sampleBins = new PseudoMoleculeBins[samples.length];
+            for (int j = 0; j < samples.length; j++) {
+                sampleBins[j] = new PseudoMoleculeBins(genome, WindowFunction.mean, 10 * nPixels);
             }
+        } else {
+            locationLists = new IntArrayList[nChromosomes];
+            dataLists = new FloatArrayList[nChromosomes][];
         }
     }
 
 
     public void addData(String chr, int[] locs, Map<String, float[]> sampleData) {
 
-        IntArrayList locations = locationMap.get(chr);
-        if (locations == null) {
+        int ordinal = genome.getChromosomeOrdinal(chr);
+        if (ordinal < 0 || ordinal >= genome.getChromosomeNames().size()) {
             if (!skippedChromosomes.contains(chr)) {
                 skippedChromosomes.add(chr);
                 log.info("Skipping data for: " + chr);
@@ -101,31 +106,50 @@ public class GenomeSummaryData {
             return;
         }
 
+        if (sampleBins != null) {
+            addBinnedData(chr, locs, sampleData);
+            return;
+        }
+
+        IntArrayList locations = locationLists[ordinal];
+        FloatArrayList[] chrData = dataLists[ordinal];
+        if (locations == null) {
+            locations = new IntArrayList(nPixels / 10);
+            chrData = new FloatArrayList[samples.length];
+            for (int j = 0; j < samples.length; j++) {
+                chrData[j] = new FloatArrayList(nPixels / 10);
+            }
+            locationLists[ordinal] = locations;
+            dataLists[ordinal] = chrData;
+        }
+
+        long offset = genome.getCumulativeOffset(chr);
         int lastPixel = -1;
-        Map<String, Accumulator> dataPoints = new HashMap();
+        Accumulator[] dataPoints = new Accumulator[samples.length];
 
         for (int i = 0; i < locs.length; i++) {
 
-            int genomeLocation = genome.getGenomeCoordinate(chr, locs[i]);
+            int genomeLocation = (int) ((offset + locs[i]) / 1000);
             int pixel = (int) (genomeLocation / scale);
             if (i > 0 && pixel != lastPixel) {
                 nDataPts++;
 
                 locations.add(genomeLocation);
-                for (String s : dataMap.get(chr).keySet()) {
-                    Accumulator dp = dataPoints.get(s);
+                for (int j = 0; j < samples.length; j++) {
+                    Accumulator dp = dataPoints[j];
                     dp.finish();
-                    dataMap.get(chr).get(s).add(dp.getValue());
+                    chrData[j].add(dp.getValue());
                 }
-                dataPoints.clear();
+                Arrays.fill(dataPoints, null);
             }
 
-            for (String s : samples) {
+            for (int j = 0; j < samples.length; j++) {
+                String s = samples[j];
                 float[] data = sampleData.get(s);
-                Accumulator dp = dataPoints.get(s);
+                Accumulator dp = dataPoints[j];
                 if (dp == null) {
                     dp = new Accumulator(WindowFunction.mean);
-                    dataPoints.put(s, dp);
+                    dataPoints[j] = dp;
                 }
                 try {
                     dp.add(1, data[i], null);
@@ -138,6 +162,18 @@ public class GenomeSummaryData {
         }
     }
 
+    private void addBinnedData(String chr, int[] locs, Map<String, float[]> sampleData) {
+        long offset = genome.getCumulativeOffset(chr);
+        for (int j = 0; j < samples.length; j++) {
+            float[] data = sampleData.get(samples[j]);
+            PseudoMoleculeBins bins = sampleBins[j];
+            for (int i = 0; i < locs.length; i++) {
+                long genomeLocation = offset + locs[i];
+                bins.add(genomeLocation, genomeLocation + 1, data[i]);
+            }
+        }
+    }
+
     public int[] getLocations() {
         if (locations == null) {
             createDataArrays();
@@ -156,29 +192,41 @@ public class GenomeSummaryData {
     }
 
     private synchronized void createDataArrays() {
+        if (sampleBins != null) {
+            locations = samples.length == 0 ? new int[0] : sampleBins[0].getLocations();
+            data = new HashMap();
+            for (int j = 0; j < samples.length; j++) {
+                data.put(samples[j], sampleBins[j].getValues());
+            }
+            return;
+        }
+
         locations = new int[nDataPts];
         int offset = 0;
-        List<String> chrNames = genome.getChromosomeNames();
-        for (String chr : chrNames) {
-            int[] chrLocs = locationMap.get(chr).toArray();
-            System.arraycopy(chrLocs, 0, locations, offset, chrLocs.length);
-            offset += chrLocs.length;
+        for (IntArrayList chrLocations : locationLists) {
+            if (chrLocations != null) {
+                int[] chrLocs = chrLocations.toArray();
+                System.arraycopy(chrLocs, 0, locations, offset, chrLocs.length);
+                offset += chrLocs.length;
+            }
         }
 
         data = new HashMap();
-        for (String s : samples) {
+        for (int j = 0; j < samples.length; j++) {
             float[] sampleData = new float[nDataPts];
             offset = 0;
-            for (String chr : chrNames) {
-                float[] chrData = dataMap.get(chr).get(s).toArray();
-                System.arraycopy(chrData, 0, sampleData, offset, chrData.length);
-                offset += chrData.length;
+            for (FloatArrayList[] chrData : dataLists) {
+                if (chrData != null) {
+                    float[] values = chrData[j].toArray();
+                    System.arraycopy(values, 0, sampleData, offset, values.length);
+                    offset += values.length;
+                }
             }
-            data.put(s, sampleData);
+            data.put(samples[j], sampleData);
         }
 
-        locationMap.clear();
-        dataMap.clear();
+        Arrays.fill(locationLists, null);
+        Arrays.fill(dataLists, null);
     }
 
 }
@@ -44,6 +44,10 @@ public class NamedScore extends BasicScore {
     	this((int)start, (int)end, score, probe, start - (int)start, end - (int)end);
     }
 
+    public String getProbe() {
+        return probe;
+    }
+
     public String getValueString(double position, WindowFunction windowFunction) {
         StringBuffer buf = new StringBuffer();
         buf.append("Value: " + score);
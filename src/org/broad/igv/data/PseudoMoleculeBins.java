@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.track.WindowFunction;
+
+/**
+ * Whole genome summary for genomes in pseudo-molecule mode (see Genome.isPseudoMoleculeMode()).  The genome is
+ * treated as a single molecule cut into a fixed number of equal sized bins,  independent of contig boundaries,  so
+ * the cost of the whole genome view depends on the number of bins rather than the number of contigs.  Small contigs
+ * are packed together into the bin they fall in.
+ * <p/>
+ * Values are combined per bin with the window function,  mean is weighted by the number of bases covered.
+ * Summaries can be saved to and restored from a small binary file so they are computed once per data file.
+ */
+public class PseudoMoleculeBins {
+
+    private static Logger log = Logger.getLogger(PseudoMoleculeBins.class);
+
+    /**
+     * Default number of bins,  about 10 per pixel of a whole genome view
+     */
+    public static final int DEFAULT_BIN_COUNT = 10000;
+
+    private static final int MAGIC = 0x49505342;  // "IPSB"
+    private static final int VERSION = 1;
+
+    private Genome genome;
+    private WindowFunction windowFunction;
+    private long genomeLength;
+    private long binSize;          // In BP
+    private double[] values;
+    private double[] weights;      // Bases covered by non-NaN values
+    private boolean[] occupied;
+
+    public PseudoMoleculeBins(Genome genome, WindowFunction windowFunction) {
+        this(genome, windowFunction, DEFAULT_BIN_COUNT);
+    }
+
+    public PseudoMoleculeBins(Genome genome, WindowFunction windowFunction, int nBins) {
+        this.genome = genome;
+        this.windowFunction = windowFunction;
+        this.genomeLength = Math.max(1, genome.getLength());
+        this.binSize = Math.max(1, (genomeLength + nBins - 1) / nBins);
+        int n = (int) ((genomeLength + binSize - 1) / binSize);
+        values = new double[n];
+        weights = new double[n];
+        occupied = new boolean[n];
+    }
+
+    /**
+     * Add a value for the interval [start, end) of chr,  in chromosome coordinates.  Data for chromosomes not in
+     * the genome is ignored.
+     *
+     * @return false if chr is not a chromosome of the genome
+     */
+    public boolean add(String chr, int start, int end, float value) {
+        int ordinal = genome.getChromosomeOrdinal(chr);
+        if (ordinal < 0) {
+            return false;
+        }
+        long offset = genome.getCumulativeOffset(chr);
+        add(offset + start, offset + Math.max(end, start + 1), value);
+        return true;
+    }
+
+    /**
+     * Add a value for the interval [genomeStart, genomeEnd),  in whole genome coordinates (BP).
+     */
+    public void add(long genomeStart, long genomeEnd, float value) {
+
+        int firstBin = (int) Math.min(values.length - 1, genomeStart / binSize);
+        int lastBin = (int) Math.min(values.length - 1, (genomeEnd - 1) / binSize);
+        for (int b = firstBin; b <= lastBin; b++) {
+            long overlap = Math.min(genomeEnd, (b + 1) * binSize) - Math.max(genomeStart, b * binSize);
+            if (overlap <= 0) {
+                continue;
+            }
+            occupied[b] = true;
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            boolean empty = weights[b] == 0;
+            weights[b] += overlap;
+            if (empty) {
+                values[b] = windowFunction == WindowFunction.min || windowFunction == WindowFunction.max ?
+                        value : value * (double) overlap;
+                continue;
+            }
+            switch (windowFunction) {
+                case min:
+                    values[b] = Math.min(values[b], value);
+                    break;
+                case max:
+                    values[b] = Math.max(values[b], value);
+                    break;
+                default:
+                    values[b] += value * (double) overlap;
+            }
+        }
+    }
+
+    private float getBinValue(int b) {
+        if (weights[b] == 0) {
+            return Float.NaN;
+        }
+        if (windowFunction == WindowFunction.min || windowFunction == WindowFunction.max) {
+            return (float) values[b];
+        }
+        return (float) (values[b] / weights[b]);
+    }
+
+    /**
+     * @return the non-empty bins as scores in whole genome coordinates (KBP)
+     */
+    public ScoreBlock getScores() {
+        ScoreBlock scores = new ScoreBlock(values.length);
+        for (int b = 0; b < values.length; b++) {
+            if (occupied[b]) {
+                int start = (int) ((b * binSize) / 1000);
+                int end = (int) (Math.min((b + 1) * binSize, genomeLength) / 1000);
+                scores.add(start, Math.max(end, start + 1), getBinValue(b));
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * @return the start of each non-empty bin,  in whole genome coordinates (KBP)
+     */
+    public int[] getLocations() {
+        int[] locations = new int[countNonEmpty()];
+        int i = 0;
+        for (int b = 0; b < values.length; b++) {
+            if (occupied[b]) {
+                locations[i++] = (int) ((b * binSize) / 1000);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * @return the value of each non-empty bin,  parallel to getLocations()
+     */
+    public float[] getValues() {
+        float[] data = new float[countNonEmpty()];
+        int i = 0;
+        for (int b = 0; b < values.length; b++) {
+            if (occupied[b]) {
+                data[i++] = getBinValue(b);
+            }
+        }
+        return data;
+    }
+
+    private int countNonEmpty() {
+        int n = 0;
+        for (boolean o : occupied) {
+            if (o) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Key identifying the genome and window function a saved summary was computed for.
+     */
+    private static String getKey(Genome genome, WindowFunction windowFunction) {
+        return genome.getId() + "\t" + genome.getLength() + "\t" + genome.getChromosomeNames().size() +
+                "\t" + windowFunction.name();
+    }
+
+    /**
+     * Return the file a summary of dataFile is saved to,  next to the data file.
+     */
+    public static File getSummaryFile(File dataFile, WindowFunction windowFunction) {
+        return new File(dataFile.getParentFile(), dataFile.getName() + "." + windowFunction.name() + ".igvwg");
+    }
+
+    /**
+     * Save scores computed for the genome and window function.  Failure to write,  e.g. because the directory
+     * is read only,  is logged and ignored.
+     */
+    public static void write(File file, Genome genome, WindowFunction windowFunction, ScoreBlock scores) {
+        DataOutputStream dos = null;
+        boolean failed = false;
+        try {
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeUTF(getKey(genome, windowFunction));
+            int n = scores.size();
+            dos.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                dos.writeInt(scores.getStart(i));
+                dos.writeInt(scores.getEnd(i));
+                dos.writeFloat(scores.getValue(i));
+            }
+        } catch (IOException e) {
+            log.info("Could not save whole genome summary to " + file.getAbsolutePath() + ": " + e.getMessage());
+            failed = true;
+        } finally {
+            if (dos != null) {
+                try {
+                    dos.close();
+                } catch (IOException e) {
+                    failed = true;
+                }
+            }
+        }
+        if (failed) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Read scores saved by write().
+     *
+     * @return the scores,  or null if the file does not exist,  is older than dataFile,  or was computed for a
+     *         different genome or window function
+     */
+    public static ScoreBlock read(File file, File dataFile, Genome genome, WindowFunction windowFunction) {
+        if (!file.exists() || file.lastModified() < dataFile.lastModified()) {
+            return null;
+        }
+        DataInputStream dis = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION ||
+                    !getKey(genome, windowFunction).equals(dis.readUTF())) {
+                return null;
+            }
+            int n = dis.readInt();
+            ScoreBlock scores = new ScoreBlock(n);
+            for (int i = 0; i < n; i++) {
+                int start = dis.readInt();
+                int end = dis.readInt();
+                scores.add(start, end, dis.readFloat());
+            }
+            return scores;
+        } catch (IOException e) {
+            log.info("Ignoring unreadable whole genome summary " + file.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (dis != null) {
+                try {
+                    dis.close();
+                } catch (IOException e) {
+                    log.error("Error closing " + file.getAbsolutePath(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.track.WindowFunction;
+import org.junit.Test;
+
+public class PseudoMoleculeBinsTest {
+
+    private static Genome createGenome(String id, int nChromosomes, int length, Properties properties)
+            throws Exception {
+        LinkedHashMap<String, Chromosome> chromosomeMap = new LinkedHashMap<String, Chromosome>();
+        for (int i = 0; i < nChromosomes; i++) {
+            String name = "contig" + i;
+            chromosomeMap.put(name, new Chromosome(name, length));
+        }
+        Genome genome = new Genome(id, id, null, false, properties);
+        genome.setChromosomeMap(chromosomeMap, true);
+        return genome;
+    }
+
+    @Test
+    public void testModeDefaultsToOff() throws Exception {
+        assertFalse(createGenome("g", 5000, 100, null).isPseudoMoleculeMode());
+
+        Properties auto = new Properties();
+        auto.setProperty("pseudo_molecules", "auto");
+        assertTrue(createGenome("g", 5000, 100, auto).isPseudoMoleculeMode());
+        assertFalse(createGenome("g", 10, 100, auto).isPseudoMoleculeMode());
+
+        Properties on = new Properties();
+        on.setProperty("pseudo_molecules", "true");
+        assertTrue(createGenome("g", 10, 100, on).isPseudoMoleculeMode());
+    }
+
+    @Test
+    public void testMeanIsWeightedByBasesCovered() throws Exception {
+        // 10 contigs of 1 kb,  10 bins of 1 kb
+        Genome genome = createGenome("g", 10, 1000, null);
+        PseudoMoleculeBins bins = new PseudoMoleculeBins(genome, WindowFunction.mean, 10);
+
+        assertTrue(bins.add("contig2", 0, 750, 4));
+        assertTrue(bins.add("contig2", 750, 1000, 8));
+        assertFalse(bins.add("chrUn", 0, 1000, 100));
+        // Spans the end of contig 4 and the start of contig 5
+        bins.add(4500, 5500, 2);
+        // Occupied but with no value
+        bins.add("contig8", 0, 10, Float.NaN);
+
+        int[] locations = bins.getLocations();
+        float[] values = bins.getValues();
+        assertEquals(4, locations.length);
+        assertEquals(2, locations[0]);
+        assertEquals(5.0f, values[0], 1.0e-6);
+        assertEquals(4, locations[1]);
+        assertEquals(2.0f, values[1], 0);
+        assertEquals(5, locations[2]);
+        assertEquals(8, locations[3]);
+        assertTrue(Float.isNaN(values[3]));
+
+        ScoreBlock scores = bins.getScores();
+        assertEquals(4, scores.size());
+        assertEquals(2, scores.getStart(0));
+        assertEquals(3, scores.getEnd(0));
+        assertEquals(5.0f, scores.getValue(0), 1.0e-6);
+    }
+
+    @Test
+    public void testMinAndMax() throws Exception {
+        Genome genome = createGenome("g", 4, 1000, null);
+        PseudoMoleculeBins min = new PseudoMoleculeBins(genome, WindowFunction.min, 4);
+        PseudoMoleculeBins max = new PseudoMoleculeBins(genome, WindowFunction.max, 4);
+        float[] data = {3, -1, 7, 2};
+        for (int i = 0; i < data.length; i++) {
+            min.add("contig1", i * 100, i * 100 + 10, data[i]);
+            max.add("contig1", i * 100, i * 100 + 10, data[i]);
+        }
+        assertEquals(-1.0f, min.getValues()[0], 0);
+        assertEquals(7.0f, max.getValues()[0], 0);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        Genome genome = createGenome("g", 10, 1000, null);
+        PseudoMoleculeBins bins = new PseudoMoleculeBins(genome, WindowFunction.mean, 10);
+        bins.add("contig1", 0, 1000, 1);
+        bins.add("contig7", 0, 1000, 7);
+        ScoreBlock scores = bins.getScores();
+
+        File dataFile = File.createTempFile("pmb", ".bw");
+        dataFile.deleteOnExit();
+        dataFile.setLastModified(System.currentTimeMillis() - 10000);
+        File summaryFile = PseudoMoleculeBins.getSummaryFile(dataFile, WindowFunction.mean);
+        summaryFile.deleteOnExit();
+        try {
+            PseudoMoleculeBins.write(summaryFile, genome, WindowFunction.mean, scores);
+
+            ScoreBlock read = PseudoMoleculeBins.read(summaryFile, dataFile, genome, WindowFunction.mean);
+            assertEquals(scores.size(), read.size());
+            for (int i = 0; i < scores.size(); i++) {
+                assertEquals(scores.getStart(i), read.getStart(i));
+                assertEquals(scores.getEnd(i), read.getEnd(i));
+                assertEquals(scores.getValue(i), read.getValue(i), 0);
+            }
+
+            // Computed for another window function or genome
+            assertNull(PseudoMoleculeBins.read(summaryFile, dataFile, genome, WindowFunction.max));
+            Genome other = createGenome("other", 10, 1000, null);
+            assertNull(PseudoMoleculeBins.read(summaryFile, dataFile, other, WindowFunction.mean));
+
+            // Data file changed after the summary was written
+            dataFile.setLastModified(summaryFile.lastModified() + 10000);
+            assertNull(PseudoMoleculeBins.read(summaryFile, dataFile, genome, WindowFunction.mean));
+        } finally {
+            summaryFile.delete();
+            dataFile.delete();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+import org.broad.igv.feature.LocusScore;
+
+/**
+ * A list of scores stored column-wise,  as parallel arrays of starts, ends, and values,  rather than one object
+ * per score.  Data sources return these for summary scores so a repaint does not allocate an object per bin,  and
+ * renderers can read the columns directly through the indexed accessors.
+ * <p/>
+ * The List interface is kept for compatibility.  get(i) returns a BasicScore or NamedScore equivalent to the one
+ * that was added.  Scores of other types,  e.g. CompositeScore,  are kept as objects alongside the columns.
+ */
+public class ScoreBlock extends AbstractList<LocusScore> implements RandomAccess {
+
+    private int offset;
+    private int size;
+    private boolean view;
+
+    private int[] starts;
+    private int[] ends;
+    private float[] values;
+
+    // Optional columns,  allocated on first use
+    private String[] names;          // Non-null only if some entry is a NamedScore
+    private boolean[] named;
+    private double[] startFractions;
+    private double[] endFractions;
+    private LocusScore[] objects;    // Entries that cannot be represented by the columns
+
+    public ScoreBlock() {
+        this(100);
+    }
+
+    public ScoreBlock(int capacity) {
+        capacity = Math.max(capacity, 10);
+        starts = new int[capacity];
+        ends = new int[capacity];
+        values = new float[capacity];
+    }
+
+    private ScoreBlock(ScoreBlock parent, int from, int to) {
+        this.view = true;
+        this.offset = parent.offset + from;
+        this.size = to - from;
+        this.starts = parent.starts;
+        this.ends = parent.ends;
+        this.values = parent.values;
+        this.names = parent.names;
+        this.named = parent.named;
+        this.startFractions = parent.startFractions;
+        this.endFractions = parent.endFractions;
+        this.objects = parent.objects;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int i) {
+        return starts[offset + i];
+    }
+
+    public int getEnd(int i) {
+        return ends[offset + i];
+    }
+
+    public float getValue(int i) {
+        return values[offset + i];
+    }
+
+    public double getStartFraction(int i) {
+        return startFractions == null ? 0 : startFractions[offset + i];
+    }
+
+    public double getEndFraction(int i) {
+        return endFractions == null ? 0 : endFractions[offset + i];
+    }
+
+    /**
+     * @return the name for entry i,  or null
+     */
+    public String getName(int i) {
+        return names == null ? null : names[offset + i];
+    }
+
+    /**
+     * Compatibility adapter,  returns an object equivalent to the score added at i.  A new object is created for
+     * each call,  renderers should use the column accessors.
+     */
+    public LocusScore get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        int idx = offset + i;
+        if (objects != null && objects[idx] != null) {
+            return objects[idx];
+        }
+        BasicScore score;
+        if (named != null && named[idx]) {
+            score = new NamedScore(starts[idx], ends[idx], values[idx], names[idx]);
+        } else {
+            score = new BasicScore(starts[idx], ends[idx], values[idx]);
+        }
+        if (startFractions != null) {
+            score.setStartFraction(startFractions[idx]);
+            score.setEndFraction(endFractions[idx]);
+        }
+        return score;
+    }
+
+    /**
+     * Add a score equivalent to new BasicScore(start, end, value)
+     */
+    public void add(int start, int end, float value) {
+        append(start, end, value);
+        modCount++;
+    }
+
+    /**
+     * Add a score equivalent to new NamedScore(start, end, value, name)
+     */
+    public void add(int start, int end, float value, String name) {
+        int idx = append(start, end, value);
+        setName(idx, name);
+        modCount++;
+    }
+
+    /**
+     * Copy entry i of another block to the end of this one.
+     */
+    public void add(ScoreBlock block, int i) {
+        int src = block.offset + i;
+        int idx = append(block.starts[src], block.ends[src], block.values[src]);
+        if (block.named != null && block.named[src]) {
+            setName(idx, block.names[src]);
+        }
+        if (block.startFractions != null) {
+            setFractions(idx, block.startFractions[src], block.endFractions[src]);
+        }
+        if (block.objects != null && block.objects[src] != null) {
+            setObject(idx, block.objects[src]);
+        }
+        modCount++;
+    }
+
+    @Override
+    public boolean add(LocusScore score) {
+        int idx = append(score.getStart(), score.getEnd(), score.getScore());
+        if (score instanceof BasicScore) {
+            BasicScore bs = (BasicScore) score;
+            if (bs.getStartFraction() != 0 || bs.getEndFraction() != 0) {
+                setFractions(idx, bs.getStartFraction(), bs.getEndFraction());
+            }
+        }
+        Class c = score.getClass();
+        if (c == NamedScore.class) {
+            setName(idx, ((NamedScore) score).getProbe());
+        } else if (c != BasicScore.class) {
+            setObject(idx, score);
+        }
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends LocusScore> scores) {
+        if (scores instanceof ScoreBlock) {
+            ScoreBlock block = (ScoreBlock) scores;
+            ensureCapacity(size + block.size);
+            for (int i = 0; i < block.size; i++) {
+                add(block, i);
+            }
+            return block.size > 0;
+        }
+        return super.addAll(scores);
+    }
+
+    @Override
+    public void clear() {
+        if (view) {
+            throw new UnsupportedOperationException("Score block views are read only");
+        }
+        size = 0;
+        if (names != null) {
+            Arrays.fill(names, null);
+            Arrays.fill(named, false);
+        }
+        if (startFractions != null) {
+            Arrays.fill(startFractions, 0);
+            Arrays.fill(endFractions, 0);
+        }
+        if (objects != null) {
+            Arrays.fill(objects, null);
+        }
+        modCount++;
+    }
+
+    /**
+     * Returns a view sharing this block's columns,  so the fast path is kept for renderers.  The view is
+     * read only.
+     */
+    @Override
+    public ScoreBlock subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", size: " + size);
+        }
+        return new ScoreBlock(this, fromIndex, toIndex);
+    }
+
+    private int append(int start, int end, float value) {
+        if (view) {
+            throw new UnsupportedOperationException("Score block views are read only");
+        }
+        ensureCapacity(size + 1);
+        int idx = size++;
+        starts[idx] = start;
+        ends[idx] = end;
+        values[idx] = value;
+        return idx;
+    }
+
+    private void setName(int idx, String name) {
+        if (named == null) {
+            names = new String[starts.length];
+            named = new boolean[starts.length];
+        }
+        names[idx] = name;
+        named[idx] = true;
+    }
+
+    private void setFractions(int idx, double startFraction, double endFraction) {
+        if (startFractions == null) {
+            startFractions = new double[starts.length];
+            endFractions = new double[starts.length];
+        }
+        startFractions[idx] = startFraction;
+        endFractions[idx] = endFraction;
+    }
+
+    private void setObject(int idx, LocusScore score) {
+        if (objects == null) {
+            objects = new LocusScore[starts.length];
+        }
+        objects[idx] = score;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= starts.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, starts.length + (starts.length >> 1));
+        starts = Arrays.copyOf(starts, newCapacity);
+        ends = Arrays.copyOf(ends, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        if (names != null) {
+            names = Arrays.copyOf(names, newCapacity);
+            named = Arrays.copyOf(named, newCapacity);
+        }
+        if (startFractions != null) {
+            startFractions = Arrays.copyOf(startFractions, newCapacity);
+            endFractions = Arrays.copyOf(endFractions, newCapacity);
+        }
+        if (objects != null) {
+            objects = Arrays.copyOf(objects, newCapacity);
+        }
+    }
+
+    /**
+     * @return the estimated heap size of this block in bytes,  for cache weighing
+     */
+    public long getSizeEstimate() {
+        long entrySize = 12;
+        if (names != null) {
+            entrySize += 9;
+        }
+        if (startFractions != null) {
+            entrySize += 16;
+        }
+        if (objects != null) {
+            entrySize += 8;
+        }
+        return 64 + entrySize * starts.length;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.track.WindowFunction;
+import org.junit.Test;
+
+public class ScoreBlockTest {
+
+    @Test
+    public void testColumnsMatchAddedScores() {
+        ScoreBlock block = new ScoreBlock(2);
+        BasicScore fractional = new BasicScore(30, 40, 3.0f);
+        fractional.setStartFraction(0.25);
+        fractional.setEndFraction(0.75);
+        CompositeScore composite = new CompositeScore(40, 50, 4.0f, new float[]{4.0f}, new String[]{"p"},
+                WindowFunction.mean);
+
+        block.add(0, 10, 1.0f);
+        block.add(10, 20, 2.0f, "probe");
+        block.add(fractional);
+        block.add(composite);
+        for (int i = 0; i < 100; i++) {
+            block.add(100 + i, 101 + i, i);
+        }
+
+        assertEquals(104, block.size());
+        assertEquals(10, block.getStart(1));
+        assertEquals(20, block.getEnd(1));
+        assertEquals(2.0f, block.getValue(1), 0);
+        assertEquals("probe", block.getName(1));
+        assertNull(block.getName(0));
+        assertEquals(0.25, block.getStartFraction(2), 0);
+        assertEquals(0.75, block.getEndFraction(2), 0);
+        assertEquals(0, block.getStartFraction(0), 0);
+
+        assertTrue(block.get(0).getClass() == BasicScore.class);
+        assertEquals("probe", ((NamedScore) block.get(1)).getProbe());
+        assertEquals(0.25, ((BasicScore) block.get(2)).getStartFraction(), 0);
+        assertSame(composite, block.get(3));
+        assertEquals(199, block.get(103).getStart());
+        assertEquals(99.0f, block.get(103).getScore(), 0);
+    }
+
+    @Test
+    public void testSubListAndAddAll() {
+        ScoreBlock block = new ScoreBlock();
+        for (int i = 0; i < 20; i++) {
+            block.add(i * 10, i * 10 + 10, i, i % 2 == 0 ? "n" + i : null);
+        }
+
+        ScoreBlock view = block.subList(5, 10);
+        assertEquals(5, view.size());
+        assertEquals(50, view.getStart(0));
+        assertEquals("n6", view.getName(1));
+        try {
+            view.add(0, 1, 1.0f);
+            fail("Views should be read only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        ScoreBlock copy = new ScoreBlock();
+        copy.addAll(view);
+        assertEquals(5, copy.size());
+        for (int i = 0; i < copy.size(); i++) {
+            assertEquals(view.getStart(i), copy.getStart(i));
+            assertEquals(view.getValue(i), copy.getValue(i), 0);
+            assertEquals(view.getName(i), copy.getName(i));
+        }
+
+        List<LocusScore> list = new ArrayList<LocusScore>(view);
+        assertEquals(100, list.get(4).getEnd());
+
+        copy.clear();
+        assertEquals(0, copy.size());
+        copy.add(1, 2, 3.0f);
+        assertNull(copy.getName(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfRange() {
+        ScoreBlock block = new ScoreBlock();
+        block.add(0, 10, 1.0f);
+        block.subList(0, 1).get(1);
+    }
+}
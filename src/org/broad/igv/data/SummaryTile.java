@@ -21,7 +21,6 @@ package org.broad.igv.data;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -41,7 +40,7 @@ public class SummaryTile {
 
 
     public SummaryTile() {
-        summaryScores = new ArrayList(1000);
+        summaryScores = new ScoreBlock(1000);
     }
 
     public SummaryTile(List<LocusScore> summaryScores) {
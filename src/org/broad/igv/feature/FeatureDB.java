@@ -20,8 +20,11 @@ package org.broad.igv.feature;
 //~--- non-JDK imports --------------------------------------------------------
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -156,6 +159,11 @@ public class FeatureDB {
      */
     private static Map<String, Map<String, Map<String, NamedFeature>>> multiGenomefeatureMap = Collections.synchronizedMap(new HashMap(5));
 
+    /**
+     * Name and attribute index for search,  per genome.  Key - genomeId
+     */
+    private static Map<String, FeatureNameIndex> multiGenomeIndexMap = Collections.synchronizedMap(new HashMap(5));
+
     private static int addByAttributesLengthLimit = -1;
     
     public static void addFeature(NamedFeature feature, Genome genome) {
@@ -212,7 +220,7 @@ public class FeatureDB {
         {        
 	        Genome currentGenome = genome;
 	        if (currentGenome == null || (insertAll || currentGenome.getChromosome(feature.getChr()) != null)) {
-	        	addFeatureToMap(featureMap, key, feature);
+	        	addFeatureToMap(featureMap, genome, key, feature);
 	        }
         }
     }
@@ -224,11 +232,12 @@ public class FeatureDB {
         }
         Map<String, Map<String, NamedFeature>>		featureMap = getGenomeFeatureMap(genome);
  
-        addFeatureToMap(featureMap, name, feature);
+        addFeatureToMap(featureMap, genome, name, feature);
     }
 
 
-    private static void addFeatureToMap(Map<String, Map<String, NamedFeature>> featureMap, String name, NamedFeature feature) 
+    private static void addFeatureToMap(Map<String, Map<String, NamedFeature>> featureMap, Genome genome,
+                                        String name, NamedFeature feature) 
     {
     	name = name.toUpperCase();
 		String		path = feature.getPath();
@@ -239,7 +248,8 @@ public class FeatureDB {
     		if ( features == null )
     			featureMap.put(name, features = new LinkedHashMap<String, NamedFeature>());
     		
-    		features.put(path, feature);
+    		if ( features.put(path, feature) != feature )
+    			getGenomeIndex(genome).add(name, feature);
     	}
 	}
 
@@ -258,6 +268,7 @@ public class FeatureDB {
 
     public static void clearFeatures() {
     	multiGenomefeatureMap.clear();
+    	multiGenomeIndexMap.clear();
     }
 
     public static void clearGenomeFeatures(Genome genome) {
@@ -275,8 +286,13 @@ public class FeatureDB {
         		}
         }
         
+        FeatureNameIndex							index = multiGenomeIndexMap.get(IGV.getInstance().getGenomeManager().currentGenome.getId());
         for ( String key : removeKeys )
+        {
         	featureMap.remove(key);
+        	if ( index != null )
+        		index.removeKey(key);
+        }
     }
 
     /**
@@ -314,6 +330,19 @@ public class FeatureDB {
     	 return featureMap;
     }
     
+	private static synchronized FeatureNameIndex getGenomeIndex(Genome genome)
+	{
+		FeatureNameIndex		index = multiGenomeIndexMap.get(genome.getId());
+		
+		if ( index == null )
+		{
+			index = new FeatureNameIndex();
+			multiGenomeIndexMap.put(genome.getId(), index);
+		}
+		
+		return index;
+	}
+    
 	public static String getSummary() 
 	{
 		int			genomeCount = 0;
@@ -329,6 +358,18 @@ public class FeatureDB {
 	}
     
     public static SearchResult searchFeatures(String searchTerm, int maxResults) 
+    {
+    	// map all files to tabs
+    	Map<String, Set<String>>	pathToTabsMap = IGV.getInstance().getContentPane().tabsPathToTabsMap(); 
+    	
+    	return searchFeatures(searchTerm, maxResults, pathToTabsMap);
+    }
+    
+    /**
+     * Search names and attributes using the per genome index.  Up to maxResults entries are returned per genome,
+     * the best scoring ones if there are more matches.
+     */
+    static SearchResult searchFeatures(String searchTerm, int maxResults, Map<String, Set<String>> pathToTabsMap) 
     {
     	SearchResult		sr = new SearchResult();
     	
@@ -344,118 +385,162 @@ public class FeatureDB {
     		return sr;
     	}
     	
-    	// map all files to tabs
-    	Map<String, Set<String>>	pathToTabsMap = IGV.getInstance().getContentPane().tabsPathToTabsMap(); 
-    	
     	// collect matches from all genomes
     	long		startedAt = System.currentTimeMillis();
     	boolean		matchAll = searchTerm.equals("*");
-		for ( String genomeId : multiGenomefeatureMap.keySet() )
+    	List<String>	genomeIds;
+    	synchronized (multiGenomefeatureMap)
+    	{
+    		genomeIds = new ArrayList<String>(multiGenomefeatureMap.keySet());
+    	}
+		for ( String genomeId : genomeIds )
 		{
-			int							count = 0;
 			Map<String, Map<String, NamedFeature>>	map = multiGenomefeatureMap.get(genomeId);
-			boolean						foundInGenome = false;
-						
-			for ( Map.Entry<String, Map<String, NamedFeature>> topMapEntry : map.entrySet() )
-				for ( Map.Entry<String, NamedFeature> lowerMapEntry : topMapEntry.getValue().entrySet() )
+			FeatureNameIndex			index = multiGenomeIndexMap.get(genomeId);
+			List<SearchResultEntry>		genomeEntries = new ArrayList<SearchResultEntry>();
+			
+			if ( map == null || index == null )
+				continue;
+			
+			// matches on the key
+			List<String>				matchedKeys;
+			if ( matchAll )
+			{
+				synchronized (map)
 				{
-					String			key = topMapEntry.getKey();
-					int				index, score = 0, matchLength = 0;
-					String			matchKey = null;
-					
-					// contains?
-					if ( matchAll )
-					{
-						index = 0;
-						score = 0;
-						matchLength = key.length();
-						matchKey = key;
-					}
-					else
-					{
-						index = key.indexOf(searchTerm);
-						if ( index >= 0 )
-						{
-							// establish score (low is better, 0 is exact match)
-							score = key.length() - searchTermLength;
-							matchLength = searchTermLength;
-							matchKey = key;
-						} 
-						else if ( lowerMapEntry.getValue() instanceof IGVFeature )
-						{
-							// try to match on an attribute
-							Map<String, String>		attrs = ((IGVFeature)lowerMapEntry.getValue()).getAttributes();
-							if ( attrs != null )
-								for ( Map.Entry<String, String> entry : attrs.entrySet() )
-								{
-									String		text = entry.getKey() + "=" + entry.getValue();
-									
-									index = text.toUpperCase().indexOf(searchTerm);
-									if ( index >= 0 )
-									{
-										score = text.length() - searchTermLength;
-										matchLength = searchTermLength;
-										matchKey = text;									
-									}
-								}
-							
-						}
-					}
-					if ( matchKey == null )
+					matchedKeys = new ArrayList<String>(map.keySet());
+				}
+			}
+			else
+				matchedKeys = index.findKeys(searchTerm);
+			for ( String key : matchedKeys )
+			{
+				int				score = matchAll ? 0 : (key.length() - searchTermLength);
+				int				index0 = matchAll ? 0 : key.indexOf(searchTerm);
+				int				matchLength = matchAll ? key.length() : searchTermLength;
+				
+				for ( NamedFeature feature : getFeatures(map, key) )
+					addEntries(genomeEntries, genomeId, feature, key, score, index0, matchLength, pathToTabsMap);
+			}
+			
+			// matches on an attribute,  for keys which did not match
+			if ( !matchAll )
+			{
+				Set<String>					matchedKeySet = new HashSet<String>(matchedKeys);
+				List<String>				candidateKeys = new ArrayList<String>();
+				List<String>				candidatePaths = new ArrayList<String>();
+				index.findAttributeCandidates(searchTerm, candidateKeys, candidatePaths);
+				
+				for ( int i = 0 ; i < candidateKeys.size() ; i++ )
+				{
+					String			key = candidateKeys.get(i);
+					if ( matchedKeySet.contains(key) )
 						continue;
+					NamedFeature	stored = getStoredFeature(map, key, candidatePaths.get(i));
+					if ( !(stored instanceof IGVFeature) )
+						continue;
+					IGVFeature		feature = (IGVFeature)stored;
 					
-					
-					// add entries
-					String				path = lowerMapEntry.getValue().getPath();
-					Set<String>			tabNames;
-					if ( path != null )
-						tabNames = pathToTabsMap.get(path);
-					else
-					{
-						tabNames = new LinkedHashSet<String>();
-						tabNames.add(null);
-					}
-					if ( tabNames != null )
-						for ( String tabName : tabNames )
+					int				index0 = -1, score = 0, matchLength = 0;
+					String			matchKey = null;
+					Map<String, String>		attrs = feature.getAttributes();
+					if ( attrs != null )
+						for ( Map.Entry<String, String> entry : attrs.entrySet() )
 						{
-							SearchResultEntry	entry = new SearchResultEntry();
-							entry.score = score;
-							entry.key = matchKey;
-							entry.feature = lowerMapEntry.getValue();
-							entry.genomeId = genomeId;
-							entry.matchStart = index;
-							entry.matchLength = matchLength;
-							entry.tabName = tabName;
-							
-							// color?
-							if ( entry.feature instanceof BasicFeature )
-								entry.color = ((BasicFeature)entry.feature).getColor();
+							String		text = entry.getKey() + "=" + entry.getValue();
 							
-							sr.foundEntries.add(entry);
-							count++;
-							foundInGenome = true;
+							index0 = text.toUpperCase().indexOf(searchTerm);
+							if ( index0 >= 0 )
+							{
+								score = text.length() - searchTermLength;
+								matchLength = searchTermLength;
+								matchKey = text;									
+							}
 						}
-					
-					// stop on this genome?
-					if ( count >= maxResults )
-					{
-						sr.partialResult = true;
-						break;
-					}
+					if ( matchKey != null )
+						addEntries(genomeEntries, genomeId, feature, matchKey, score, index0, matchLength, pathToTabsMap);
 				}
-				
-				if ( foundInGenome )
-					sr.visitedGenomeCount++;
 			}
+			
+			// keep the best scoring entries (low is better, 0 is exact match)
+			if ( genomeEntries.size() > maxResults )
+			{
+				Collections.sort(genomeEntries, new Comparator<SearchResultEntry>() {
+					public int compare(SearchResultEntry o1, SearchResultEntry o2) {
+						return o1.score - o2.score;
+					}
+				});
+				genomeEntries = genomeEntries.subList(0, maxResults);
+				sr.partialResult = true;
+			}
+			
+			if ( genomeEntries.size() > 0 )
+			{
+				sr.foundEntries.addAll(genomeEntries);
+				sr.visitedGenomeCount++;
+			}
+		}
     	
     	
     	// sort vector 
     	Collections.sort(sr.foundEntries);
     	
-    	// return it (may contain addition items beyond maxResult)
+    	// return it
     	sr.elapsedMsec = System.currentTimeMillis() - startedAt;
     	return sr;
     }
+    
+    private static List<NamedFeature> getFeatures(Map<String, Map<String, NamedFeature>> map, String key)
+    {
+    	synchronized (map)
+    	{
+    		Map<String, NamedFeature>		features = map.get(key);
+    		if ( features == null )
+    			return Collections.emptyList();
+    		return new ArrayList<NamedFeature>(features.values());
+    	}
+    }
+    
+    private static NamedFeature getStoredFeature(Map<String, Map<String, NamedFeature>> map, String key, String path)
+    {
+    	synchronized (map)
+    	{
+    		Map<String, NamedFeature>		features = map.get(key);
+    		return features == null ? null : features.get(path);
+    	}
+    }
+    
+    private static void addEntries(List<SearchResultEntry> entries, String genomeId, NamedFeature feature, String matchKey,
+    								int score, int index, int matchLength, Map<String, Set<String>> pathToTabsMap)
+    {
+		String				path = feature.getPath();
+		Set<String>			tabNames;
+		if ( path != null )
+			tabNames = pathToTabsMap.get(path);
+		else
+		{
+			tabNames = new LinkedHashSet<String>();
+			tabNames.add(null);
+		}
+		if ( tabNames != null )
+			for ( String tabName : tabNames )
+			{
+				SearchResultEntry	entry = new SearchResultEntry();
+				entry.score = score;
+				entry.key = matchKey;
+				entry.feature = feature;
+				entry.genomeId = genomeId;
+				entry.matchStart = index;
+				entry.matchLength = matchLength;
+				entry.tabName = tabName;
+				
+				// color?
+				if ( entry.feature instanceof BasicFeature )
+					entry.color = ((BasicFeature)entry.feature).getColor();
+				
+				entries.add(entry);
+			}
+    }
 
 	public static String namedFeatureAsText(NamedFeature feature, boolean addName)
 	{
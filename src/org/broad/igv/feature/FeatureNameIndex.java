@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index over the names and attributes of the features in FeatureDB,  for one genome.  Feature names
+ * (upper case keys) and attribute "key=value" strings are broken into 3 character grams with a posting list of
+ * ids per gram.  A substring query intersects the posting lists of its grams to find candidates,  shortest list
+ * first,  and the caller verifies the candidates.  Queries shorter than 3 characters take the union of the lists
+ * of all grams containing the query.
+ * <p/>
+ * The index holds no features.  Attributes are indexed per entry,  a (key, path) pair locating a feature in the
+ * FeatureDB map,  and callers look the feature up to verify it.  The ids of replaced entries and removed keys
+ * stay in the posting lists and are skipped.
+ */
+class FeatureNameIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    // Feature keys
+    private List<String> keys = new ArrayList();
+    private Map<String, Integer> keyIds = new HashMap();
+    private Map<Long, Postings> keyGrams = new HashMap();
+    private Postings shortKeys = new Postings();
+    private BitSet removedKeys = new BitSet();
+
+    // Paths of the features indexed by attribute
+    private List<String> paths = new ArrayList();
+    private Map<String, Integer> pathIds = new HashMap();
+
+    // Entries indexed by attribute,  id -> key id and path id
+    private int[] entryKeys = new int[16];
+    private int[] entryPaths = new int[16];
+    private int entryCount;
+    private Map<Long, Integer> entryIds = new HashMap();
+    private Map<Long, Postings> attributeGrams = new HashMap();
+    private Postings shortAttributeEntries = new Postings();
+    private BitSet removedEntries = new BitSet();
+
+    /**
+     * Index a feature stored under key.  Key must be upper case.
+     */
+    synchronized void add(String key, NamedFeature feature) {
+
+        Integer keyId = keyIds.get(key);
+        if (keyId == null) {
+            keyId = keys.size();
+            keys.add(key);
+            keyIds.put(key, keyId);
+            addGrams(keyGrams, shortKeys, key, keyId);
+        }
+        removedKeys.clear(keyId);
+
+        if (feature instanceof IGVFeature) {
+            String path = feature.getPath();
+            Integer pathId = pathIds.get(path);
+            if (pathId == null) {
+                pathId = paths.size();
+                paths.add(path);
+                pathIds.put(path, pathId);
+            }
+
+            // A feature stored under the same key and path replaces the previous one
+            Long entryKey = ((long) keyId << 32) | pathId;
+            Integer previous = entryIds.remove(entryKey);
+            if (previous != null) {
+                removeEntry(previous);
+            }
+
+            Map<String, String> attributes = ((IGVFeature) feature).getAttributes();
+            if (attributes != null && !attributes.isEmpty()) {
+                int entryId = entryCount++;
+                if (entryId == entryKeys.length) {
+                    entryKeys = Arrays.copyOf(entryKeys, entryId * 2);
+                    entryPaths = Arrays.copyOf(entryPaths, entryId * 2);
+                }
+                entryKeys[entryId] = keyId;
+                entryPaths[entryId] = pathId;
+                entryIds.put(entryKey, entryId);
+                addAttributes(attributes, entryId);
+            }
+        }
+    }
+
+    private void addAttributes(Map<String, String> attributes, int entryId) {
+        Set<Long> grams = new HashSet();
+        boolean hasShort = false;
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            String text = (entry.getKey() + "=" + entry.getValue()).toUpperCase();
+            if (text.length() < GRAM_LENGTH) {
+                hasShort = true;
+            }
+            for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+                grams.add(gram(text, i));
+            }
+        }
+        for (Long g : grams) {
+            getPostings(attributeGrams, g).add(entryId);
+        }
+        if (hasShort) {
+            shortAttributeEntries.add(entryId);
+        }
+    }
+
+    private void removeEntry(int entryId) {
+        removedEntries.set(entryId);
+    }
+
+    /**
+     * Drop the key,  called when no feature is stored under it any longer.
+     */
+    synchronized void removeKey(String key) {
+        Integer keyId = keyIds.get(key);
+        if (keyId != null) {
+            removedKeys.set(keyId);
+        }
+    }
+
+    /**
+     * Return the keys containing term.  Term must be upper case.
+     */
+    synchronized List<String> findKeys(String term) {
+        int[] candidates = findCandidates(keyGrams, shortKeys, keys.size(), term);
+        List<String> result = new ArrayList(candidates.length);
+        for (int id : candidates) {
+            String key = keys.get(id);
+            if (!removedKeys.get(id) && key.indexOf(term) >= 0) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collect the entries that might have an attribute "key=value" containing term,  as parallel lists of the key
+     * and path the feature is stored under.  Candidates must be verified by the caller.  Term must be upper case.
+     */
+    synchronized void findAttributeCandidates(String term, List<String> keysOut, List<String> pathsOut) {
+        int[] candidates = findCandidates(attributeGrams, shortAttributeEntries, entryCount, term);
+        for (int id : candidates) {
+            if (!removedEntries.get(id)) {
+                keysOut.add(keys.get(entryKeys[id]));
+                pathsOut.add(paths.get(entryPaths[id]));
+            }
+        }
+    }
+
+    private static int[] findCandidates(Map<Long, Postings> index, Postings shortTexts, int idCount, String term) {
+
+        if (term.length() >= GRAM_LENGTH) {
+            Set<Long> grams = new HashSet();
+            for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+                grams.add(gram(term, i));
+            }
+            int[][] lists = new int[grams.size()][];
+            int n = 0;
+            for (Long g : grams) {
+                Postings p = index.get(g);
+                if (p == null) {
+                    return new int[0];
+                }
+                lists[n++] = p.toArray();
+            }
+            Arrays.sort(lists, new Comparator<int[]>() {
+                public int compare(int[] o1, int[] o2) {
+                    return o1.length - o2.length;
+                }
+            });
+            int[] result = lists[0];
+            for (int i = 1; i < lists.length && result.length > 0; i++) {
+                result = intersect(result, lists[i]);
+            }
+            return result;
+        } else {
+            // Short term,  take the union of all grams containing it.  Texts too short to have a gram are
+            // checked separately.
+            BitSet ids = new BitSet(idCount);
+            for (Map.Entry<Long, Postings> entry : index.entrySet()) {
+                if (gramString(entry.getKey()).indexOf(term) >= 0) {
+                    for (int id : entry.getValue().toArray()) {
+                        ids.set(id);
+                    }
+                }
+            }
+            for (int id : shortTexts.toArray()) {
+                ids.set(id);
+            }
+            int[] result = new int[ids.cardinality()];
+            int n = 0;
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                result[n++] = id;
+            }
+            return result;
+        }
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private static void addGrams(Map<Long, Postings> index, Postings shortTexts, String text, int id) {
+        if (text.length() < GRAM_LENGTH) {
+            shortTexts.add(id);
+        }
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            getPostings(index, gram(text, i)).add(id);
+        }
+    }
+
+    private static Postings getPostings(Map<Long, Postings> index, Long gram) {
+        Postings p = index.get(gram);
+        if (p == null) {
+            p = new Postings();
+            index.put(gram, p);
+        }
+        return p;
+    }
+
+    private static Long gram(String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    private static String gramString(long gram) {
+        return new String(new char[]{(char) (gram >>> 32), (char) (gram >>> 16), (char) gram});
+    }
+
+    /**
+     * Sorted list of ids.  Ids are assigned in increasing order as keys and entries are added,  so appending keeps
+     * the list sorted.
+     */
+    private static class Postings {
+
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.broad.igv.feature.genome.Genome;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FeatureNameIndexTest {
+
+    private Genome genome;
+    private Map<String, Set<String>> pathToTabsMap;
+
+    @Before
+    public void setUp() throws Exception {
+        FeatureDB.clearFeatures();
+        LinkedHashMap<String, Chromosome> chromosomeMap = new LinkedHashMap<String, Chromosome>();
+        chromosomeMap.put("chr1", new Chromosome("chr1", 1000000));
+        genome = new Genome("test", "test", null, false, null);
+        genome.setChromosomeMap(chromosomeMap, true);
+        pathToTabsMap = new HashMap<String, Set<String>>();
+    }
+
+    @After
+    public void tearDown() {
+        FeatureDB.clearFeatures();
+    }
+
+    private BasicFeature addFeature(String name, String path, int start, String attrKey, String attrValue) {
+        BasicFeature feature = new BasicFeature("chr1", start, start + 100);
+        feature.setName(name);
+        feature.setPath(path);
+        if (attrKey != null) {
+            Map<String, String> attributes = new LinkedHashMap<String, String>();
+            attributes.put(attrKey, attrValue);
+            feature.setAttributes(attributes);
+        }
+        FeatureDB.addFeature(feature, genome);
+        if (!pathToTabsMap.containsKey(path)) {
+            Set<String> tabs = new LinkedHashSet<String>();
+            tabs.add("tab");
+            pathToTabsMap.put(path, tabs);
+        }
+        return feature;
+    }
+
+    private List<String> search(String term) {
+        List<String> keys = new ArrayList<String>();
+        for (FeatureDB.SearchResultEntry entry : FeatureDB.searchFeatures(term, 100, pathToTabsMap).foundEntries) {
+            keys.add(entry.key);
+        }
+        return keys;
+    }
+
+    @Test
+    public void testSearchNamesAndAttributes() {
+        addFeature("EGFR", "a.bed", 100, "note", "kinase");
+        BasicFeature brca = addFeature("BRCA2", "a.bed", 500, "note", "repair");
+        addFeature("BRCA1", "b.bed", 900, null, null);
+
+        assertEquals(2, search("brca").size());
+        assertTrue(search("GF").contains("EGFR"));
+
+        // Attribute match,  reported with the attribute text
+        List<String> keys = search("repa");
+        assertEquals(1, keys.size());
+        assertEquals("note=repair", keys.get(0));
+        FeatureDB.SearchResultEntry entry = FeatureDB.searchFeatures("repa", 100, pathToTabsMap).foundEntries.get(0);
+        assertSame(brca, entry.feature);
+
+        // Short term matched through the union of grams
+        assertEquals(2, search("A1").size() + search("A2").size());
+    }
+
+    @Test
+    public void testReplacedFeatureIsFound() {
+        addFeature("GENE", "a.bed", 100, "note", "old");
+        addFeature("GENE", "a.bed", 200, "note", "new");
+
+        assertTrue(search("=old").isEmpty());
+        assertEquals(1, search("=new").size());
+    }
+
+    @Test
+    public void testRemoveKey() {
+        FeatureNameIndex index = new FeatureNameIndex();
+        for (int i = 0; i < 10; i++) {
+            BasicFeature feature = new BasicFeature("chr1", i, i + 1);
+            feature.setPath(i < 6 ? "a.bed" : "b.bed");
+            Map<String, String> attributes = new HashMap<String, String>();
+            attributes.put("id", "value" + i);
+            feature.setAttributes(attributes);
+            index.add("KEY" + i, feature);
+        }
+
+        List<String> keys = new ArrayList<String>();
+        List<String> paths = new ArrayList<String>();
+        index.findAttributeCandidates("VALUE", keys, paths);
+        assertEquals(10, keys.size());
+
+        for (int i = 0; i < 6; i++) {
+            index.removeKey("KEY" + i);
+        }
+        assertTrue(index.findKeys("KEY1").isEmpty());
+        assertEquals(4, index.findKeys("KEY").size());
+    }
+}
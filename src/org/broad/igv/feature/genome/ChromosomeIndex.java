@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.feature.genome;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordinal and offset tables for the chromosomes of a genome,  in genome order.  Offsets are prefix sums of the
+ * chromosome lengths,  so the whole genome offset of a chromosome is a table lookup and the chromosome containing
+ * a whole genome position is found by binary search.  Genomes assembled to scaffold level can have 100,000+
+ * sequences,  a linear scan per lookup is too slow for the whole genome view.
+ */
+class ChromosomeIndex {
+
+    private final String[] names;
+    private final long[] offsets;        // offsets[i] == sum of lengths of chromosomes 0 ... i-1,  n + 1 entries
+    private final Map<String, Integer> ordinals;
+
+    ChromosomeIndex(List<String> chrNames, Genome genome) {
+        int n = chrNames.size();
+        names = new String[n];
+        offsets = new long[n + 1];
+        ordinals = new HashMap(n * 2);
+        int i = 0;
+        for (String chr : chrNames) {
+            names[i] = chr;
+            offsets[i + 1] = offsets[i] + genome.getChromosome(chr).getLength();
+            if (!ordinals.containsKey(chr)) {
+                ordinals.put(chr, i);
+            }
+            i++;
+        }
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the position of chr in genome order,  or -1 if chr is not a chromosome name.  Aliases are not
+     *         resolved.
+     */
+    int getOrdinal(String chr) {
+        Integer ordinal = ordinals.get(chr);
+        return ordinal == null ? -1 : ordinal.intValue();
+    }
+
+    String getName(int ordinal) {
+        return names[ordinal];
+    }
+
+    /**
+     * @return the sum of the lengths of the chromosomes preceding ordinal.  offset(size()) is the genome length
+     */
+    long getOffset(int ordinal) {
+        return offsets[ordinal];
+    }
+
+    /**
+     * Return the ordinal of the first chromosome whose end,  in whole genome KBP,  is greater than genomeKBP,
+     * or -1 if the position is beyond the last chromosome.
+     */
+    int findOrdinalForGenomeKbp(int genomeKBP) {
+        int low = 0;
+        int high = names.length - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid + 1] / 1000 > genomeKBP) {
+                result = mid;
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return result;
+    }
+}
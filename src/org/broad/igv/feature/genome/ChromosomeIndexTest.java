@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.feature.genome;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.broad.igv.feature.Chromosome;
+import org.junit.Test;
+
+public class ChromosomeIndexTest {
+
+    private static Genome createGenome(int[] lengths) throws Exception {
+        LinkedHashMap<String, Chromosome> chromosomeMap = new LinkedHashMap<String, Chromosome>();
+        for (int i = 0; i < lengths.length; i++) {
+            String name = "chr" + (i + 1);
+            chromosomeMap.put(name, new Chromosome(name, lengths[i]));
+        }
+        Genome genome = new Genome("test", "test", null, false, null);
+        genome.setChromosomeMap(chromosomeMap, true);
+        return genome;
+    }
+
+    /**
+     * The linear scan ChromosomeIndex replaced
+     */
+    private static int linearOrdinal(Genome genome, int genomeKBP) {
+        long cumOffset = 0;
+        int ordinal = 0;
+        for (String c : genome.getChromosomeNames()) {
+            int chrLen = genome.getChromosome(c).getLength();
+            if ((cumOffset + chrLen) / 1000 > genomeKBP) {
+                return ordinal;
+            }
+            cumOffset += chrLen;
+            ordinal++;
+        }
+        return -1;
+    }
+
+    @Test
+    public void testFindOrdinalMatchesLinearScan() throws Exception {
+        // Mix of large chromosomes and scaffolds shorter than 1 kb,  so several chromosomes can end in the same kb
+        Random random = new Random(7);
+        int[] lengths = new int[2000];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = random.nextInt(4) == 0 ? 1 + random.nextInt(5000000) : 1 + random.nextInt(1500);
+        }
+        Genome genome = createGenome(lengths);
+        List<String> names = genome.getChromosomeNames();
+        ChromosomeIndex index = new ChromosomeIndex(names, genome);
+
+        int genomeKbp = (int) (genome.getLength() / 1000);
+        for (int kbp = -1; kbp <= genomeKbp + 2; kbp += 1 + random.nextInt(50)) {
+            assertEquals("kbp " + kbp, linearOrdinal(genome, kbp), index.findOrdinalForGenomeKbp(kbp));
+        }
+        for (int i = 0; i < names.size(); i++) {
+            int kbp = (int) (index.getOffset(i + 1) / 1000);
+            assertEquals(linearOrdinal(genome, kbp), index.findOrdinalForGenomeKbp(kbp));
+            assertEquals(linearOrdinal(genome, kbp - 1), index.findOrdinalForGenomeKbp(kbp - 1));
+        }
+        assertEquals(-1, index.findOrdinalForGenomeKbp(genomeKbp + 1));
+    }
+
+    @Test
+    public void testOffsetsAndOrdinals() throws Exception {
+        Genome genome = createGenome(new int[]{2500, 500, 10000});
+        ChromosomeIndex index = new ChromosomeIndex(genome.getChromosomeNames(), genome);
+
+        assertEquals(3, index.size());
+        assertEquals(1, index.getOrdinal("chr2"));
+        assertEquals(-1, index.getOrdinal("chrX"));
+        assertEquals(0, index.getOffset(0));
+        assertEquals(3000, index.getOffset(2));
+        assertEquals(13000, index.getOffset(3));
+
+        // chr1 ends at 2.5 kb,  chr2 at 3 kb
+        assertEquals(0, index.findOrdinalForGenomeKbp(0));
+        assertEquals(0, index.findOrdinalForGenomeKbp(1));
+        assertEquals(1, index.findOrdinalForGenomeKbp(2));
+        assertEquals(2, index.findOrdinalForGenomeKbp(3));
+        assertEquals(2, index.findOrdinalForGenomeKbp(12));
+        assertEquals(-1, index.findOrdinalForGenomeKbp(13));
+
+        assertEquals(3000, genome.getCumulativeOffset("chr3"));
+        assertEquals("chr3", genome.getChromosomeCoordinate(5).getChr());
+        assertEquals(2000, genome.getChromosomeCoordinate(5).getCoordinate());
+    }
+}
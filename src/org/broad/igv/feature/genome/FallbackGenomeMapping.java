@@ -1,13 +1,16 @@
 package org.broad.igv.feature.genome;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.broad.igv.feature.genome.mapping.GenomeLocus;
 import org.broad.igv.feature.genome.mapping.GenomeMapperException;
+import org.broad.igv.feature.genome.mapping.GenomeMappingManager;
+import org.broad.igv.feature.genome.mapping.IBatchGenomeMapper;
 import org.broad.igv.feature.genome.mapping.IGenomeMapper;
 
-public class FallbackGenomeMapping implements IGenomeMapper {
+public class FallbackGenomeMapping implements IBatchGenomeMapper {
 
 	private final List<IGenomeMapper>			mappers;
 	
@@ -38,6 +41,40 @@ public class FallbackGenomeMapping implements IGenomeMapper {
 		throw exception;
 	}
 
+	@Override
+	public List<GenomeLocus> mapLoci(List<GenomeLocus> loci) 
+	{
+		List<GenomeLocus>			result = new ArrayList<GenomeLocus>(loci);
+		List<Integer>				pending = new ArrayList<Integer>();
+		for ( int i = 0 ; i < loci.size() ; i++ )
+			pending.add(i);
+		
+		// each mapper gets only the loci its predecessors failed on
+		for ( IGenomeMapper mapper : mappers )
+		{
+			if ( pending.isEmpty() )
+				break;
+			
+			List<GenomeLocus>		batch = new ArrayList<GenomeLocus>(pending.size());
+			for ( int i : pending )
+				batch.add(loci.get(i));
+			List<GenomeLocus>		mapped = GenomeMappingManager.mapLoci(mapper, batch);
+			
+			List<Integer>			failed = new ArrayList<Integer>();
+			for ( int j = 0 ; j < pending.size() ; j++ )
+				if ( mapped.get(j) != null )
+					result.set(pending.get(j), mapped.get(j));
+				else
+					failed.add(pending.get(j));
+			pending = failed;
+		}
+		
+		for ( int i : pending )
+			result.set(i, null);
+		
+		return result;
+	}
+
 	@Override
 	public String getMappingInfo() 
 	{
@@ -18,10 +18,18 @@
 
 package org.broad.igv.feature.genome;
 
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+import org.apache.log4j.Logger;
+import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.tribble.util.SeekableStream;
 import org.broad.tribble.util.SeekableStreamFactory;
@@ -34,10 +42,18 @@ import org.broad.tribble.util.SeekableStreamFactory;
  */
 public class FastaSequence implements Sequence {
 
+    private static Logger log = Logger.getLogger(FastaSequence.class);
+
+    static final int MAX_POOLED_STREAMS = 4;
+
     FastaSequenceIndex index;
     String path;
     long contentLength;
 
+    private FileChannel channel;
+    private boolean closed;
+    private BlockingQueue<SeekableStream> streamPool = new ArrayBlockingQueue(MAX_POOLED_STREAMS);
+
     public FastaSequence(String path) throws IOException {
 
         this.path = path;
@@ -108,29 +124,26 @@ public class FastaSequence implements Sequence {
             // Read all the bytes in the range.  This will include endline characters
             byte[] allBytes = readBytes(startByte, endByte);
 
-            // Create the array for the sequence -- this will be "allBytes" without the endline characters.
-            ByteArrayOutputStream bos = new ByteArrayOutputStream(end - start);
-
+            // Copy the bases,  line by line,  into the sequence array skipping the endline characters.
+            byte[] seqBytes = new byte[end - start];
+            final int allBytesLength = allBytes.length;
             int srcPos = 0;
             int desPos = 0;
-            // Copy first line
-            final int allBytesLength = allBytes.length;
-            if (offset > 0) {
-                int nBases = Math.min(end - start, basesPerLine - offset);
-                bos.write(allBytes, srcPos, nBases);
+            int lineRemaining = basesPerLine - offset;
+            while (srcPos < allBytesLength && desPos < seqBytes.length) {
+                int nBases = Math.min(lineRemaining, Math.min(allBytesLength - srcPos, seqBytes.length - desPos));
+                System.arraycopy(allBytes, srcPos, seqBytes, desPos, nBases);
                 srcPos += (nBases + nEndBytes);
                 desPos += nBases;
+                lineRemaining = basesPerLine;
             }
 
-            while (srcPos < allBytesLength) {
-                int nBases = Math.min(basesPerLine, allBytesLength - srcPos);
-                bos.write(allBytes, srcPos, nBases);
-                srcPos += (nBases + nEndBytes);
-                desPos += nBases;
+            if (desPos < seqBytes.length) {
+                byte[] tmp = new byte[desPos];
+                System.arraycopy(seqBytes, 0, tmp, 0, desPos);
+                seqBytes = tmp;
             }
-
-
-            return bos.toByteArray();
+            return seqBytes;
 
         } catch (IOException e) {
             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
@@ -141,20 +154,124 @@ public class FastaSequence implements Sequence {
 
     }
 
+    /**
+     * Read the byte range [posStart, posEnd).  Local files are read with positional reads on a single shared
+     * channel,  which are safe for concurrent use.  Remote files borrow a stream from a small pool so the
+     * connection setup is not repeated for every request.
+     * <p/>
+     * An interrupt during a read closes the channel for all threads,  so reads are made with the interrupt status
+     * cleared (it is restored afterwards),  and a channel closed by an interrupt of another thread is reopened and
+     * the read retried.
+     */
     private byte[] readBytes(long posStart, long posEnd) throws IOException {
 
-        SeekableStream ss = null;
+        int nBytes = (int) (posEnd - posStart);
+        byte[] bytes = new byte[nBytes];
+
+        FileChannel channel = getChannel();
+        if (channel != null) {
+            boolean interrupted = Thread.interrupted();
+            try {
+                while (true) {
+                    try {
+                        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                        long pos = posStart;
+                        while (buffer.hasRemaining()) {
+                            int n = channel.read(buffer, pos);
+                            if (n < 0) {
+                                throw new EOFException("Unexpected end of file: " + path);
+                            }
+                            pos += n;
+                        }
+                        return bytes;
+                    } catch (ClosedChannelException e) {
+                        interrupted |= Thread.interrupted();
+                        channel = reopenChannel(channel);
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        SeekableStream ss = borrowStream();
+        boolean ok = false;
         try {
-            ss = SeekableStreamFactory.getStreamFor(path);
-            int nBytes = (int) (posEnd - posStart);
-            byte[] bytes = new byte[nBytes];
             ss.seek(posStart);
             ss.readFully(bytes);
+            ok = true;
             return bytes;
         } finally {
-            if (ss != null) {
+            if (ok) {
+                returnStream(ss);
+            } else {
+                ss.close();
+            }
+        }
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        checkOpen();
+        if (channel == null && !FileUtils.isRemote(path)) {
+            channel = new RandomAccessFile(path, "r").getChannel();
+        }
+        return channel;
+    }
+
+    /**
+     * Replace a channel closed by an interrupted read,  unless another thread has already done so.
+     */
+    private synchronized FileChannel reopenChannel(FileChannel failed) throws IOException {
+        if (channel == failed) {
+            channel = null;
+        }
+        return getChannel();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Sequence is closed: " + path);
+        }
+    }
+
+    private synchronized SeekableStream borrowStream() throws IOException {
+        checkOpen();
+        SeekableStream ss = streamPool.poll();
+        return ss == null ? SeekableStreamFactory.getStreamFor(path) : ss;
+    }
+
+    private synchronized void returnStream(SeekableStream ss) throws IOException {
+        if (closed || !streamPool.offer(ss)) {
+            ss.close();
+        }
+    }
+
+    /**
+     * Allow the file to be read again after close(),  when a closed genome is made current again.
+     */
+    public synchronized void open() {
+        closed = false;
+    }
+
+    /**
+     * Release the file handles held by this sequence.  Reads fail until open() is called,  so a late read does not
+     * leave a new handle open.
+     */
+    public synchronized void close() {
+        closed = true;
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            SeekableStream ss;
+            while ((ss = streamPool.poll()) != null) {
                 ss.close();
             }
+        } catch (IOException e) {
+            log.error("Error closing sequence file: " + path, e);
         }
     }
 
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.feature.genome;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FastaSequenceTest {
+
+    private static final int LENGTH = 1000;
+    private static final int LINE = 60;
+
+    private File fasta;
+    private File index;
+    private String bases;
+
+    @Before
+    public void setUp() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LENGTH; i++) {
+            sb.append("ACGT".charAt((i * 7 + i / 3) % 4));
+        }
+        bases = sb.toString();
+
+        fasta = File.createTempFile("sequence", ".fa");
+        PrintWriter pw = new PrintWriter(new FileWriter(fasta));
+        pw.println(">chr1");
+        for (int i = 0; i < LENGTH; i += LINE) {
+            pw.println(bases.substring(i, Math.min(LENGTH, i + LINE)));
+        }
+        pw.close();
+
+        index = new File(fasta.getAbsolutePath() + ".fai");
+        pw = new PrintWriter(new FileWriter(index));
+        pw.println("chr1\t" + LENGTH + "\t6\t" + LINE + "\t" + (LINE + 1));
+        pw.close();
+    }
+
+    @After
+    public void tearDown() {
+        Thread.interrupted();
+        fasta.delete();
+        index.delete();
+    }
+
+    private byte[] expected(int start, int end) {
+        return bases.substring(start, end).getBytes();
+    }
+
+    @Test
+    public void testReadWhileInterrupted() throws Exception {
+        FastaSequence sequence = new FastaSequence(fasta.getAbsolutePath());
+        assertArrayEquals(expected(100, 300), sequence.readSequence("chr1", 100, 300));
+
+        // An interrupted reader must not close the channel for other readers
+        Thread.currentThread().interrupt();
+        assertArrayEquals(expected(0, 50), sequence.readSequence("chr1", 0, 50));
+        assertTrue("interrupt status is kept", Thread.interrupted());
+
+        // A channel closed by another thread's interrupt is reopened
+        Field field = FastaSequence.class.getDeclaredField("channel");
+        field.setAccessible(true);
+        ((FileChannel) field.get(sequence)).close();
+        assertArrayEquals(expected(900, 1000), sequence.readSequence("chr1", 900, 1000));
+
+        sequence.close();
+    }
+
+    @Test
+    public void testNoReopenAfterClose() throws Exception {
+        FastaSequence sequence = new FastaSequence(fasta.getAbsolutePath());
+        assertArrayEquals(expected(0, 10), sequence.readSequence("chr1", 0, 10));
+
+        sequence.close();
+        assertNull(sequence.readSequence("chr1", 0, 10));
+        Field field = FastaSequence.class.getDeclaredField("channel");
+        field.setAccessible(true);
+        assertNull("no handle is opened after close", field.get(sequence));
+
+        sequence.open();
+        assertArrayEquals(expected(0, 10), sequence.readSequence("chr1", 0, 10));
+        sequence.close();
+    }
+
+    @Test
+    public void testCloseWithPrefetches() throws Exception {
+        SequenceHelper.setTileSize(100);
+        try {
+            FastaSequence sequence = new FastaSequence(fasta.getAbsolutePath());
+            SequenceHelper helper = new SequenceHelper(sequence);
+            for (int start = 0; start < LENGTH - 50; start += 50) {
+                assertArrayEquals(expected(start, start + 50), helper.getSequence("chr1", start, start + 50, LENGTH));
+            }
+
+            // Queues prefetches of the neighbouring tiles,  close() drops or waits for them
+            helper.clearCache();
+            helper.getSequence("chr1", 500, 550, LENGTH);
+            helper.close();
+
+            Field field = FastaSequence.class.getDeclaredField("channel");
+            field.setAccessible(true);
+            Thread.sleep(100);
+            assertNull("no prefetch reopened the file", field.get(sequence));
+
+            helper.open();
+            helper.clearCache();
+            assertArrayEquals(expected(250, 400), helper.getSequence("chr1", 250, 400, LENGTH));
+            helper.close();
+        } finally {
+            SequenceHelper.setTileSize(30000);
+        }
+    }
+}
@@ -39,7 +39,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -59,17 +58,23 @@ public class Genome {
     private static Logger log = Logger.getLogger(Genome.class);
     public static final int MAX_WHOLE_GENOME = 10000;
 
+    /**
+     * Minimum number of chromosomes for pseudo-molecule mode to be switched on automatically
+     */
+    public static final int MIN_PSEUDO_MOLECULE_CHROMOSOMES = 1000;
+
     private String id;
     private String displayName;
     private List<String> chromosomeNames;
     private LinkedHashMap<String, Chromosome> chromosomeMap;
     private long length = -1;
-    private Map<String, Long> cumulativeOffsets = new HashMap();
+    private volatile ChromosomeIndex chromosomeIndex;
     private Map<String, String> chrAliasTable;
     private Properties properties;
     
     private long	factor = -1;
     private Boolean	geneticMap = null;
+    private Boolean pseudoMoleculeMode = null;
 
     SequenceHelper sequenceHelper;
     
@@ -161,7 +166,9 @@ public class Genome {
 
     public void setChromosomeMap(LinkedHashMap<String, Chromosome> chromosomeMap, boolean chromosomesAreOrdered) {
         this.chromosomeMap = chromosomeMap;
-        this.chromosomeNames = new LinkedList<String>(chromosomeMap.keySet());
+        this.chromosomeNames = new ArrayList<String>(chromosomeMap.keySet());
+        this.chromosomeIndex = null;
+        this.pseudoMoleculeMode = null;
         if (!chromosomesAreOrdered) {
             Collections.sort(chromosomeNames, new ChromosomeComparator());
         }
@@ -217,7 +224,8 @@ public class Genome {
 
 
     public String getHomeChromosome() {
-        if (getChromosomeNames().size() == 1 || chromosomeNames.size() > MAX_WHOLE_GENOME) {
+        if (getChromosomeNames().size() == 1 ||
+                (chromosomeNames.size() > MAX_WHOLE_GENOME && !isPseudoMoleculeMode())) {
             return getChromosomeNames().get(0);
         } else {
             return Globals.CHR_ALL;
@@ -251,21 +259,31 @@ public class Genome {
     }
 
 
-    public long getCumulativeOffset(String chr) {
-
-        Long cumOffset = cumulativeOffsets.get(chr);
-        if (cumOffset == null) {
-            long offset = 0;
-            for (String c : getChromosomeNames()) {
-                if (chr.equals(c)) {
-                    break;
-                }
-                offset += getChromosome(c).getLength();
-            }
-            cumOffset = new Long(offset);
-            cumulativeOffsets.put(chr, cumOffset);
+    private ChromosomeIndex getChromosomeIndex() {
+        ChromosomeIndex index = chromosomeIndex;
+        if (index == null) {
+            index = new ChromosomeIndex(getChromosomeNames(), this);
+            chromosomeIndex = index;
         }
-        return cumOffset.longValue();
+        return index;
+    }
+
+    /**
+     * Return the position of the chromosome in genome order,  or -1 if chr is not the name of a chromosome.
+     * Aliases are not resolved.
+     */
+    public int getChromosomeOrdinal(String chr) {
+        return getChromosomeIndex().getOrdinal(chr);
+    }
+
+    /**
+     * Return the sum of the lengths of all chromosomes preceding chr.  If chr is not found the
+     * sum of all chromosome lengths is returned.
+     */
+    public long getCumulativeOffset(String chr) {
+        ChromosomeIndex index = getChromosomeIndex();
+        int ordinal = index.getOrdinal(chr);
+        return index.getOffset(ordinal < 0 ? index.size() : ordinal);
     }
 
     /**
@@ -284,17 +302,15 @@ public class Genome {
      */
     public ChromosomeCoordinate getChromosomeCoordinate(int genomeKBP) {
 
-        long cumOffset = 0;
-        for (String c : chromosomeNames) {
-            int chrLen = getChromosome(c).getLength();
-            if ((cumOffset + chrLen) / 1000 > genomeKBP) {
-                int bp = (int) (genomeKBP * 1000 - cumOffset);
-                return new ChromosomeCoordinate(c, bp);
-            }
-            cumOffset += chrLen;
+        ChromosomeIndex index = getChromosomeIndex();
+        int ordinal = index.findOrdinalForGenomeKbp(genomeKBP);
+        if (ordinal >= 0) {
+            int bp = (int) (genomeKBP * 1000 - index.getOffset(ordinal));
+            return new ChromosomeCoordinate(index.getName(ordinal), bp);
         }
 
-        String c = chromosomeNames.get(chromosomeNames.size() - 1);
+        long cumOffset = index.getOffset(index.size());
+        String c = index.getName(index.size() - 1);
         int bp = (int) (genomeKBP - cumOffset) * 1000;
         return new ChromosomeCoordinate(c, bp);
     }
@@ -309,23 +325,15 @@ public class Genome {
     }
 
     public String getNextChrName(String chr) {
-        List<String> chrList = getChromosomeNames();
-        for (int i = 0; i < chrList.size() - 1; i++) {
-            if (chrList.get(i).equals(chr)) {
-                return chrList.get(i + 1);
-            }
-        }
-        return null;
+        ChromosomeIndex index = getChromosomeIndex();
+        int ordinal = index.getOrdinal(chr);
+        return (ordinal < 0 || ordinal >= index.size() - 1) ? null : index.getName(ordinal + 1);
     }
 
     public String getPrevChrName(String chr) {
-        List<String> chrList = getChromosomeNames();
-        for (int i = chrList.size() - 1; i > 0; i--) {
-            if (chrList.get(i).equals(chr)) {
-                return chrList.get(i - 1);
-            }
-        }
-        return null;
+        ChromosomeIndex index = getChromosomeIndex();
+        int ordinal = index.getOrdinal(chr);
+        return ordinal <= 0 ? null : index.getName(ordinal - 1);
     }
 
     public byte[] getSequence(String chr, int start, int end) {
@@ -341,6 +349,24 @@ public class Genome {
         return sequenceHelper.getSequence(chr, start, end, c.getLength());
     }
 
+    /**
+     * Release the file handles held by this genome's sequence.
+     */
+    public void close() {
+        if (sequenceHelper != null) {
+            sequenceHelper.close();
+        }
+    }
+
+    /**
+     * Allow the sequence to be read again after close(),  when a cached genome is loaded again.
+     */
+    public void open() {
+        if (sequenceHelper != null) {
+            sequenceHelper.open();
+        }
+    }
+
     public String getDisplayName() {
         return displayName;
     }
@@ -363,6 +389,25 @@ public class Genome {
     	return geneticMap.booleanValue();
     }
     
+    /**
+     * Pseudo-molecule mode is used for fragmented assemblies with many small contigs.  The whole genome view treats
+     * the genome as one molecule cut into fixed size bins,  rather than summarizing each contig,  so the view is
+     * available no matter how many contigs there are.  Set with the genome property "pseudo_molecules"
+     * (true | false | auto),  default false.  auto switches it on for genomes with more than
+     * MIN_PSEUDO_MOLECULE_CHROMOSOMES chromosomes.
+     */
+    public boolean isPseudoMoleculeMode() {
+        if (pseudoMoleculeMode == null) {
+            String value = properties.getProperty("pseudo_molecules", "false").trim();
+            if (value.equalsIgnoreCase("auto")) {
+                pseudoMoleculeMode = getChromosomeNames().size() > MIN_PSEUDO_MOLECULE_CHROMOSOMES;
+            } else {
+                pseudoMoleculeMode = Boolean.valueOf(value);
+            }
+        }
+        return pseudoMoleculeMode.booleanValue();
+    }
+
     public int getDecimalPlaces()
     {
     	return Integer.parseInt(properties.getProperty("gm_dec_places", "0"));
@@ -128,6 +128,7 @@ public class GenomeManager {
     	
     	log.info("loading genome from: " + genomePath);
 
+        Genome previousGenome = currentGenome;
         try {
 
             GenomeDescriptor genomeDescriptor = null;
@@ -186,6 +187,7 @@ public class GenomeManager {
                 else
                 {
                 	currentGenome = entry.genome;
+                	currentGenome.open();
                 	genomeDescriptor = entry.genomeDescriptor;
                 }
                 
@@ -223,6 +225,10 @@ public class GenomeManager {
             // Do this last so that user defined aliases have preference.
             currentGenome.loadUserDefinedAliases();
 
+            if (previousGenome != null && previousGenome != currentGenome) {
+                previousGenome.close();
+            }
+
             
         	log.info("almost done loading: " + currentGenome.getId());
             IGV.getInstance().getContentPane().tabsGenomeChanged(currentGenome);
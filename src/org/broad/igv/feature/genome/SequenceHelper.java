@@ -21,10 +21,15 @@
  */
 package org.broad.igv.feature.genome;
 
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipFile;
 
 import org.apache.log4j.Logger;
+import org.broad.igv.util.NamedThreadFactory;
 import org.broad.igv.util.ObjectCache;
 
 /**
@@ -35,10 +40,14 @@ public class SequenceHelper {
     private static Logger log = Logger.getLogger(SequenceHelper.class);
     private static boolean cacheSequences = true;
     private static int tileSize = 30000;
+    private static ExecutorService prefetchExecutor;
 
 
     Sequence sequence;
     private ObjectCache<String, SequenceTile> sequenceCache = new ObjectCache(50);
+    private Set<String> pendingPrefetches = new HashSet();
+    private int runningPrefetches;
+    private boolean closed;
 
 
     public SequenceHelper(String seqpath, ZipFile genomeFile) {
@@ -162,6 +171,10 @@ public class SequenceHelper {
                 nBytes += nNext;
             }
 
+            // Load the neighboring tiles in the background,  the next request while panning will likely need them
+            prefetchTile(chr, startTile - 1, max);
+            prefetchTile(chr, endTile + 1, max);
+
             return seqbytes;
         } else {
             return sequence.readSequence(chr, start, end);
@@ -171,7 +184,7 @@ public class SequenceHelper {
 
     private SequenceTile getSequenceTile(String chr, int tileNo, int maxEnd) {
         String key = getKey(chr, tileNo);
-        SequenceTile tile = sequenceCache.get(key);
+        SequenceTile tile = getCachedTile(key);
 
         if ( tile == null && sequence != null ) {
             int start = tileNo * tileSize;
@@ -183,12 +196,62 @@ public class SequenceHelper {
 
             byte[] seq = sequence.readSequence(chr, start, end);
             tile = new SequenceTile(start, seq);
-            sequenceCache.put(key, tile);
+            putCachedTile(key, tile);
         }
 
         return tile;
     }
 
+    private void prefetchTile(final String chr, final int tileNo, final int maxEnd) {
+        if (tileNo < 0 || tileNo * tileSize >= maxEnd || sequence == null) {
+            return;
+        }
+        final String key = getKey(chr, tileNo);
+        synchronized (this) {
+            if (closed || sequenceCache.get(key) != null || !pendingPrefetches.add(key)) {
+                return;
+            }
+        }
+        getPrefetchExecutor().execute(new Runnable() {
+            public void run() {
+                synchronized (SequenceHelper.this) {
+                    // Prefetches queued before close() are dropped
+                    if (closed) {
+                        pendingPrefetches.remove(key);
+                        return;
+                    }
+                    runningPrefetches++;
+                }
+                try {
+                    getSequenceTile(chr, tileNo, maxEnd);
+                } catch (Exception e) {
+                    log.error("Error prefetching sequence: " + chr + " tile " + tileNo, e);
+                } finally {
+                    synchronized (SequenceHelper.this) {
+                        pendingPrefetches.remove(key);
+                        runningPrefetches--;
+                        SequenceHelper.this.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized SequenceTile getCachedTile(String key) {
+        return sequenceCache.get(key);
+    }
+
+    private synchronized void putCachedTile(String key, SequenceTile tile) {
+        sequenceCache.put(key, tile);
+    }
+
+    private static synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            prefetchExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("sequence-prefetch"));
+        }
+        return prefetchExecutor;
+    }
+
 
     static String getKey(String chr, int tileNo) {
         return chr + tileNo;
@@ -212,10 +275,42 @@ public class SequenceHelper {
         cacheSequences = aCacheSequences;
     }
 
-    public void clearCache() {
+    public synchronized void clearCache() {
         sequenceCache.clear();
     }
 
+    /**
+     * Release the file handles held by the sequence,  if any.  Queued prefetches are dropped and a running one is
+     * waited for,  so it does not fail on the closed file.  The sequence is not read again until open().
+     */
+    public synchronized void close() {
+        closed = true;
+        boolean interrupted = false;
+        while (runningPrefetches > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (sequence instanceof FastaSequence) {
+            ((FastaSequence) sequence).close();
+        }
+    }
+
+    /**
+     * Allow the sequence to be read again after close().
+     */
+    public synchronized void open() {
+        closed = false;
+        if (sequence instanceof FastaSequence) {
+            ((FastaSequence) sequence).open();
+        }
+    }
+
     static class SequenceTile {
 
         private int start;
@@ -0,0 +1,453 @@
+package org.broad.igv.feature.genome.mapping;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * a genome mapping loaded from a precompiled binary file. the file holds, for each direction, a per chromosome 
+ * interval index of primitive int columns (fromStart, fromEnd, toChr, toStart, toEnd) sorted by fromStart. 
+ * the columns are memory mapped, no objects are created per entry.
+ * 
+ * semantics are those of LocalFileGenomeMapping: the start and end of a locus are each mapped by interpolating 
+ * within the interval that contains them.
+ */
+public class BinaryGenomeMapping implements IBatchGenomeMapper {
+
+    private static Logger 			log = Logger.getLogger(BinaryGenomeMapping.class);
+    
+    public static final String		FILE_EXTENSION = ".bin";
+    
+    private static final int		MAGIC = 0x49474d31;		// IGM1
+    private static final int		VERSION = 1;
+    private static final int		COLUMNS = 5;
+    
+    /**
+     * the index of a single chromosome, in one direction
+     */
+    static class ChromosomeIndex {
+    	
+    	int			count;
+    	int			offset;		// in ints, from the start of the data section
+    	
+    	ChromosomeIndex(int count, int offset)
+    	{
+    		this.count = count;
+    		this.offset = offset;
+    	}
+    }
+    
+	private File							file;
+	private String							fromGenome;
+	private String							toGenome;
+	private boolean							forwardMapping;
+
+	private String[]						names;
+	private Map<String, ChromosomeIndex>	forwardIndex;
+	private Map<String, ChromosomeIndex>	reverseIndex;
+	private IntBuffer						data;
+	private int								entryCount;
+	
+	public BinaryGenomeMapping(File file, String fromGenome, String toGenome) throws IOException
+	{
+		log.info("file: " + file);
+		
+		this.file = file;
+		this.fromGenome = fromGenome;
+		this.toGenome = toGenome;
+		this.forwardMapping = true;
+		
+		DataInputStream			is = new DataInputStream(new FileInputStream(file));
+		int						headerLength;
+		try
+		{
+			if ( is.readInt() != MAGIC || is.readInt() != VERSION )
+				throw new IOException("not a binary genome mapping file: " + file);
+			headerLength = is.readInt();
+			
+			names = new String[is.readInt()];
+			for ( int i = 0 ; i < names.length ; i++ )
+				names[i] = is.readUTF();
+			forwardIndex = readIndex(is);
+			reverseIndex = readIndex(is);
+		}
+		finally
+		{
+			is.close();
+		}
+		
+		// map the data section
+		long					dataStart = 12 + headerLength;
+		RandomAccessFile		raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel			chan = raf.getChannel();
+			data = chan.map(FileChannel.MapMode.READ_ONLY, dataStart, chan.size() - dataStart).asIntBuffer();
+		}
+		finally
+		{
+			raf.close();
+		}
+		
+		for ( ChromosomeIndex ci : forwardIndex.values() )
+			entryCount += ci.count;
+		
+		log.info("entryCount: " + entryCount);
+	}
+	
+	private BinaryGenomeMapping(BinaryGenomeMapping other)
+	{
+		this.file = other.file;
+		this.fromGenome = other.toGenome;
+		this.toGenome = other.fromGenome;
+		this.forwardMapping = !other.forwardMapping;
+		this.names = other.names;
+		this.forwardIndex = other.forwardIndex;
+		this.reverseIndex = other.reverseIndex;
+		this.data = other.data;
+		this.entryCount = other.entryCount;
+	}
+	
+	private Map<String, ChromosomeIndex> readIndex(DataInputStream is) throws IOException
+	{
+		int								count = is.readInt();
+		Map<String, ChromosomeIndex>	index = new HashMap<String, ChromosomeIndex>(count * 2);
+		
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			String			name = names[is.readInt()];
+			int				entries = is.readInt();
+			int				offset = is.readInt();
+			index.put(name, new ChromosomeIndex(entries, offset));
+		}
+		
+		return index;
+	}
+	
+	public IGenomeMapper getReverseGenomeMapper()
+	{
+		return new BinaryGenomeMapping(this);
+	}
+	
+	@Override
+	public GenomeLocus mapLocus(GenomeLocus locus) throws GenomeMapperException 
+	{
+		ChromosomeIndex		ci = getIndex().get(locus.getChr());
+		
+		// map start and end. optimize for same
+		int					startEntry = findEntry(ci, locus.getChr(), locus.getStart());
+		int					endEntry = (locus.getStart() == locus.getEnd()) ? startEntry : findEntry(ci, locus.getChr(), locus.getEnd());
+		
+		return buildLocus(locus, startEntry, endEntry);
+	}
+	
+	/**
+	 * maps all loci in one sorted sweep: the start and end positions of all loci are sorted per chromosome, and 
+	 * each chromosome index is walked once
+	 */
+	@Override
+	public List<GenomeLocus> mapLoci(List<GenomeLocus> loci)
+	{
+		int							size = loci.size();
+		int[]						entries = new int[size * 2];
+		Arrays.fill(entries, -1);
+		
+		// group position slots by chromosome. a slot packs the position with the locus index and start/end bit
+		Map<String, List<Long>>		slotsByChr = new LinkedHashMap<String, List<Long>>();
+		for ( int i = 0 ; i < size ; i++ )
+		{
+			GenomeLocus				locus = loci.get(i);
+			if ( locus == null || locus.getChr() == null )
+				continue;
+			List<Long>				slots = slotsByChr.get(locus.getChr());
+			if ( slots == null )
+				slotsByChr.put(locus.getChr(), slots = new ArrayList<Long>());
+			slots.add(slot(locus.getStart(), i * 2));
+			slots.add(slot(locus.getEnd(), i * 2 + 1));
+		}
+		
+		// sweep
+		for ( Map.Entry<String, List<Long>> e : slotsByChr.entrySet() )
+		{
+			ChromosomeIndex		ci = getIndex().get(e.getKey());
+			if ( ci == null )
+				continue;
+			
+			long[]				slots = new long[e.getValue().size()];
+			int					n = 0;
+			for ( Long slot : e.getValue() )
+				slots[n++] = slot;
+			Arrays.sort(slots);
+			
+			int					base = ci.offset;
+			int					entry = 0;
+			for ( long slot : slots )
+			{
+				int				pos = (int)(slot >> 32);
+				while ( entry + 1 < ci.count && data.get(base + entry + 1) <= pos )
+					entry++;
+				if ( data.get(base + entry) <= pos && pos <= data.get(base + ci.count + entry) )
+					entries[(int)slot] = entry;
+			}
+		}
+		
+		// build result
+		List<GenomeLocus>			result = new ArrayList<GenomeLocus>(size);
+		for ( int i = 0 ; i < size ; i++ )
+		{
+			GenomeLocus				locus = loci.get(i);
+			try
+			{
+				result.add(locus == null ? null : buildLocus(locus, entries[i * 2], entries[i * 2 + 1]));
+			}
+			catch (GenomeMapperException ex)
+			{
+				result.add(null);
+			}
+		}
+		
+		return result;
+	}
+	
+	private static long slot(int pos, int slotIndex)
+	{
+		// the position in the high bits keeps the signed ordering
+		return ((long)pos << 32) | slotIndex;
+	}
+	
+	private Map<String, ChromosomeIndex> getIndex()
+	{
+		return forwardMapping ? forwardIndex : reverseIndex;
+	}
+	
+	/**
+	 * @return the index of the entry (within the chromosome) containing loc. 
+	 */
+	private int findEntry(ChromosomeIndex ci, String chr, int loc) throws GenomeMapperException
+	{
+		if ( ci != null )
+		{
+			// last entry starting at or before loc
+			int			base = ci.offset;
+			int			low = 0;
+			int			high = ci.count - 1;
+			int			found = -1;
+			while ( low <= high )
+			{
+				int		mid = (low + high) >>> 1;
+				if ( data.get(base + mid) <= loc )
+				{
+					found = mid;
+					low = mid + 1;
+				}
+				else
+					high = mid - 1;
+			}
+			
+			if ( found >= 0 && loc <= data.get(base + ci.count + found) )
+				return found;
+		}
+		
+		throw new GenomeMapperException(new GenomeLocus(chr, loc, 0), "no mapping found");
+	}
+	
+	private GenomeLocus buildLocus(GenomeLocus locus, int startEntry, int endEntry) throws GenomeMapperException
+	{
+		if ( startEntry < 0 )
+			throw new GenomeMapperException(new GenomeLocus(locus.getChr(), locus.getStart(), 0), "no mapping found");
+		if ( endEntry < 0 )
+			throw new GenomeMapperException(new GenomeLocus(locus.getChr(), locus.getEnd(), 0), "no mapping found");
+		
+		ChromosomeIndex		ci = getIndex().get(locus.getChr());
+		
+		// must be on the same chromosome
+		int					startChr = data.get(ci.offset + 2 * ci.count + startEntry);
+		int					endChr = data.get(ci.offset + 2 * ci.count + endEntry);
+		if ( startChr != endChr )
+			throw new GenomeMapperException(locus, "start and end must map to same chromosome");
+		
+		// integrate and return
+		return new GenomeLocus(names[startChr], interpolate(ci, startEntry, locus.getStart()), interpolate(ci, endEntry, locus.getEnd()));
+	}
+	
+	private int interpolate(ChromosomeIndex ci, int entry, int loc)
+	{
+		int			fromStart = data.get(ci.offset + entry);
+		int			fromEnd = data.get(ci.offset + ci.count + entry);
+		int			toStart = data.get(ci.offset + 3 * ci.count + entry);
+		int			toEnd = data.get(ci.offset + 4 * ci.count + entry);
+		
+		// calculate relative position with the from range
+		double		pos = (double)(loc - fromStart) / (fromEnd - fromStart);
+		
+		return toStart + (int)Math.round(pos * (toEnd - toStart));
+	}
+	
+	/**
+	 * @return the binary file compiled from the text mapping file, (re)compiling it if missing or out of date
+	 */
+	public static File getCompiledFile(File textFile) throws IOException
+	{
+		File			binFile = new File(textFile.getAbsolutePath() + FILE_EXTENSION);
+		
+		if ( !binFile.exists() || binFile.lastModified() < textFile.lastModified() )
+			compile(textFile, binFile);
+		
+		return binFile;
+	}
+	
+	/**
+	 * compile a text mapping file (lines of: fromLocus toLocus, # for comments) into the binary format
+	 */
+	public static void compile(File textFile, File binFile) throws IOException
+	{
+		log.info("compiling " + textFile + " into " + binFile);
+		
+		// read pairs
+		List<int[]>				entries = new ArrayList<int[]>();
+		Map<String, Integer>	nameIndex = new LinkedHashMap<String, Integer>();
+		BufferedReader			reader = new BufferedReader(new FileReader(textFile));
+		try
+		{
+			String				line;
+			while ( (line = reader.readLine()) != null )
+			{
+				if ( line.length() == 0 || line.charAt(0) == '#' )
+					continue;
+				String[]		toks = StringUtils.split(line, " \t");
+				if ( toks.length < 2 )
+					continue;
+				
+				GenomeLocus		from = new GenomeLocus(toks[0]);
+				GenomeLocus		to = new GenomeLocus(toks[1]);
+				if ( from.isChromosomeOnly() || to.isChromosomeOnly() )
+					continue;
+				
+				entries.add(new int[] {getNameIndex(nameIndex, from.getChr()), from.getStart(), from.getEnd(), 
+											getNameIndex(nameIndex, to.getChr()), to.getStart(), to.getEnd()});
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		
+		// build both directions
+		ByteArrayOutputStream	header = new ByteArrayOutputStream();
+		DataOutputStream		hos = new DataOutputStream(header);
+		ByteArrayOutputStream	body = new ByteArrayOutputStream();
+		DataOutputStream		dos = new DataOutputStream(body);
+		
+		hos.writeInt(nameIndex.size());
+		for ( String name : nameIndex.keySet() )
+			hos.writeUTF(name);
+		writeDirection(entries, 0, hos, dos);
+		writeDirection(entries, 3, hos, dos);
+		hos.flush();
+		dos.flush();
+		
+		// write to a temporary file and rename, so readers never see a partial file
+		File					tmpFile = new File(binFile.getAbsolutePath() + ".tmp");
+		DataOutputStream		os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try
+		{
+			os.writeInt(MAGIC);
+			os.writeInt(VERSION);
+			os.writeInt(header.size());
+			header.writeTo(os);
+			body.writeTo(os);
+		}
+		finally
+		{
+			os.close();
+		}
+		binFile.delete();
+		if ( !tmpFile.renameTo(binFile) )
+			throw new IOException("failed to rename " + tmpFile + " to " + binFile);
+		
+		log.info("compiled " + entries.size() + " entries");
+	}
+
+	private static int getNameIndex(Map<String, Integer> nameIndex, String name)
+	{
+		Integer			index = nameIndex.get(name);
+		if ( index == null )
+			nameIndex.put(name, index = nameIndex.size());
+		
+		return index;
+	}
+	
+	private static void writeDirection(List<int[]> entries, final int fromColumn, DataOutputStream hos, DataOutputStream dos) throws IOException
+	{
+		final int				toColumn = 3 - fromColumn;
+		
+		// sort by from chromosome and start
+		List<int[]>				sorted = new ArrayList<int[]>(entries);
+		Collections.sort(sorted, new Comparator<int[]>() {
+
+			@Override
+			public int compare(int[] o1, int[] o2) {
+				if ( o1[fromColumn] != o2[fromColumn] )
+					return o1[fromColumn] < o2[fromColumn] ? -1 : 1;
+				if ( o1[fromColumn + 1] != o2[fromColumn + 1] )
+					return o1[fromColumn + 1] < o2[fromColumn + 1] ? -1 : 1;
+				return 0;
+			}
+		});
+		
+		// count chromosomes
+		int						chrCount = 0;
+		for ( int i = 0 ; i < sorted.size() ; i++ )
+			if ( i == 0 || sorted.get(i)[fromColumn] != sorted.get(i - 1)[fromColumn] )
+				chrCount++;
+		hos.writeInt(chrCount);
+		
+		// write a block of columns per chromosome
+		int						start = 0;
+		while ( start < sorted.size() )
+		{
+			int					chr = sorted.get(start)[fromColumn];
+			int					end = start;
+			while ( end < sorted.size() && sorted.get(end)[fromColumn] == chr )
+				end++;
+			
+			hos.writeInt(chr);
+			hos.writeInt(end - start);
+			hos.writeInt(dos.size() / 4);
+			
+			int[]				columns = {fromColumn + 1, fromColumn + 2, toColumn, toColumn + 1, toColumn + 2};
+			for ( int c = 0 ; c < COLUMNS ; c++ )
+				for ( int i = start ; i < end ; i++ )
+					dos.writeInt(sorted.get(i)[columns[c]]);
+			
+			start = end;
+		}
+	}
+	
+	@Override
+	public String getMappingInfo() 
+	{
+		return String.format("%s: %d entries", getClass().getSimpleName(), entryCount);
+	}
+}
@@ -0,0 +1,103 @@
+package org.broad.igv.feature.genome.mapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+
+public class BinaryGenomeMappingTest {
+
+	static final String			TEST_RESOURCE = LocalFileGenomeMappingTest.TEST_RESOURCE;
+	static final String			TEST_FROM_GENOME = "genome1";
+	static final String			TEST_TO_GENOME = "genome2";
+	
+	@Test
+	public void testExactEntries() throws IOException
+	{
+		// create mapper
+		IGenomeMapper		mapper = buildMapper();
+		
+		// check for exact mappings
+		Assert.assertTrue(checkMap(mapper, "1:100-1198", "1:100-1837"));
+		Assert.assertTrue(checkMap(mapper, "1:1198-1200", "1:1837-1839"));
+		Assert.assertTrue(checkMap(mapper, "1:1300-1711", "1:1939-2467"));
+		
+		// and back
+		IGenomeMapper		reverse = ((BinaryGenomeMapping)mapper).getReverseGenomeMapper();
+		Assert.assertTrue(checkMap(reverse, "1:1939-2467", "1:1300-1711"));
+	}
+	
+	@Test
+	public void testMissingEntries() throws IOException
+	{
+		// create mapper
+		IGenomeMapper		mapper = buildMapper();
+		
+		// before
+		Assert.assertTrue(checkMap(mapper, "1:1-99", null));
+		
+		// middle
+		Assert.assertTrue(checkMap(mapper, "1:1210-1:1220", null));
+		
+		// after
+		Assert.assertTrue(checkMap(mapper, "2:1-2", null));
+	}
+	
+	@Test
+	public void testBatch() throws IOException
+	{
+		IBatchGenomeMapper	mapper = buildMapper();
+		List<GenomeLocus>	loci = Arrays.asList(
+										new GenomeLocus("1:1300-1711"),
+										new GenomeLocus("1:1-99"),
+										new GenomeLocus("1:100-1198"),
+										new GenomeLocus("2:1-2"),
+										new GenomeLocus("1:1198-1200"));
+		
+		// batch results must agree with single lookups, in input order
+		List<GenomeLocus>	result = mapper.mapLoci(loci);
+		Assert.assertEquals(loci.size(), result.size());
+		for ( int i = 0 ; i < loci.size() ; i++ )
+			Assert.assertEquals(map(mapper, loci.get(i)), result.get(i));
+	}
+	
+	private BinaryGenomeMapping buildMapper() throws IOException
+	{
+		String			path = getClass().getClassLoader().getResource(TEST_RESOURCE).getFile();
+		File			binFile = File.createTempFile("BinaryGenomeMappingTest", BinaryGenomeMapping.FILE_EXTENSION);
+		binFile.deleteOnExit();
+		
+		BinaryGenomeMapping.compile(new File(path), binFile);
+		
+		return new BinaryGenomeMapping(binFile, TEST_FROM_GENOME, TEST_TO_GENOME);
+	}
+
+	private boolean checkMap(IGenomeMapper mapper, String from, String to)
+	{
+		GenomeLocus			result = map(mapper, new GenomeLocus(from));
+		
+		if ( result == null )
+			return (to == null);
+		else if ( to == null )
+			return false;
+		else
+			return result.equals(new GenomeLocus(to));
+	}
+	
+	private GenomeLocus map(IGenomeMapper mapper, GenomeLocus from)
+	{
+		try
+		{
+			return mapper.mapLocus(from);
+			
+		} catch (GenomeMapperException e) {
+			
+			return null;
+		}
+	}
+}
@@ -2,7 +2,7 @@ package org.broad.igv.feature.genome.mapping;
 
 import java.util.List;
 
-public class ChainGenomeMapper implements IGenomeMapper {
+public class ChainGenomeMapper implements IBatchGenomeMapper {
 
 	private List<IGenomeMapper>		chain;
 	
@@ -26,6 +26,16 @@ public class ChainGenomeMapper implements IGenomeMapper {
 		return locus;
 	}
 
+	@Override
+	public List<GenomeLocus> mapLoci(List<GenomeLocus> loci) 
+	{
+		// each element maps the whole list, failed loci stay null through the rest of the chain
+		for ( IGenomeMapper mapper : chain )
+			loci = GenomeMappingManager.mapLoci(mapper, loci);
+		
+		return loci;
+	}
+
 	@Override
 	public String getMappingInfo() 
 	{
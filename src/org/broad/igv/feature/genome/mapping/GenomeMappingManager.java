@@ -6,6 +6,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -139,10 +140,57 @@ public class GenomeMappingManager {
 	
 	public void addMapping(String fromGenome, String toGenome, File localFile) throws IOException
 	{
-		LocalFileGenomeMapping			mapping = new LocalFileGenomeMapping(localFile, fromGenome, toGenome, this);
+		// prefer the precompiled binary index, the text file is used when it can not be written
+		File							binFile = null;
+		try
+		{
+			binFile = BinaryGenomeMapping.getCompiledFile(localFile);
+		}
+		catch (IOException e)
+		{
+			log.warn("failed to compile binary mapping for " + localFile + ", using text mapping", e);
+		}
 		
-		mappersPut(new MappingPair(fromGenome, toGenome), mapping);
-		mappersPut(new MappingPair(toGenome, fromGenome), mapping.getReverseGenomeMapper());
+		if ( binFile != null )
+		{
+			BinaryGenomeMapping			mapping = new BinaryGenomeMapping(binFile, fromGenome, toGenome);
+			
+			mappersPut(new MappingPair(fromGenome, toGenome), mapping);
+			mappersPut(new MappingPair(toGenome, fromGenome), mapping.getReverseGenomeMapper());
+		}
+		else
+		{
+			LocalFileGenomeMapping			mapping = new LocalFileGenomeMapping(localFile, fromGenome, toGenome, this);
+			
+			mappersPut(new MappingPair(fromGenome, toGenome), mapping);
+			mappersPut(new MappingPair(toGenome, fromGenome), mapping.getReverseGenomeMapper());
+		}
+	}
+	
+	/**
+	 * map a list of loci, in one batch if the mapper supports it, otherwise one at a time
+	 * 
+	 * @return the mapped loci, in input order. null for loci that failed to map
+	 */
+	public static List<GenomeLocus> mapLoci(IGenomeMapper mapper, List<GenomeLocus> loci)
+	{
+		if ( mapper instanceof IBatchGenomeMapper )
+			return ((IBatchGenomeMapper)mapper).mapLoci(loci);
+		
+		List<GenomeLocus>		result = new ArrayList<GenomeLocus>(loci.size());
+		for ( GenomeLocus locus : loci )
+		{
+			try
+			{
+				result.add(locus == null ? null : mapper.mapLocus(locus));
+			}
+			catch (GenomeMapperException e)
+			{
+				result.add(null);
+			}
+		}
+		
+		return result;
 	}
 	
 	private void mappersPut(MappingPair mappingPair, IGenomeMapper mapper) 
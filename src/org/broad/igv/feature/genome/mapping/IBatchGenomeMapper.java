@@ -0,0 +1,14 @@
+package org.broad.igv.feature.genome.mapping;
+
+import java.util.List;
+
+/**
+ * a mapper able to map many loci in one call, typically with a single sorted sweep over its index
+ */
+public interface IBatchGenomeMapper extends IGenomeMapper {
+
+	/**
+	 * @return the mapped loci, in the order of the input. loci that failed to map are returned as null
+	 */
+	List<GenomeLocus>	mapLoci(List<GenomeLocus> loci);
+}
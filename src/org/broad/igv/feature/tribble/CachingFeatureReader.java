@@ -41,6 +41,13 @@ public class CachingFeatureReader implements org.broad.tribble.FeatureSource {
     private static Logger log = Logger.getLogger(CachingFeatureReader.class);
     private static int maxBinCount = 1000;
     private static int defaultBinSize = 16000; // <= 16 kb
+    private static final long FEATURE_SIZE_ESTIMATE = 200;
+
+    private static final LRUCache.Weigher<Bin> BIN_WEIGHER = new LRUCache.Weigher<Bin>() {
+        public long getSize(Bin bin) {
+            return 64 + FEATURE_SIZE_ESTIMATE * (bin.getContainedRecords().size() + bin.getOverlappingRecords().size());
+        }
+    };
 
     private int binSize;
     FeatureSource reader;
@@ -54,7 +61,7 @@ public class CachingFeatureReader implements org.broad.tribble.FeatureSource {
 
     public CachingFeatureReader(FeatureSource reader, int binCount, int binSize) {
         this.reader = reader;
-        this.cache = new LRUCache(this, binCount);
+        this.cache = new LRUCache(this, binCount, BIN_WEIGHER);
         this.binSize = binSize;
     }
 
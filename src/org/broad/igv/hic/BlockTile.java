@@ -0,0 +1,74 @@
+package org.broad.igv.hic;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import org.broad.igv.hic.data.Block;
+import org.broad.igv.hic.data.ContactRecord;
+import org.broad.igv.hic.data.MatrixZoomData;
+
+/**
+ * A block of contact records rasterized at one pixel per bin.  The image covers only the bounding box of the
+ * block's records,  which is positioned at (x0, y0) in bin coordinates.  Cells without records are transparent.
+ */
+class BlockTile {
+
+    MatrixZoomData zd;
+    int x0;
+    int y0;
+    BufferedImage image;
+
+    BlockTile(MatrixZoomData zd, int x0, int y0, BufferedImage image) {
+        this.zd = zd;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.image = image;
+    }
+
+    long getSizeEstimate() {
+        return image == null ? 64 : 64 + 4L * image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * Rasterize the block.  If transpose is true records are drawn at (y, x),  used for the upper half of
+     * intra-chromosomal matrices which are stored as the lower diagonal only.
+     */
+    static BlockTile create(MatrixZoomData zd, Block block, boolean transpose, ColorScale colorScale) {
+
+        ContactRecord[] recs = block.getContactRecords();
+        if (recs == null || recs.length == 0) {
+            return new BlockTile(zd, 0, 0, null);
+        }
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (ContactRecord rec : recs) {
+            int x = transpose ? rec.getY() : rec.getX();
+            int y = transpose ? rec.getX() : rec.getY();
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+
+        int w = maxX - minX + 1;
+        int h = maxY - minY + 1;
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        boolean isWholeGenome = zd.getChr1() == 0 && zd.getChr2() == 0;
+        double binSizeMB = zd.getBinSize() / (isWholeGenome ? 1000.0 : 1000000.0);
+        double norm = binSizeMB * binSizeMB;
+
+        for (ContactRecord rec : recs) {
+            int x = transpose ? rec.getY() : rec.getX();
+            int y = transpose ? rec.getX() : rec.getY();
+            double score = rec.getCounts() / norm;
+            raster[(y - minY) * w + (x - minX)] = colorScale.getColor(score).getRGB();
+        }
+
+        return new BlockTile(zd, minX, minY, image);
+    }
+}
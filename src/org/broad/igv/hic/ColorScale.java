@@ -34,6 +34,29 @@ public class ColorScale {
     int maxCount = 200;
     Color background;
 
+    // Incremented on every change,  renderers compare it to invalidate cached images.
+    private int version = 0;
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setMinCount(int minCount) {
+        this.minCount = minCount;
+        version++;
+    }
+
+    public void setMaxCount(int maxCount) {
+        this.maxCount = maxCount;
+        version++;
+    }
+
+    public void setBackground(Color background) {
+        this.background = background;
+        colorCache.clear();
+        version++;
+    }
+
     public Color getColor(double score) {
 
         if(score < minCount) {
@@ -1,12 +1,11 @@
 package org.broad.igv.hic;
 
-import java.awt.Color;
 import java.awt.Graphics;
 import java.util.List;
 
 import org.broad.igv.hic.data.Block;
-import org.broad.igv.hic.data.ContactRecord;
 import org.broad.igv.hic.data.MatrixZoomData;
+import org.broad.igv.util.LRUCache;
 
 /**
  * @author jrobinso
@@ -14,10 +13,22 @@ import org.broad.igv.hic.data.MatrixZoomData;
  */
 public class HeatmapRenderer {
 
+    static final int MAX_TILE_COUNT = 500;
+
+    private static final LRUCache.Weigher<BlockTile> TILE_WEIGHER = new LRUCache.Weigher<BlockTile>() {
+        public long getSize(BlockTile tile) {
+            return tile.getSizeEstimate();
+        }
+    };
+
     ColorScale colorScale;
+    private int colorScaleVersion;
+    private LRUCache<String, BlockTile> tileCache;
 
     public HeatmapRenderer(ColorScale colorScale) {
         this.colorScale = colorScale;
+        this.colorScaleVersion = colorScale.getVersion();
+        tileCache = new LRUCache(this, MAX_TILE_COUNT, TILE_WEIGHER);
     }
 
     public void render(int originX,
@@ -57,46 +68,40 @@ public class HeatmapRenderer {
 
         List<Block> blocks = zd.getBlocksOverlapping(x, y, maxX, maxY);
 
-        boolean isWholeGenome = zd.getChr1() == 0 && zd.getChr2() == 0;
-
+        // Blocks are rasterized once per color scale and reused,  so panning only blits images.
         for (Block b : blocks) {
+            drawTile(getTile(zd, b, false), originX, originY, g);
+            if (chr1 == chr2) {
+                drawTile(getTile(zd, b, true), originX, originY, g);
+            }
+        }
+    }
 
-            ContactRecord[] recs = b.getContactRecords();
-            if (recs != null) {
-                for (int i = 0; i < recs.length; i++) {
-                    ContactRecord rec = recs[i];
-
-                    Color color = null;
-                    double binSizeMB = zd.getBinSize() / (isWholeGenome ? 1000.0 : 1000000.0);
-                    double score = rec.getCounts() / (binSizeMB * binSizeMB);
-                    //if (maxCount > 0 && score > 2 * maxCount) {
-                    //    color = Color.ORANGE;
-                    //} else {
-                    color = colorScale.getColor(score);
-                    //}
-
-                    int px = (rec.getX() - originX);
-                    int py = (rec.getY() - originY);
-
-
-                    g.setColor(color);
-                    g.fillRect(px, py, 1, 1);
-
-
-                    if (chr1 == chr2) {
-                        px = (rec.getY() - originX);
-                        py = (rec.getX() - originY);
-                        g.fillRect(px, py, 1, 1);
-                    }
+    private void drawTile(BlockTile tile, int originX, int originY, Graphics g) {
+        if (tile.image != null) {
+            g.drawImage(tile.image, tile.x0 - originX, tile.y0 - originY, null);
+        }
+    }
 
+    private synchronized BlockTile getTile(MatrixZoomData zd, Block block, boolean transpose) {
 
-                }
+        if (colorScale.getVersion() != colorScaleVersion) {
+            tileCache.clear();
+            colorScaleVersion = colorScale.getVersion();
+        }
 
-            }
+        String key = zd.getChr1() + "_" + zd.getChr2() + "_" + zd.getZoom() + "_" + block.getNumber() +
+                (transpose ? "_t" : "");
+        BlockTile tile = tileCache.get(key);
+        if (tile == null || tile.zd != zd) {
+            tile = BlockTile.create(zd, block, transpose, colorScale);
+            tileCache.put(key, tile);
         }
+        return tile;
     }
 
-    // Cache colors,  100 distinct colors should be enough
-
+    public void clearTileCache() {
+        tileCache.clear();
+    }
 
 }
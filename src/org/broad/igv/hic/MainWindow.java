@@ -106,8 +106,8 @@ public class MainWindow extends JFrame {
 
         int initialMaxCount = 50000;
         colorScale = new ColorScale();
-        colorScale.maxCount = initialMaxCount;
-        colorScale.background = Color.white;
+        colorScale.setMaxCount(initialMaxCount);
+        colorScale.setBackground(Color.white);
 
         initComponents();
 
@@ -261,13 +261,14 @@ public class MainWindow extends JFrame {
 
                     Matrix m = dataset.getMatrix(chr1, chr2);
                     if (m == null) {
+                        // No contacts between these chromosomes,  nothing to draw
+                        zd = null;
+                        thumbnailPanel.setImage(null);
                     } else {
                         setInitialZoom();
+                        Image thumbnail = getHeatmapPanel().getThumbnailImage(zd, thumbnailPanel.getWidth(), thumbnailPanel.getHeight());
+                        thumbnailPanel.setImage(thumbnail);
                     }
-
-
-                    Image thumbnail = getHeatmapPanel().getThumbnailImage(zd, thumbnailPanel.getWidth(), thumbnailPanel.getHeight());
-                    thumbnailPanel.setImage(thumbnail);
                 }
 
                 return null;
@@ -331,7 +332,12 @@ public class MainWindow extends JFrame {
 
         Chromosome chr1 = xContext.getChromosome();
         Chromosome chr2 = yContext.getChromosome();
-        zd = dataset.getMatrix(chr1, chr2).getZoomData(newZoom);
+        Matrix matrix = dataset.getMatrix(chr1, chr2);
+        if (matrix == null) {
+            // No contacts between these chromosomes
+            return;
+        }
+        zd = matrix.getZoomData(newZoom);
 
         int newBinSize = zd.getBinSize();
 
@@ -371,7 +377,11 @@ public class MainWindow extends JFrame {
 
         Chromosome chr1 = xContext.getChromosome();
         Chromosome chr2 = yContext.getChromosome();
-        zd = dataset.getMatrix(chr1, chr2).getZoomData(zoom);
+        Matrix matrix = dataset.getMatrix(chr1, chr2);
+        if (matrix == null) {
+            return;
+        }
+        zd = matrix.getZoomData(zoom);
 
         xContext.setZoom(zoom, scale);
         yContext.setZoom(zoom, scale);
@@ -464,7 +474,7 @@ public class MainWindow extends JFrame {
 
     private void loadDmelDatasetActionPerformed(ActionEvent e) {
         try {
-            colorScale.maxCount = 20000;
+            colorScale.setMaxCount(20000);
             maxRange.setText("20000");
             minRange.setText("0");
             zd = null;
@@ -477,7 +487,7 @@ public class MainWindow extends JFrame {
 
     private void loadGMActionPerformed(ActionEvent e) {
         try {
-            colorScale.maxCount = 100;
+            colorScale.setMaxCount(100);
             maxRange.setText("100");
             minRange.setText("0");
             zd = null;
@@ -489,7 +499,7 @@ public class MainWindow extends JFrame {
 
     private void load562ActionPerformed(ActionEvent e) {
         try {
-            colorScale.maxCount = 100;
+            colorScale.setMaxCount(100);
             maxRange.setText("100");
             minRange.setText("0");
             zd = null;
@@ -511,7 +521,7 @@ public class MainWindow extends JFrame {
     private void minRangeActionPerformed(ActionEvent e) {
         try {
             int min = Integer.parseInt(minRange.getText());
-            colorScale.minCount = min;
+            colorScale.setMinCount(min);
             heatmapPanel.clearTileCache();
             repaint();
 
@@ -523,7 +533,7 @@ public class MainWindow extends JFrame {
     private void maxRangeActionPerformed(ActionEvent e) {
         try {
             int max = Integer.parseInt(maxRange.getText());
-            colorScale.maxCount = max;
+            colorScale.setMaxCount(max);
             heatmapPanel.clearTileCache();
             repaint();
         } catch (NumberFormatException ex) {
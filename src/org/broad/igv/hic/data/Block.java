@@ -1,9 +1,5 @@
 package org.broad.igv.hic.data;
 
-import java.awt.Point;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * @author jrobinso
  * @date Aug 10, 2010
@@ -13,13 +9,13 @@ public class Block {
     int number;
 
     // Temporary map used during parsing only TODO -- remove from this class
-    Map<Point, ContactRecord> contactRecordMap;
+    ContactCountMap contactCounts;
 
     ContactRecord[] records;
 
     public Block(int number) {
         this.number = number;
-        contactRecordMap = new HashMap();
+        contactCounts = new ContactCountMap();
     }
 
     public Block(int number, ContactRecord[] records) {
@@ -28,28 +24,23 @@ public class Block {
     }
 
     public void incrementCount(int col, int row) {
-        Point p = new Point(col, row);
-        ContactRecord rec = contactRecordMap.get(p);
-        if (rec == null) {
-            rec = new ContactRecord(number, col, row, (short) 1);
-            contactRecordMap.put(p, rec);
-        } else {
-            rec.incrementCount();
-        }
+        contactCounts.increment(col, row);
     }
 
     public void parsingComplete() {
-        if (contactRecordMap.size() > 0) {
-            records = new ContactRecord[contactRecordMap.size()];
-            int i = 0;
-            for (ContactRecord rec : contactRecordMap.values()) {
-                records[i] = rec;
-                i++;
+        if (contactCounts != null) {
+            if (contactCounts.size() > 0) {
+                records = contactCounts.toSortedRecords(number);
             }
+            contactCounts = null;
         }
     }
 
 
+    public int getNumber() {
+        return number;
+    }
+
     public ContactRecord[] getContactRecords() {
         return records;
     }
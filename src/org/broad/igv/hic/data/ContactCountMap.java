@@ -0,0 +1,155 @@
+package org.broad.igv.hic.data;
+
+/**
+ * Open addressing hash map from a (col, row) bin pair to a contact count,  used to accumulate contacts while
+ * parsing.  Keys are packed into a long,  column in the high word,  so no objects are allocated per contact.
+ */
+public class ContactCountMap {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys;
+    private int[] counts;   // 0 marks an empty slot, every stored count is >= 1
+    private int size;
+    private int mask;
+    private int threshold;
+
+    public ContactCountMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+        threshold = (capacity * 3) / 4;
+    }
+
+    static long packKey(int col, int row) {
+        return ((long) col << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        // 64 bit finalizer from MurmurHash3
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public void increment(int col, int row) {
+        long key = packKey(col, row);
+        int idx = hash(key) & mask;
+        while (counts[idx] != 0) {
+            if (keys[idx] == key) {
+                counts[idx]++;
+                return;
+            }
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        counts[idx] = 1;
+        size++;
+        if (size > threshold) {
+            rehash();
+        }
+    }
+
+    public int get(int col, int row) {
+        long key = packKey(col, row);
+        int idx = hash(key) & mask;
+        while (counts[idx] != 0) {
+            if (keys[idx] == key) {
+                return counts[idx];
+            }
+            idx = (idx + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int idx = hash(oldKeys[i]) & mask;
+                while (counts[idx] != 0) {
+                    idx = (idx + 1) & mask;
+                }
+                keys[idx] = oldKeys[i];
+                counts[idx] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * @return the contacts as records sorted by column,  then row
+     */
+    public ContactRecord[] toSortedRecords(int blockNumber) {
+        long[] sortedKeys = new long[size];
+        int[] sortedCounts = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] != 0) {
+                sortedKeys[n] = keys[i];
+                sortedCounts[n] = counts[i];
+                n++;
+            }
+        }
+        sort(sortedKeys, sortedCounts, 0, size - 1);
+
+        ContactRecord[] records = new ContactRecord[size];
+        for (int i = 0; i < size; i++) {
+            long key = sortedKeys[i];
+            records[i] = new ContactRecord(blockNumber, (int) (key >>> 32), (int) key, sortedCounts[i]);
+        }
+        return records;
+    }
+
+    /**
+     * Sort keys[lo..hi] in ascending order,  moving the counts along with their keys.  Keys are unique.
+     */
+    static void sort(long[] keys, int[] counts, int lo, int hi) {
+        while (hi - lo > 16) {
+            long pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(keys, counts, i++, j--);
+                }
+            }
+            // Recurse into the smaller partition,  loop on the larger
+            if (j - lo < hi - i) {
+                sort(keys, counts, lo, j);
+                lo = i;
+            } else {
+                sort(keys, counts, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && keys[j - 1] > keys[j]; j--) {
+                swap(keys, counts, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(long[] keys, int[] counts, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+    }
+}
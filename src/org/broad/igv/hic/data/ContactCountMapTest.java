@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.hic.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class ContactCountMapTest {
+
+    @Test
+    public void testSortedRecords() {
+        for (int n : new int[]{0, 1, 5, 17, 100, 5000}) {
+            ContactCountMap map = new ContactCountMap();
+            Map<Long, Integer> expected = new TreeMap<Long, Integer>();
+            Random random = new Random(n);
+            for (int i = 0; i < n; i++) {
+                int col = random.nextInt(50);
+                int row = random.nextInt(200);
+                map.increment(col, row);
+                Long key = ContactCountMap.packKey(col, row);
+                Integer count = expected.get(key);
+                expected.put(key, count == null ? 1 : count + 1);
+            }
+            assertEquals(expected.size(), map.size());
+
+            ContactRecord[] records = map.toSortedRecords(3);
+            assertEquals(expected.size(), records.length);
+            int i = 0;
+            for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+                ContactRecord record = records[i++];
+                assertEquals(3, record.getBlockNumber());
+                assertEquals((int) (entry.getKey() >>> 32), record.getX());
+                assertEquals((int) entry.getKey().longValue(), record.getY());
+                assertEquals(entry.getValue().intValue(), record.getCounts());
+                assertEquals(record.getCounts(), map.get(record.getX(), record.getY()));
+            }
+        }
+    }
+
+    @Test
+    public void testSort() {
+        Random random = new Random(11);
+        for (int n = 0; n < 300; n += 7) {
+            long[] keys = new long[n];
+            int[] counts = new int[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = random.nextLong();
+                counts[i] = (int) (keys[i] % 1000);
+            }
+            ContactCountMap.sort(keys, counts, 0, n - 1);
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    assertTrue(keys[i - 1] < keys[i]);
+                }
+                assertEquals((int) (keys[i] % 1000), counts[i]);
+            }
+        }
+    }
+}
@@ -27,6 +27,11 @@ public class MatrixZoomData {
     private Map<Integer, Preprocessor.IndexEntry> blockIndex;
     private DatasetReader reader;
 
+    // The block most recently incremented.  Consecutive contacts usually fall in the same block,  this avoids
+    // a boxed map lookup per contact while parsing.
+    private int lastBlockNumber = -1;
+    private Block lastBlock;
+
 
     /**
      * Constructor used by the alignment file parser.
@@ -87,10 +92,15 @@ public class MatrixZoomData {
         int blockRow = yBin / getBlockBinCount();
         int blockNumber = getColumnCount() * blockRow + blockCol;
 
-        Block block = blocks.get(blockNumber);
-        if (block == null) {
-            block = new Block(blockNumber);
-            blocks.put(blockNumber, block);
+        Block block = lastBlock;
+        if (blockNumber != lastBlockNumber) {
+            block = blocks.get(blockNumber);
+            if (block == null) {
+                block = new Block(blockNumber);
+                blocks.put(blockNumber, block);
+            }
+            lastBlockNumber = blockNumber;
+            lastBlock = block;
         }
         block.incrementCount(xBin, yBin);
 
@@ -100,6 +110,8 @@ public class MatrixZoomData {
         for (Block b : blocks.values()) {
             b.parsingComplete();
         }
+        lastBlock = null;
+        lastBlockNumber = -1;
     }
 
     public int getBinSize() {
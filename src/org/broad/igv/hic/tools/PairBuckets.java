@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL), 
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR 
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING, 
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER 
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE 
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES 
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES, 
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER 
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT 
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.hic.tools;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.broad.igv.hic.data.Matrix;
+
+/**
+ * Buckets contacts by chromosome pair so a matrix can be built from its own contacts without re-reading the
+ * input files.  Contacts are buffered in memory per pair and spilled to a temporary file per pair when the
+ * buffer fills,  so at most one spill file is open at a time.  Replaying a bucket returns its contacts in the
+ * order they were added.
+ */
+public class PairBuckets {
+
+    // Ints per in-memory buffer,  2 per contact
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private File directory;
+    private int nChrs;
+    private int[][] buffers;
+    private int[] bufferCounts;
+    private boolean[] spilled;
+
+    /**
+     * @param parentDirectory directory in which to create the temporary spill directory
+     * @param nChrs           number of chromosomes,  including "All" at index 0
+     */
+    public PairBuckets(File parentDirectory, int nChrs) throws IOException {
+        this.nChrs = nChrs;
+        directory = File.createTempFile("hic_pairs", "", parentDirectory);
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create temporary directory: " + directory.getAbsolutePath());
+        }
+        buffers = new int[nChrs * nChrs][];
+        bufferCounts = new int[nChrs * nChrs];
+        spilled = new boolean[nChrs * nChrs];
+    }
+
+    /**
+     * Add a contact for the pair (c1, c2),  c1 <= c2.  The positions are stored as given.
+     */
+    public void add(int c1, int c2, int pos1, int pos2) throws IOException {
+        int key = c1 * nChrs + c2;
+        int[] buffer = buffers[key];
+        if (buffer == null) {
+            buffer = new int[BUFFER_SIZE];
+            buffers[key] = buffer;
+        } else if (bufferCounts[key] == buffer.length) {
+            spill(key);
+        }
+        int n = bufferCounts[key];
+        buffer[n] = pos1;
+        buffer[n + 1] = pos2;
+        bufferCounts[key] = n + 2;
+    }
+
+    /**
+     * @return true if no contact has been added for the pair (c1, c2)
+     */
+    public boolean isEmpty(int c1, int c2) {
+        int key = c1 * nChrs + c2;
+        return !spilled[key] && bufferCounts[key] == 0;
+    }
+
+    private void spill(int key) throws IOException {
+        int[] buffer = buffers[key];
+        int n = bufferCounts[key];
+        byte[] bytes = new byte[4 * n];
+        for (int i = 0, j = 0; i < n; i++) {
+            int v = buffer[i];
+            bytes[j++] = (byte) (v >>> 24);
+            bytes[j++] = (byte) (v >>> 16);
+            bytes[j++] = (byte) (v >>> 8);
+            bytes[j++] = (byte) v;
+        }
+        FileOutputStream fos = new FileOutputStream(getSpillFile(key), true);
+        try {
+            fos.write(bytes);
+        } finally {
+            fos.close();
+        }
+        spilled[key] = true;
+        bufferCounts[key] = 0;
+    }
+
+    private File getSpillFile(int key) {
+        return new File(directory, "pairs_" + key + ".bin");
+    }
+
+    /**
+     * Increment the matrix with every contact in the bucket (c1, c2),  then release the bucket.
+     */
+    public void replay(int c1, int c2, Matrix matrix) throws IOException {
+        int key = c1 * nChrs + c2;
+        if (spilled[key]) {
+            File file = getSpillFile(key);
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024));
+            try {
+                while (true) {
+                    int pos1;
+                    try {
+                        pos1 = dis.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    matrix.incrementCount(pos1, dis.readInt());
+                }
+            } finally {
+                dis.close();
+            }
+            file.delete();
+            spilled[key] = false;
+        }
+        int[] buffer = buffers[key];
+        int n = bufferCounts[key];
+        for (int i = 0; i < n; i += 2) {
+            matrix.incrementCount(buffer[i], buffer[i + 1]);
+        }
+        buffers[key] = null;
+        bufferCounts[key] = 0;
+    }
+
+    /**
+     * Delete any remaining spill files and the temporary directory.
+     */
+    public void delete() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.broad.igv.hic.data.Block;
+import org.broad.igv.hic.data.Chromosome;
 import org.broad.igv.hic.data.ContactRecord;
 import org.broad.igv.hic.data.Matrix;
 import org.broad.igv.hic.data.MatrixZoomData;
@@ -61,19 +62,33 @@ public class Preprocessor {
             // Future -- loop through attributes writing key/value pairs
 
 
-            // Data
-            for (int c1 = 0; c1 < nChrs; c1++) {
-                for (int c2 = c1; c2 < nChrs; c2++) {
-
-                    if ((c1 == 0 && c2 != 0) || (c2 == 0 && c1 != 0)) continue;
-
-                    Matrix matrix = readMatrix(inputFileList, c1, c2);
+            // Data.  The input files are read once,  contacts are bucketed by chromosome pair and each matrix
+            // is then built from its own bucket.
+            File tmpDir = outputFile.getAbsoluteFile().getParentFile();
+            PairBuckets buckets = new PairBuckets(tmpDir, nChrs);
+            try {
+                Matrix wholeGenomeMatrix = readPairs(inputFileList, buckets);
+                wholeGenomeMatrix.parsingComplete();
+                System.out.println("writing matrix: " + wholeGenomeMatrix.getKey());
+                writeMatrix(wholeGenomeMatrix);
+                wholeGenomeMatrix = null;
+
+                for (int c1 = 1; c1 < nChrs; c1++) {
+                    for (int c2 = c1; c2 < nChrs; c2++) {
+                        // Pairs without contacts are left out of the master index,  the reader returns null
+                        if (buckets.isEmpty(c1, c2)) {
+                            continue;
+                        }
+                        Matrix matrix = new Matrix(c1, c2);
+                        buckets.replay(c1, c2, matrix);
+                        matrix.parsingComplete();
 
-                    if (matrix != null) {
                         System.out.println("writing matrix: " + matrix.getKey());
                         writeMatrix(matrix);
                     }
                 }
+            } finally {
+                buckets.delete();
             }
 
 
@@ -86,30 +101,17 @@ public class Preprocessor {
         updateIndexPositions();
     }
 
-    /*
-                    for (File inputFile : inputFileList) {
-                        InputStream fis = new FileInputStream(inputFile);
-                        if (inputFile.getName().endsWith(".gz")) {
-                            fis = new GZIPInputStream(fis);
-                        }
-                        isList.add(fis);
-                    }
-
+    /**
+     * Read all input files in a single pass.  Contacts for each chromosome pair are added to their bucket,  in
+     * the orientation expected by Matrix.incrementCount,  and the whole genome matrix is accumulated directly.
+     *
+     * @return the whole genome matrix
      */
+    private Matrix readPairs(List<String> inputFileList, PairBuckets buckets) throws IOException {
 
-    public Matrix readMatrix(List<String> inputFileList, int c1, int c2) throws IOException {
-
-        boolean isWholeGenome = (c1 == 0 && c2 == 0);
-
-        Matrix matrix = null;
-
-        if (isWholeGenome) {
-            int genomeLength = HiCTools.chromosomes[0].getSize();  // <= whole genome in KB
-            int binSize = genomeLength / 500;
-            matrix = new Matrix(c1, c2, binSize);
-        } else {
-            matrix = new Matrix(c1, c2);
-        }
+        int genomeLength = HiCTools.chromosomes[0].getSize();  // <= whole genome in KB
+        int binSize = genomeLength / 500;
+        Matrix wholeGenomeMatrix = new Matrix(0, 0, binSize);
 
         for (String file : inputFileList) {
 
@@ -126,52 +128,53 @@ public class Preprocessor {
                 Integer chr2 = HiCTools.chromosomeOrdinals.get(pair.getChr2());
                 if (chr1 != null && chr2 != null) {
 
-                    if (isWholeGenome) {
-                        pos1 = getGenomicPosition(chr1, pos1);
-                        pos2 = getGenomicPosition(chr2, pos2);
-                        incrementCount(matrix, c1, pos1, c2, pos2);
-                    } else if ((c1 == chr1 && c2 == chr2) || (c1 == chr2 && c2 == chr1)) {
-                        incrementCount(matrix, chr1, pos1, chr2, pos2);
+                    wholeGenomeMatrix.incrementCount(getGenomicPosition(chr1, pos1), getGenomicPosition(chr2, pos2));
+
+                    if (chr1 == 0 || chr2 == 0) {
+                        continue;
+                    }
+                    // Transpose as in incrementCount,  the bucket is keyed by the lower chromosome
+                    if (chr2 > chr1) {
+                        buckets.add(chr1, chr2, pos2, pos1);
+                    } else {
+                        buckets.add(chr2, chr1, pos1, pos2);
                     }
                 }
             }
 
             iter.close();
-
         }
-
-
-        matrix.parsingComplete();
-        return matrix;
+        return wholeGenomeMatrix;
     }
 
     private static int getGenomicPosition(int chr, int pos) {
-        long len = 0;
-        for (int i = 1; i < chr; i++) {
-            len += HiCTools.chromosomes[i].getSize();
-        }
+        long len = getChromosomeOffsets()[chr];
         len += pos;
 
         return (int) (len / 1000);
 
     }
 
-    private static void incrementCount(Matrix matrix, int chr1, int pos1, int chr2, int pos2) {
+    private static Chromosome[] offsetChromosomes;
+    private static long[] chromosomeOffsets;
 
-        if (chr2 > chr1) {
-            //transpose
-            int tc2 = chr2;
-            int tp2 = pos2;
-            chr2 = chr1;
-            pos2 = pos1;
-            chr1 = tc2;
-            pos1 = tp2;
+    /**
+     * @return the genomic offset of each chromosome,  i.e. the summed size of the chromosomes preceding it
+     */
+    private static synchronized long[] getChromosomeOffsets() {
+        if (chromosomeOffsets == null || offsetChromosomes != HiCTools.chromosomes) {
+            Chromosome[] chromosomes = HiCTools.chromosomes;
+            chromosomeOffsets = new long[chromosomes.length];
+            long len = 0;
+            for (int i = 1; i < chromosomes.length; i++) {
+                chromosomeOffsets[i] = len;
+                len += chromosomes[i].getSize();
+            }
+            offsetChromosomes = chromosomes;
         }
-
-        matrix.incrementCount(pos1, pos2);
+        return chromosomeOffsets;
     }
 
-
     public void updateIndexPositions() throws IOException {
         RandomAccessFile raf = null;
         try {
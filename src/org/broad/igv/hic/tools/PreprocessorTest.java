@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.hic.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.broad.igv.hic.data.Block;
+import org.broad.igv.hic.data.Chromosome;
+import org.broad.igv.hic.data.ContactRecord;
+import org.broad.igv.hic.data.DatasetReader;
+import org.broad.igv.hic.data.Matrix;
+import org.broad.igv.hic.data.MatrixZoomData;
+import org.broad.tribble.util.SeekableFileStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PreprocessorTest {
+
+    private Chromosome[] chromosomes;
+    private Map<String, Integer> chromosomeOrdinals;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        chromosomes = HiCTools.chromosomes;
+        chromosomeOrdinals = HiCTools.chromosomeOrdinals;
+        HiCTools.chromosomes = new Chromosome[]{
+                new Chromosome(0, "All", 10000),
+                new Chromosome(1, "chr1", 5000000),
+                new Chromosome(2, "chr2", 3000000),
+                new Chromosome(3, "chr3", 2000000)};
+        HiCTools.chromosomeOrdinals = new HashMap<String, Integer>();
+        for (Chromosome c : HiCTools.chromosomes) {
+            HiCTools.chromosomeOrdinals.put(c.getName(), c.getIndex());
+        }
+        directory = File.createTempFile("preprocessor", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        HiCTools.chromosomes = chromosomes;
+        HiCTools.chromosomeOrdinals = chromosomeOrdinals;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Matrices written from the single pass read back with the counts of a matrix built directly from the
+     * contacts.  Chromosome pairs without contacts are not written.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        Map<String, Matrix> expected = new HashMap<String, Matrix>();
+        expected.put("0_0", new Matrix(0, 0, HiCTools.chromosomes[0].getSize() / 500));
+        expected.put("1_1", new Matrix(1, 1));
+        expected.put("1_2", new Matrix(1, 2));
+        expected.put("2_2", new Matrix(2, 2));
+        long[] offsets = {0, 0, 5000000, 8000000};
+
+        File pairs = new File(directory, "pairs.txt");
+        PrintWriter pw = new PrintWriter(pairs);
+        Random random = new Random(7);
+        for (int i = 0; i < 3000; i++) {
+            int c1 = 1 + random.nextInt(2);
+            int c2 = 1 + random.nextInt(2);
+            int pos1 = random.nextInt(HiCTools.chromosomes[c1].getSize());
+            int pos2 = random.nextInt(HiCTools.chromosomes[c2].getSize());
+            pw.println("r" + i + " chr" + c1 + " " + pos1 + " 0 0 chr" + c2 + " " + pos2 + " 0");
+
+            expected.get("0_0").incrementCount((int) ((offsets[c1] + pos1) / 1000),
+                    (int) ((offsets[c2] + pos2) / 1000));
+            // The matrix of the lower chromosome pair,  positions of the higher chromosome first
+            if (c2 > c1) {
+                expected.get(c1 + "_" + c2).incrementCount(pos2, pos1);
+            } else {
+                expected.get(c2 + "_" + c1).incrementCount(pos1, pos2);
+            }
+        }
+        // Unknown chromosomes are skipped
+        pw.println("r chrUn 100 0 0 chr1 100 0");
+        pw.close();
+
+        File output = new File(directory, "test.hic");
+        new Preprocessor(output).preprocess(Arrays.asList(pairs.getAbsolutePath()), "test");
+
+        DatasetReader reader = new DatasetReader(new SeekableFileStream(output));
+        reader.read();
+        for (Matrix matrix : expected.values()) {
+            matrix.parsingComplete();
+            Matrix read = reader.readMatrix(matrix.getKey());
+            assertNotNull(matrix.getKey(), read);
+            assertEquals(matrix.zoomData.length, read.zoomData.length);
+            for (int z = 0; z < matrix.zoomData.length; z++) {
+                assertZoomDataEquals(matrix.zoomData[z], read.zoomData[z]);
+            }
+        }
+        assertNull(reader.readMatrix("1_3"));
+        assertNull(reader.readMatrix("3_3"));
+    }
+
+    private static void assertZoomDataEquals(MatrixZoomData expected, MatrixZoomData read) {
+        assertEquals(expected.getBinSize(), read.getBinSize());
+        assertEquals(expected.getBlockBinCount(), read.getBlockBinCount());
+        assertEquals(expected.getColumnCount(), read.getColumnCount());
+        int nBlocks = expected.getColumnCount() * expected.getColumnCount();
+        for (int b = 0; b < nBlocks; b++) {
+            Block block = expected.getBlocks().get(b);
+            Block readBlock = read.getBlock(b);
+            if (block == null) {
+                assertNull(readBlock);
+                continue;
+            }
+            ContactRecord[] records = block.getContactRecords();
+            ContactRecord[] readRecords = readBlock.getContactRecords();
+            assertEquals(records.length, readRecords.length);
+            for (int i = 0; i < records.length; i++) {
+                assertEquals(records[i].getX(), readRecords[i].getX());
+                assertEquals(records[i].getY(), readRecords[i].getY());
+                assertEquals(records[i].getCounts(), readRecords[i].getCounts());
+            }
+        }
+    }
+}
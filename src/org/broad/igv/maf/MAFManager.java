@@ -50,6 +50,11 @@ public class MAFManager {
             "choHof1", "monDom4", "ornAna1", "galGal3", "taeGut1", "anoCar1",
             "xenTro2", "tetNig1", "fr2", "gasAcu1", "oryLat28", "danRer5", "petMar1"
     };
+    private static final LRUCache.Weigher<MAFTile> TILE_WEIGHER = new LRUCache.Weigher<MAFTile>() {
+        public long getSize(MAFTile tile) {
+            return tile.getSizeEstimate();
+        }
+    };
     public static Properties speciesNames;
     private int tileSize = 500;
     LRUCache<String, MAFTile> tileCache;
@@ -60,7 +65,7 @@ public class MAFManager {
     String refId;
 
     public MAFManager(ResourceLocator locator) {
-        tileCache = new LRUCache(this, 10);
+        tileCache = new LRUCache(this, 10, TILE_WEIGHER);
         if (speciesNames == null) {
             loadNames();
         }
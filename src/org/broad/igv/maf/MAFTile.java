@@ -84,6 +84,20 @@ public class MAFTile {
         }
     }
 
+    long getSizeEstimate() {
+        long size = 64 + 32L * gaps.size();
+        if (gapAdjustedIdx != null) {
+            size += 4L * gapAdjustedIdx.length;
+        }
+        if (alignedSequences != null) {
+            // The reference sequence is one of the aligned sequences
+            for (MASequence seq : alignedSequences.values()) {
+                size += 64 + (seq.bases == null ? 0 : 2L * seq.bases.length());
+            }
+        }
+        return size;
+    }
+
     /**
      * @return the gaps
      */
@@ -92,7 +92,13 @@ public class OmegaDataSource extends AbstractDataSource implements DataSource {
     }
 
 
-    LRUCache<String, DataTile> tileCache = new LRUCache(this, 3);
+    private static final LRUCache.Weigher<DataTile> TILE_WEIGHER = new LRUCache.Weigher<DataTile>() {
+        public long getSize(DataTile tile) {
+            return tile.getSizeEstimate();
+        }
+    };
+
+    LRUCache<String, DataTile> tileCache = new LRUCache(this, 3, TILE_WEIGHER);
 
     @Override
     public DataTile getRawData(String chr, int startLocation, int endLocation) {
@@ -23,117 +23,194 @@ import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.ui.IGV;
 
 /**
+ * Base counts for the coverage track.
+ * <p/>
+ * Storage is columnar and compact.  Per strand totals and the total quality are kept in packed counters that
+ * start at one byte per position and widen only on overflow.  Counts of individual bases are stored only for
+ * bases that differ from the reference,  in a small record allocated the first time a mismatch is seen at a
+ * position.  Counts for the reference base are derived as the total minus the mismatches.
+ *
 * @author jrobinso
 * @date Feb 23, 2011
 */
 public class AlignmentCounts {
 
     private static Logger log = Logger.getLogger(AlignmentCounts.class);
-    
+
+    // Base categories.  OTHER holds bases that are counted in the totals but not reported individually (e.g. '=')
+    private static final int A = 0;
+    private static final int C = 1;
+    private static final int G = 2;
+    private static final int T = 3;
+    private static final int N = 4;
+    private static final int OTHER = 5;
+    private static final int UNKNOWN = -1;
+    private static final int NCATEGORIES = 6;
+
+    // Offsets into a mismatch record
+    private static final int POS_COUNTS = 0;
+    private static final int NEG_COUNTS = NCATEGORIES;
+    private static final int QUALITIES = 2 * NCATEGORIES;
+    private static final int RECORD_SIZE = 3 * NCATEGORIES;
+
+    private static final int[] BASE_CATEGORY = new int[256];
+
+    static {
+        for (int i = 0; i < BASE_CATEGORY.length; i++) {
+            BASE_CATEGORY[i] = OTHER;
+        }
+        BASE_CATEGORY['A'] = BASE_CATEGORY['a'] = A;
+        BASE_CATEGORY['C'] = BASE_CATEGORY['c'] = C;
+        BASE_CATEGORY['G'] = BASE_CATEGORY['g'] = G;
+        BASE_CATEGORY['T'] = BASE_CATEGORY['t'] = T;
+        BASE_CATEGORY['N'] = BASE_CATEGORY['n'] = N;
+    }
+
     String genomeId;
     //String chr;
     int start;
     int end;
     byte[] reference;
     // counts
-    int[] posA;
-    int[] posT;
-    int[] posC;
-    int[] posG;
-    int[] posN;
-    int[] negA;
-    int[] negT;
-    int[] negC;
-    int[] negG;
-    int[] negN;
-    int[] qA;
-    int[] qT;
-    int[] qC;
-    int[] qG;
-    int[] qN;
-    int[] posTotal;
-    int[] negTotal;
-    private int[] totalQ;
+    private PackedCountArray posTotal;
+    private PackedCountArray negTotal;
+    private PackedCountArray totalQ;
+    // Mismatch records,  null at positions where every base matched the reference
+    private int[][] mismatches;
     private int maxCount = 0;
 
     public AlignmentCounts(String chr, int start, int end) {
 
-        Genome genome = IGV.getInstance().getGenomeManager().getCurrentGenome();
-        this.genomeId = genome.getId();
-        String chrAlias = genome.getChromosomeAlias(chr);
+        this(IGV.hasInstance() ? IGV.getInstance().getGenomeManager().getCurrentGenome() : null, chr, start, end);
+    }
+
+    private AlignmentCounts(Genome genome, String chr, int start, int end) {
+        this(genome == null ? null : genome.getId(), start, end,
+                genome == null ? null : genome.getSequence(genome.getChromosomeAlias(chr), start, end));
+    }
+
+    /**
+     * @param reference the reference sequence from start to end,  or null if unknown
+     */
+    AlignmentCounts(String genomeId, int start, int end, byte[] reference) {
+        this.genomeId = genomeId;
         this.start = start;
         this.end = end;
-        reference = genome.getSequence(chrAlias, start, end);
+        this.reference = reference;
 
         int nPts = end - start;
-        posA = new int[nPts];
-        posT = new int[nPts];
-        posC = new int[nPts];
-        posG = new int[nPts];
-        posN = new int[nPts];
-        posTotal = new int[nPts];
-        negA = new int[nPts];
-        negT = new int[nPts];
-        negC = new int[nPts];
-        negG = new int[nPts];
-        negN = new int[nPts];
-        negTotal = new int[nPts];
-        qA = new int[nPts];
-        qT = new int[nPts];
-        qC = new int[nPts];
-        qG = new int[nPts];
-        qN = new int[nPts];
-        totalQ = new int[nPts];
+        posTotal = new PackedCountArray(nPts);
+        negTotal = new PackedCountArray(nPts);
+        totalQ = new PackedCountArray(nPts);
+        mismatches = new int[nPts][];
     }
 
-    public int getTotalCount(int pos) {
-        int offset = pos - start;
-        if (offset < 0 || offset >= posA.length) {
+    /**
+     * @return an estimate of the heap used by the count arrays,  in bytes
+     */
+    public long getSizeEstimate() {
+        long size = posTotal.getSizeEstimate() + negTotal.getSizeEstimate() + totalQ.getSizeEstimate() +
+                4L * mismatches.length + (reference == null ? 0 : reference.length);
+        for (int[] record : mismatches) {
+            if (record != null) {
+                size += 16 + 4 * RECORD_SIZE;
+            }
+        }
+        return size;
+    }
+
+    private boolean checkRange(int offset, int pos) {
+        if (offset < 0 || offset >= mismatches.length) {
             if (log.isDebugEnabled()) {
                 log.debug("Position out of range: " + pos + " (valid range - " + start + "-" + end);
             }
+            return false;
+        }
+        return true;
+    }
+
+    private static int getCategory(byte b) {
+        switch (b) {
+            case 'a':
+            case 'A':
+                return A;
+            case 't':
+            case 'T':
+                return T;
+            case 'c':
+            case 'C':
+                return C;
+            case 'g':
+            case 'G':
+                return G;
+            case 'n':
+            case 'N':
+                return N;
+        }
+        return UNKNOWN;
+    }
+
+    private int getReferenceCategory(int offset) {
+        return (reference == null || offset >= reference.length) ? UNKNOWN : BASE_CATEGORY[reference[offset] & 0xFF];
+    }
+
+    /**
+     * Return the value of one field (pos count, neg count, or quality) for a base category.  Values for the
+     * reference base are not stored,  they are the total less the sum of the mismatches.
+     */
+    private int getValue(int offset, int category, int field, int total) {
+        int[] record = mismatches[offset];
+        if (category != getReferenceCategory(offset)) {
+            return record == null ? 0 : record[field + category];
+        }
+        if (record == null) {
+            return total;
+        }
+        int value = total;
+        for (int i = 0; i < NCATEGORIES; i++) {
+            if (i != category) {
+                value -= record[field + i];
+            }
+        }
+        return value;
+    }
+
+    public int getTotalCount(int pos) {
+        int offset = pos - start;
+        if (!checkRange(offset, pos)) {
             return 0;
         } else {
-            return posTotal[offset] + negTotal[offset];
+            return posTotal.get(offset) + negTotal.get(offset);
 
         }
     }
 
     public int getNegTotal(int pos) {
         int offset = pos - start;
-        if (offset < 0 || offset >= posA.length) {
-            if (log.isDebugEnabled()) {
-                log.debug("Position out of range: " + pos + " (valid range - " + start + "-" + end);
-            }
+        if (!checkRange(offset, pos)) {
             return 0;
         } else {
-            return negTotal[offset];
+            return negTotal.get(offset);
 
         }
     }
 
     public int getPosTotal(int pos) {
         int offset = pos - start;
-        if (offset < 0 || offset >= posA.length) {
-            if (log.isDebugEnabled()) {
-                log.debug("Position out of range: " + pos + " (valid range - " + start + "-" + end);
-            }
+        if (!checkRange(offset, pos)) {
             return 0;
         } else {
-            return posTotal[offset];
+            return posTotal.get(offset);
 
         }
     }
 
     public int getTotalQuality(int pos) {
         int offset = pos - start;
-        if (offset < 0 || offset >= posA.length) {
-            if (log.isDebugEnabled()) {
-                log.debug("Position out of range: " + pos + " (valid range - " + start + "-" + end);
-            }
+        if (!checkRange(offset, pos)) {
             return 0;
         } else {
-            return totalQ[offset];
+            return totalQ.get(offset);
 
         }
     }
@@ -160,119 +237,59 @@ public class AlignmentCounts {
 
     public int getCount(int pos, byte b) {
         int offset = pos - start;
-        if (offset < 0 || offset >= posA.length) {
-            if (log.isDebugEnabled()) {
-                log.debug("Position out of range: " + pos + " (valid range - " + start + "-" + end);
-            }
+        if (!checkRange(offset, pos)) {
             return 0;
         } else {
-            switch (b) {
-                case 'a':
-                case 'A':
-                    return posA[offset] + negA[offset];
-                case 't':
-                case 'T':
-                    return posT[offset] + negT[offset];
-                case 'c':
-                case 'C':
-                    return posC[offset] + negC[offset];
-                case 'g':
-                case 'G':
-                    return posG[offset] + negG[offset];
-                case 'n':
-                case 'N':
-                    return posN[offset] + negN[offset];
+            int category = getCategory(b);
+            if (category == UNKNOWN) {
+                log.debug("Unknown nucleotide: " + b);
+                return 0;
             }
-            log.debug("Unknown nucleotide: " + b);
-            return 0;
+            return getValue(offset, category, POS_COUNTS, posTotal.get(offset)) +
+                    getValue(offset, category, NEG_COUNTS, negTotal.get(offset));
         }
     }
 
     public int getNegCount(int pos, byte b) {
         int offset = pos - start;
-        if (offset < 0 || offset >= posA.length) {
-            if (log.isDebugEnabled()) {
-                log.debug("Position out of range: " + pos + " (valid range - " + start + "-" + end);
-            }
+        if (!checkRange(offset, pos)) {
             return 0;
         } else {
-            switch (b) {
-                case 'a':
-                case 'A':
-                    return negA[offset];
-                case 't':
-                case 'T':
-                    return negT[offset];
-                case 'c':
-                case 'C':
-                    return negC[offset];
-                case 'g':
-                case 'G':
-                    return negG[offset];
-                case 'n':
-                case 'N':
-                    return negN[offset];
+            int category = getCategory(b);
+            if (category == UNKNOWN) {
+                log.error("Unknown nucleotide: " + b);
+                return 0;
             }
-            log.error("Unknown nucleotide: " + b);
-            return 0;
+            return getValue(offset, category, NEG_COUNTS, negTotal.get(offset));
         }
     }
 
     public int getPosCount(int pos, byte b) {
         int offset = pos - start;
-        if (offset < 0 || offset >= posA.length) {
-            if (log.isDebugEnabled()) {
-                log.debug("Position out of range: " + pos + " (valid range - " + start + "-" + end);
-            }
+        if (!checkRange(offset, pos)) {
             return 0;
         } else {
-            switch (b) {
-                case 'a':
-                case 'A':
-                    return posA[offset];
-                case 't':
-                case 'T':
-                    return posT[offset];
-                case 'c':
-                case 'C':
-                    return posC[offset];
-                case 'g':
-                case 'G':
-                    return posG[offset];
-                case 'n':
-                case 'N':
-                    return posN[offset];
+            int category = getCategory(b);
+            if (category == UNKNOWN) {
+                log.error("Unknown nucleotide: " + b);
+                return 0;
             }
-            log.error("Unknown nucleotide: " + b);
-            return 0;
+            return getValue(offset, category, POS_COUNTS, posTotal.get(offset));
         }
     }
 
     public int getQuality(int pos, byte b) {
         int offset = pos - start;
-        if (offset < 0 || offset >= posA.length) {
+        if (offset < 0 || offset >= mismatches.length) {
             log.error("Position out of range: " + pos + " (valid range - " + start + "-" + end);
             return 0;
         } else {
-            switch (b) {
-                case 'a':
-                case 'A':
-                    return qA[offset];
-                case 't':
-                case 'T':
-                    return qT[offset];
-                case 'c':
-                case 'C':
-                    return qC[offset];
-                case 'g':
-                case 'G':
-                    return qG[offset];
-                case 'n':
-                case 'N':
-                    return qN[offset];
+            int category = getCategory(b);
+            if (category == UNKNOWN) {
+                log.error("Unknown nucleotide: " + b);
+                return 0;
             }
-            log.error("Unknown nucleotide: " + posN);
-            return 0;
+            return getValue(offset, category, QUALITIES, totalQ.get(offset));
         }
     }
 
@@ -322,62 +339,29 @@ public class AlignmentCounts {
     private void incCount(int pos, byte b, byte q, boolean isNegativeStrand) {
 
         int offset = pos - start;
-        if (offset >= 0 && offset < posA.length) {
-            switch (b) {
-                case 'a':
-                case 'A':
-                    if (isNegativeStrand) {
-                        negA[offset] = negA[offset] + 1;
-                    } else {
-                        posA[offset] = posA[offset] + 1;
-                    }
-                    qA[offset] = qA[offset] + q;
-                    break;
-                case 't':
-                case 'T':
-                    if (isNegativeStrand) {
-                        negT[offset] = negT[offset] + 1;
-                    } else {
-                        posT[offset] = posT[offset] + 1;
-                    }
-                    qT[offset] = qT[offset] + q;
-                    break;
-                case 'c':
-                case 'C':
-                    if (isNegativeStrand) {
-                        negC[offset] = negC[offset] + 1;
-                    } else {
-                        posC[offset] = posC[offset] + 1;
-                    }
-                    qC[offset] = qC[offset] + q;
-                    break;
-                case 'g':
-                case 'G':
-                    if (isNegativeStrand) {
-                        negG[offset] = negG[offset] + 1;
-                    } else {
-                        posG[offset] = posG[offset] + 1;
-                    }
-                    qG[offset] = qG[offset] + q;
-                    break;
-                case 'n':
-                case 'N':
-                    if (isNegativeStrand) {
-                        negN[offset] = negN[offset] + 1;
-                    } else {
-                        posN[offset] = posN[offset] + 1;
-                    }
-                    qN[offset] = qN[offset] + q;
-
+        if (offset >= 0 && offset < mismatches.length) {
+            // Quality is unsigned in the packed counters,  clamp the (never expected) negative values
+            int quality = Math.max(0, q);
+            int category = BASE_CATEGORY[b & 0xFF];
+            if (category != getReferenceCategory(offset)) {
+                int[] record = mismatches[offset];
+                if (record == null) {
+                    record = new int[RECORD_SIZE];
+                    mismatches[offset] = record;
+                }
+                record[(isNegativeStrand ? NEG_COUNTS : POS_COUNTS) + category]++;
+                record[QUALITIES + category] += quality;
             }
+
+            int total;
             if (isNegativeStrand) {
-                negTotal[offset] = negTotal[offset] + 1;
+                total = negTotal.add(offset, 1) + posTotal.get(offset);
             } else {
-                posTotal[offset] = posTotal[offset] + 1;
+                total = posTotal.add(offset, 1) + negTotal.get(offset);
             }
-            totalQ[offset] = totalQ[offset] + q;
+            totalQ.add(offset, quality);
 
-            maxCount = Math.max(posTotal[offset] + negTotal[offset], maxCount);
+            maxCount = Math.max(total, maxCount);
         }
     }
 
@@ -399,7 +383,7 @@ public class AlignmentCounts {
      * @return the totalQ
      */
     public int[] getTotalQ() {
-        return totalQ;
+        return totalQ.toArray();
     }
 
     /**
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.sam;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AlignmentCountsTest {
+
+    private static final byte[] BASES = "ACGTNacgtn=".getBytes();
+    private static final byte[] QUERY_BASES = "ACGTNacgtn".getBytes();
+
+    /**
+     * The counts as stored before packing,  one int array per base,  strand and quality
+     */
+    static class UnpackedCounts {
+
+        final int start;
+        final int[][] pos;
+        final int[][] neg;
+        final int[][] q;
+        final int[] posTotal;
+        final int[] negTotal;
+        final int[] totalQ;
+        int maxCount;
+
+        UnpackedCounts(int start, int end) {
+            this.start = start;
+            int n = end - start;
+            pos = new int[5][n];
+            neg = new int[5][n];
+            q = new int[5][n];
+            posTotal = new int[n];
+            negTotal = new int[n];
+            totalQ = new int[n];
+        }
+
+        static int index(byte b) {
+            switch (b) {
+                case 'a':
+                case 'A':
+                    return 0;
+                case 'c':
+                case 'C':
+                    return 1;
+                case 'g':
+                case 'G':
+                    return 2;
+                case 't':
+                case 'T':
+                    return 3;
+                case 'n':
+                case 'N':
+                    return 4;
+            }
+            return -1;
+        }
+
+        void incCount(int p, byte b, byte quality, boolean negative) {
+            int offset = p - start;
+            if (offset < 0 || offset >= posTotal.length) {
+                return;
+            }
+            int i = index(b);
+            if (i >= 0) {
+                if (negative) {
+                    neg[i][offset]++;
+                } else {
+                    pos[i][offset]++;
+                }
+                q[i][offset] += quality;
+            }
+            if (negative) {
+                negTotal[offset]++;
+            } else {
+                posTotal[offset]++;
+            }
+            totalQ[offset] += quality;
+            maxCount = Math.max(posTotal[offset] + negTotal[offset], maxCount);
+        }
+    }
+
+    private static Alignment alignment(final AlignmentBlock block, final boolean negative) {
+        return (Alignment) Proxy.newProxyInstance(Alignment.class.getClassLoader(), new Class[]{Alignment.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getAlignmentBlocks")) return new AlignmentBlock[]{block};
+                        if (name.equals("isNegativeStrand")) return negative;
+                        if (name.equals("getAlignmentStart")) return block.getStart();
+                        if (name.equals("getAlignmentEnd")) return block.getEnd();
+                        return null;
+                    }
+                });
+    }
+
+    private static void add(AlignmentCounts counts, UnpackedCounts expected, int start, byte[] bases,
+                            byte[] qualities, boolean negative) {
+        counts.incCounts(alignment(new AlignmentBlock(start, bases, qualities), negative));
+        for (int i = 0; i < bases.length; i++) {
+            expected.incCount(start + i, bases[i], qualities[i], negative);
+        }
+    }
+
+    private static void assertCountsEqual(UnpackedCounts expected, AlignmentCounts counts) {
+        for (int p = counts.getStart(); p < counts.getEnd(); p++) {
+            int offset = p - expected.start;
+            assertEquals(expected.posTotal[offset], counts.getPosTotal(p));
+            assertEquals(expected.negTotal[offset], counts.getNegTotal(p));
+            assertEquals(expected.posTotal[offset] + expected.negTotal[offset], counts.getTotalCount(p));
+            assertEquals(expected.totalQ[offset], counts.getTotalQuality(p));
+            for (byte b : QUERY_BASES) {
+                int i = UnpackedCounts.index(b);
+                int pos = expected.pos[i][offset];
+                int neg = expected.neg[i][offset];
+                int q = expected.q[i][offset];
+                String msg = "position " + p + " base " + (char) b;
+                assertEquals(msg, pos, counts.getPosCount(p, b));
+                assertEquals(msg, neg, counts.getNegCount(p, b));
+                assertEquals(msg, pos + neg, counts.getCount(p, b));
+                assertEquals(msg, q, counts.getQuality(p, b));
+                assertEquals(msg, pos + neg == 0 ? 0 : q / (pos + neg), counts.getAvgQuality(p, b));
+            }
+        }
+        assertEquals(0, counts.getTotalCount(counts.getStart() - 1));
+        assertEquals(0, counts.getTotalCount(counts.getEnd()));
+        assertArrayEquals(expected.totalQ, counts.getTotalQ());
+        assertEquals(expected.maxCount, counts.getMaxCount());
+    }
+
+    private static void testRandomReads(byte[] reference) {
+        int start = 1000;
+        int end = 1200;
+        AlignmentCounts counts = new AlignmentCounts("test", start, end, reference);
+        UnpackedCounts expected = new UnpackedCounts(start, end);
+
+        Random random = new Random(11);
+        for (int r = 0; r < 2000; r++) {
+            int readStart = start - 20 + random.nextInt(end - start);
+            int length = 10 + random.nextInt(40);
+            byte[] bases = new byte[length];
+            byte[] qualities = new byte[length];
+            for (int i = 0; i < length; i++) {
+                int offset = readStart + i - start;
+                // Mostly reference bases,  with mismatches,  lower case bases,  Ns and '='
+                if (reference != null && offset >= 0 && offset < reference.length && random.nextInt(4) != 0) {
+                    bases[i] = reference[offset];
+                } else {
+                    bases[i] = BASES[random.nextInt(BASES.length)];
+                }
+                qualities[i] = (byte) random.nextInt(60);
+            }
+            add(counts, expected, readStart, bases, qualities, random.nextBoolean());
+        }
+        assertCountsEqual(expected, counts);
+    }
+
+    @Test
+    public void testMatchesUnpackedCounts() {
+        byte[] reference = new byte[200];
+        Random random = new Random(5);
+        for (int i = 0; i < reference.length; i++) {
+            reference[i] = "ACGTNacgt".getBytes()[random.nextInt(9)];
+        }
+        testRandomReads(reference);
+    }
+
+    @Test
+    public void testNoReference() {
+        testRandomReads(null);
+    }
+
+    /**
+     * Depth beyond the byte and short ranges of the packed counters
+     */
+    @Test
+    public void testDeepCoverage() {
+        byte[] reference = "ACGTACGTAC".getBytes();
+        AlignmentCounts counts = new AlignmentCounts("test", 0, 10, reference);
+        UnpackedCounts expected = new UnpackedCounts(0, 10);
+        byte[] bases = "ACGTTCGTAC".getBytes();
+        byte[] qualities = new byte[bases.length];
+        for (int i = 0; i < qualities.length; i++) {
+            qualities[i] = 40;
+        }
+        for (int r = 0; r < 70000; r++) {
+            add(counts, expected, 0, bases, qualities, r % 3 == 0);
+            if (r == 200 || r == 300 || r == 66000) {
+                assertCountsEqual(expected, counts);
+            }
+        }
+        assertCountsEqual(expected, counts);
+        assertEquals(70000, counts.getMaxCount());
+    }
+}
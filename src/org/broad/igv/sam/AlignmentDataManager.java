@@ -27,6 +27,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JOptionPane;
 
@@ -59,7 +60,8 @@ public class AlignmentDataManager {
      * Map of reference frame -> alignment interval
      */
     //TODO -- this is a  potential memory leak, this map needs cleared when the gene list changes
-    private HashMap<String, AlignmentInterval> loadedIntervalMap = new HashMap(50);
+    // Keyed by frame name.  Concurrent,  the event thread reads intervals while snapshot workers load others
+    private Map<String, AlignmentInterval> loadedIntervalMap = new ConcurrentHashMap<String, AlignmentInterval>(50);
 
     HashMap<String, String> chrMappings = new HashMap();
     private boolean isLoading = false;
@@ -82,7 +84,8 @@ public class AlignmentDataManager {
             MultiFileWrapper mfw = MultiFileWrapper.parse(locator);
             reader = new CachingQueryReader(new SamListReader(mfw.getLocators()));
         } else {
-            reader = new CachingQueryReader(AlignmentReaderFactory.getReader(locator));
+            reader = new CachingQueryReader(AlignmentReaderFactory.getReader(locator),
+                    locator.getPath().toLowerCase().endsWith(".bam") ? locator : null);
         }
         peStats = new HashMap();
         initChrMap();
@@ -152,8 +155,10 @@ public class AlignmentDataManager {
      */
     public AlignmentInterval getLoadedInterval(RenderContext context) {
         ReferenceFrame frame = context.getReferenceFrame();
-        if (!loadedIntervalMap.containsKey(frame.getName())) {
-            // IF in batch mode force a load of the interval if its missing
+        AlignmentInterval interval = loadedIntervalMap.get(frame.getName());
+        if (interval == null ||
+                !interval.contains(context.getChr(), (int) context.getOrigin(), (int) context.getEndLocation())) {
+            // IF in batch mode force a load of the interval if its missing or stale
             if (Globals.isBatch()) {
                 int start = Math.max(0, (int) context.getOrigin() - 100);
                 int end = (int) context.getEndLocation() + 100;
@@ -290,6 +295,8 @@ public class AlignmentDataManager {
         if (loadedInterval == null || !loadedInterval.contains(chr, start, end)) {
             log.debug("Loading alignments: " + chr + ":" + start + "-" + end);
             loadAlignments(chr, start, end, context);
+            // Loads run synchronously in batch mode
+            loadedInterval = loadedIntervalMap.get(context.getReferenceFrame().getName());
         }
 
         // If there is any overlap in the loaded interval and the requested interval return it.
@@ -306,6 +313,13 @@ public class AlignmentDataManager {
         loadedIntervalMap.clear();
     }
 
+    /**
+     * Release the interval loaded for a reference frame.
+     */
+    public void clear(String frameName) {
+        loadedIntervalMap.remove(frameName);
+    }
+
     public void loadAlignments(final String chr, final int start, final int end, final RenderContext context) {
 
         if (isLoading || chr.equals(Globals.CHR_ALL)) {
@@ -306,6 +306,11 @@ public class AlignmentTrack extends AbstractTrack implements DragListener {
         renderOptions = new RenderOptions();
     }
 
+    @Override
+    public void clearFrameCache(String frameName) {
+        dataManager.clear(frameName);
+    }
+
 
     /**
      * Sort alignment rows such that alignments that intersect from the
@@ -36,6 +36,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sf.samtools.SAMFileHeader;
 import net.sf.samtools.util.CloseableIterator;
@@ -44,10 +52,13 @@ import org.apache.log4j.Logger;
 import org.broad.igv.PreferenceManager;
 import org.broad.igv.exceptions.DataLoadException;
 import org.broad.igv.sam.reader.AlignmentQueryReader;
+import org.broad.igv.sam.reader.AlignmentReaderFactory;
 import org.broad.igv.sam.reader.ReadGroupFilter;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.util.LRUCache;
+import org.broad.igv.util.NamedThreadFactory;
+import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.RuntimeUtils;
 
 /**
@@ -63,7 +74,15 @@ public class CachingQueryReader {
     private static final int KB = 1000;
     private static final int MITOCHONDRIA_TILE_SIZE = 1000;
     private static int DEFAULT_TILE_SIZE = 16 * KB;
-    private static int MAX_TILE_COUNT = 2;
+    private static int MAX_TILE_COUNT = 8;
+
+    private static final LRUCache.Weigher<AlignmentTile> TILE_WEIGHER = new LRUCache.Weigher<AlignmentTile>() {
+        public long getSize(AlignmentTile tile) {
+            return tile.getSizeEstimate();
+        }
+    };
+    // Rough heap cost of an alignment record,  blocks,  packed read and base qualities included
+    private static final int ALIGNMENT_SIZE_ESTIMATE = 600;
     private static Set<WeakReference<CachingQueryReader>> activeReaders = Collections.synchronizedSet(new HashSet());
 
     // DK
@@ -91,14 +110,30 @@ public class CachingQueryReader {
     private String cachedChr = "";
     private int tileSize = DEFAULT_TILE_SIZE;
     private AlignmentQueryReader reader;
-    private boolean cancel = false;
+    private volatile boolean cancel = false;
     private LRUCache<Integer, AlignmentTile> cache;
-    private boolean pairedEnd = false;
+    private volatile boolean pairedEnd = false;
+    private AtomicInteger alignmentCount = new AtomicInteger(0);
+
+    // Used to open additional readers for loading tiles concurrently,  null if the source does not support it
+    private ResourceLocator locator;
+    private BlockingQueue<AlignmentQueryReader> tileReaders = new LinkedBlockingQueue<AlignmentQueryReader>();
+    private static ExecutorService tileExecutor;
 
 
     public CachingQueryReader(AlignmentQueryReader reader) {
+        this(reader, null);
+    }
+
+    /**
+     * @param reader
+     * @param locator locator for the file wrapped by <code>reader</code>.  If not null tiles are loaded
+     *                concurrently,  each with a reader of its own opened through AlignmentReaderFactory.
+     */
+    public CachingQueryReader(AlignmentQueryReader reader, ResourceLocator locator) {
         this.reader = reader;
-        cache = new LRUCache(this, MAX_TILE_COUNT);
+        this.locator = locator;
+        cache = new LRUCache(this, MAX_TILE_COUNT, TILE_WEIGHER);
         float fvw = PreferenceManager.getInstance().getAsFloat(PreferenceManager.SAM_MAX_VISIBLE_RANGE);
         tileSize = Math.min(DEFAULT_TILE_SIZE, (int) (fvw * KB));
     }
@@ -109,6 +144,10 @@ public class CachingQueryReader {
 
     public void close() throws IOException {
         reader.close();
+        AlignmentQueryReader tileReader;
+        while ((tileReader = tileReaders.poll()) != null) {
+            tileReader.close();
+        }
     }
 
     public Set<String> getSequenceNames() {
@@ -217,116 +256,26 @@ public class CachingQueryReader {
     	
         assert (tiles.size() > 0);
 
-        boolean filterFailedReads = PreferenceManager.getInstance().getAsBoolean(PreferenceManager.SAM_FILTER_FAILED_READS);
-        ReadGroupFilter filter = ReadGroupFilter.getFilter();
-        boolean showDuplicates = PreferenceManager.getInstance().getAsBoolean(PreferenceManager.SAM_SHOW_DUPLICATES);
-        int qualityThreshold = PreferenceManager.getInstance().getAsInt(PreferenceManager.SAM_QUALITY_THRESHOLD);
-
-        //maxReadCount = PreferenceManager.getInstance().getAsInt(PreferenceManager.SAM_MAX_READS);
-
         if (log.isDebugEnabled()) {
             int first = tiles.get(0).getTileNumber();
             int end = tiles.get(tiles.size() - 1).getTileNumber();
             log.debug("Loading tiles: " + first + "-" + end);
         }
 
-        int start = tiles.get(0).start;
-        int end = tiles.get(tiles.size() - 1).end;
-
-
-        CloseableIterator<Alignment> iter = null;
-
-        //log.debug("Loading : " + start + " - " + end);
-        int alignmentCount = 0;
+        TileLoader loader = new TileLoader(chr);
         WeakReference<CachingQueryReader> ref = new WeakReference(this);
         try {
-            Map<String, Alignment> mappedMates = new HashMap(1000);
-            Map<String, Alignment> unmappedMates = new HashMap(1000);
-
-
             activeReaders.add(ref);
-            iter = reader.query(chr, start, end, false);
-
-            int tileSize = getTileSize(chr);
-            while (iter != null && iter.hasNext()) {
-
-                if (cancel) {
-                    return false;
-                }
-
-                Alignment record = iter.next();
-
-                // Set mate seqeunce of unmapped mates
-                String readName = record.getReadName();
-                if (record.isPaired() && record.getMate() != null ) {
-                    pairedEnd = true;
-                    if (record.isMapped()) {
-                        if (!record.getMate().isMapped()) {
-                            // record is mapped, mate is not
-                            Alignment mate = unmappedMates.get(readName);
-                            if (mate == null) {
-                                mappedMates.put(readName, record);
-                            } else {
-                                record.setMateSequence(mate.getReadSequence());
-                                unmappedMates.remove(readName);
-                                mappedMates.remove(readName);
-                            }
-
-                        }
-                    } else if (record.getMate().isMapped()) {
-                        // record not mapped, mate is
-                        Alignment mappedMate = mappedMates.get(readName);
-                        if (mappedMate == null) {
-                            unmappedMates.put(readName, record);
-                        } else {
-                            mappedMate.setMateSequence(record.getReadSequence());
-                            unmappedMates.remove(readName);
-                            mappedMates.remove(readName);
-                        }
-                    }
-                }
-
-
-                if (!record.isMapped() || (!showDuplicates && record.isDuplicate()) ||
-                        (filterFailedReads && record.isVendorFailedRead()) ||
-                        record.getMappingQuality() < qualityThreshold ||
-                        (filter != null && filter.filterAlignment(record))) {
-                    continue;
-                }
-
-                // Range of tile indeces that this alignment contributes to.
-                int aStart = record.getAlignmentStart();
-                int aEnd = record.getEnd();
-                int idx0 = Math.max(0, (aStart - start) / tileSize);
-                int idx1 = Math.min(tiles.size() - 1, (aEnd - start) / tileSize);
+            alignmentCount.set(0);
 
-                // Loop over tiles this read overlaps
-                for (int i = idx0; i <= idx1; i++) {
-                    AlignmentTile t = tiles.get(i);
-                    t.addRecord(record);
-                }
-
-                alignmentCount++;
-                if (alignmentCount % 1000 == 0) {
-                    if (cancel) return false;
-                    IGV.getInstance().setStatusBarMessage("Reads loaded: " + alignmentCount);
-                    if (checkMemory() == false) {
-                        cancelReaders();
-                        return false;        // <=  TODO need to cancel all readers
-                    }
-                }
-
-                // Update pe stats
-                if (peStats != null && record.isPaired() && record.isProperPair()) {
-                    String lb = record.getLibrary();
-                    if (lb == null) lb = "null";
-                    PEStats stats = peStats.get(lb);
-                    if (stats == null) {
-                        stats = new PEStats(lb);
-                        peStats.put(lb, stats);
-                    }
-                    stats.update(record);
-                }
+            boolean success;
+            if (tiles.size() > 1 && canLoadInParallel()) {
+                success = loadTilesInParallel(loader, tiles, peStats);
+            } else {
+                success = loader.load(reader, tiles, peStats, false);
+            }
+            if (!success) {
+                return false;
             }
 
             // Compute peStats
@@ -339,16 +288,6 @@ public class CachingQueryReader {
                 }
             }
 
-            // Clean up any remaining unmapped mate seqeunces
-            for (Alignment mappedMate : mappedMates.values()) {
-                Alignment mate = unmappedMates.get(mappedMate.getReadName());
-                if (mate != null) {
-                    mappedMate.setMateSequence(mate.getReadSequence());
-                }
-            }
-            mappedMates = null;
-            unmappedMates = null;
-
             for (AlignmentTile t : tiles) {
                 t.setLoaded(true);
                 cache.put(t.getTileNumber(), t);
@@ -372,16 +311,256 @@ public class CachingQueryReader {
             // for the next time
             cancel = false;
             activeReaders.remove(ref);
-            if (iter != null) {
-                iter.close();
+            if (IGV.hasInstance()) {
+                IGV.getInstance().resetStatusMessage();
+            }
+        }
+    }
+
+    /**
+     * Tiles can be queried independently only if we know how to open additional readers on the same file,
+     * since the wrapped reader (and the underlying SAMFileReader) is not thread safe.
+     */
+    boolean canLoadInParallel() {
+        return locator != null && reader.hasIndex() &&
+                PreferenceManager.getInstance().getAsInt(PreferenceManager.SAM_LOAD_THREADS) > 1;
+    }
+
+    /**
+     * Load each tile with its own query on the shared tile loading pool.  Each tile only touches its own
+     * AlignmentTile and AlignmentCounts,  paired-end stats are collected per tile and merged in tile order
+     * once all queries complete so the result does not depend on thread scheduling.
+     *
+     * @return true if successful,  false if canceled.
+     */
+    private boolean loadTilesInParallel(final TileLoader loader, List<AlignmentTile> tiles,
+                                        Map<String, PEStats> peStats) throws Exception {
+
+        final List<Map<String, PEStats>> tileStats = new ArrayList(tiles.size());
+        List<Future<Boolean>> futures = new ArrayList(tiles.size());
+        for (int i = 0; i < tiles.size(); i++) {
+            final List<AlignmentTile> tileList = Collections.singletonList(tiles.get(i));
+            final Map<String, PEStats> stats = peStats == null ? null : new HashMap<String, PEStats>();
+            final boolean excludeLeadingStats = i > 0;
+            tileStats.add(stats);
+            futures.add(getTileExecutor().submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    if (cancel) {
+                        return false;
+                    }
+                    AlignmentQueryReader tileReader = acquireTileReader();
+                    try {
+                        return loader.load(tileReader, tileList, stats, excludeLeadingStats);
+                    } finally {
+                        releaseTileReader(tileReader);
+                    }
+                }
+            }));
+        }
+
+        // Wait for every query,  even after a failure,  so no worker is still filling a tile when we return
+        boolean success = true;
+        Exception error = null;
+        for (Future<Boolean> future : futures) {
+            try {
+                if (!future.get()) {
+                    success = false;
+                }
+            } catch (ExecutionException e) {
+                cancel = true;
+                if (error == null) {
+                    error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        if (!success || cancel) {
+            return false;
+        }
+
+        if (peStats != null) {
+            for (Map<String, PEStats> stats : tileStats) {
+                for (Map.Entry<String, PEStats> entry : stats.entrySet()) {
+                    PEStats libStats = peStats.get(entry.getKey());
+                    if (libStats == null) {
+                        libStats = new PEStats(entry.getKey());
+                        peStats.put(entry.getKey(), libStats);
+                    }
+                    libStats.merge(entry.getValue());
+                }
+            }
+        }
+        return true;
+    }
+
+    private static synchronized ExecutorService getTileExecutor() {
+        if (tileExecutor == null) {
+            int nThreads = Math.max(1, PreferenceManager.getInstance().getAsInt(PreferenceManager.SAM_LOAD_THREADS));
+            tileExecutor = Executors.newFixedThreadPool(nThreads, new NamedThreadFactory("alignment-tile-loader"));
+        }
+        return tileExecutor;
+    }
+
+    private AlignmentQueryReader acquireTileReader() throws IOException {
+        AlignmentQueryReader tileReader = tileReaders.poll();
+        return tileReader == null ? AlignmentReaderFactory.getReader(locator) : tileReader;
+    }
+
+    private void releaseTileReader(AlignmentQueryReader tileReader) {
+        tileReaders.offer(tileReader);
+    }
+
+    /**
+     * Streams the alignments from a single query into a contiguous list of tiles,  applying the read filters
+     * and bookkeeping for unmapped mates and paired-end stats.
+     */
+    private class TileLoader {
+
+        String chr;
+        int tileSize;
+        boolean filterFailedReads;
+        ReadGroupFilter filter;
+        boolean showDuplicates;
+        int qualityThreshold;
+
+        TileLoader(String chr) {
+            this.chr = chr;
+            this.tileSize = getTileSize(chr);
+            PreferenceManager prefs = PreferenceManager.getInstance();
+            filterFailedReads = prefs.getAsBoolean(PreferenceManager.SAM_FILTER_FAILED_READS);
+            filter = ReadGroupFilter.getFilter();
+            showDuplicates = prefs.getAsBoolean(PreferenceManager.SAM_SHOW_DUPLICATES);
+            qualityThreshold = prefs.getAsInt(PreferenceManager.SAM_QUALITY_THRESHOLD);
+        }
+
+        /**
+         * @param queryReader
+         * @param tiles
+         * @param peStats
+         * @param excludeLeadingStats if true alignments starting before the first tile do not contribute to
+         *                            paired-end stats,  they have been counted by the query for the preceding tile
+         * @return true if successful,  false if canceled.
+         */
+        boolean load(AlignmentQueryReader queryReader, List<AlignmentTile> tiles, Map<String, PEStats> peStats,
+                     boolean excludeLeadingStats) throws IOException {
+
+            int start = tiles.get(0).start;
+            int end = tiles.get(tiles.size() - 1).end;
+
+            CloseableIterator<Alignment> iter = null;
+            try {
+                Map<String, Alignment> mappedMates = new HashMap(1000);
+                Map<String, Alignment> unmappedMates = new HashMap(1000);
+
+                iter = queryReader.query(chr, start, end, false);
+
+                while (iter != null && iter.hasNext()) {
+
+                    if (cancel) {
+                        return false;
+                    }
+
+                    Alignment record = iter.next();
+
+                    // Set mate seqeunce of unmapped mates
+                    String readName = record.getReadName();
+                    if (record.isPaired() && record.getMate() != null) {
+                        pairedEnd = true;
+                        if (record.isMapped()) {
+                            if (!record.getMate().isMapped()) {
+                                // record is mapped, mate is not
+                                Alignment mate = unmappedMates.get(readName);
+                                if (mate == null) {
+                                    mappedMates.put(readName, record);
+                                } else {
+                                    record.setMateSequence(mate.getReadSequence());
+                                    unmappedMates.remove(readName);
+                                    mappedMates.remove(readName);
+                                }
+
+                            }
+                        } else if (record.getMate().isMapped()) {
+                            // record not mapped, mate is
+                            Alignment mappedMate = mappedMates.get(readName);
+                            if (mappedMate == null) {
+                                unmappedMates.put(readName, record);
+                            } else {
+                                mappedMate.setMateSequence(record.getReadSequence());
+                                unmappedMates.remove(readName);
+                                mappedMates.remove(readName);
+                            }
+                        }
+                    }
+
+
+                    if (!record.isMapped() || (!showDuplicates && record.isDuplicate()) ||
+                            (filterFailedReads && record.isVendorFailedRead()) ||
+                            record.getMappingQuality() < qualityThreshold ||
+                            (filter != null && filter.filterAlignment(record))) {
+                        continue;
+                    }
+
+                    // Range of tile indeces that this alignment contributes to.
+                    int aStart = record.getAlignmentStart();
+                    int aEnd = record.getEnd();
+                    int idx0 = Math.max(0, (aStart - start) / tileSize);
+                    int idx1 = Math.min(tiles.size() - 1, (aEnd - start) / tileSize);
+
+                    // Loop over tiles this read overlaps
+                    for (int i = idx0; i <= idx1; i++) {
+                        AlignmentTile t = tiles.get(i);
+                        t.addRecord(record);
+                    }
+
+                    int count = alignmentCount.incrementAndGet();
+                    if (count % 1000 == 0) {
+                        if (cancel) return false;
+                        if (IGV.hasInstance()) {
+                            IGV.getInstance().setStatusBarMessage("Reads loaded: " + count);
+                        }
+                        if (checkMemory() == false) {
+                            cancelReaders();
+                            return false;
+                        }
+                    }
+
+                    // Update pe stats
+                    if (peStats != null && record.isPaired() && record.isProperPair() &&
+                            !(excludeLeadingStats && aStart < start)) {
+                        String lb = record.getLibrary();
+                        if (lb == null) lb = "null";
+                        PEStats stats = peStats.get(lb);
+                        if (stats == null) {
+                            stats = new PEStats(lb);
+                            peStats.put(lb, stats);
+                        }
+                        stats.update(record);
+                    }
+                }
+
+                // Clean up any remaining unmapped mate seqeunces
+                for (Alignment mappedMate : mappedMates.values()) {
+                    Alignment mate = unmappedMates.get(mappedMate.getReadName());
+                    if (mate != null) {
+                        mappedMate.setMateSequence(mate.getReadSequence());
+                    }
+                }
+                return true;
+
+            } finally {
+                if (iter != null) {
+                    iter.close();
+                }
             }
-            IGV.getInstance().resetStatusMessage();
         }
     }
 
 
     private static synchronized boolean checkMemory() {
         if (RuntimeUtils.getAvailableMemoryFraction() < 0.2) {
+            log.info("Memory is low,  clearing caches.  " + LRUCache.getStatistics());
             LRUCache.clearCaches();
             System.gc();
             if (RuntimeUtils.getAvailableMemoryFraction() < 0.2) {
@@ -688,6 +867,14 @@ public class CachingQueryReader {
         public AlignmentCounts getCounts() {
             return counts;
         }
+
+        /**
+         * @return an estimate of the heap used by this tile,  in bytes
+         */
+        public long getSizeEstimate() {
+            long nRecords = containedRecords.size() + overlappingRecords.size();
+            return nRecords * ALIGNMENT_SIZE_ESTIMATE + counts.getSizeEstimate();
+        }
     }
 
 	public boolean showExceptionMessage(String key) 
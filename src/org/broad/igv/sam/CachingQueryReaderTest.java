@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.sam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileWriter;
+import net.sf.samtools.SAMFileWriterFactory;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.SAMSequenceRecord;
+import org.broad.igv.Globals;
+import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.util.ResourceLocator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CachingQueryReaderTest {
+
+    private static final int CHROMOSOME_LENGTH = 100000;
+    private static final int MAX_DEPTH = 100000;
+
+    private static File dir;
+    private static File bam;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Globals.setHeadless(true);
+        dir = File.createTempFile("tiles", "");
+        dir.delete();
+        dir.mkdir();
+        bam = new File(dir, "reads.bam");
+        writeBam(bam);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Tiles loaded concurrently,  one query per tile,  must hold the same alignments,  counts and paired-end
+     * stats as tiles loaded with a single query.
+     */
+    @Test
+    public void testParallelLoadMatchesSerial() throws Exception {
+        String path = bam.getAbsolutePath();
+        CachingQueryReader serialReader = new CachingQueryReader(AlignmentReaderFactory.getReader(path, true));
+        CachingQueryReader parallelReader = new CachingQueryReader(AlignmentReaderFactory.getReader(path, true),
+                new ResourceLocator(path));
+        assertFalse(serialReader.canLoadInParallel());
+        assertTrue(parallelReader.canLoadInParallel());
+
+        try {
+            int tileSize = serialReader.getTileSize("chr1");
+            int lastTile = (CHROMOSOME_LENGTH - 1) / tileSize;
+            assertTrue(lastTile > 2);
+
+            Map<String, PEStats> serialStats = new HashMap<String, PEStats>();
+            Map<String, PEStats> parallelStats = new HashMap<String, PEStats>();
+            List<CachingQueryReader.AlignmentTile> serialTiles =
+                    serialReader.getTiles("chr1", 0, lastTile, MAX_DEPTH, serialStats);
+            List<CachingQueryReader.AlignmentTile> parallelTiles =
+                    parallelReader.getTiles("chr1", 0, lastTile, MAX_DEPTH, parallelStats);
+
+            assertEquals(serialTiles.size(), parallelTiles.size());
+            for (int i = 0; i < serialTiles.size(); i++) {
+                CachingQueryReader.AlignmentTile expected = serialTiles.get(i);
+                CachingQueryReader.AlignmentTile actual = parallelTiles.get(i);
+                assertTrue(actual.isLoaded());
+                assertTrue(expected.getContainedRecords().size() > 0);
+                assertEquals(toStrings(expected.getContainedRecords()), toStrings(actual.getContainedRecords()));
+                assertEquals(toStrings(expected.getOverlappingRecords()), toStrings(actual.getOverlappingRecords()));
+                for (int pos = expected.getStart(); pos < expected.getStart() + tileSize; pos++) {
+                    assertEquals(expected.getCounts().getTotalCount(pos), actual.getCounts().getTotalCount(pos));
+                    assertEquals(expected.getCounts().getNegTotal(pos), actual.getCounts().getNegTotal(pos));
+                    assertEquals(expected.getCounts().getTotalQuality(pos), actual.getCounts().getTotalQuality(pos));
+                }
+            }
+
+            assertFalse(serialStats.isEmpty());
+            assertEquals(serialStats.keySet(), parallelStats.keySet());
+            for (String library : serialStats.keySet()) {
+                PEStats expected = serialStats.get(library);
+                PEStats actual = parallelStats.get(library);
+                assertEquals(expected.nPairs, actual.nPairs);
+                assertEquals(expected.frCount, actual.frCount);
+                assertEquals(expected.ffCount, actual.ffCount);
+                assertEquals(expected.rfCount, actual.rfCount);
+                assertEquals(expected.getMinThreshold(), actual.getMinThreshold());
+                assertEquals(expected.getMaxThreshold(), actual.getMaxThreshold());
+                assertEquals(expected.getOrientation(), actual.getOrientation());
+            }
+        } finally {
+            serialReader.close();
+            parallelReader.close();
+        }
+    }
+
+    private static List<String> toStrings(List<Alignment> alignments) {
+        List<String> strings = new ArrayList<String>(alignments.size());
+        for (Alignment alignment : alignments) {
+            strings.add(alignment.toString());
+        }
+        return strings;
+    }
+
+    /**
+     * Write a sorted,  indexed BAM of random read pairs on chr1,  some of them spanning tile boundaries.
+     */
+    private static void writeBam(File bam) throws Exception {
+        SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+        dictionary.addSequence(new SAMSequenceRecord("chr1", CHROMOSOME_LENGTH));
+        SAMFileHeader header = new SAMFileHeader();
+        header.setSequenceDictionary(dictionary);
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+
+        SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, false, bam);
+        Random random = new Random(13);
+        for (int i = 0; i < 20000; i++) {
+            SAMRecord record = new SAMRecord(header);
+            record.setReadName("read" + i);
+            record.setReferenceName("chr1");
+            int start = 1 + random.nextInt(CHROMOSOME_LENGTH - 1000);
+            record.setAlignmentStart(start);
+            record.setMappingQuality(random.nextInt(60));
+            record.setCigarString(random.nextInt(10) == 0 ? "20M300N16M" : "36M");
+            record.setReadString("ACGTACGTACGTNCGTACGTACGTACGTACGTACGT");
+            record.setBaseQualityString("IIIII#####IIIII55555IIIII+++++IIIIII");
+
+            int insertSize = 100 + random.nextInt(500);
+            int flags = 0x1 | (random.nextInt(4) == 0 ? 0 : 0x2) | (random.nextBoolean() ? 0x40 : 0x80);
+            flags |= random.nextBoolean() ? 0x20 : 0x10;
+            record.setFlags(flags);
+            record.setMateReferenceName("chr1");
+            record.setMateAlignmentStart(start + insertSize);
+            record.setInferredInsertSize((flags & 0x10) != 0 ? -insertSize : insertSize);
+            writer.addAlignment(record);
+        }
+        writer.close();
+
+        // The reader looks for the index next to the BAM
+        File index = new File(bam.getParentFile(), "reads.bai");
+        if (index.exists()) {
+            index.renameTo(new File(bam.getAbsolutePath() + ".bai"));
+        }
+    }
+}
@@ -79,6 +79,25 @@ public class PEStats {
         orientation = null;
     }
 
+    /**
+     * Add the insert sizes and orientation counts accumulated by another stats object for the same library.
+     *
+     * @param other
+     */
+    public void merge(PEStats other) {
+        int n = Math.min(other.nPairs, insertSizes.length - nPairs);
+        if (n > 0) {
+            System.arraycopy(other.insertSizes, 0, insertSizes, nPairs, n);
+            nPairs += n;
+        }
+        frCount += other.frCount;
+        ffCount += other.ffCount;
+        rfCount += other.rfCount;
+
+        // Force recomputation of orientation
+        orientation = null;
+    }
+
     public void compute(double minPercentile, double maxPercentile) {
 
         if (nPairs > 100 && insertSizes != null) {
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.sam;
+
+/**
+ * A read sequence packed 2 bits per base.  Bases other than A, C, G and T (N, '=', IUPAC codes, lower case)
+ * are rare in aligned reads,  they are stored separately as exceptions.
+ */
+class PackedBases {
+
+    private static final byte[] CODES = {'A', 'C', 'G', 'T'};
+    private static final int[] NO_POSITIONS = new int[0];
+    private static final byte[] NO_BASES = new byte[0];
+
+    private final int length;
+    private final byte[] packed;
+    private final int[] exceptionPositions;
+    private final byte[] exceptionBases;
+
+    PackedBases(byte[] bases) {
+        length = bases == null ? 0 : bases.length;
+        packed = new byte[(length + 3) / 4];
+
+        int nExceptions = 0;
+        for (int i = 0; i < length; i++) {
+            if (encode(bases[i]) < 0) {
+                nExceptions++;
+            }
+        }
+        exceptionPositions = nExceptions == 0 ? NO_POSITIONS : new int[nExceptions];
+        exceptionBases = nExceptions == 0 ? NO_BASES : new byte[nExceptions];
+
+        int e = 0;
+        for (int i = 0; i < length; i++) {
+            int code = encode(bases[i]);
+            if (code < 0) {
+                exceptionPositions[e] = i;
+                exceptionBases[e] = bases[i];
+                e++;
+                code = 0;
+            }
+            packed[i >> 2] |= code << ((i & 3) << 1);
+        }
+    }
+
+    private static int encode(byte base) {
+        switch (base) {
+            case 'A':
+                return 0;
+            case 'C':
+                return 1;
+            case 'G':
+                return 2;
+            case 'T':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    int length() {
+        return length;
+    }
+
+    byte[] toBytes() {
+        byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bases[i] = CODES[(packed[i >> 2] >> ((i & 3) << 1)) & 3];
+        }
+        for (int e = 0; e < exceptionPositions.length; e++) {
+            bases[exceptionPositions[e]] = exceptionBases[e];
+        }
+        return bases;
+    }
+
+    public String toString() {
+        return new String(toBytes());
+    }
+}
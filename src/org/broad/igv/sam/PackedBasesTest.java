@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.sam;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PackedBasesTest {
+
+    @Test
+    public void testRoundTrip() {
+        String[] reads = {"", "A", "AC", "ACG", "ACGT", "ACGTA", "TTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTT",
+                "NACGTN", "AC=GT==", "acgtACGT", "ACRYKMSWBDHVN", "N"};
+        for (String read : reads) {
+            PackedBases packed = new PackedBases(read.getBytes());
+            assertEquals(read.length(), packed.length());
+            assertArrayEquals(read.getBytes(), packed.toBytes());
+            assertEquals(read, packed.toString());
+        }
+    }
+
+    @Test
+    public void testNull() {
+        PackedBases packed = new PackedBases(null);
+        assertEquals(0, packed.length());
+        assertEquals(0, packed.toBytes().length);
+    }
+
+    @Test
+    public void testRandom() {
+        byte[] alphabet = "ACGTACGTACGTACGTNn=R".getBytes();
+        Random random = new Random(7);
+        for (int n = 0; n < 200; n++) {
+            byte[] bases = new byte[random.nextInt(300)];
+            for (int i = 0; i < bases.length; i++) {
+                bases[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            assertArrayEquals(bases, new PackedBases(bases).toBytes());
+        }
+    }
+}
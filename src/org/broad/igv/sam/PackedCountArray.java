@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.sam;
+
+/**
+ * A fixed length array of non-negative counters that starts out storing one byte per element and widens to
+ * shorts,  and then ints,  only when a counter overflows.  Most coverage values fit in a byte or short so the
+ * wide representation is rarely needed.
+ */
+class PackedCountArray {
+
+    private static final int BYTE_MAX = 0xFF;
+    private static final int SHORT_MAX = 0xFFFF;
+
+    private final int length;
+    private byte[] bytes;
+    private short[] shorts;
+    private int[] ints;
+
+    PackedCountArray(int length) {
+        this.length = length;
+        bytes = new byte[length];
+    }
+
+    int length() {
+        return length;
+    }
+
+    int get(int idx) {
+        if (bytes != null) {
+            return bytes[idx] & BYTE_MAX;
+        } else if (shorts != null) {
+            return shorts[idx] & SHORT_MAX;
+        } else {
+            return ints[idx];
+        }
+    }
+
+    /**
+     * Add a non-negative amount to the counter at idx,  widening the storage if needed.
+     *
+     * @return the new value of the counter
+     */
+    int add(int idx, int delta) {
+        if (bytes != null) {
+            int value = (bytes[idx] & BYTE_MAX) + delta;
+            if (value <= BYTE_MAX) {
+                bytes[idx] = (byte) value;
+                return value;
+            }
+            widenToShorts();
+        }
+        if (shorts != null) {
+            int value = (shorts[idx] & SHORT_MAX) + delta;
+            if (value <= SHORT_MAX) {
+                shorts[idx] = (short) value;
+                return value;
+            }
+            widenToInts();
+        }
+        ints[idx] += delta;
+        return ints[idx];
+    }
+
+    int[] toArray() {
+        int[] array = new int[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = get(i);
+        }
+        return array;
+    }
+
+    /**
+     * @return the heap used by the counters,  in bytes
+     */
+    long getSizeEstimate() {
+        int width = bytes != null ? 1 : (shorts != null ? 2 : 4);
+        return (long) width * length;
+    }
+
+    private void widenToShorts() {
+        shorts = new short[length];
+        for (int i = 0; i < length; i++) {
+            shorts[i] = (short) (bytes[i] & BYTE_MAX);
+        }
+        bytes = null;
+    }
+
+    private void widenToInts() {
+        ints = new int[length];
+        for (int i = 0; i < length; i++) {
+            ints[i] = shorts[i] & SHORT_MAX;
+        }
+        shorts = null;
+    }
+}
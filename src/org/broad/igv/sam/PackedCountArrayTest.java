@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.sam;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PackedCountArrayTest {
+
+    @Test
+    public void testWidening() {
+        int n = 50;
+        PackedCountArray packed = new PackedCountArray(n);
+        int[] expected = new int[n];
+        assertEquals(n, packed.getSizeEstimate());
+
+        Random random = new Random(3);
+        int[] deltas = {1, 7, 200, 3000, 70000};
+        for (int i = 0; i < 2000; i++) {
+            int idx = random.nextInt(n);
+            // Small increments first so each width is exercised before the next overflow
+            int delta = deltas[Math.min(deltas.length - 1, i / 400)];
+            expected[idx] += delta;
+            assertEquals(expected[idx], packed.add(idx, delta));
+            assertEquals(expected[idx], packed.get(idx));
+        }
+        assertArrayEquals(expected, packed.toArray());
+        assertEquals(4L * n, packed.getSizeEstimate());
+    }
+
+    @Test
+    public void testWidthBoundaries() {
+        PackedCountArray packed = new PackedCountArray(3);
+        packed.add(0, 255);
+        assertEquals(3, packed.getSizeEstimate());
+        packed.add(1, 10);
+
+        // The first overflow widens every counter and keeps their values
+        assertEquals(256, packed.add(0, 1));
+        assertEquals(6, packed.getSizeEstimate());
+        assertEquals(10, packed.get(1));
+
+        assertEquals(65535, packed.add(2, 65535));
+        assertEquals(6, packed.getSizeEstimate());
+        assertEquals(65536, packed.add(2, 1));
+        assertEquals(12, packed.getSizeEstimate());
+        assertArrayEquals(new int[]{256, 10, 65536}, packed.toArray());
+    }
+}
@@ -62,21 +62,31 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
     private int end;    // ditto
     private int alignmentStart;
     private int alignmentEnd;
-    boolean negativeStrand;
-    boolean readNegativeStrandFlag;
-    boolean duplicateReadFlag;
-    boolean readUnmappedFlag;
-    boolean readPairedFlag;
-    boolean properPairFlag;
-    SAMRecord record;
+
+    // SAM flag bits
+    static final int READ_PAIRED_FLAG = 0x1;
+    static final int PROPER_PAIR_FLAG = 0x2;
+    static final int READ_UNMAPPED_FLAG = 0x4;
+    static final int MATE_UNMAPPED_FLAG = 0x8;
+    static final int READ_STRAND_FLAG = 0x10;
+    static final int MATE_STRAND_FLAG = 0x20;
+    static final int FIRST_OF_PAIR_FLAG = 0x40;
+    static final int SECOND_OF_PAIR_FLAG = 0x80;
+    static final int NOT_PRIMARY_ALIGNMENT_FLAG = 0x100;
+    static final int READ_FAILS_VENDOR_QUALITY_CHECK_FLAG = 0x200;
+    static final int DUPLICATE_READ_FLAG = 0x400;
+
+    // The SAMRecord is not retained,  only what is needed for display:  the flags,  the read packed 2 bits
+    // per base,  its base qualities,  and the optional tags in binary form,  decoded on demand.
+    int flags;
     String cigarString;
-    String readSequence;
+    PackedBases readBases;
+    byte[] readQualities;
+    byte[] tags;
     private boolean softClippedStart = false;
     private boolean softClippedEnd = false;
     private Strand firstReadStrand = Strand.NONE;
     private Strand secondReadStrand = Strand.NONE;
-    boolean firstRead = false;
-    boolean secondRead = false;
     private String mateSequence = null;
     private String pairOrientation = "";
     private Color defaultColor = AlignmentRenderer.grey1;
@@ -94,9 +104,6 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
      */
     public SamAlignment(SAMRecord record) {
 
-        this.record = record;
-
-
         String refName = record.getReferenceName();
 
         Genome genome = Globals.isHeadless() ? null : IGV.getInstance().getGenomeManager().getCurrentGenome();
@@ -108,16 +115,13 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
         this.start = this.alignmentStart;   // might be modified later for soft clipping
         this.alignmentEnd = Math.max(alignmentStart, record.getAlignmentEnd());
         this.end = alignmentEnd;   // might be modified later for soft clipping
-        this.negativeStrand = record.getReadNegativeStrandFlag();
-        this.cigarString = record.getCigarString();
+        this.flags = record.getFlags();
+        this.cigarString = record.getCigarString().intern();
         this.setMappingQuality(record.getMappingQuality());
         this.readName = record.getReadName().trim();
-        this.readNegativeStrandFlag = record.getReadNegativeStrandFlag();
-        this.duplicateReadFlag = record.getDuplicateReadFlag();
-        this.readUnmappedFlag = record.getReadUnmappedFlag();
-        this.readPairedFlag = record.getReadPairedFlag();
         this.setInferredInsertSize(record.getInferredInsertSize());
-        this.readSequence = record.getReadString();
+        this.readBases = new PackedBases(record.getReadBases());
+        this.readQualities = record.getBaseQualities();
 
         setMatePair(record, genome);
         setPairOrientation(record);
@@ -128,15 +132,16 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
         if (header != null) {
             readGroup = (String) record.getAttribute("RG");
             if (readGroup != null) {
+                readGroup = readGroup.intern();
                 SAMReadGroupRecord rgRec = header.getReadGroup(readGroup);
                 if (rgRec != null) {
-                    String platform = rgRec.getPlatform();
-                    sample = rgRec.getSample();
-                    library = rgRec.getLibrary();
+                    sample = rgRec.getSample() == null ? null : rgRec.getSample().intern();
+                    library = rgRec.getLibrary() == null ? null : rgRec.getLibrary().intern();
 
                 }
             }
         }
+        tags = SamTagCodec.encode(record.getAttributes());
 
         Object colorTag = record.getAttribute("YC");
         if (colorTag != null) {
@@ -171,25 +176,21 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
         if (record.getReadPairedFlag()) {
             String mateReferenceName = record.getMateReferenceName();
             String mateChr = genome == null ? mateReferenceName : genome.getChromosomeAlias(mateReferenceName);
-            this.properPairFlag = record.getProperPairFlag();
             this.setMate(new ReadMate(mateChr,
                     record.getMateAlignmentStart(),
                     record.getMateNegativeStrandFlag(),
                     record.getMateUnmappedFlag()));
-            this.firstRead = record.getFirstOfPairFlag();
-            this.secondRead = record.getSecondOfPairFlag();
         }
 
     }
 
-    private char[] tmp = new char[4];
-
     private void setPairOrientation(SAMRecord record) {
         if (record.getReadPairedFlag() &&
-                !readUnmappedFlag &&
+                !record.getReadUnmappedFlag() &&
                 !record.getMateUnmappedFlag() &&
                 record.getReferenceName().equals(record.getMateReferenceName())) {
 
+            char[] tmp = new char[4];
             char s1 = record.getReadNegativeStrandFlag() ? 'R' : 'F';
             char s2 = record.getMateNegativeStrandFlag() ? 'R' : 'F';
             char o1 = ' ';
@@ -213,7 +214,7 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
                 tmp[0] = s2;
                 tmp[1] = o2;
             }
-            pairOrientation = new String(tmp);
+            pairOrientation = new String(tmp).intern();
         }
     }
 
@@ -225,19 +226,17 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
         this.alignmentStart = alignment.alignmentStart;
         this.alignmentEnd = alignment.alignmentEnd;
         this.end = alignment.end;
-        this.negativeStrand = alignment.negativeStrand;
         this.mate = alignment.mate;
         this.alignmentBlocks = alignment.alignmentBlocks;
         this.insertions = alignment.insertions;
         this.cigarString = alignment.cigarString;
         this.mappingQuality = alignment.mappingQuality;
         this.readName = alignment.readName;
-        this.readNegativeStrandFlag = alignment.readNegativeStrandFlag;
-        this.duplicateReadFlag = alignment.duplicateReadFlag;
-        this.readUnmappedFlag = alignment.readUnmappedFlag;
-        this.readPairedFlag = alignment.readPairedFlag;
+        this.flags = alignment.flags;
+        this.readBases = alignment.readBases;
+        this.readQualities = alignment.readQualities;
+        this.tags = alignment.tags;
         this.inferredInsertSize = alignment.inferredInsertSize;
-        this.properPairFlag = alignment.properPairFlag;
     }
     /**
      * Create the alignment blocks from the read bases and alignment information in the CIGAR
@@ -437,24 +436,28 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
     SamAlignment() {
     }
 
+    private boolean isFlagSet(int flag) {
+        return (flags & flag) != 0;
+    }
+
     public boolean isNegativeStrand() {
-        return readNegativeStrandFlag;
+        return isFlagSet(READ_STRAND_FLAG);
     }
 
     public boolean isDuplicate() {
-        return duplicateReadFlag;
+        return isFlagSet(DUPLICATE_READ_FLAG);
     }
 
     public boolean isMapped() {
-        return !readUnmappedFlag;
+        return !isFlagSet(READ_UNMAPPED_FLAG);
     }
 
     public boolean isPaired() {
-        return readPairedFlag;
+        return isFlagSet(READ_PAIRED_FLAG);
     }
 
     public boolean isProperPair() {
-        return properPairFlag;
+        return isPaired() && isFlagSet(PROPER_PAIR_FLAG);
     }
 
 
@@ -487,7 +490,14 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
     }
 
     public String getReadSequence() {
-        return readSequence;
+        return readBases == null || readBases.length() == 0 ? "*" : readBases.toString();
+    }
+
+    @Override
+    public boolean isSmallInsert() {
+        int absISize = Math.abs(getInferredInsertSize());
+        int readLength = readBases == null || readBases.length() == 0 ? 1 : readBases.length();
+        return absISize > 0 && absISize <= readLength;
     }
 
     /**
@@ -541,9 +551,38 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
         return library;
     }
 
+    /**
+     * @return the alignment as a SAM text line,  with chromosome names as displayed in IGV
+     */
     @Override
     public String toString() {
-        return record.format();
+        StringBuffer buf = new StringBuffer();
+        buf.append(readName).append('\t');
+        buf.append(flags).append('\t');
+        buf.append(chr == null ? "*" : chr).append('\t');
+        buf.append(alignmentStart + 1).append('\t');
+        buf.append(mappingQuality).append('\t');
+        buf.append(cigarString.length() == 0 ? "*" : cigarString).append('\t');
+        if (mate == null || mate.getChr() == null || mate.getChr().equals("*")) {
+            buf.append("*\t0\t");
+        } else {
+            buf.append(mate.getChr().equals(chr) ? "=" : mate.getChr()).append('\t');
+            buf.append(mate.getStart()).append('\t');
+        }
+        buf.append(inferredInsertSize).append('\t');
+        buf.append(getReadSequence()).append('\t');
+        if (readQualities == null || readQualities.length == 0) {
+            buf.append('*');
+        } else {
+            for (byte q : readQualities) {
+                buf.append((char) (q + 33));
+            }
+        }
+        for (SAMRecord.SAMTagAndValue tag : SamTagCodec.decodeAll(tags)) {
+            buf.append('\t');
+            SamTagCodec.appendText(buf, tag);
+        }
+        return buf.toString();
     }
 
     @Override
@@ -556,7 +595,7 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
     }
 
     public Object getAttribute(String key) {
-        return record.getAttribute(key);
+        return SamTagCodec.decode(tags, key);
     }
 
 
@@ -580,22 +619,22 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
         StringBuffer buf = new StringBuffer(super.getValueString(position, null));
 
         if (isPaired()) {
-            if (record.getFirstOfPairFlag()) {
+            if (isFlagSet(FIRST_OF_PAIR_FLAG)) {
                 buf.append("<br>First in pair");
             }
-            if (record.getSecondOfPairFlag()) {
+            if (isFlagSet(SECOND_OF_PAIR_FLAG)) {
                 buf.append("<br>Second in pair");
             }
-            if (record.getNotPrimaryAlignmentFlag()) {
+            if (isFlagSet(NOT_PRIMARY_ALIGNMENT_FLAG)) {
                 buf.append("<br>Alignment NOT primary");
             }
-            if (record.getReadFailsVendorQualityCheckFlag()) {
+            if (isFlagSet(READ_FAILS_VENDOR_QUALITY_CHECK_FLAG)) {
                 buf.append("<br>FAILED Vendor Quality Check");
             }
             buf.append("<br>-------------------");
         }
 
-        List<SAMRecord.SAMTagAndValue> attributes = record.getAttributes();
+        List<SAMRecord.SAMTagAndValue> attributes = SamTagCodec.decodeAll(tags);
         if (attributes != null && !attributes.isEmpty()) {
 
             for (SAMRecord.SAMTagAndValue tag : attributes) {
@@ -617,7 +656,7 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
     }
 
     public boolean isFirstInPair() {
-        return record.getFirstOfPairFlag();
+        return isFlagSet(FIRST_OF_PAIR_FLAG);
     }
 
     @Override
@@ -634,7 +673,7 @@ public class SamAlignment extends AbstractAlignment implements Alignment {
     }
 
     public boolean isVendorFailedRead() {
-        return record.getReadFailsVendorQualityCheckFlag();
+        return isFlagSet(READ_FAILS_VENDOR_QUALITY_CHECK_FLAG);
     }
 
     public Color getDefaultColor() {
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.sam;
+
+import static org.junit.Assert.assertEquals;
+
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.SAMSequenceRecord;
+import org.broad.igv.Globals;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SamAlignmentTest {
+
+    private static SAMFileHeader header;
+
+    @BeforeClass
+    public static void setUpClass() {
+        Globals.setHeadless(true);
+        SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+        dictionary.addSequence(new SAMSequenceRecord("chr1", 100000));
+        dictionary.addSequence(new SAMSequenceRecord("chr2", 100000));
+        header = new SAMFileHeader();
+        header.setSequenceDictionary(dictionary);
+    }
+
+    private static SAMRecord createRecord(String name, int flags, String chr, int start, String cigar) {
+        SAMRecord record = new SAMRecord(header);
+        record.setReadName(name);
+        record.setFlags(flags);
+        record.setReferenceName(chr);
+        record.setAlignmentStart(start);
+        record.setMappingQuality(37);
+        record.setCigarString(cigar);
+        return record;
+    }
+
+    /**
+     * The alignment no longer retains its SAMRecord,  toString() must still reproduce the record's SAM line.
+     */
+    @Test
+    public void testToString() {
+        SAMRecord record = createRecord("read1", 0x1 | 0x2 | 0x20 | 0x40, "chr1", 1001, "4M1I3M2S");
+        record.setReadString("ACGTNACG=a");
+        record.setBaseQualityString("IIIII#####");
+        record.setMateReferenceName("chr1");
+        record.setMateAlignmentStart(1200);
+        record.setInferredInsertSize(250);
+        record.setAttribute("NM", 2);
+        record.setAttribute("MD", "3A4");
+        record.setAttribute("XA", 'q');
+        record.setAttribute("XF", 1.5f);
+        assertEquals(record.getSAMString().trim(), new SamAlignment(record).toString());
+    }
+
+    @Test
+    public void testToStringMateOnOtherChromosome() {
+        SAMRecord record = createRecord("read2", 0x1 | 0x10 | 0x80, "chr2", 500, "5M");
+        record.setReadString("ACGTA");
+        record.setBaseQualityString("*");
+        record.setMateReferenceName("chr1");
+        record.setMateAlignmentStart(77);
+        assertEquals(record.getSAMString().trim(), new SamAlignment(record).toString());
+    }
+
+    @Test
+    public void testToStringUnpaired() {
+        SAMRecord record = createRecord("read3", 0, "chr1", 10, "3M");
+        record.setReadString("ACG");
+        record.setBaseQualityString("!+5");
+        assertEquals(record.getSAMString().trim(), new SamAlignment(record).toString());
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.sam;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.samtools.SAMRecord;
+
+/**
+ * Encodes optional SAM tags in the BAM binary layout (2 byte tag, 1 byte type, little endian value) so an
+ * alignment can keep them as a single byte array and decode individual tags on demand.
+ */
+class SamTagCodec {
+
+    private SamTagCodec() {
+    }
+
+    static byte[] encode(List<SAMRecord.SAMTagAndValue> attributes) {
+        if (attributes == null || attributes.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * attributes.size());
+        for (SAMRecord.SAMTagAndValue attribute : attributes) {
+            if (attribute.tag == null || attribute.tag.length() != 2) {
+                continue;
+            }
+            bytes.write(attribute.tag.charAt(0));
+            bytes.write(attribute.tag.charAt(1));
+            writeValue(bytes, attribute.value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeValue(ByteArrayOutputStream bytes, Object value) {
+        if (value instanceof Character) {
+            bytes.write('A');
+            bytes.write((Character) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            bytes.write('i');
+            writeInt(bytes, ((Number) value).intValue());
+        } else if (value instanceof Long) {
+            // Unsigned 32-bit values are represented as Long by picard
+            bytes.write('I');
+            writeInt(bytes, (int) ((Long) value).longValue());
+        } else if (value instanceof Float) {
+            bytes.write('f');
+            writeInt(bytes, Float.floatToIntBits((Float) value));
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            writeArrayHeader(bytes, 'c', array.length);
+            bytes.write(array, 0, array.length);
+        } else if (value instanceof short[]) {
+            short[] array = (short[]) value;
+            writeArrayHeader(bytes, 's', array.length);
+            for (short s : array) {
+                bytes.write(s & 0xFF);
+                bytes.write((s >> 8) & 0xFF);
+            }
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            writeArrayHeader(bytes, 'i', array.length);
+            for (int i : array) {
+                writeInt(bytes, i);
+            }
+        } else if (value instanceof float[]) {
+            float[] array = (float[]) value;
+            writeArrayHeader(bytes, 'f', array.length);
+            for (float f : array) {
+                writeInt(bytes, Float.floatToIntBits(f));
+            }
+        } else {
+            bytes.write('Z');
+            String string = String.valueOf(value);
+            for (int i = 0; i < string.length(); i++) {
+                bytes.write(string.charAt(i));
+            }
+            bytes.write(0);
+        }
+    }
+
+    private static void writeArrayHeader(ByteArrayOutputStream bytes, char subtype, int length) {
+        bytes.write('B');
+        bytes.write(subtype);
+        writeInt(bytes, length);
+    }
+
+    private static void writeInt(ByteArrayOutputStream bytes, int value) {
+        bytes.write(value & 0xFF);
+        bytes.write((value >> 8) & 0xFF);
+        bytes.write((value >> 16) & 0xFF);
+        bytes.write((value >> 24) & 0xFF);
+    }
+
+    /**
+     * Decode the value of a single tag,  or return null if it is not present.
+     */
+    static Object decode(byte[] encoded, String tag) {
+        if (encoded == null || tag == null || tag.length() != 2) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.remaining() > 3) {
+            char c0 = (char) buffer.get();
+            char c1 = (char) buffer.get();
+            if (c0 == tag.charAt(0) && c1 == tag.charAt(1)) {
+                return readValue(buffer);
+            }
+            skipValue(buffer);
+        }
+        return null;
+    }
+
+    /**
+     * Decode all tags,  in their original order.
+     */
+    static List<SAMRecord.SAMTagAndValue> decodeAll(byte[] encoded) {
+        List<SAMRecord.SAMTagAndValue> attributes = new ArrayList<SAMRecord.SAMTagAndValue>();
+        if (encoded == null) {
+            return attributes;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.remaining() > 3) {
+            String tag = new String(new char[]{(char) buffer.get(), (char) buffer.get()});
+            attributes.add(new SAMRecord.SAMTagAndValue(tag, readValue(buffer)));
+        }
+        return attributes;
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        char type = (char) buffer.get();
+        switch (type) {
+            case 'A':
+                return (char) buffer.get();
+            case 'i':
+                return buffer.getInt();
+            case 'I':
+                return buffer.getInt() & 0xFFFFFFFFL;
+            case 'f':
+                return buffer.getFloat();
+            case 'B':
+                char subtype = (char) buffer.get();
+                int length = buffer.getInt();
+                switch (subtype) {
+                    case 'c':
+                        byte[] bytes = new byte[length];
+                        buffer.get(bytes);
+                        return bytes;
+                    case 's':
+                        short[] shorts = new short[length];
+                        buffer.asShortBuffer().get(shorts);
+                        buffer.position(buffer.position() + 2 * length);
+                        return shorts;
+                    case 'i':
+                        int[] ints = new int[length];
+                        buffer.asIntBuffer().get(ints);
+                        buffer.position(buffer.position() + 4 * length);
+                        return ints;
+                    default:
+                        float[] floats = new float[length];
+                        buffer.asFloatBuffer().get(floats);
+                        buffer.position(buffer.position() + 4 * length);
+                        return floats;
+                }
+            default:
+                StringBuffer string = new StringBuffer();
+                byte b;
+                while ((b = buffer.get()) != 0) {
+                    string.append((char) b);
+                }
+                return string.toString();
+        }
+    }
+
+    private static void skipValue(ByteBuffer buffer) {
+        char type = (char) buffer.get();
+        switch (type) {
+            case 'A':
+                buffer.get();
+                break;
+            case 'i':
+            case 'I':
+            case 'f':
+                buffer.getInt();
+                break;
+            case 'B':
+                char subtype = (char) buffer.get();
+                int length = buffer.getInt();
+                int width = subtype == 'c' ? 1 : (subtype == 's' ? 2 : 4);
+                buffer.position(buffer.position() + width * length);
+                break;
+            default:
+                while (buffer.get() != 0) ;
+        }
+    }
+
+    /**
+     * Append a tag in SAM text form,  e.g. "NM:i:2".
+     */
+    static void appendText(StringBuffer buf, SAMRecord.SAMTagAndValue attribute) {
+        Object value = attribute.value;
+        buf.append(attribute.tag).append(':');
+        if (value instanceof Character) {
+            buf.append("A:").append(value);
+        } else if (value instanceof Number && !(value instanceof Float)) {
+            buf.append("i:").append(value);
+        } else if (value instanceof Float) {
+            buf.append("f:").append(value);
+        } else if (value instanceof byte[]) {
+            buf.append("B:c");
+            for (byte b : (byte[]) value) {
+                buf.append(',').append(b);
+            }
+        } else if (value instanceof short[]) {
+            buf.append("B:s");
+            for (short s : (short[]) value) {
+                buf.append(',').append(s);
+            }
+        } else if (value instanceof int[]) {
+            buf.append("B:i");
+            for (int i : (int[]) value) {
+                buf.append(',').append(i);
+            }
+        } else if (value instanceof float[]) {
+            buf.append("B:f");
+            for (float f : (float[]) value) {
+                buf.append(',').append(f);
+            }
+        } else {
+            buf.append("Z:").append(value);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.sam;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.samtools.SAMRecord;
+import org.junit.Test;
+
+public class SamTagCodecTest {
+
+    private static List<SAMRecord.SAMTagAndValue> getAttributes() {
+        List<SAMRecord.SAMTagAndValue> attributes = new ArrayList<SAMRecord.SAMTagAndValue>();
+        attributes.add(new SAMRecord.SAMTagAndValue("RG", "group1"));
+        attributes.add(new SAMRecord.SAMTagAndValue("NM", 3));
+        attributes.add(new SAMRecord.SAMTagAndValue("XN", -70000));
+        attributes.add(new SAMRecord.SAMTagAndValue("XU", 4000000000L));
+        attributes.add(new SAMRecord.SAMTagAndValue("XA", 'q'));
+        attributes.add(new SAMRecord.SAMTagAndValue("XF", 1.5f));
+        attributes.add(new SAMRecord.SAMTagAndValue("XB", new byte[]{1, -2, 3}));
+        attributes.add(new SAMRecord.SAMTagAndValue("XS", new short[]{-300, 0, 300}));
+        attributes.add(new SAMRecord.SAMTagAndValue("XI", new int[]{-100000, 7}));
+        attributes.add(new SAMRecord.SAMTagAndValue("XR", new float[]{0.25f, -2f}));
+        attributes.add(new SAMRecord.SAMTagAndValue("XZ", ""));
+        attributes.add(new SAMRecord.SAMTagAndValue("MD", "10A5^AC6"));
+        return attributes;
+    }
+
+    @Test
+    public void testDecode() {
+        List<SAMRecord.SAMTagAndValue> attributes = getAttributes();
+        byte[] encoded = SamTagCodec.encode(attributes);
+        for (SAMRecord.SAMTagAndValue attribute : attributes) {
+            assertValueEquals(attribute.value, SamTagCodec.decode(encoded, attribute.tag));
+        }
+        assertNull(SamTagCodec.decode(encoded, "ZZ"));
+        assertNull(SamTagCodec.decode(null, "NM"));
+    }
+
+    @Test
+    public void testDecodeAll() {
+        List<SAMRecord.SAMTagAndValue> attributes = getAttributes();
+        List<SAMRecord.SAMTagAndValue> decoded = SamTagCodec.decodeAll(SamTagCodec.encode(attributes));
+        assertEquals(attributes.size(), decoded.size());
+        for (int i = 0; i < attributes.size(); i++) {
+            assertEquals(attributes.get(i).tag, decoded.get(i).tag);
+            assertValueEquals(attributes.get(i).value, decoded.get(i).value);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        assertNull(SamTagCodec.encode(null));
+        assertNull(SamTagCodec.encode(new ArrayList<SAMRecord.SAMTagAndValue>()));
+        assertEquals(0, SamTagCodec.decodeAll(null).size());
+    }
+
+    @Test
+    public void testAppendText() {
+        String[] expected = {"RG:Z:group1", "NM:i:3", "XN:i:-70000", "XU:i:4000000000", "XA:A:q", "XF:f:1.5",
+                "XB:B:c,1,-2,3", "XS:B:s,-300,0,300", "XI:B:i,-100000,7", "XR:B:f,0.25,-2.0", "XZ:Z:",
+                "MD:Z:10A5^AC6"};
+        List<SAMRecord.SAMTagAndValue> attributes = getAttributes();
+        for (int i = 0; i < attributes.size(); i++) {
+            StringBuffer buf = new StringBuffer();
+            SamTagCodec.appendText(buf, attributes.get(i));
+            assertEquals(expected[i], buf.toString());
+        }
+    }
+
+    private static void assertValueEquals(Object expected, Object actual) {
+        if (expected instanceof byte[]) {
+            assertArrayEquals((byte[]) expected, (byte[]) actual);
+        } else if (expected instanceof short[]) {
+            assertArrayEquals((short[]) expected, (short[]) actual);
+        } else if (expected instanceof int[]) {
+            assertArrayEquals((int[]) expected, (int[]) actual);
+        } else if (expected instanceof float[]) {
+            float[] expectedFloats = (float[]) expected;
+            float[] actualFloats = (float[]) actual;
+            assertEquals(expectedFloats.length, actualFloats.length);
+            for (int i = 0; i < expectedFloats.length; i++) {
+                assertEquals(expectedFloats[i], actualFloats[i], 0);
+            }
+        } else {
+            assertEquals(expected, actual);
+        }
+    }
+}
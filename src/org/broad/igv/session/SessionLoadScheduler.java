@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.util.NamedThreadFactory;
+import org.broad.igv.util.ResourceLocator;
+
+/**
+ * Runs the resource loads of a session on a bounded pool of worker threads.  Each load is tagged with its source,
+ * the host of a remote resource or the file system of a local one,  and no more than a fixed number of loads run
+ * against one source at a time,  so a session with many tracks on one server or disk does not flood it while loads
+ * from other sources wait.  Serial loads,  e.g. alignments,  additionally run one at a time.
+ * <p/>
+ * Pending loads are started in priority order,  lowest first,  ties in submission order.  A load whose source is
+ * at its limit is passed over for the next load that can run.
+ */
+class SessionLoadScheduler {
+
+    private static Logger log = Logger.getLogger(SessionLoadScheduler.class);
+
+    private final int nThreads;
+    private final int perSourceLimit;
+
+    private final List<Task> pending = new ArrayList();
+    private final Map<String, Integer> active = new HashMap();
+    private boolean serialActive;
+    private int submitted;
+
+    // File system of local resources,  by parent directory
+    private final Map<String, String> fileStores = new HashMap();
+
+    SessionLoadScheduler(int nThreads, int perSourceLimit) {
+        this.nThreads = Math.max(1, nThreads);
+        this.perSourceLimit = Math.max(1, perSourceLimit);
+    }
+
+    /**
+     * Queue a load.  Loads are not started until run() is called.
+     *
+     * @param source   source key,  see getSource()
+     * @param priority lower values load first
+     * @param serial   if true the load does not run concurrently with other serial loads
+     */
+    synchronized void submit(String source, int priority, boolean serial, Runnable runnable) {
+        pending.add(new Task(source, priority, serial, submitted++, runnable));
+    }
+
+    /**
+     * Run all queued loads and wait for them to complete.  Exceptions thrown by a load are logged,  loads are
+     * expected to handle their own errors.
+     */
+    void run() {
+
+        int n;
+        synchronized (this) {
+            n = Math.min(nThreads, pending.size());
+        }
+        if (n == 0) {
+            return;
+        }
+
+        NamedThreadFactory threadFactory = new NamedThreadFactory("session-load");
+        List<Thread> threads = new ArrayList(n);
+        for (int i = 0; i < n; i++) {
+            Thread t = threadFactory.newThread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        // Wait for all threads to complete
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                log.error("Interrupted waiting for session loads", e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                while ((task = next()) == null) {
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                pending.remove(task);
+                Integer count = active.get(task.source);
+                active.put(task.source, count == null ? 1 : count + 1);
+                if (task.serial) {
+                    serialActive = true;
+                }
+            }
+
+            try {
+                task.runnable.run();
+            } catch (Throwable e) {
+                log.error("Error running session load", e);
+            } finally {
+                synchronized (this) {
+                    active.put(task.source, active.get(task.source) - 1);
+                    if (task.serial) {
+                        serialActive = false;
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the pending task to start next,  or null if none can start now
+     */
+    private Task next() {
+        Task next = null;
+        for (Task task : pending) {
+            if ((task.serial && serialActive) || count(task.source) >= perSourceLimit) {
+                continue;
+            }
+            if (next == null || task.priority < next.priority ||
+                    (task.priority == next.priority && task.order < next.order)) {
+                next = task;
+            }
+        }
+        return next;
+    }
+
+    private int count(String source) {
+        Integer count = active.get(source);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Return the source of a resource.  Remote resources are keyed by host,  local files by the file system they
+     * are on.  Files whose file system cannot be determined,  e.g. because they do not exist,  are keyed by their
+     * file system root.
+     */
+    String getSource(ResourceLocator locator) {
+
+        if (!locator.isLocal()) {
+            String url = locator.getServerURL() != null ? locator.getServerURL() : locator.getPath();
+            try {
+                return "host:" + new URL(url).getHost().toLowerCase();
+            } catch (MalformedURLException e) {
+                return "host:" + url;
+            }
+        }
+
+        File file = new File(locator.getPath()).getAbsoluteFile();
+        File dir = file.getParentFile();
+        String key = dir == null ? file.getPath() : dir.getPath();
+        synchronized (fileStores) {
+            String store = fileStores.get(key);
+            if (store == null) {
+                try {
+                    store = "fs:" + Files.getFileStore((dir == null ? file : dir).toPath()).toString();
+                } catch (IOException e) {
+                    store = "root:" + getRoot(file).getPath();
+                } catch (RuntimeException e) {
+                    store = "root:" + getRoot(file).getPath();
+                }
+                fileStores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    private static File getRoot(File file) {
+        File root = file;
+        while (root.getParentFile() != null) {
+            root = root.getParentFile();
+        }
+        return root;
+    }
+
+    private static class Task {
+
+        final String source;
+        final int priority;
+        final boolean serial;
+        final int order;
+        final Runnable runnable;
+
+        Task(String source, int priority, boolean serial, int order, Runnable runnable) {
+            this.source = source;
+            this.priority = priority;
+            this.serial = serial;
+            this.order = order;
+            this.runnable = runnable;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.broad.igv.track.Track;
+import org.broad.igv.util.ResourceLocator;
+import org.junit.Test;
+
+public class SessionLoadSchedulerTest {
+
+    @Test
+    public void testPerSourceLimit() throws Exception {
+        SessionLoadScheduler scheduler = new SessionLoadScheduler(4, 2);
+        final AtomicInteger activeA = new AtomicInteger();
+        final AtomicInteger maxActiveA = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+
+        // The loads of "a" hold their slots until both loads of "b" have run,  which they can only do if "b" is
+        // not queued behind the loads of "a" waiting for a slot
+        final CountDownLatch bDone = new CountDownLatch(2);
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit("a", 0, false, new Runnable() {
+                public void run() {
+                    int n = activeA.incrementAndGet();
+                    synchronized (maxActiveA) {
+                        maxActiveA.set(Math.max(maxActiveA.get(), n));
+                    }
+                    try {
+                        bDone.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    activeA.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            });
+        }
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit("b", 1, false, new Runnable() {
+                public void run() {
+                    bDone.countDown();
+                    completed.incrementAndGet();
+                }
+            });
+        }
+
+        long t0 = System.currentTimeMillis();
+        scheduler.run();
+        assertTrue("Loads of b waited for a", System.currentTimeMillis() - t0 < 5000);
+        assertEquals(7, completed.get());
+        assertEquals(2, maxActiveA.get());
+    }
+
+    @Test
+    public void testPriorityOrder() {
+        SessionLoadScheduler scheduler = new SessionLoadScheduler(1, 1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        String[] names = {"hidden", "first", "unreferenced", "second"};
+        int[] priorities = {3, 0, 2, 0};
+        for (int i = 0; i < names.length; i++) {
+            final String name = names[i];
+            scheduler.submit("a", priorities[i], false, new Runnable() {
+                public void run() {
+                    order.add(name);
+                }
+            });
+        }
+        scheduler.run();
+
+        // Lowest priority first,  ties in submission order
+        assertEquals(Arrays.asList("first", "second", "unreferenced", "hidden"), order);
+    }
+
+    @Test
+    public void testSerialLoads() {
+        SessionLoadScheduler scheduler = new SessionLoadScheduler(4, 4);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        for (int i = 0; i < 6; i++) {
+            scheduler.submit("source" + i, 0, true, new Runnable() {
+                public void run() {
+                    int n = active.incrementAndGet();
+                    synchronized (maxActive) {
+                        maxActive.set(Math.max(maxActive.get(), n));
+                    }
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    active.decrementAndGet();
+                }
+            });
+        }
+        scheduler.run();
+        assertEquals(1, maxActive.get());
+    }
+
+    /**
+     * Loads complete in reverse order,  the tracks are still added to the dictionary in session order.
+     */
+    @Test
+    public void testTracksAddedInSessionOrder() throws Exception {
+        final int n = 4;
+        final List<ResourceLocator> locators = new ArrayList<ResourceLocator>();
+        for (int i = 0; i < n; i++) {
+            locators.add(new ResourceLocator("http://host" + i + "/file" + i + ".bed"));
+        }
+
+        SessionLoadScheduler scheduler = new SessionLoadScheduler(n, 1);
+        final List<Track>[] loadedTracks = new List[n];
+        final CountDownLatch[] done = new CountDownLatch[n];
+        for (int i = 0; i < n; i++) {
+            done[i] = new CountDownLatch(1);
+        }
+        final List<Integer> completionOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < n; i++) {
+            final int index = i;
+            ResourceLocator locator = locators.get(i);
+            scheduler.submit(scheduler.getSource(locator), i, false, new Runnable() {
+                public void run() {
+                    try {
+                        if (index + 1 < n) {
+                            done[index + 1].await(10, TimeUnit.SECONDS);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    String path = locators.get(index).getPath();
+                    loadedTracks[index] = Arrays.asList(track(path + "_a"), track(path + "_b"));
+                    completionOrder.add(index);
+                    done[index].countDown();
+                }
+            });
+        }
+        scheduler.run();
+        assertEquals(Arrays.asList(3, 2, 1, 0), completionOrder);
+
+        SessionReader reader = new SessionReader(null);
+        reader.addLoadedTracks(locators, loadedTracks);
+        List<String> expected = new ArrayList<String>();
+        for (ResourceLocator locator : locators) {
+            expected.add(locator.getPath() + "_a");
+            expected.add(locator.getPath() + "_b");
+        }
+        assertEquals(expected, new ArrayList<String>(reader.trackDictionary.keySet()));
+    }
+
+    private static Track track(final String id) {
+        return (Track) Proxy.newProxyInstance(Track.class.getClassLoader(), new Class[]{Track.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getId")) return id;
+                        if (method.getName().equals("toString")) return id;
+                        return null;
+                    }
+                });
+    }
+}
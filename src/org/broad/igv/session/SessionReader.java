@@ -45,7 +45,7 @@ import javax.xml.xpath.XPathFactory;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
-import org.broad.igv.Globals;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.RegionOfInterest;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
@@ -122,7 +122,6 @@ public class SessionReader {
 
     private Track geneTrack = null;
     private Track seqTrack = null;
-    private boolean hasTrackElments;
 
 
     static {
@@ -363,9 +362,6 @@ public class SessionReader {
 	            throw new RuntimeException(e);
 	        }
 	
-	        NodeList tracks = document.getElementsByTagName("Track");
-	        hasTrackElments = tracks.getLength() > 0;
-	
 	        HashMap additionalInformation = new HashMap();
 	        additionalInformation.put(INPUT_FILE_KEY, sessionName);
 	
@@ -630,60 +626,35 @@ public class SessionReader {
         
         if (dataFiles.size() > 0) {
 
-            final List<String> errors = new ArrayList<String>();
-
-            // Load files concurrently -- TODO, put a limit on # of threads?
-            List<Thread> threads = new ArrayList(dataFiles.size());
-            long t0 = System.currentTimeMillis();
+            final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+            // Load files concurrently,  tracks visible in the session first.  Tracks are added to the dictionary in
+            // session order once all loads are done,  so the order of leftover tracks does not depend on the order
+            // loads complete in.
+            PreferenceManager prefs = PreferenceManager.getInstance();
+            SessionLoadScheduler scheduler = new SessionLoadScheduler(
+                    prefs.getAsInt(PreferenceManager.SESSION_LOAD_THREADS),
+                    prefs.getAsInt(PreferenceManager.SESSION_LOAD_THREADS_PER_SOURCE));
+            List<Element> trackElements = getTrackElements(element.getOwnerDocument());
+            final List<Track>[] loadedTracks = new List[dataFiles.size()];
+            final long t0 = System.currentTimeMillis();
             int i = 0;
-            List<Runnable> synchronousLoads = new ArrayList<Runnable>();
             for (final ResourceLocator locator : dataFiles) {
 
                 final String suppliedPath = locator.getPath();
                 final String relPath = fullToRelPathMap.get(suppliedPath);
+                final int index = i;
 
                 Runnable runnable = new Runnable() {
                     public void run() {
-                        List<Track> tracks = null;
                         try {
                             final TrackManager tm = igv.getTrackManager();
                             if (tm == null) log.info("TrackManager is null!");
 
-                            /*
-                            long started = System.currentTimeMillis();
-                            log.debug("loading: " + locator.getFileName());
-                            IGV.getStatusTracker().startActivity(locator.getFileName(), "loading");
-                            */
-                            tracks = tm.load(locator);
-                            /*
-                            log.debug("loaded: " + locator.getFileName() + " (" + (System.currentTimeMillis() - started) + "ms)");
-                            IGV.getStatusTracker().finishActivity(locator.getFileName(), "loading", System.currentTimeMillis() - started);
-                            */
-                            for (Track track : tracks) {
-                                if (track == null) {
-                                    log.info("Null track for resource " + locator.getPath());
-                                    continue;
-                                }
-
-                                 String id = track.getId();
-                                if (id == null) {
-                                    log.info("Null track id for resource " + locator.getPath());
-                                    continue;
-                                }
-
-                                if(relPath != null) {
-                                    id = id.replace(suppliedPath, relPath);
-                                }
-
-                                synchronized (trackDictionary) {
-	                                List<Track> trackList = trackDictionary.get(id);
-	                                if (trackList == null) {
-	                                    trackList = new ArrayList();
-	                                    trackDictionary.put(id, trackList);
-	                                }
-	                                trackList.add(track);
-                                }
-                            }
+                            // Time spent waiting for a worker or for the source's I/O limit.  Load time is
+                            // recorded by TrackManager.load
+                            IGV.getStatusTracker().finishActivity(locator.getFileName(), "queued", System.currentTimeMillis() - t0);
+                            loadedTracks[index] = tm.load(locator);
                         } catch (Exception e) {
                             log.error("Error loading resource " + locator.getPath(), e);
                             String ms = "<b>" + locator.getPath() + "</b><br>&nbs;p&nbsp;" + e.toString() + "<br>";
@@ -692,34 +663,18 @@ public class SessionReader {
                     }
                 };
 
+                // Alignment files are loaded one at a time
                 boolean isAlignment = locator.getPath().endsWith(".bam") || locator.getPath().endsWith(".entries") ||
                         locator.getPath().endsWith(".sam");
 
-
-                // Run synchronously if in batch mode or if there are no "track" elments, or if this is an alignment file
-                if (isAlignment || Globals.isBatch() || !hasTrackElments) {
-                    synchronousLoads.add(runnable);
-                } else {
-                    Thread t = new Thread(runnable);
-                    threads.add(t);
-                    t.start();
-                }
+                scheduler.submit(scheduler.getSource(locator), getLoadPriority(trackElements, suppliedPath, relPath),
+                        isAlignment, runnable);
                 i++;
 
             }
 
-            // Wait for all threads to complete
-            for (Thread t : threads) {
-                try {
-                    t.join();
-                } catch (InterruptedException ignore) {
-                }
-            }
-
-            // Now load data that must be loaded synchronously
-            for (Runnable runnable : synchronousLoads) {
-                runnable.run();
-            }
+            scheduler.run();
+            addLoadedTracks(dataFiles, loadedTracks);
 
             long dt = System.currentTimeMillis() - t0;
             log.info("Total load time = " + dt);
@@ -743,6 +698,77 @@ public class SessionReader {
         dataFiles = null;
     }
 
+    /**
+     * Add the tracks loaded from each resource to the track dictionary,  in the order of locators regardless of
+     * the order the loads completed in.
+     *
+     * @param loadedTracks the tracks of the i-th locator at index i,  null if its load failed
+     */
+    void addLoadedTracks(Collection<ResourceLocator> locators, List<Track>[] loadedTracks) {
+        int i = 0;
+        for (ResourceLocator locator : locators) {
+            List<Track> tracks = loadedTracks[i++];
+            if (tracks == null) {
+                continue;
+            }
+            String suppliedPath = locator.getPath();
+            String relPath = fullToRelPathMap.get(suppliedPath);
+            for (Track track : tracks) {
+                if (track == null) {
+                    log.info("Null track for resource " + locator.getPath());
+                    continue;
+                }
+
+                String id = track.getId();
+                if (id == null) {
+                    log.info("Null track id for resource " + locator.getPath());
+                    continue;
+                }
+
+                if (relPath != null) {
+                    id = id.replace(suppliedPath, relPath);
+                }
+
+                List<Track> trackList = trackDictionary.get(id);
+                if (trackList == null) {
+                    trackList = new ArrayList();
+                    trackDictionary.put(id, trackList);
+                }
+                trackList.add(track);
+            }
+        }
+    }
+
+    private static List<Element> getTrackElements(Document document) {
+        NodeList nodes = document.getElementsByTagName(SessionElement.TRACK.getText());
+        List<Element> elements = new ArrayList(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            elements.add((Element) nodes.item(i));
+        }
+        return elements;
+    }
+
+    /**
+     * Return the load priority of a resource,  lower loads first.  Resources are ordered by the first visible
+     * track element referring to them,  in document order,  followed by resources with no track elements and last
+     * by resources whose tracks are all hidden.
+     */
+    private static int getLoadPriority(List<Element> trackElements, String path, String relPath) {
+        boolean hidden = false;
+        int i = 0;
+        for (Element trackElement : trackElements) {
+            String id = trackElement.getAttribute(SessionAttribute.ID.getText());
+            if (id.startsWith(path) || (relPath != null && id.startsWith(relPath))) {
+                if (!"false".equalsIgnoreCase(trackElement.getAttribute(SessionAttribute.VISIBLE.getText()))) {
+                    return i;
+                }
+                hidden = true;
+            }
+            i++;
+        }
+        return hidden ? trackElements.size() + 1 : trackElements.size();
+    }
+
     private void processResource(Session session, Element element, HashMap additionalInformation) {
 
         String nodeName = element.getNodeName();
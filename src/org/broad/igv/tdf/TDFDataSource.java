@@ -22,7 +22,6 @@
  */
 package org.broad.igv.tdf;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -33,10 +32,10 @@ import java.util.Set;
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.PreferenceManager;
-import org.broad.igv.data.BasicScore;
 import org.broad.igv.data.CompositeScore;
 import org.broad.igv.data.CoverageDataSource;
 import org.broad.igv.data.NamedScore;
+import org.broad.igv.data.ScoreBlock;
 import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
@@ -53,11 +52,18 @@ public class TDFDataSource implements CoverageDataSource {
 
     private static Logger log = Logger.getLogger(TDFDataSource.class);
 
+    // Score blocks know their packed size,  other score lists cost roughly 48 bytes per LocusScore
+    private static final LRUCache.Weigher<List<LocusScore>> SCORES_WEIGHER = new LRUCache.Weigher<List<LocusScore>>() {
+        public long getSize(List<LocusScore> scores) {
+            return scores instanceof ScoreBlock ? ((ScoreBlock) scores).getSizeEstimate() : 64 + 48L * scores.size();
+        }
+    };
+
     int maxPrecomputedZoom = 6;
     TDFReader reader;
     private int trackNumber = 0;
     String trackName;
-    LRUCache<String, List<LocusScore>> summaryScoreCache = new LRUCache(this, 20);
+    LRUCache<String, List<LocusScore>> summaryScoreCache = new LRUCache(this, 20, SCORES_WEIGHER);
     Genome genome;
     Interval currentInterval;
     WindowFunction windowFunction = WindowFunction.mean;
@@ -222,7 +228,8 @@ public class TDFDataSource implements CoverageDataSource {
             // Window function == none => no windowing, so its not clear what to do.  For now use mean
             WindowFunction wf = (windowFunction == WindowFunction.none ? WindowFunction.mean : windowFunction);
 
-            scores = new ArrayList(1000);
+            ScoreBlock block = new ScoreBlock(1000);
+            scores = block;
             TDFDataset ds = reader.getDataset(querySeq, zoom, wf);
             if (ds != null) {
                 List<TDFTile> tiles = ds.getTiles(startLocation, endLocation);
@@ -234,7 +241,7 @@ public class TDFDataSource implements CoverageDataSource {
                                 float v = tile.getValue(trackNumber, i);
                                 if (!Float.isNaN(v)) {
                                     v *= normalizationFactor;
-                                    scores.add(new BasicScore(tile.getStartPosition(i), tile.getEndPosition(i), v));
+                                    block.add(tile.getStartPosition(i), tile.getEndPosition(i), v);
                                 }
                             }
                         }
@@ -273,7 +280,7 @@ public class TDFDataSource implements CoverageDataSource {
 
     private List<LocusScore> computeSummaryScores(String chr, int startLocation, int endLocation, double scale) {
 
-        List<LocusScore> scores = new ArrayList(1000);
+        ScoreBlock scores = new ScoreBlock(1000);
 
         String dsName = "/" + chr + "/raw";
 
@@ -300,7 +307,7 @@ public class TDFDataSource implements CoverageDataSource {
                                 if (!Float.isNaN(v)) {
                                     v *= normalizationFactor;
                                 }
-                                scores.add(new BasicScore(s, e, v));
+                                scores.add(s, e, v);
                             }
                         }
                     }
@@ -354,7 +361,7 @@ public class TDFDataSource implements CoverageDataSource {
                                 }
 
                                 if (endBin > startBin) {
-                                    scores.add(new NamedScore(s, e, v, probeName));
+                                    scores.add(s, e, v, probeName);
                                 } else {
                                     if (!accumulator.hasData()) accumulatedStart = s;
                                     accumulatedEnd = e;
@@ -400,7 +407,7 @@ public class TDFDataSource implements CoverageDataSource {
    double tileWidth = chromosome.getLength() / (Math.pow(2.0, zoom));
     */
 
-    public synchronized List<LocusScore> getSummaryScoresForRange(String chr, int startLocation, int endLocation, int zoom) {
+    public List<LocusScore> getSummaryScoresForRange(String chr, int startLocation, int endLocation, int zoom) {
 
         Chromosome chromosome = genome.getChromosome(chr);
 
@@ -414,7 +421,7 @@ public class TDFDataSource implements CoverageDataSource {
 
         } else {
 
-            ArrayList scores = new ArrayList();
+            ScoreBlock scores = new ScoreBlock();
 
             // TODO -- this whole section could be computed once and stored,  it is only a function of the genome, chr, and zoom level.
             double tileWidth = 0;
@@ -434,7 +441,17 @@ public class TDFDataSource implements CoverageDataSource {
             int endTile = (int) (endLocation / tileWidth);
             for (int t = startTile; t <= endTile; t++) {
                 List<LocusScore> cachedScores = getCachedSummaryScores(querySeq, zoom, t, tileWidth);
-                if (cachedScores != null) {
+                if (cachedScores instanceof ScoreBlock) {
+                    ScoreBlock block = (ScoreBlock) cachedScores;
+                    int n = block.size();
+                    for (int i = 0; i < n; i++) {
+                        if (block.getEnd(i) >= startLocation) {
+                            scores.add(block, i);
+                        } else if (block.getStart(i) > endLocation) {
+                            break;
+                        }
+                    }
+                } else if (cachedScores != null) {
                     for (LocusScore s : cachedScores) {
                         if (s.getEnd() >= startLocation) {
                             scores.add(s);
@@ -27,6 +27,10 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.broad.igv.util.LRUCache;
 import org.broad.igv.util.StringUtils;
@@ -49,7 +53,16 @@ public class TDFDataset extends TDFEntity {
     long[] tilePositions;
     int[] tileSizes;
     int nTiles;
-    LRUCache<String, TDFTile> cache = new LRUCache(this, 20);
+    private static final LRUCache.Weigher<TDFTile> TILE_WEIGHER = new LRUCache.Weigher<TDFTile>() {
+        public long getSize(TDFTile tile) {
+            // start, end, and one value per track at each position
+            return 64 + 12L * tile.getSize();
+        }
+    };
+
+    LRUCache<String, TDFTile> cache = new LRUCache(this, 20, TILE_WEIGHER);
+    // Tiles currently being read,  so concurrent requests for the same tile share a single read
+    ConcurrentHashMap<Integer, FutureTask<TDFTile>> pendingTiles = new ConcurrentHashMap();
     // TODO -- refactor this dependency out
     TDFReader reader;
 
@@ -112,35 +125,122 @@ public class TDFDataset extends TDFEntity {
 
     // TODO -- this uses an implied linear index.  Abstract index or replace
     // with general interval index
-    // TODO -- gather all non-cached tiles and read in one chunk.  See BAM
-    // alignment reader class
+
+    /**
+     * Return the non-empty tiles overlapping the interval.  Tiles not in the cache are read and decompressed
+     * in parallel on the reader's tile executor.
+     */
+    /**
+     * The tile index only,  loaded tiles are weighed by the dataset's own tile cache.
+     */
+    @Override
+    long getSizeEstimate() {
+        return super.getSizeEstimate() + 12L * nTiles;
+    }
+
     public List<TDFTile> getTiles(int startLocation, int endLocation) {
 
-        List<TDFTile> tiles = new ArrayList();
         int startTile = (int) (startLocation / tileWidth);
         int endTile = (int) (endLocation / tileWidth);
+
+        int nMissing = 0;
         for (int t = startTile; t <= endTile; t++) {
-            TDFTile tile = getTile(t);
-            if (tile != null && tile.getSize() > 0) {
-                tiles.add(tile);
+            if (!cache.containsKey(getTileKey(t))) {
+                nMissing++;
+            }
+        }
+
+        List<TDFTile> tiles = new ArrayList();
+        if (nMissing > 1) {
+            List<FutureTask<TDFTile>> loads = new ArrayList(endTile - startTile + 1);
+            for (int t = startTile; t <= endTile; t++) {
+                loads.add(loadTile(t, true));
+            }
+            for (int i = 0; i < loads.size(); i++) {
+                FutureTask<TDFTile> load = loads.get(i);
+                addTile(tiles, load == null ? getTile(startTile + i) : waitForTile(load));
+            }
+        } else {
+            for (int t = startTile; t <= endTile; t++) {
+                addTile(tiles, getTile(t));
             }
         }
         return tiles;
 
     }
 
+    private static void addTile(List<TDFTile> tiles, TDFTile tile) {
+        if (tile != null && tile.getSize() > 0) {
+            tiles.add(tile);
+        }
+    }
+
     // TDFTile computeTile(TDFDataset ds, int t, List<LocusScore> scores, String chr)
-    synchronized TDFTile getTile(int t) {
-        String key = getName() + "_" + t;
+    TDFTile getTile(int t) {
+        TDFTile tile = cache.get(getTileKey(t));
+        if (tile != null) {
+            return tile;
+        }
+        FutureTask<TDFTile> load = loadTile(t, false);
+        return load == null ? null : waitForTile(load);
+    }
+
+    private String getTileKey(int t) {
+        return getName() + "_" + t;
+    }
+
+    /**
+     * Start loading tile t unless it is cached,  in which case return null.  If another thread is already
+     * loading the tile its task is returned.  Otherwise a new task is run on the tile executor (async) or
+     * in the calling thread.
+     */
+    private FutureTask<TDFTile> loadTile(final int t, boolean async) {
+        final String key = getTileKey(t);
+        if (cache.containsKey(key)) {
+            return null;
+        }
 
-        TDFTile tile = null;
-        if (!cache.containsKey(key)) {
-            tile = reader.readTile(this, t);
-            cache.put(key, tile);
+        FutureTask<TDFTile> load = pendingTiles.get(t);
+        if (load != null) {
+            return load;
+        }
+
+        load = new FutureTask(new Callable<TDFTile>() {
+            public TDFTile call() throws Exception {
+                try {
+                    TDFTile tile = reader.readTile(TDFDataset.this, t);
+                    cache.put(key, tile);
+                    return tile;
+                } finally {
+                    pendingTiles.remove(t);
+                }
+            }
+        });
+        FutureTask<TDFTile> existing = pendingTiles.putIfAbsent(t, load);
+        if (existing != null) {
+            return existing;
+        }
+        if (async) {
+            TDFReader.getTileExecutor().execute(load);
         } else {
-            tile = cache.get(key);
+            load.run();
+        }
+        return load;
+    }
+
+    private TDFTile waitForTile(FutureTask<TDFTile> load) {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading tile from: " + getName());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
         }
-        return tile;
     }
 
 }
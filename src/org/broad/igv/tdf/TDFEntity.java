@@ -49,6 +49,14 @@ public class TDFEntity {
         this.attributes = attributes;
     }
 
+    long getSizeEstimate() {
+        long size = 64;
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            size += 64 + 2L * (entry.getKey().length() + (entry.getValue() == null ? 0 : entry.getValue().length()));
+        }
+        return size;
+    }
+
     public Set<String> getAttributeNames() {
         return attributes.keySet();
     }
@@ -22,26 +22,38 @@
  */
 package org.broad.igv.tdf;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.exceptions.DataLoadException;
 import org.broad.igv.track.TrackType;
 import org.broad.igv.track.WindowFunction;
 import org.broad.igv.util.CompressionUtils;
+import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.LRUCache;
+import org.broad.igv.util.NamedThreadFactory;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.StringUtils;
@@ -49,24 +61,44 @@ import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 import org.broad.tribble.util.SeekableStream;
 
 /**
+ * Reader for TDF files.  Reads are positional and do not share a file pointer,  so datasets and tiles
+ * can be fetched concurrently from any thread.  Local files are read through a single FileChannel,
+ * remote files borrow a stream from a small pool.  A FileChannel is closed for every thread when a thread
+ * reading from it is interrupted,  see readBytes for how that is handled.
+ *
  * @author jrobinso
  */
 public class TDFReader {
 
     static final Logger log = Logger.getLogger(TDFReader.class);
     public static final int GZIP_FLAG = 0x1;
+    static final int MAX_POOLED_STREAMS = 4;
 
-    private SeekableStream seekableStream = null;
+    /**
+     * Shared by all readers to fetch and decompress tiles in parallel,  see TDFDataset.getTiles.  Created on
+     * first use.
+     */
+    private static ExecutorService tileExecutor;
+
+    private volatile FileChannel channel = null;
+    private boolean closed = false;
+    private final Object channelLock = new Object();
+    private BlockingQueue<SeekableStream> streamPool = new ArrayBlockingQueue(MAX_POOLED_STREAMS);
     private int version;
     private Map<String, IndexEntry> datasetIndex;
     private Map<String, IndexEntry> groupIndex;
     private TrackType trackType;
     private String trackLine;
     private String[] trackNames;
-    LRUCache<String, TDFGroup> groupCache = new LRUCache(this, 20);
-    LRUCache<String, TDFDataset> datasetCache = new LRUCache(this, 20);
+    private static final LRUCache.Weigher<TDFEntity> ENTITY_WEIGHER = new LRUCache.Weigher<TDFEntity>() {
+        public long getSize(TDFEntity entity) {
+            return entity.getSizeEstimate();
+        }
+    };
+    LRUCache<String, TDFGroup> groupCache = new LRUCache(this, 20, ENTITY_WEIGHER);
+    LRUCache<String, TDFDataset> datasetCache = new LRUCache(this, 20, ENTITY_WEIGHER);
 
-    Map<WindowFunction, Double> valueCache = new HashMap();
+    Map<WindowFunction, Double> valueCache = Collections.synchronizedMap(new HashMap());
     private List<WindowFunction> windowFunctions;
     ResourceLocator locator;
 
@@ -88,18 +120,44 @@ public class TDFReader {
         //this.path = path;
         this.locator = locator;
         try {
-            seekableStream = IGVSeekableStreamFactory.getStreamFor(locator.getPath());
+            String path = locator.getPath();
+            if (!FileUtils.isRemote(path) && new File(path).isFile()) {
+                channel = new RandomAccessFile(path, "r").getChannel();
+            } else {
+                streamPool.offer(IGVSeekableStreamFactory.getStreamFor(path));
+            }
             readHeader();
 
         } catch (IOException ex) {
+            close();
             log.error("Error loading file: " + locator.getPath(), ex);
             throw new DataLoadException("Error loading file: " + ex.toString(), locator.getPath());
+        } catch (RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    static synchronized ExecutorService getTileExecutor() {
+        if (tileExecutor == null) {
+            int nThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            tileExecutor = Executors.newFixedThreadPool(nThreads, new NamedThreadFactory("tdf-tile"));
         }
+        return tileExecutor;
     }
 
     public void close() {
         try {
-            seekableStream.close();
+            synchronized (channelLock) {
+                closed = true;
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+            SeekableStream ss;
+            while ((ss = streamPool.poll()) != null) {
+                ss.close();
+            }
         } catch (IOException e) {
             log.error("Error closing reader for: " + getPath(), e);
         }
@@ -236,10 +294,12 @@ public class TDFReader {
         return ds;
     }
 
-    public synchronized TDFDataset getDataset(String name) {
+    public TDFDataset getDataset(String name) {
 
-        if (datasetCache.containsKey(name)) {
-            return datasetCache.get(name);
+        // Not synchronized,  two threads racing for the same dataset will both read it which is harmless
+        TDFDataset cached = datasetCache.get(name);
+        if (cached != null) {
+            return cached;
         }
 
         try {
@@ -276,9 +336,10 @@ public class TDFReader {
         return groupIndex.keySet();
     }
 
-    public synchronized TDFGroup getGroup(String name) {
-        if (groupCache.containsKey(name)) {
-            return groupCache.get(name);
+    public TDFGroup getGroup(String name) {
+        TDFGroup cached = groupCache.get(name);
+        if (cached != null) {
+            return cached;
         }
 
         try {
@@ -341,6 +402,51 @@ public class TDFReader {
         }
     }
 
+    /**
+     * Read from the shared channel.  An interrupt during a read closes the channel for all threads,  so reads are
+     * made with the interrupt status cleared (it is restored afterwards),  and a channel closed by an interrupt of
+     * another thread is reopened and the read retried.
+     */
+    private byte[] readChannel(long position, byte[] buffer) throws IOException {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                FileChannel ch = channel;
+                try {
+                    ByteBuffer bb = ByteBuffer.wrap(buffer);
+                    long pos = position;
+                    while (bb.hasRemaining()) {
+                        int n = ch.read(bb, pos);
+                        if (n < 0) {
+                            throw new EOFException("Unexpected end of file: " + getPath());
+                        }
+                        pos += n;
+                    }
+                    return buffer;
+                } catch (ClosedChannelException e) {
+                    interrupted |= Thread.interrupted();
+                    reopenChannel(ch);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void reopenChannel(FileChannel failed) throws IOException {
+        synchronized (channelLock) {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (channel == failed) {
+                log.info("Reopening " + getPath() + " closed by an interrupted read");
+                channel = new RandomAccessFile(getPath(), "r").getChannel();
+            }
+        }
+    }
+
     /**
      * @return the version
      */
@@ -416,10 +522,27 @@ public class TDFReader {
 
 
     public byte[] readBytes(long position, int nBytes) throws IOException {
-        seekableStream.seek(position);
         byte[] buffer = new byte[nBytes];
-        seekableStream.read(buffer, 0, nBytes);
-        return buffer;
+
+        if (channel != null) {
+            return readChannel(position, buffer);
+        }
+
+        SeekableStream ss = streamPool.poll();
+        if (ss == null) {
+            ss = IGVSeekableStreamFactory.getStreamFor(getPath());
+        }
+        boolean ok = false;
+        try {
+            ss.seek(position);
+            ss.readFully(buffer);
+            ok = true;
+            return buffer;
+        } finally {
+            if (!ok || !streamPool.offer(ss)) {
+                ss.close();
+            }
+        }
     }
 
     /**
@@ -438,14 +561,15 @@ public class TDFReader {
     public Set<String> getChromosomeNames() {
         if(chrNames == null) {
             ///DatasetIndex chr1/z0/mean=org.broad.igv.tdf.TDFReader$IndexEntry@6a493b65
-            chrNames = new HashSet();
+            Set<String> names = new HashSet();
             String [] tokens = new String[2];
             for(String key : datasetIndex.keySet()) {
                 int nTokens = ParsingUtils.split(key, tokens, '/');
                 if(nTokens > 0) {
-                    chrNames.add(tokens[0]);
+                    names.add(tokens[0]);
                 }
             }
+            chrNames = names;
         }
         return chrNames;
     }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.tdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import org.broad.igv.track.TrackType;
+import org.broad.igv.track.WindowFunction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TDFReaderTest {
+
+    private File file;
+    private TDFReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("reader", ".tdf");
+        TDFWriter writer = new TDFWriter(file, "hg18", TrackType.OTHER, "", new String[]{"sample"},
+                Arrays.asList(WindowFunction.mean), false);
+        writer.createDataset("/chr1/raw", TDFDataset.DataType.FLOAT, 100, 10);
+        for (int t = 0; t < 10; t++) {
+            float[] data = new float[100];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = t * 100 + i;
+            }
+            writer.writeTile("/chr1/raw", t, new TDFFixedTile(t * 100, t * 100, 1, new float[][]{data}));
+        }
+        writer.closeFile();
+        reader = TDFReader.getReader(file.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        Thread.interrupted();
+        reader.close();
+        file.delete();
+    }
+
+    private void assertTiles() {
+        List<TDFTile> tiles = reader.getDataset("/chr1/raw").getTiles(0, 1000);
+        assertEquals(10, tiles.size());
+        for (int t = 0; t < 10; t++) {
+            assertEquals(t * 100 + 42, tiles.get(t).getValue(0, 42), 0);
+        }
+    }
+
+    @Test
+    public void testReadWhileInterrupted() throws IOException {
+        byte[] header = reader.readBytes(0, 16);
+
+        // An interrupted reader must not close the channel shared by all readers of the file
+        Thread.currentThread().interrupt();
+        assertArrayEquals(header, reader.readBytes(0, 16));
+        assertTrue("interrupt status is kept", Thread.interrupted());
+
+        assertArrayEquals(header, reader.readBytes(0, 16));
+        assertTiles();
+    }
+
+    @Test
+    public void testReopenAfterInterruptedRead() throws Exception {
+        byte[] header = reader.readBytes(0, 16);
+
+        // Close the channel the way an interrupt of another reading thread does
+        Field field = TDFReader.class.getDeclaredField("channel");
+        field.setAccessible(true);
+        FileChannel channel = (FileChannel) field.get(reader);
+        channel.close();
+
+        assertArrayEquals(header, reader.readBytes(0, 16));
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertTrue(((FileChannel) field.get(reader)).isOpen());
+        assertTiles();
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void testNoReopenAfterClose() throws IOException {
+        reader.close();
+        reader.readBytes(0, 16);
+    }
+}
@@ -22,16 +22,28 @@
  */
 package org.broad.igv.tools;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import net.sf.samtools.SAMSequenceRecord;
 import net.sf.samtools.util.CloseableIterator;
 
 import org.broad.igv.feature.Chromosome;
@@ -42,10 +54,12 @@ import org.broad.igv.sam.AlignmentBlock;
 import org.broad.igv.sam.ReadMate;
 import org.broad.igv.sam.reader.AlignmentQueryReader;
 import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.sam.reader.BAMQueryReader;
 import org.broad.igv.sam.reader.MergedAlignmentReader;
 import org.broad.igv.tools.parsers.DataConsumer;
 import org.broad.igv.ui.filefilters.AlignmentFileFilter;
 import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.NamedThreadFactory;
 import org.broad.igv.util.stats.Distribution;
 
 /**
@@ -83,6 +97,7 @@ public class CoverageCounter {
     private int strandOption = -1;
     private int extFactor;
     private int totalCount = 0;
+    private int nThreads = 1;
     private File wigFile = null;
     private WigWriter wigWriter = null;
     private boolean keepZeroes = false;
@@ -92,6 +107,7 @@ public class CoverageCounter {
     private String readGroup; // The read group to count
 
     Map<Event, WigWriter> writers = new HashMap();
+    private Event[] writerEvents = new Event[0];
 
     private boolean computeTDF = true;
 
@@ -189,6 +205,14 @@ public class CoverageCounter {
                     coverageHistogram = new Distribution(200);
                 } else if (opt.equals("z")) {
                     keepZeroes = true;
+                } else if (opt.startsWith("p=")) {
+                    // Count chromosomes in parallel,  p=0 uses all processors
+                    String[] tmp = opt.split("=");
+                    nThreads = Integer.parseInt(tmp[1]);
+                    if (nThreads <= 0) {
+                        nThreads = Runtime.getRuntime().availableProcessors();
+                    }
+                    System.out.println("Count threads = " + nThreads);
                 } else {
                     System.out.println("Unknown coverage option: " + opt);
                 }
@@ -228,8 +252,7 @@ public class CoverageCounter {
         AlignmentQueryReader reader = null;
         CloseableIterator<Alignment> iter = null;
 
-        String lastChr = "";
-        ReadCounter counter = null;
+        CountState state = new CountState();
 
 
         try {
@@ -237,211 +260,331 @@ public class CoverageCounter {
             if (wigFile != null) {
                 wigWriter = new WigWriter(wigFile, windowSize);
             }
+            writerEvents = writers.keySet().toArray(new Event[writers.size()]);
 
 
             if (interval == null) {
                 reader = getReader(alignmentFile, false);
+                if (canCountInParallel(reader)) {
+                    countInParallel(reader, tolerance);
+                    return;
+                }
                 iter = reader.iterator();
             } else {
                 reader = getReader(alignmentFile, true);
                 iter = reader.query(interval.getChr(), interval.getStart(), interval.getEnd(), false);
             }
 
-            while (iter != null && iter.hasNext()) {
-                Alignment alignment = iter.next();
-                if (passFilter(alignment)) {
+            countAlignments(iter, tolerance, new DirectOutput(), state);
+        }
 
-                    totalCount++;
+        catch (Exception e) {
+            e.printStackTrace();
+        }
 
-                    String alignmentChr = alignment.getChr();
+        finally {
 
-                    // Close all counters with position < alignment.getStart()
-                    if (alignmentChr.equals(lastChr)) {
-                        if (counter != null) {
-                            counter.closeBucketsBefore(alignment.getAlignmentStart() - tolerance);
-                        }
-                    } else {
-                        if (counter != null) {
-                            counter.closeBucketsBefore(Integer.MAX_VALUE);
-                        }
-                        counter = new ReadCounter(alignmentChr);
-                        lastChr = alignmentChr;
-                    }
+            if (state.counter != null) {
+                state.counter.closeBucketsBefore(Integer.MAX_VALUE);
+            }
+            totalCount += state.alignmentCount;
 
-                    if (alignment.getMappingQuality() == 0) {
-                        // TODO -- mq zero event
-                    } else if (alignment.isPaired()) {
+            consumer.setAttribute("totalCount", String.valueOf(totalCount));
+            consumer.parsingComplete();
+
+            if (iter != null) {
+                iter.close();
+            }
 
-                        final int start = alignment.getStart();
-                        final int end = alignment.getEnd();
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
+                }
+            }
+
+
+            if (wigWriter != null) {
+                wigWriter.close();
+            }
 
-                        counter.incrementPairedCount(start, end);
+            for (WigWriter writer : writers.values()) {
+                writer.close();
+            }
 
-                        ReadMate mate = alignment.getMate();
-                        boolean mateMapped = mate != null && mate.isMapped();
-                        boolean sameChromosome = mateMapped && mate.getChr().equals(alignment.getChr());
 
-                        if (mateMapped) {
-                            if (sameChromosome) {
+            if (coverageHistogram != null) {
+                try {
+                    PrintWriter pw = new PrintWriter(new FileWriter(getFilenameBase() + ".hist.txt"));
+                    coverageHistogram.print(pw);
+                    pw.close();
+                } catch (IOException e) {
+                    e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
+                }
+            }
+        }
+    }
 
-                                // Pair orientation
-                                String oStr = alignment.getPairOrientation();
-                                if (oStr.equals("R1F2") || oStr.equals("R2F1")) {
-                                    counter.incrementPairedEvent(start, end, Event.duplication);
-                                } else if (oStr.equals("F1F2") || oStr.equals("F2F1") ||
-                                        oStr.equals("R1R2") || oStr.equals("R2R1")) {
-                                    counter.incrementPairedEvent(start, end, Event.inversion);
-                                }
+    /**
+     * The progress of a count over one iterator.  The counter for the current chromosome still has open windows.
+     */
+    static class CountState {
+        ReadCounter counter;
+        int alignmentCount;
+    }
 
-                                // Insert size
-                                int isize = Math.abs(alignment.getInferredInsertSize());
-                                if (isize > upperExpectedInsertSize) {
-                                    counter.incrementPairedEvent(start, end, Event.largeISize);
+    /**
+     * Count all alignments from the iterator,  sending closed windows to the output.
+     */
+    private void countAlignments(CloseableIterator<Alignment> iter, int tolerance, WindowOutput output,
+                                 CountState state) {
 
-                                }
-                                if (isize < lowerExpectedInsertSize) {
-                                    counter.incrementPairedEvent(start, end, Event.smallISize);
-                                }
+        String lastChr = "";
+        ReadCounter counter = null;
 
-                            } else {
-                                counter.incrementPairedEvent(start, end, Event.inter);
-                            }
-                        } else {  // unmapped mate
+        while (iter != null && iter.hasNext()) {
+            Alignment alignment = iter.next();
+            if (passFilter(alignment)) {
 
-                            counter.incrementPairedEvent(start, end, Event.unmappedMate);
-                        }
+                state.alignmentCount++;
 
+                String alignmentChr = alignment.getChr();
 
+                // Close all counters with position < alignment.getStart()
+                if (alignmentChr.equals(lastChr)) {
+                    if (counter != null) {
+                        counter.closeBucketsBefore(alignment.getAlignmentStart() - tolerance);
+                    }
+                } else {
+                    if (counter != null) {
+                        counter.closeBucketsBefore(Integer.MAX_VALUE);
                     }
+                    counter = new ReadCounter(alignmentChr, tolerance, output);
+                    state.counter = counter;
+                    lastChr = alignmentChr;
+                }
 
+                countAlignment(alignment, counter);
+            }
+        }
+    }
 
-                    AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
-                    if (blocks != null) {
-                        int lastBlockEnd = -1;
-                        for (AlignmentBlock block : blocks) {
-
-                            if (!block.isSoftClipped()) {
-                                if (lastBlockEnd >= 0) {
-                                    String c = alignment.getCigarString();
-                                    int s = block.getStart();
-                                    if (s > lastBlockEnd) {
-                                        counter.incrementEvent(lastBlockEnd, Event.indel);
-                                    }
-                                }
-
-                                byte[] bases = block.getBases();
-                                int blockStart = block.getStart();
-                                int adjustedStart = block.getStart();
-                                int adjustedEnd = block.getEnd();
-
-                                if (alignment.isNegativeStrand()) {
-                                    adjustedStart = Math.max(0, adjustedStart - extFactor);
-                                } else {
-                                    adjustedEnd += extFactor;
-                                }
-
-                                if (interval != null) {
-                                    adjustedStart = Math.max(interval.getStart() - 1, adjustedStart);
-                                    adjustedEnd = Math.min(interval.getEnd(), adjustedEnd);
-                                }
-
-                                for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                                    byte base = 0;
-                                    int baseIdx = pos - blockStart;
-                                    if (bases != null && baseIdx >= 0 && baseIdx < bases.length) {
-                                        base = bases[baseIdx];
-                                    }
-                                    int idx = pos - blockStart;
-                                    byte quality = (idx >= 0 && idx < block.qualities.length) ?
-                                            block.qualities[pos - blockStart] : (byte) 0;
-                                    counter.incrementCount(pos, base, quality);
-                                }
-
-                                lastBlockEnd = block.getEnd();
-                            }
-                        }
-                    } else {
-                        int adjustedStart = alignment.getAlignmentStart();
-                        int adjustedEnd = alignment.getAlignmentEnd();
+    private void countAlignment(Alignment alignment, ReadCounter counter) {
 
-                        if (alignment.isNegativeStrand()) {
-                            adjustedStart = Math.max(0, adjustedStart - extFactor);
-                        } else {
-                            adjustedEnd += extFactor;
-                        }
+        if (alignment.getMappingQuality() == 0) {
+            // TODO -- mq zero event
+        } else if (alignment.isPaired()) {
 
-                        if (interval != null) {
-                            adjustedStart = Math.max(interval.getStart() - 1, adjustedStart);
-                            adjustedEnd = Math.min(interval.getEnd(), adjustedEnd);
-                        }
+            final int start = alignment.getStart();
+            final int end = alignment.getEnd();
 
+            counter.incrementPairedCount(start, end);
 
-                        for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                            counter.incrementCount(pos, (byte) 0, (byte) 0);
-                        }
+            ReadMate mate = alignment.getMate();
+            boolean mateMapped = mate != null && mate.isMapped();
+            boolean sameChromosome = mateMapped && mate.getChr().equals(alignment.getChr());
+
+            if (mateMapped) {
+                if (sameChromosome) {
+
+                    // Pair orientation
+                    String oStr = alignment.getPairOrientation();
+                    if (oStr.equals("R1F2") || oStr.equals("R2F1")) {
+                        counter.incrementPairedEvent(start, end, Event.duplication);
+                    } else if (oStr.equals("F1F2") || oStr.equals("F2F1") ||
+                            oStr.equals("R1R2") || oStr.equals("R2R1")) {
+                        counter.incrementPairedEvent(start, end, Event.inversion);
                     }
 
-                    if (writers.containsKey(Event.indel)) {
-                        for (AlignmentBlock block : alignment.getInsertions()) {
-                            if (interval == null || (block.getStart() >= interval.getStart() - 1 &&
-                                    block.getStart() <= interval.getEnd())) {
-                                counter.incrementEvent(block.getStart(), Event.indel);
-                            }
-                        }
+                    // Insert size
+                    int isize = Math.abs(alignment.getInferredInsertSize());
+                    if (isize > upperExpectedInsertSize) {
+                        counter.incrementPairedEvent(start, end, Event.largeISize);
 
                     }
+                    if (isize < lowerExpectedInsertSize) {
+                        counter.incrementPairedEvent(start, end, Event.smallISize);
+                    }
+
+                } else {
+                    counter.incrementPairedEvent(start, end, Event.inter);
                 }
+            } else {  // unmapped mate
 
+                counter.incrementPairedEvent(start, end, Event.unmappedMate);
             }
-        }
 
-        catch (Exception e) {
-            e.printStackTrace();
+
         }
 
-        finally {
 
-            if (counter != null) {
-                counter.closeBucketsBefore(Integer.MAX_VALUE);
+        AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
+        if (blocks != null) {
+            int lastBlockEnd = -1;
+            for (AlignmentBlock block : blocks) {
+
+                if (!block.isSoftClipped()) {
+                    if (lastBlockEnd >= 0) {
+                        String c = alignment.getCigarString();
+                        int s = block.getStart();
+                        if (s > lastBlockEnd) {
+                            counter.incrementEvent(lastBlockEnd, Event.indel);
+                        }
+                    }
+
+                    byte[] bases = block.getBases();
+                    int blockStart = block.getStart();
+                    int adjustedStart = block.getStart();
+                    int adjustedEnd = block.getEnd();
+
+                    if (alignment.isNegativeStrand()) {
+                        adjustedStart = Math.max(0, adjustedStart - extFactor);
+                    } else {
+                        adjustedEnd += extFactor;
+                    }
+
+                    if (interval != null) {
+                        adjustedStart = Math.max(interval.getStart() - 1, adjustedStart);
+                        adjustedEnd = Math.min(interval.getEnd(), adjustedEnd);
+                    }
+
+                    for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
+                        byte base = 0;
+                        int baseIdx = pos - blockStart;
+                        if (bases != null && baseIdx >= 0 && baseIdx < bases.length) {
+                            base = bases[baseIdx];
+                        }
+                        int idx = pos - blockStart;
+                        byte quality = (idx >= 0 && idx < block.qualities.length) ?
+                                block.qualities[pos - blockStart] : (byte) 0;
+                        counter.incrementCount(pos, base, quality);
+                    }
+
+                    lastBlockEnd = block.getEnd();
+                }
             }
+        } else {
+            int adjustedStart = alignment.getAlignmentStart();
+            int adjustedEnd = alignment.getAlignmentEnd();
 
-            consumer.setAttribute("totalCount", String.valueOf(totalCount));
-            consumer.parsingComplete();
+            if (alignment.isNegativeStrand()) {
+                adjustedStart = Math.max(0, adjustedStart - extFactor);
+            } else {
+                adjustedEnd += extFactor;
+            }
 
-            if (iter != null) {
-                iter.close();
+            if (interval != null) {
+                adjustedStart = Math.max(interval.getStart() - 1, adjustedStart);
+                adjustedEnd = Math.min(interval.getEnd(), adjustedEnd);
             }
 
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
+
+            for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
+                counter.incrementCount(pos, (byte) 0, (byte) 0);
+            }
+        }
+
+        if (writers.containsKey(Event.indel)) {
+            for (AlignmentBlock block : alignment.getInsertions()) {
+                if (interval == null || (block.getStart() >= interval.getStart() - 1 &&
+                        block.getStart() <= interval.getEnd())) {
+                    counter.incrementEvent(block.getStart(), Event.indel);
                 }
             }
 
+        }
+    }
 
-            if (wigWriter != null) {
-                wigWriter.close();
-            }
+    /**
+     * Chromosomes can be counted independently,  and in parallel,  when the input is a single indexed BAM file.
+     */
+    private boolean canCountInParallel(AlignmentQueryReader reader) {
+        return nThreads > 1 && reader instanceof BAMQueryReader && reader.hasIndex();
+    }
 
-            for (WigWriter writer : writers.values()) {
-                writer.close();
+    /**
+     * Count each chromosome as a separate shard on a worker pool.  Each shard queries the index with its own reader
+     * and spills its closed windows to a temporary file.  The shards are replayed into the consumer and writers in
+     * sequence dictionary order,  which is the order the sequential path encounters them,  so the output is
+     * identical.
+     * <p/>
+     * At most nThreads shards are submitted ahead of the one being replayed,  so a slow chromosome early in the
+     * dictionary does not leave the remaining chromosomes spilled to disk all at once.
+     */
+    private void countInParallel(AlignmentQueryReader reader, int tolerance) throws Exception {
+
+        List<String> chromosomes = new ArrayList();
+        for (SAMSequenceRecord rec : reader.getHeader().getSequenceDictionary().getSequences()) {
+            chromosomes.add(rec.getSequenceName());
+        }
+
+        System.out.println("Counting " + chromosomes.size() + " chromosomes with " + nThreads + " threads");
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads, new NamedThreadFactory("igvtools-count"));
+        List<Future<CountShard>> futures = new ArrayList(chromosomes.size());
+        try {
+            while (futures.size() < Math.min(nThreads, chromosomes.size())) {
+                futures.add(submitShard(executor, chromosomes.get(futures.size()), tolerance));
             }
 
+            for (int i = 0; i < chromosomes.size(); i++) {
+                CountShard shard = futures.get(i).get();
+
+                // Keep the workers busy while this shard is replayed
+                if (futures.size() < chromosomes.size()) {
+                    futures.add(submitShard(executor, chromosomes.get(futures.size()), tolerance));
+                }
 
-            if (coverageHistogram != null) {
                 try {
-                    PrintWriter pw = new PrintWriter(new FileWriter(getFilenameBase() + ".hist.txt"));
-                    coverageHistogram.print(pw);
-                    pw.close();
-                } catch (IOException e) {
-                    e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
+                    shard.replay();
+                } finally {
+                    shard.delete();
                 }
+                totalCount += shard.alignmentCount;
+            }
+        } finally {
+            for (Future<CountShard> future : futures) {
+                future.cancel(true);
             }
+            executor.shutdownNow();
         }
     }
 
+    private Future<CountShard> submitShard(ExecutorService executor, final String chr, final int tolerance) {
+        return executor.submit(new Callable<CountShard>() {
+            public CountShard call() throws Exception {
+                return countShard(chr, tolerance);
+            }
+        });
+    }
+
+    private CountShard countShard(String chr, int tolerance) throws IOException {
+
+        CountShard shard = new CountShard();
+        AlignmentQueryReader shardReader = null;
+        CloseableIterator<Alignment> iter = null;
+        try {
+            shardReader = getReader(alignmentFile, true);
+            iter = shardReader.query(chr, 0, Integer.MAX_VALUE, false);
+            CountState state = new CountState();
+            countAlignments(iter, tolerance, shard, state);
+            if (state.counter != null) {
+                state.counter.closeBucketsBefore(Integer.MAX_VALUE);
+            }
+            shard.alignmentCount = state.alignmentCount;
+        } finally {
+            shard.close();
+            if (iter != null) {
+                iter.close();
+            }
+            if (shardReader != null) {
+                shardReader.close();
+            }
+        }
+        return shard;
+    }
+
     private AlignmentQueryReader getReader(String alignmentFile, boolean b) throws IOException {
 
         boolean isList = alignmentFile.indexOf(",") > 0;
@@ -468,13 +611,157 @@ public class CoverageCounter {
 
     }
 
+    /**
+     * Receives the windows closed by a ReadCounter.
+     */
+    interface WindowOutput {
+        void addWindow(String chr, int start, int end, float[] values, Counter counter);
+    }
+
+    /**
+     * Writes windows straight to the consumer and wig writers.
+     */
+    class DirectOutput implements WindowOutput {
+
+        float[] scores = new float[writerEvents.length];
+
+        public void addWindow(String chr, int start, int end, float[] values, Counter counter) {
+            for (int i = 0; i < writerEvents.length; i++) {
+                scores[i] = counter.getEventScore(writerEvents[i]);
+            }
+            writeWindow(chr, start, end, values, scores);
+        }
+    }
+
+    /**
+     * Windows of one chromosome counted on a worker thread.  They are spilled to a temporary file and replayed to
+     * the consumer,  in order,  on the main thread.
+     */
+    class CountShard implements WindowOutput {
+
+        File file;
+        DataOutputStream out;
+        String lastChr;
+        int alignmentCount;
+
+        CountShard() throws IOException {
+            file = File.createTempFile("igvtools-count", ".tmp");
+            file.deleteOnExit();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        }
+
+        public void addWindow(String chr, int start, int end, float[] values, Counter counter) {
+            try {
+                if (!chr.equals(lastChr)) {
+                    out.writeByte(1);
+                    out.writeUTF(chr);
+                    lastChr = chr;
+                }
+                out.writeByte(0);
+                out.writeInt(start);
+                out.writeInt(end);
+                for (float v : values) {
+                    out.writeFloat(v);
+                }
+                for (Event evt : writerEvents) {
+                    out.writeFloat(counter.getEventScore(evt));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing temporary count file: " + file, e);
+            }
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+
+        void replay() throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                String chr = null;
+                float[] values = new float[buffer.length];
+                float[] scores = new float[writerEvents.length];
+                int tag;
+                while ((tag = in.read()) >= 0) {
+                    if (tag == 1) {
+                        chr = in.readUTF();
+                        continue;
+                    }
+                    int start = in.readInt();
+                    int end = in.readInt();
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = in.readFloat();
+                    }
+                    for (int i = 0; i < scores.length; i++) {
+                        scores[i] = in.readFloat();
+                    }
+                    writeWindow(chr, start, end, values, scores);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        void delete() {
+            file.delete();
+        }
+    }
+
+    private void writeWindow(String chr, int start, int end, float[] values, float[] scores) {
+
+        consumer.addData(chr, start, end, values, null);
+
+        for (int i = 0; i < writerEvents.length; i++) {
+            writers.get(writerEvents[i]).addData(chr, start, end, scores[i]);
+        }
+
+        if (wigWriter != null) {
+            wigWriter.addData(chr, start, end, values[0]);
+        }
+    }
+
+    /**
+     * Accumulates counts for the open windows of a single chromosome.
+     * <p/>
+     * Alignments arrive sorted by start,  so the open windows form a sliding band of roughly
+     * tolerance / windowSize windows.  They are kept in a ring buffer indexed directly by window
+     * number (idx & mask),  and counters are recycled once their window has been written.  The
+     * ring grows if a single alignment spans more windows than it holds (e.g. long spliced reads).
+     * Windows requested behind the band (out of order input) are kept in a small sorted overflow
+     * map so the output order is unchanged.
+     */
     class ReadCounter {
 
         String chr;
-        TreeMap<Integer, Counter> counts = new TreeMap();
-
-        ReadCounter(String chr) {
+        WindowOutput output;
+        float[] buffer = new float[CoverageCounter.this.buffer.length];
+        int chrLength = -1;
+
+        Counter[] ring;
+        int mask;
+        int base = 0;           // Lowest window index that may be open in the ring
+        int limit = 0;          // One past the highest window index opened in the ring
+        List<Counter> pool = new ArrayList();
+        TreeMap<Integer, Counter> stragglers;
+
+        ReadCounter(String chr, int tolerance, WindowOutput output) {
             this.chr = chr;
+            this.output = output;
+
+            int capacity = 16;
+            int nWindows = 2 * (tolerance / windowSize) + 4;
+            while (capacity < nWindows) {
+                capacity <<= 1;
+            }
+            ring = new Counter[capacity];
+            mask = capacity - 1;
+
+            if (genome != null) {
+                Chromosome chromosome = genome.getChromosome(chr);
+                if (chromosome != null) {
+                    chrLength = chromosome.getLength();
+                }
+            }
         }
 
         void incrementCount(int position, byte base, byte quality) {
@@ -538,15 +825,67 @@ public class CoverageCounter {
         }
 
         private Counter getCounter(int idx) {
-            if (!counts.containsKey(idx)) {
-                int counterStartPosition = idx * windowSize;
-                int counterEndPosition = counterStartPosition + windowSize;
-                counts.put(idx, new Counter(chr, counterStartPosition, counterEndPosition));
+            if (base == limit && idx > base) {
+                // Ring is empty,  start the band at the first window used rather than at 0,  otherwise the first
+                // read of a chromosome would grow the ring to span every window before it
+                base = idx;
+                limit = idx;
+            }
+            int offset = idx - base;
+            if (offset < 0) {
+                return getStraggler(idx);
+            }
+            if (offset >= ring.length) {
+                grow(offset + 1);
+            }
+            Counter counter = ring[idx & mask];
+            if (counter == null) {
+                counter = newCounter(idx);
+                ring[idx & mask] = counter;
+                if (idx >= limit) {
+                    limit = idx + 1;
+                }
             }
-            final Counter counter = counts.get(idx);
             return counter;
         }
 
+        private Counter getStraggler(int idx) {
+            if (stragglers == null) {
+                stragglers = new TreeMap();
+            }
+            Counter counter = stragglers.get(idx);
+            if (counter == null) {
+                counter = newCounter(idx);
+                stragglers.put(idx, counter);
+            }
+            return counter;
+        }
+
+        private Counter newCounter(int idx) {
+            int counterStartPosition = idx * windowSize;
+            int counterEndPosition = counterStartPosition + windowSize;
+            if (pool.isEmpty()) {
+                return new Counter(chr, counterStartPosition, counterEndPosition);
+            }
+            Counter counter = pool.remove(pool.size() - 1);
+            counter.reset(counterStartPosition, counterEndPosition);
+            return counter;
+        }
+
+        private void grow(int minCapacity) {
+            int capacity = ring.length;
+            while (capacity < minCapacity) {
+                capacity <<= 1;
+            }
+            Counter[] newRing = new Counter[capacity];
+            int newMask = capacity - 1;
+            for (int idx = base; idx < limit; idx++) {
+                newRing[idx & newMask] = ring[idx & mask];
+            }
+            ring = newRing;
+            mask = newMask;
+        }
+
 
         //void incrementNegCount(int position) {
         //    Integer bucket = position / windowSize;
@@ -557,83 +896,84 @@ public class CoverageCounter {
         //}
 
         void closeBucketsBefore(int position) {
-            List<Integer> bucketsToClose = new ArrayList();
 
-            Integer bucket = position / windowSize;
-            for (Map.Entry<Integer, Counter> entry : counts.entrySet()) {
-                if (entry.getKey() < bucket) {
+            int bucket = position / windowSize;
 
-                    final Counter counter = entry.getValue();
-                    int totalCount = counter.getCount();
+            // Stragglers all lie below the ring's base,  so they are written first
+            if (stragglers != null) {
+                while (!stragglers.isEmpty() && stragglers.firstKey() < bucket) {
+                    Map.Entry<Integer, Counter> entry = stragglers.pollFirstEntry();
+                    closeCounter(entry.getKey(), entry.getValue());
+                }
+            }
 
-                    if (totalCount > countThreshold) {
+            int end = Math.min(bucket, limit);
+            for (int idx = base; idx < end; idx++) {
+                int slot = idx & mask;
+                Counter counter = ring[slot];
+                if (counter != null) {
+                    ring[slot] = null;
+                    closeCounter(idx, counter);
+                }
+            }
+            if (bucket >= limit) {
+                // Ring is empty,  restart the band at the close point
+                base = bucket;
+                limit = bucket;
+            } else if (bucket > base) {
+                base = bucket;
+            }
+        }
 
-                        // Divide total count by window size.  This is the average count per
-                        // base over the window,  so 30x coverage remains 30x irrespective of window size.
-                        int bucketStartPosition = entry.getKey() * windowSize;
-                        int bucketEndPosition = bucketStartPosition + windowSize;
-                        if (genome != null) {
-                            Chromosome chromosome = genome.getChromosome(chr);
-                            if (chromosome != null) {
-                                bucketEndPosition = Math.min(bucketEndPosition, chromosome.getLength());
-                            }
-                        }
-                        int bucketSize = bucketEndPosition - bucketStartPosition;
+        private void closeCounter(int idx, Counter counter) {
+            int totalCount = counter.getCount();
 
-                        buffer[0] = ((float) totalCount) / bucketSize;
+            if (totalCount > countThreshold) {
 
-                        if (strandOption > 0) {
-                            buffer[1] = ((float) counter.getCount()) / bucketSize;
-                        }
+                // Divide total count by window size.  This is the average count per
+                // base over the window,  so 30x coverage remains 30x irrespective of window size.
+                int bucketStartPosition = idx * windowSize;
+                int bucketEndPosition = bucketStartPosition + windowSize;
+                if (chrLength >= 0) {
+                    bucketEndPosition = Math.min(bucketEndPosition, chrLength);
+                }
+                int bucketSize = bucketEndPosition - bucketStartPosition;
 
-                        consumer.addData(chr, bucketStartPosition, bucketEndPosition, buffer, null);
+                buffer[0] = ((float) totalCount) / bucketSize;
 
-                        for (Map.Entry<Event, WigWriter> entries : writers.entrySet()) {
-                            Event evt = entries.getKey();
-                            WigWriter writer = entries.getValue();
-                            float score = counter.getEventScore(evt);
-                            writer.addData(chr, bucketStartPosition, bucketEndPosition, score);
-                        }
+                if (strandOption > 0) {
+                    buffer[1] = ((float) counter.getCount()) / bucketSize;
+                }
 
-                        if (wigWriter != null) {
-                            wigWriter.addData(chr, bucketStartPosition, bucketEndPosition, buffer[0]);
-                        }
+                output.addWindow(chr, bucketStartPosition, bucketEndPosition, buffer, counter);
 
-                        /*
-                        if (coverageHistogram != null) {
-
-                           List<Feature> transcripts = FeatureUtils.getAllFeaturesAt(bucketStartPosition, 10000, 5, genes, false);
-                            if (transcripts != null && !transcripts.isEmpty()) {
-
-                                boolean isCoding = false;
-                                for (Feature t : transcripts) {
-                                    Exon exon = ((IGVFeature) t).getExonAt(bucketStartPosition);
-                                    if (exon != null && !exon.isUTR(bucketStartPosition)) {
-                                        isCoding = true;
-                                        break;
-                                    }
-                                }
-
-                                if (isCoding) {
-                                    int[] baseCounts = counter.getBaseCount();
-                                    for (int i = 0; i < baseCounts.length; i++) {
-                                        coverageHistogram.addDataPoint(baseCounts[i]);
-                                    }
-                                }
-
-                       }
-                        */
-                    }
+                /*
+                if (coverageHistogram != null) {
 
-                    bucketsToClose.add(entry.getKey());
-                }
-            }
+                   List<Feature> transcripts = FeatureUtils.getAllFeaturesAt(bucketStartPosition, 10000, 5, genes, false);
+                    if (transcripts != null && !transcripts.isEmpty()) {
 
-            for (Integer key : bucketsToClose) {
-                counts.remove(key);
-            }
+                        boolean isCoding = false;
+                        for (Feature t : transcripts) {
+                            Exon exon = ((IGVFeature) t).getExonAt(bucketStartPosition);
+                            if (exon != null && !exon.isUTR(bucketStartPosition)) {
+                                isCoding = true;
+                                break;
+                            }
+                        }
 
+                        if (isCoding) {
+                            int[] baseCounts = counter.getBaseCount();
+                            for (int i = 0; i < baseCounts.length; i++) {
+                                coverageHistogram.addDataPoint(baseCounts[i]);
+                            }
+                        }
+
+               }
+                */
+            }
 
+            pool.add(counter);
         }
 
     }
@@ -682,6 +1022,28 @@ public class CoverageCounter {
             //ref = SequenceHelper.readSequence(genome.getId(), chr, start, end);
         }
 
+        /**
+         * Clear all counts and move this counter to a new window of the same size.
+         */
+        void reset(int start, int end) {
+            count = 0;
+            negCount = 0;
+            qualityCount = 0;
+            pairedCount = 0;
+            mismatchCount = 0;
+            indelCount = 0;
+            largeISizeCount = 0;
+            smallISizeCount = 0;
+            inversionCount = 0;
+            duplicationCount = 0;
+            unmappedMate = 0;
+            interChrCount = 0;
+            totalISizeCount = 0;
+            this.start = start;
+            this.end = end;
+            Arrays.fill(baseCount, 0);
+        }
+
 
         int getCount() {
             return count;
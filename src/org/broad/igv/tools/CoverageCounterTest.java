@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMFileWriter;
+import net.sf.samtools.SAMFileWriterFactory;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.SAMSequenceRecord;
+import org.broad.igv.Globals;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.tools.parsers.DataConsumer;
+import org.broad.igv.track.TrackType;
+import org.junit.Test;
+
+public class CoverageCounterTest {
+
+    @Test
+    public void testRingStartsAtFirstRead() {
+        CoverageCounter coverageCounter = new CoverageCounter(null, null, 1, 0, null, null, null, null);
+        final List<Integer> starts = new ArrayList<Integer>();
+        CoverageCounter.WindowOutput output = new CoverageCounter.WindowOutput() {
+            public void addWindow(String chr, int start, int end, float[] values, CoverageCounter.Counter counter) {
+                starts.add(start);
+            }
+        };
+        CoverageCounter.ReadCounter counter = coverageCounter.new ReadCounter("chr1", 100, output);
+        int capacity = counter.ring.length;
+
+        // A read at 19 Mb with 1 bp windows must not grow the ring to 19M slots
+        int position = 19000000;
+        for (int i = 0; i < 10; i++) {
+            counter.incrementCount(position + i, (byte) 'A', (byte) 30);
+        }
+        assertEquals(capacity, counter.ring.length);
+
+        // A later read slightly behind the band is still counted,  and windows are written in order
+        counter.incrementCount(position - 5, (byte) 'A', (byte) 30);
+        counter.closeBucketsBefore(position + 5);
+        counter.incrementCount(position + 50, (byte) 'A', (byte) 30);
+        counter.closeBucketsBefore(Integer.MAX_VALUE);
+        assertTrue(counter.ring.length <= 2 * capacity);
+
+        assertEquals(12, starts.size());
+        assertEquals(position - 5, (int) starts.get(0));
+        for (int i = 1; i < starts.size(); i++) {
+            assertTrue(starts.get(i) > starts.get(i - 1));
+        }
+        assertEquals(position + 50, (int) starts.get(starts.size() - 1));
+    }
+
+    private static final String[] CHROMOSOMES = {"chr1", "chr2", "chr3", "chr4", "chr5"};
+    private static final int CHROMOSOME_LENGTH = 20000;
+    private static final String[] EVENT_FILES = {"inversion", "duplication", "nomate", "inter", "large_isize",
+            "small_isize"};
+
+    /**
+     * The parallel count must produce exactly the output of the sequential count.
+     */
+    @Test
+    public void testParallelCountMatchesSerial() throws Exception {
+        Globals.setHeadless(true);
+        File dir = createTempDir();
+        try {
+            File bam = new File(dir, "reads.bam");
+            writeBam(bam);
+
+            String serial = count(bam, dir, "serial", 1);
+            String parallel = count(bam, dir, "parallel", 3);
+            assertTrue(serial.contains("chr5"));
+            assertEquals(serial, parallel);
+
+            assertFilesEqual(new File(dir, "serial.wig"), new File(dir, "parallel.wig"));
+            for (String event : EVENT_FILES) {
+                assertFilesEqual(new File(dir, "serial." + event + ".wig"), new File(dir, "parallel." + event + ".wig"));
+            }
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static String count(File bam, File dir, String name, int nThreads) throws Exception {
+        LinkedHashMap<String, Chromosome> chromosomeMap = new LinkedHashMap<String, Chromosome>();
+        for (String chr : CHROMOSOMES) {
+            chromosomeMap.put(chr, new Chromosome(chr, CHROMOSOME_LENGTH));
+        }
+        Genome genome = new Genome("test", "test", null, false, null);
+        genome.setChromosomeMap(chromosomeMap, true);
+
+        RecordingConsumer consumer = new RecordingConsumer();
+        String options = "o,u,r,i:150:400,p=" + nThreads;
+        new CoverageCounter(bam.getAbsolutePath(), consumer, 25, 0, new File(dir, name + ".tdf"),
+                new File(dir, name + ".wig"), genome, options).parse();
+        return consumer.toString();
+    }
+
+    /**
+     * Write a sorted,  indexed BAM of random read pairs.  Pairs are a mix of proper pairs,  large and small
+     * inserts,  inversions,  unmapped mates and mates on another chromosome.  chr4 has no reads.
+     */
+    private static void writeBam(File bam) throws Exception {
+        SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+        for (String chr : CHROMOSOMES) {
+            dictionary.addSequence(new SAMSequenceRecord(chr, CHROMOSOME_LENGTH));
+        }
+        SAMFileHeader header = new SAMFileHeader();
+        header.setSequenceDictionary(dictionary);
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+
+        SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, false, bam);
+        Random random = new Random(5);
+        for (String chr : CHROMOSOMES) {
+            if (chr.equals("chr4")) {
+                continue;
+            }
+            for (int i = 0; i < 3000; i++) {
+                SAMRecord record = new SAMRecord(header);
+                record.setReadName(chr + "." + i);
+                record.setReferenceName(chr);
+                int start = 1 + random.nextInt(CHROMOSOME_LENGTH - 200);
+                record.setAlignmentStart(start);
+                record.setMappingQuality(random.nextInt(60));
+                record.setCigarString("36M");
+                record.setReadString("ACGTACGTACGTACGTACGTACGTACGTACGTACGT");
+                record.setBaseQualityString("IIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIII");
+
+                int flags = 0x1 | (random.nextBoolean() ? 0x10 : 0x20) | (random.nextBoolean() ? 0x40 : 0x80);
+                int type = random.nextInt(6);
+                if (type == 0) {
+                    record.setFlags(flags | 0x8);
+                } else {
+                    if (type == 1) {
+                        record.setMateReferenceName(CHROMOSOMES[random.nextInt(CHROMOSOMES.length)]);
+                    } else {
+                        record.setMateReferenceName(chr);
+                        if (type == 2) {
+                            // Inversion,  both reads on the same strand
+                            flags = (flags & ~0x20) | ((flags & 0x10) != 0 ? 0x20 : 0);
+                        }
+                    }
+                    int insertSize = 50 + random.nextInt(600);
+                    record.setMateAlignmentStart(Math.min(CHROMOSOME_LENGTH - 36, start + insertSize));
+                    record.setInferredInsertSize(insertSize);
+                    record.setFlags(flags);
+                }
+                writer.addAlignment(record);
+            }
+        }
+        writer.close();
+
+        // igvtools looks for the index next to the BAM
+        File index = new File(bam.getParentFile(), "reads.bai");
+        if (index.exists()) {
+            index.renameTo(new File(bam.getAbsolutePath() + ".bai"));
+        }
+    }
+
+    private static File createTempDir() throws Exception {
+        File dir = File.createTempFile("coverage", "");
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    private static void assertFilesEqual(File expected, File actual) throws Exception {
+        assertTrue(expected.getName(), expected.length() > 0);
+        assertArrayEquals(expected.getName(), readBytes(expected), readBytes(actual));
+    }
+
+    private static byte[] readBytes(File file) throws Exception {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Records everything sent to it,  in order.
+     */
+    static class RecordingConsumer implements DataConsumer {
+
+        StringBuffer buf = new StringBuffer();
+
+        public void setType(String type) {
+            buf.append("type ").append(type).append('\n');
+        }
+
+        public void addData(String chr, int start, int end, float[] data, String name) {
+            buf.append(chr).append(' ').append(start).append(' ').append(end);
+            for (float d : data) {
+                buf.append(' ').append(d);
+            }
+            buf.append('\n');
+        }
+
+        public void parsingComplete() {
+            buf.append("complete\n");
+        }
+
+        public void setTrackParameters(TrackType trackType, String trackLine, String[] trackNames) {
+        }
+
+        public void setSortTolerance(int tolerance) {
+            buf.append("tolerance ").append(tolerance).append('\n');
+        }
+
+        public void setAttribute(String key, String value) {
+            buf.append(key).append('=').append(value).append('\n');
+        }
+
+        public String toString() {
+            return buf.toString();
+        }
+    }
+}
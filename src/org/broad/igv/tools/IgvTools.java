@@ -25,10 +25,14 @@ package org.broad.igv.tools;
 
 import jargs.gnu.CmdLineParser;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -59,6 +63,8 @@ import org.broad.tribble.FeatureCodec;
 import org.broad.tribble.TribbleException;
 import org.broad.tribble.index.Index;
 import org.broad.tribble.index.IndexFactory;
+import org.broad.tribble.source.tabix.TabixIndexCreator;
+import org.broad.tribble.util.BlockCompressedInputStream;
 import org.broad.tribble.util.LittleEndianOutputStream;
 
 /**
@@ -72,8 +78,8 @@ public class IgvTools {
 
     static String[] commandDocs = new String[]{
             "version print the version number",
-            "sort    sort an alignment file by start position",
-            "index   index an alignment file",
+            "sort    sort an alignment or feature file by start position.  Output ending in .gz is block compressed and tabix indexed",
+            "index   index an alignment or feature file,  or tabix index a block compressed (.gz) feature file",
             "toTDF    convert an input file (cn, gct, wig) to tiled data format (tdf)",
             "count   compute coverage density for an alignment file"
     };
@@ -535,15 +541,20 @@ public class IgvTools {
     }
 
     public void doIndex(String ifile, String outputFileName, int indexType, int binSize) throws IOException {
-        if (ifile.endsWith(".gz")) {
-            System.out.println("Cannot index a gzipped file");
-            throw new PreprocessingException("Cannot index a gzipped file");
-        }
 
         if (outputFileName == null) {
             outputFileName = ifile;
         }
 
+        if (ifile.endsWith(".gz")) {
+            if (!outputFileName.endsWith(".tbi")) {
+                outputFileName = outputFileName + ".tbi";
+            }
+            createTabixIndex(ifile, new File(outputFileName));
+            System.out.flush();
+            return;
+        }
+
         FeatureCodec codec = CodecFactory.getCodec(ifile);
         if (codec != null) {
 
@@ -581,6 +592,60 @@ public class IgvTools {
 
     }
 
+    /**
+     * Create a tabix index for a sorted,  block compressed (bgzip) file.
+     */
+    private void createTabixIndex(String ifile, File outputFile) throws IOException {
+
+        TabixIndexCreator indexCreator = TabixIndexCreator.getCreator(ifile);
+        if (indexCreator == null) {
+            throw new PreprocessingException("Cannot index a gzipped file of this type: " + ifile);
+        }
+
+        InputStream is = new BufferedInputStream(new FileInputStream(ifile));
+        try {
+            if (!BlockCompressedInputStream.isValidFile(is)) {
+                throw new PreprocessingException("Cannot index a gzipped file that is not block compressed.  " +
+                        "Use \"igvtools sort\" with an output file ending in \".gz\" to sort and compress it.");
+            }
+        } finally {
+            is.close();
+        }
+
+        BlockCompressedInputStream bcis = new BlockCompressedInputStream(new File(ifile));
+        ByteArrayOutputStream line = new ByteArrayOutputStream(1000);
+        try {
+            while (bcis.available() > 0) {
+                long start = bcis.getFilePointer();
+                line.reset();
+                int b;
+                while (bcis.available() > 0 && (b = bcis.read()) != '\n') {
+                    line.write(b);
+                }
+                String text = line.toString();
+                if (text.endsWith("\r")) {
+                    text = text.substring(0, text.length() - 1);
+                }
+                indexCreator.addLine(text, start, bcis.getFilePointer());
+            }
+        } catch (TribbleException.MalformedFeatureFile e) {
+            throw new PreprocessingException("Files must be sorted by start position prior to indexing.  " +
+                    e.getMessage());
+        } finally {
+            bcis.close();
+        }
+
+        try {
+            indexCreator.write(outputFile);
+        } catch (IOException e) {
+            // Delete output file as its probably corrupt
+            if (outputFile.exists()) {
+                outputFile.delete();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Create a tribble style index.
      *
@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.Comparator;
 
@@ -32,6 +33,8 @@ import net.sf.samtools.util.CloseableIterator;
 import net.sf.samtools.util.SortingCollection;
 
 import org.broad.tribble.readers.AsciiLineReader;
+import org.broad.tribble.source.tabix.TabixIndexCreator;
+import org.broad.tribble.util.BlockCompressedOutputStream;
 
 /**
  * Created by IntelliJ IDEA.
@@ -138,14 +141,26 @@ public abstract class Sorter {
         }
     }
 
+    /**
+     * Sort the input file.  If the output file name ends with ".gz" the output is block compressed (BGZF),  and
+     * indexed with tabix in the same pass if the format has a tabix preset.
+     */
     public void run() throws IOException {
 
         FileInputStream fis = null;
         PrintWriter writer = null;
+        BlockCompressedOutputStream bgzf = null;
+        TabixIndexCreator indexCreator = null;
 
         try {
             fis = new FileInputStream(inputFile);
-            writer = new PrintWriter(new BufferedWriter(new FileWriter(outputFile)));
+            if (isCompressed()) {
+                bgzf = new BlockCompressedOutputStream(outputFile, Runtime.getRuntime().availableProcessors());
+                writer = new PrintWriter(new OutputStreamWriter(bgzf));
+                indexCreator = TabixIndexCreator.getCreator(outputFile.getName());
+            } else {
+                writer = new PrintWriter(new BufferedWriter(new FileWriter(outputFile)));
+            }
 
             SortableRecordCodec codec = new SortableRecordCodec();
 
@@ -202,12 +217,39 @@ public abstract class Sorter {
 
 
             CloseableIterator<SortableRecord> iter = cltn.iterator();
-            while (iter.hasNext()) {
-                SortableRecord al = iter.next();
-                writer.println(al.getText());
+            if (bgzf == null) {
+                while (iter.hasNext()) {
+                    SortableRecord al = iter.next();
+                    writer.println(al.getText());
 
+                }
+            } else {
+                // Records are written directly to the compressed stream to track their offsets for the index
+                writer.flush();
+                while (iter.hasNext()) {
+                    String text = iter.next().getText();
+                    long start = bgzf.getPosition();
+                    bgzf.write((text + "\n").getBytes());
+                    if (indexCreator != null) {
+                        indexCreator.addLine(text, start, bgzf.getPosition());
+                    }
+                }
             }
             iter.close();
+
+            // PrintWriter swallows errors,  check them so a failed write is not reported as success
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Error writing " + outputFile.getAbsolutePath());
+            }
+            if (bgzf != null) {
+                // Close the compressed stream directly so errors propagate.  The index is only written for
+                // complete output.
+                bgzf.close();
+                if (indexCreator != null) {
+                    indexCreator.write(new File(outputFile.getAbsolutePath() + ".tbi"), bgzf);
+                }
+            }
         } finally {
             try {
                 fis.close();
@@ -217,6 +259,10 @@ public abstract class Sorter {
         }
     }
 
+    private boolean isCompressed() {
+        return outputFile.getName().toLowerCase().endsWith(".gz");
+    }
+
     abstract Parser getParser() throws IOException;
 
     abstract String writeHeader(AsciiLineReader reader, PrintWriter writer) throws IOException;
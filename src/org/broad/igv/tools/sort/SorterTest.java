@@ -18,16 +18,31 @@
 
 package org.broad.igv.tools.sort;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
+import org.broad.tribble.source.tabix.TabixReader;
+import org.broad.tribble.util.BlockCompressedInputStream;
+import org.broad.tribble.util.BlockCompressedOutputStream;
+import org.broad.tribble.util.BlockCompressedStreamConstants;
 import org.junit.Test;
 
 
@@ -95,4 +110,130 @@ public class SorterTest {
         }
 
     }
+
+    /**
+     * BGZF output must not depend on the number of deflate threads,  and must read back as the data written.
+     */
+    @Test
+    public void testBlockCompressedOutputThreads() throws IOException {
+        Random random = new Random(1);
+        StringBuffer text = new StringBuffer();
+        while (text.length() < 5 * BlockCompressedOutputStream.UNCOMPRESSED_BLOCK_SIZE) {
+            text.append("chr").append(random.nextInt(22) + 1).append('\t').append(random.nextInt(1000000)).append('\n');
+        }
+        byte[] data = text.toString().getBytes();
+
+        byte[] expected = null;
+        for (int nThreads : new int[]{1, 4, 8}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BlockCompressedOutputStream bgzf = new BlockCompressedOutputStream(bytes,
+                    BlockCompressedStreamConstants.DEFAULT_COMPRESSION_LEVEL, nThreads);
+            // Uneven writes,  so blocks are cut inside a write
+            int offset = 0;
+            while (offset < data.length) {
+                int n = Math.min(data.length - offset, 1 + random.nextInt(20000));
+                bgzf.write(data, offset, n);
+                offset += n;
+            }
+            assertEquals(data.length, bgzf.getPosition());
+            bgzf.close();
+
+            byte[] compressed = bytes.toByteArray();
+            if (expected == null) {
+                expected = compressed;
+            } else {
+                assertArrayEquals("Output for " + nThreads + " threads", expected, compressed);
+            }
+        }
+
+        BlockCompressedInputStream in = new BlockCompressedInputStream(new ByteArrayInputStream(expected));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            decompressed.write(buffer, 0, n);
+        }
+        assertArrayEquals(data, decompressed.toByteArray());
+    }
+
+    /**
+     * Sort an unsorted bed file to a compressed file,  and check the tabix index written with it against a scan
+     * of the records.
+     */
+    @Test
+    public void testSortCompressedWithTabixIndex() throws IOException {
+        File dir = File.createTempFile("sorter", "");
+        dir.delete();
+        dir.mkdir();
+        File inputFile = new File(dir, "unsorted.bed");
+        File outputFile = new File(dir, "sorted.bed.gz");
+        File indexFile = new File(dir, "sorted.bed.gz.tbi");
+        try {
+            Random random = new Random(2);
+            List<String> lines = new ArrayList<String>();
+            for (int i = 0; i < 20000; i++) {
+                int start = random.nextInt(2000000);
+                int end = start + 1 + random.nextInt(random.nextInt(10) == 0 ? 100000 : 500);
+                lines.add("chr" + (1 + random.nextInt(3)) + "\t" + start + "\t" + end + "\tf" + i);
+            }
+            PrintWriter pw = new PrintWriter(new FileWriter(inputFile));
+            pw.println("track name=test");
+            for (String line : lines) {
+                pw.println(line);
+            }
+            pw.close();
+
+            Sorter.getSorter(inputFile, outputFile).run();
+            assertTrue(indexFile.exists());
+
+            // Sorted output,  header first
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new BlockCompressedInputStream(outputFile)));
+            assertEquals("track name=test", reader.readLine());
+            String lastChr = "";
+            int lastStart = 0;
+            int count = 0;
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                String[] tokens = nextLine.split("\t");
+                int start = Integer.parseInt(tokens[1]);
+                if (tokens[0].equals(lastChr)) {
+                    assertTrue(start >= lastStart);
+                }
+                lastChr = tokens[0];
+                lastStart = start;
+                count++;
+            }
+            reader.close();
+            assertEquals(lines.size(), count);
+
+            TabixReader tabixReader = new TabixReader(outputFile.getAbsolutePath());
+            int[][] queries = {{1, 0, 1000}, {2, 150000, 170000}, {3, 1999000, 2200000}, {1, 500000, 1500000}};
+            for (int[] query : queries) {
+                String chr = "chr" + query[0];
+                List<String> expected = new ArrayList<String>();
+                for (String line : lines) {
+                    String[] tokens = line.split("\t");
+                    if (tokens[0].equals(chr) && Integer.parseInt(tokens[1]) < query[2] &&
+                            Integer.parseInt(tokens[2]) > query[1]) {
+                        expected.add(line);
+                    }
+                }
+                List<String> found = new ArrayList<String>();
+                TabixReader.Iterator iter = tabixReader.query(chr + ":" + (query[1] + 1) + "-" + query[2]);
+                String line;
+                while (iter != null && (line = iter.next()) != null) {
+                    found.add(line);
+                }
+                Collections.sort(expected);
+                Collections.sort(found);
+                assertEquals(chr + ":" + query[1] + "-" + query[2], expected, found);
+            }
+        } finally {
+            inputFile.delete();
+            outputFile.delete();
+            indexFile.delete();
+            dir.delete();
+        }
+    }
 }
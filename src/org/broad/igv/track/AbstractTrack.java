@@ -265,7 +265,7 @@ public abstract class AbstractTrack implements Track {
         for (String name : names) {
 
             String key = name.toUpperCase();
-            String attributeValue = getAttributeValue(key);
+            String attributeValue = getDisplayAttributeValue(key);
             if (attributeValue != null) {
                 Rectangle rect = new Rectangle(x, trackRectangle.y, AttributeHeaderPanel.ATTRIBUTE_COLUMN_WIDTH,
                         trackRectangle.height);
@@ -348,6 +348,18 @@ public abstract class AbstractTrack implements Track {
         return value;
     }
 
+    /**
+     * Return the value of an attribute for display in the attribute panel.  Unlike getAttributeValue,  a soft
+     * attribute still being evaluated is returned as SoftAttributeManager.PENDING_VALUE.
+     */
+    public String getDisplayAttributeValue(String attributeName) {
+        String value = getAttributeValue(attributeName);
+        if (value == null) {
+            value = SoftAttributeManager.getInstance().getDisplayAttribute(this, attributeName);
+        }
+        return value;
+    }
+
     private String getSampleKey() {
         return sampleId != null ? sampleId : getName();
     }
@@ -1086,6 +1098,13 @@ public abstract class AbstractTrack implements Track {
         return true;
     }
 
+    /**
+     * Release data loaded for a reference frame that is no longer drawn.  Tracks that cache data by frame name
+     * override this.
+     */
+    public void clearFrameCache(String frameName) {
+    }
+
     public boolean isSortable() {
         return sortable;
     }
@@ -29,17 +29,19 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -59,6 +61,17 @@ import org.broad.igv.util.Utilities;
 import org.broad.tribble.readers.AsciiLineReader;
 
 /**
+ * Attributes of tracks and samples,  e.g. from sample information files.
+ * <p/>
+ * Attributes are written rarely and read for every track and attribute column on each paint,  sort,  group and
+ * filter.  Writes update the maps below while holding the manager's lock and discard the current snapshot.  Reads
+ * go to an immutable Snapshot of the attributes,  rebuilt on the first read after a write,  and take no lock.  In
+ * the snapshot each attribute column is dictionary encoded,  a code per row into the distinct values of the column,
+ * with the numeric value and sort rank of each distinct value precomputed.
+ * <p/>
+ * AttributeValue instances are replaced rather than modified once added,  so values returned by a read are not
+ * changed by later writes.
+ *
  * @author jrobinso
  */
 public class AttributeManager {
@@ -115,14 +128,19 @@ public class AttributeManager {
     /**
      * Maps symbolic (discrete) attribute values to colors. Key is a composite of attribute name and value
      */
-    Map<String, Color> colorMap = new Hashtable();
+    Map<String, Color> colorMap = new ConcurrentHashMap();
 
     /**
      * Map of attribute column name -> color scale.   For numeric columns.
      */
-    Map<String, AbstractColorScale> colorScales = new HashMap();
+    Map<String, AbstractColorScale> colorScales = new ConcurrentHashMap();
 
-    Map<String, Integer> colorCounter = new HashMap();
+    Map<String, Integer> colorCounter = new ConcurrentHashMap();
+
+    /**
+     * Read only view of the attributes,  null if it must be rebuilt after a write.  See getSnapshot()
+     */
+    private volatile Snapshot snapshot;
 
 	private boolean defaultToJet = true;
 	
@@ -159,46 +177,132 @@ public class AttributeManager {
     /**
      * Return the attribute value for the given track (trackName) and key.
      */
-    public synchronized String getAttribute(String trackName, String attributeName) {
-        AttributeValue				av = getAttributeValue(trackName, attributeName);
-        return (av == null ? null : av.getStringValue());
+    public String getAttribute(String trackName, String attributeName) {
+        Snapshot s = getSnapshot();
+        Integer row = s.rows.get(trackName);
+        if (row == null) {
+            return null;
+        }
+        Column column = s.columns.get(attributeName.toUpperCase());
+        if (column == null) {
+            return null;
+        }
+        int code = column.codes[row];
+        return code < 0 ? null : column.dictionary[code];
     }
     
-    public synchronized AttributeValue getAttributeValue(String trackName, String attributeName) {
-        Map<String, AttributeValue> attributes = attributeMap.get(trackName);
-        if ( attributes == null )
-        	return null;
-        String key = attributeName.toUpperCase();
-        return attributes.get(key);
+    public AttributeValue getAttributeValue(String trackName, String attributeName) {
+        Snapshot s = getSnapshot();
+        Integer row = s.rows.get(trackName);
+        if (row == null) {
+            return null;
+        }
+        Column column = s.columns.get(attributeName.toUpperCase());
+        return column == null ? null : column.values[row];
     }
 
     /**
      * Return the list of attribute names (keys) in the order they should
      * be displayed.
      */
-    public synchronized List<String> getAttributeNames() {
+    public List<String> getAttributeNames() {
         
-    	List<String> list = new ArrayList(attributeNames.values());
+    	List<String> list = new ArrayList(getSnapshot().names.values());
     	
     	list.addAll(SoftAttributeManager.getInstance().getAttributeNames(false));
     	
     	return list;
     }
 
+    /**
+     * Evaluate the soft attribute values of the tracks that are not known yet,  in one batch.  Call before
+     * sorting,  grouping or filtering on an attribute,  which need the value of every track.
+     */
+    public void evaluateSoftAttribute(Collection<? extends Track> tracks, String attributeName) {
+        SoftAttributeManager.getInstance().evaluate(tracks, attributeName);
+    }
+
     /**
      * Return true if the associated column contains all numeric values
      */
     public boolean isNumeric(String attributeName) {
-        String key = attributeName.toUpperCase();
-        ColumnMetaData metaData = columnMetaData.get(key);
-        return metaData != null && metaData.isNumeric();
+        Column column = getSnapshot().columns.get(attributeName.toUpperCase());
+        return column != null && column.numeric;
+    }
+
+    /**
+     * Return keys for sorting the given values of an attribute,  e.g. the values of the attribute for each track
+     * in a group.  Ordering the values by ascending key is the ascending attribute sort:  numeric columns sort
+     * by value,  largest first,  with values that are not numbers treated as Double.MIN_VALUE.  Other columns sort
+     * by the lower case value.  Null values are treated as blank.
+     */
+    public double[] getSortKeys(String attributeName, String[] values) {
+
+        Column column = getSnapshot().columns.get(attributeName.toUpperCase());
+        double[] keys = new double[values.length];
+
+        if (column != null && column.numeric) {
+            for (int i = 0; i < values.length; i++) {
+                Integer code = values[i] == null ? null : column.codeOf.get(values[i]);
+                double d = code != null ? column.numbers[code] : parseSortNumber(values[i]);
+                keys[i] = 0.0 - d;
+            }
+            return keys;
+        }
+
+        // Use the precomputed ranks of the column if all values are in its dictionary,  otherwise rank the values
+        if (column != null) {
+            int i = 0;
+            for (; i < values.length; i++) {
+                Integer code = values[i] == null ? null : column.codeOf.get(values[i]);
+                if (code == null) {
+                    break;
+                }
+                keys[i] = column.ranks[code];
+            }
+            if (i == values.length) {
+                return keys;
+            }
+        }
+
+        String[] lowerCase = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            lowerCase[i] = values[i] == null ? "" : values[i].toLowerCase();
+        }
+        Map<String, Integer> ranks = rank(Arrays.asList(lowerCase));
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = ranks.get(lowerCase[i]);
+        }
+        return keys;
+    }
+
+    private static double parseSortNumber(String value) {
+        try {
+            return Double.parseDouble(value == null ? "" : value.toLowerCase());
+        } catch (NumberFormatException e) {
+            return Double.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Return the rank of each distinct string,  in natural string order.
+     */
+    private static Map<String, Integer> rank(Collection<String> strings) {
+        List<String> sorted = new ArrayList<String>(new HashSet<String>(strings));
+        Collections.sort(sorted);
+        Map<String, Integer> ranks = new HashMap<String, Integer>(sorted.size() * 2);
+        for (int i = 0; i < sorted.size(); i++) {
+            ranks.put(sorted.get(i), i);
+        }
+        return ranks;
     }
 
 
     // TODO -- don't compute this on the fly every time its called
 
-    public synchronized List<String> getVisibleAttributes() {
-    	final Set<String> allKeys = new LinkedHashSet<String>(attributeNames.keySet());
+    public List<String> getVisibleAttributes() {
+        Map<String, String> names = getSnapshot().names;
+    	final Set<String> allKeys = new LinkedHashSet<String>(names.keySet());
         Set<String> hiddenAttributes = IGV.getInstance().getSession().getHiddenAttributes();
         
         allKeys.addAll(SoftAttributeManager.getInstance().getAttributeNames(true));
@@ -210,8 +314,8 @@ public class AttributeManager {
 
         ArrayList<String> visibleAttributes = new ArrayList<String>(allKeys.size());
         for (String key : allKeys) {
-        	if ( attributeNames.containsKey(key) )        		
-        		visibleAttributes.add(attributeNames.get(key));
+        	if ( names.containsKey(key) )        		
+        		visibleAttributes.add(names.get(key));
         	else
         		visibleAttributes.add(key);
         }
@@ -228,6 +332,7 @@ public class AttributeManager {
         //hiddenAttributes.clear();
         loadedResources = new HashSet();
         SoftAttributeManager.getInstance().load();
+        snapshot = null;
         AttributeHeaderPanel.reportSort(null, null);
     }
 
@@ -267,20 +372,46 @@ public class AttributeManager {
             attributeMap.put(trackIdentifier, attributes);
         }
         
+        // Values may be in use by readers of the snapshot,  replace rather than modify
         AttributeValue av = attributes.get(key);
-        if ( av == null )
-        	attributes.put(key, av = new AttributeValue());
+        av = av == null ? new AttributeValue() : new AttributeValue(av);
         av.addValue(attributeValue, path);
+        attributes.put(key, av);
         
 		updateMetaData(key, attributeValue);
 		attributePaths.add(path);
+		snapshot = null;
     }
 
-    public synchronized void addAttributeName(String name, String path) {
+    public void addAttributeName(String name, String path) {
         String key = name.toUpperCase();
-        if (!attributeNames.containsKey(key) && !name.startsWith("#")) {
-            attributeNames.put(key, name);
+
+        // Called for every track name,  avoid the lock if the name is known
+        Snapshot s = snapshot;
+        if (s != null && s.names.containsKey(key)) {
+            return;
+        }
+        synchronized (this) {
+            if (!attributeNames.containsKey(key) && !name.startsWith("#")) {
+                attributeNames.put(key, name);
+                snapshot = null;
+            }
+        }
+    }
+
+    /**
+     * Return the current snapshot,  building it if the attributes have changed since it was last built.
+     */
+    private Snapshot getSnapshot() {
+        Snapshot s = snapshot;
+        return s != null ? s : buildSnapshot();
+    }
+
+    private synchronized Snapshot buildSnapshot() {
+        if (snapshot == null) {
+            snapshot = new Snapshot(attributeNames, attributeMap, columnMetaData);
         }
+        return snapshot;
     }
 
     /**
@@ -571,7 +702,7 @@ public class AttributeManager {
     	return new LinkedList<String>(attributePaths);
     }
 
-	public void removeAttributeOrigin(String path) 
+	public synchronized void removeAttributeOrigin(String path) 
 	{
 		// remove from loaded resources
 		for ( ResourceLocator locator : new LinkedList<ResourceLocator>(loadedResources) )
@@ -586,9 +717,11 @@ public class AttributeManager {
 				for ( Map.Entry<String, AttributeValue> attrEntry : entry.getValue().entrySet() )
 					if ( attrEntry != null )
 					{
-						AttributeValue		av = attrEntry.getValue();
+						// replace rather than modify,  see addAttribute
+						AttributeValue		av = new AttributeValue(attrEntry.getValue());
 						
 						av.removePath(path);
+						attrEntry.setValue(av);
 						encounteredAttrNames.add(attrEntry.getKey());
 						if ( !av.isEmpty() )
 							nonEmptyAttrNames.add(attrEntry.getKey());
@@ -601,6 +734,7 @@ public class AttributeManager {
     			log.info("removing: " + key);
     			attributeNames.remove(key);
 			}
+		snapshot = null;
 	}
 
 	public synchronized void firePropertyChange(Object source, String propertyName,
@@ -615,7 +749,7 @@ public class AttributeManager {
         propertyChangeSupport.firePropertyChange(event);
     }
 
-    public synchronized Comparator getAttributeComparator() {
+    public Comparator getAttributeComparator() {
         return Utilities.getNumericStringComparator();
     }
 
@@ -680,11 +814,11 @@ public class AttributeManager {
 
 			if ( c == null && defaultToJet && isNumeric(attKey) )
             {
-                ColumnMetaData metaData = columnMetaData.get(attKey);
-                if ( metaData != null )
+                Column column = getSnapshot().columns.get(attKey);
+                if ( column != null )
                 {
-					float min = (float) metaData.min;
-                	float max = (float) metaData.max;
+					float min = (float) column.min;
+                	float max = (float) column.max;
                 	
                 	JetColorScale		scale = new JetColorScale(min, max);
                 	
@@ -743,6 +877,102 @@ public class AttributeManager {
         }
     }
 
+    /**
+     * Immutable view of the attributes.  Tracks (or samples) are rows,  numbered in the order they were added.
+     */
+    private static class Snapshot {
+
+        final Map<String, String> names;          // Attribute key -> display name,  in display order
+        final Map<String, Integer> rows;          // Track identifier -> row
+        final Map<String, Column> columns;        // Attribute key -> column
+
+        Snapshot(Map<String, String> attributeNames, Map<String, Map<String, AttributeValue>> attributeMap,
+                 Map<String, ColumnMetaData> columnMetaData) {
+
+            names = Collections.unmodifiableMap(new LinkedHashMap<String, String>(attributeNames));
+
+            int nRows = attributeMap.size();
+            rows = new HashMap<String, Integer>(nRows * 2);
+            Map<String, AttributeValue[]> values = new HashMap<String, AttributeValue[]>();
+            for (Map.Entry<String, Map<String, AttributeValue>> entry : attributeMap.entrySet()) {
+                int row = rows.size();
+                rows.put(entry.getKey(), row);
+                for (Map.Entry<String, AttributeValue> attribute : entry.getValue().entrySet()) {
+                    AttributeValue[] column = values.get(attribute.getKey());
+                    if (column == null) {
+                        column = new AttributeValue[nRows];
+                        values.put(attribute.getKey(), column);
+                    }
+                    column[row] = attribute.getValue();
+                }
+            }
+
+            Set<String> keys = new HashSet<String>(values.keySet());
+            keys.addAll(columnMetaData.keySet());
+            columns = new HashMap<String, Column>(keys.size() * 2);
+            for (String key : keys) {
+                AttributeValue[] column = values.get(key);
+                columns.put(key, new Column(column == null ? new AttributeValue[nRows] : column,
+                        columnMetaData.get(key)));
+            }
+        }
+    }
+
+    /**
+     * A dictionary encoded attribute column.
+     */
+    private static class Column {
+
+        final AttributeValue[] values;            // By row,  null if the row has no value
+        final int[] codes;                        // By row,  index into dictionary or -1
+        final String[] dictionary;                // Distinct string values
+        final Map<String, Integer> codeOf;
+        final double[] numbers;                   // By code,  value parsed for sorting
+        final int[] ranks;                        // By code,  rank of the lower case value
+        final boolean numeric;
+        final double min;
+        final double max;
+
+        Column(AttributeValue[] values, ColumnMetaData metaData) {
+
+            this.values = values;
+            this.numeric = metaData != null && metaData.isNumeric();
+            this.min = metaData == null ? Double.MAX_VALUE : metaData.min;
+            this.max = metaData == null ? -Double.MAX_VALUE : metaData.max;
+
+            codes = new int[values.length];
+            codeOf = new HashMap<String, Integer>();
+            List<String> distinct = new ArrayList<String>();
+            for (int row = 0; row < values.length; row++) {
+                if (values[row] == null) {
+                    codes[row] = -1;
+                    continue;
+                }
+                String value = values[row].getStringValue();
+                Integer code = codeOf.get(value);
+                if (code == null) {
+                    code = distinct.size();
+                    distinct.add(value);
+                    codeOf.put(value, code);
+                }
+                codes[row] = code;
+            }
+            dictionary = distinct.toArray(new String[distinct.size()]);
+
+            numbers = new double[dictionary.length];
+            String[] lowerCase = new String[dictionary.length];
+            for (int code = 0; code < dictionary.length; code++) {
+                numbers[code] = parseSortNumber(dictionary[code]);
+                lowerCase[code] = dictionary[code].toLowerCase();
+            }
+            Map<String, Integer> rankOf = rank(Arrays.asList(lowerCase));
+            ranks = new int[dictionary.length];
+            for (int code = 0; code < dictionary.length; code++) {
+                ranks[code] = rankOf.get(lowerCase[code]);
+            }
+        }
+    }
+
     static class Range {
         double min;
         double max;
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.track;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AttributeManagerTest {
+
+    private static final String[] NUMBERS = {"1", "-2.5", "10", "0", "-0", "1e3", "3.25", "7"};
+    private static final String[] WORDS = {"alpha", "Beta", "BETA", "gamma", "Delta", "a", "Z", "z"};
+
+    private AttributeManager manager;
+
+    @Before
+    public void setUp() {
+        manager = AttributeManager.getInstance();
+        manager.clearAllAttributes();
+    }
+
+    @After
+    public void tearDown() {
+        manager.clearAllAttributes();
+    }
+
+    /**
+     * The comparison TrackGroup.sortByAttributes made before sort keys,  for one attribute sorted ascending
+     */
+    private int oldCompare(String attName, String value1, String value2) {
+        value1 = value1 == null ? "" : value1.toLowerCase();
+        value2 = value2 == null ? "" : value2.toLowerCase();
+        if (manager.isNumeric(attName)) {
+            double d1;
+            try {
+                d1 = Double.parseDouble(value1);
+            } catch (NumberFormatException e) {
+                d1 = Double.MIN_VALUE;
+            }
+            double d2;
+            try {
+                d2 = Double.parseDouble(value2);
+            } catch (NumberFormatException e) {
+                d2 = Double.MIN_VALUE;
+            }
+            if (d2 > d1) return 1;
+            else if (d2 < d1) return -1;
+            return 0;
+        }
+        return value1.compareTo(value2);
+    }
+
+    private void assertSameOrder(String attName, String[] values) {
+        double[] keys = manager.getSortKeys(attName, values);
+        for (int i = 0; i < values.length; i++) {
+            for (int j = 0; j < values.length; j++) {
+                assertEquals(attName + ": " + values[i] + " vs " + values[j],
+                        Integer.signum(oldCompare(attName, values[i], values[j])),
+                        Integer.signum(Double.compare(keys[i], keys[j])));
+            }
+        }
+    }
+
+    @Test
+    public void testSortKeysMatchComparator() {
+        Random random = new Random(3);
+        int nTracks = 60;
+        for (int i = 0; i < nTracks; i++) {
+            String track = "track" + i;
+            // Some tracks have no value,  stored as null
+            if (random.nextInt(5) > 0) {
+                manager.addAttribute(track, "Number", NUMBERS[random.nextInt(NUMBERS.length)], "test");
+            }
+            if (random.nextInt(5) > 0) {
+                String[] pool = random.nextBoolean() ? NUMBERS : WORDS;
+                manager.addAttribute(track, "Mixed", pool[random.nextInt(pool.length)], "test");
+            }
+            if (random.nextInt(5) > 0) {
+                manager.addAttribute(track, "Word", WORDS[random.nextInt(WORDS.length)], "test");
+            }
+        }
+        assertTrue(manager.isNumeric("NUMBER"));
+        assertFalse(manager.isNumeric("MIXED"));
+        assertFalse(manager.isNumeric("WORD"));
+
+        for (String attName : new String[]{"Number", "Mixed", "Word", "Unknown"}) {
+            // Values as read from the tracks,  all in the column dictionary apart from nulls
+            List<String> values = new ArrayList<String>();
+            for (int i = 0; i < nTracks; i++) {
+                values.add(manager.getAttribute("track" + i, attName));
+            }
+            assertSameOrder(attName, values.toArray(new String[values.size()]));
+
+            // Without nulls,  the column ranks are used
+            List<String> present = new ArrayList<String>();
+            for (String value : values) {
+                if (value != null) present.add(value);
+            }
+            assertSameOrder(attName, present.toArray(new String[present.size()]));
+
+            // Values not in the column,  e.g. soft attributes
+            assertSameOrder(attName, new String[]{"5", null, "x", "-1", "", "NaN", "Beta", "1e3", "abc", "0.5"});
+        }
+    }
+
+    @Test
+    public void testSnapshotFollowsWrites() {
+        manager.addAttribute("track1", "Tissue", "brain", "test");
+        AttributeValue before = manager.getAttributeValue("track1", "TISSUE");
+        assertEquals("brain", manager.getAttribute("track1", "Tissue"));
+        assertNull(manager.getAttribute("track2", "Tissue"));
+
+        manager.addAttribute("track2", "Tissue", "liver", "test");
+        manager.addAttribute("track1", "Tissue", "lung", "test");
+        assertEquals("liver", manager.getAttribute("track2", "TISSUE"));
+        assertTrue(manager.getAttributeNames().contains("Tissue"));
+
+        // Values handed out before a write are not modified by it
+        assertEquals("brain", before.getStringValue());
+    }
+}
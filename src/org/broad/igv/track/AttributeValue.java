@@ -3,6 +3,7 @@ package org.broad.igv.track;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
@@ -17,6 +18,16 @@ public class AttributeValue extends LinkedHashMap<String, Set<String>>{
 		
 	}
 	
+	/**
+	 * Copy constructor,  the value and path sets are copied.
+	 */
+	public AttributeValue(AttributeValue other)
+	{
+		super(other.size() * 2);
+		for ( Map.Entry<String, Set<String>> entry : other.entrySet() )
+			put(entry.getKey(), new LinkedHashSet<String>(entry.getValue()));
+	}
+	
 	public AttributeValue(String value, String path)
 	{
 		this();
@@ -29,12 +29,13 @@ import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.text.DecimalFormat;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.PreferenceManager;
+import org.broad.igv.data.ScoreBlock;
 import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.FeatureUtils;
 import org.broad.igv.feature.IGVFeature;
@@ -61,7 +62,8 @@ public abstract class DataTrack extends AbstractTrack {
     private boolean autoscale;
 
     // TODO -- memory leak.  This needs to get cleared when the gene list changes
-    private HashMap<String, LoadedDataInterval> loadedIntervalCache = new HashMap(200);
+    // Concurrent,  the event thread reads intervals while snapshot workers load others
+    private Map<String, LoadedDataInterval> loadedIntervalCache = new ConcurrentHashMap<String, LoadedDataInterval>(200);
     private boolean featuresLoading = false;
 
     protected boolean showTrackSeparator;
@@ -157,6 +159,11 @@ public abstract class DataTrack extends AbstractTrack {
         loadedIntervalCache.clear();
     }
 
+    @Override
+    public void clearFrameCache(String frameName) {
+        loadedIntervalCache.remove(frameName);
+    }
+
 
     public void setRendererClass(Class rc) {
         try {
@@ -242,25 +249,24 @@ public abstract class DataTrack extends AbstractTrack {
         InViewInterval interval = new InViewInterval();
 
         if (scores.size() == 1) {
-            interval.dataMax = Math.max(0, scores.get(0).getScore());
-            interval.dataMin = Math.min(0, scores.get(0).getScore());
+            interval.dataMax = Math.max(0, scoreAt(scores, 0));
+            interval.dataMin = Math.min(0, scoreAt(scores, 0));
         } else {
             interval.startIdx = 0;
             interval.endIdx = scores.size();
             for (int i = 1; i < scores.size(); i++) {
-                if (scores.get(i).getEnd() >= origin) {
+                if (endAt(scores, i) >= origin) {
                     interval.startIdx = i - 1;
                     break;
                 }
             }
 
             for (int i = interval.startIdx + 1; i < scores.size(); i++) {
-                LocusScore locusScore = scores.get(i);
-                float value = locusScore.getScore();
+                float value = scoreAt(scores, i);
                 if (Float.isNaN(value)) value = 0;
                 interval.dataMax = Math.max(interval.dataMax, value);
                 interval.dataMin = Math.min(interval.dataMin, value);
-                if (locusScore.getStart() > end) {
+                if (startAt(scores, i) > end) {
                     interval.endIdx = i;
                     break;
                 }
@@ -270,6 +276,20 @@ public abstract class DataTrack extends AbstractTrack {
         return interval;
     }
 
+    // Accessors for score lists,  columnar results (ScoreBlock) are read without creating a score object per bin
+
+    private static int startAt(List<LocusScore> scores, int i) {
+        return scores instanceof ScoreBlock ? ((ScoreBlock) scores).getStart(i) : scores.get(i).getStart();
+    }
+
+    private static int endAt(List<LocusScore> scores, int i) {
+        return scores instanceof ScoreBlock ? ((ScoreBlock) scores).getEnd(i) : scores.get(i).getEnd();
+    }
+
+    private static float scoreAt(List<LocusScore> scores, int i) {
+        return scores instanceof ScoreBlock ? ((ScoreBlock) scores).getValue(i) : scores.get(i).getScore();
+    }
+
     @Override
     public Map<String, String> getPersistentState() {
         Map<String, String> properties = super.getPersistentState();
@@ -331,12 +351,12 @@ public abstract class DataTrack extends AbstractTrack {
             if (type == RegionScoreType.FLUX) {
                 float sumDiffs = 0;
                 float lastScore = Float.NaN;
-                for (LocusScore score : scores) {
-                    if ((score.getEnd() >= start) && (score.getStart() <= end)) {
+                for (int i = 0; i < scores.size(); i++) {
+                    if ((endAt(scores, i) >= start) && (startAt(scores, i) <= end)) {
                         if (Float.isNaN(lastScore)) {
-                            lastScore = Math.min(2, Math.max(-2, logScaleData(score.getScore())));
+                            lastScore = Math.min(2, Math.max(-2, logScaleData(scoreAt(scores, i))));
                         } else {
-                            float s = Math.min(2, Math.max(-2, logScaleData(score.getScore())));
+                            float s = Math.min(2, Math.max(-2, logScaleData(scoreAt(scores, i))));
                             sumDiffs += Math.abs(s - lastScore);
                             lastScore = s;
                         }
@@ -356,10 +376,12 @@ public abstract class DataTrack extends AbstractTrack {
             } else {
                 float regionScore = 0;
                 int intervalSum = 0;
-                for (LocusScore score : scores) {
-                    if ((score.getEnd() >= start) && (score.getStart() <= end)) {
-                        int interval = Math.min(end, score.getEnd()) - Math.max(start, score.getStart());
-                        float value = score.getScore();
+                for (int i = 0; i < scores.size(); i++) {
+                    int scoreStart = startAt(scores, i);
+                    int scoreEnd = endAt(scores, i);
+                    if ((scoreEnd >= start) && (scoreStart <= end)) {
+                        int interval = Math.min(end, scoreEnd) - Math.max(start, scoreStart);
+                        float value = scoreAt(scores, i);
                         regionScore += value * interval;
                         intervalSum += interval;
                     }
@@ -46,6 +46,12 @@ import org.broad.tribble.readers.AsciiLineReader;
 public class FeatureDirSource implements FeatureSource {
 
     static Logger log = Logger.getLogger(FeatureDirSource.class);
+    private static final LRUCache.Weigher<List<Feature>> FEATURES_WEIGHER = new LRUCache.Weigher<List<Feature>>() {
+        public long getSize(List<Feature> features) {
+            // Rough heap cost of a parsed feature,  as in CachingFeatureReader
+            return 64 + 200L * features.size();
+        }
+    };
     LRUCache<String, List<Feature>> featureCache;
     Properties fileMap;
     String rootDir;
@@ -54,7 +60,7 @@ public class FeatureDirSource implements FeatureSource {
 
     public FeatureDirSource(ResourceLocator locator, Genome genome) throws IOException {
         this.genome = genome;
-        featureCache = new LRUCache(this, 3);
+        featureCache = new LRUCache(this, 3, FEATURES_WEIGHER);
         rootLocator = locator;
         setRootDir(locator.getPath());
 
@@ -26,13 +26,13 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
@@ -96,9 +96,11 @@ public class FeatureTrack extends AbstractTrack implements ITrackBlockHeight {
 
     // TODO -- this is a memory leak, this cache needs cleared when the reference frame collection (gene list) changes
     /**
-     * Map of reference frame name -> packed features
+     * Map of reference frame name -> packed features.  Concurrent,  the event thread reads features while snapshot
+     * workers load others.
      */
-    protected Map<String, PackedFeatures<IGVFeature>> packedFeaturesMap = new HashMap<String, PackedFeatures<IGVFeature>>();
+    protected Map<String, PackedFeatures<IGVFeature>> packedFeaturesMap =
+            new ConcurrentHashMap<String, PackedFeatures<IGVFeature>>();
 
     private FeatureRenderer renderer = new IGVFeatureRenderer();
 
@@ -816,6 +818,11 @@ public class FeatureTrack extends AbstractTrack implements ITrackBlockHeight {
             if (!IGV.getInstance().isExportingSnapshot()) {
                 return;
             }
+            // Features are loaded synchronously when exporting
+            packedFeatures = packedFeaturesMap.get(context.getReferenceFrame().getName());
+            if (packedFeatures == null) {
+                return;
+            }
         }
 
         try {
@@ -1042,6 +1049,11 @@ public class FeatureTrack extends AbstractTrack implements ITrackBlockHeight {
         return f;
     }
 
+    @Override
+    public void clearFrameCache(String frameName) {
+        packedFeaturesMap.remove(frameName);
+    }
+
     public void setVisibilityWindow(int windowSize) {
         super.setVisibilityWindow(windowSize);
         packedFeaturesMap.clear();
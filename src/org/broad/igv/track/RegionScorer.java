@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.track;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.broad.igv.util.LRUCache;
+import org.broad.igv.util.ResourceLocator;
+
+/**
+ * Computes the region scores used to sort tracks,  for many tracks at once.  Tracks are grouped by the file they
+ * are loaded from and the groups are scored in parallel on a fork-join pool.  The tracks of a file share its
+ * reader,  which is not safe for concurrent use,  so a group is scored serially on one thread.  The first track
+ * loads the file's data for the region into the reader's caches and the others read from the cached data.
+ * <p/>
+ * Scores are cached per region,  zoom,  frame and score type,  so re-sorting the same region,  or sorting it again
+ * after adding tracks,  only scores the tracks not seen before.  Each cached score records the window function and
+ * normalization of the track it was computed with,  and is recomputed if either has changed.  The cache is cleared
+ * when tracks are loaded,  reloaded or refreshed.
+ */
+public class RegionScorer {
+
+    private static Logger log = Logger.getLogger(RegionScorer.class);
+
+    private static final int MAX_CACHED_REGIONS = 20;
+
+    private static ForkJoinPool pool;
+    private static final LRUCache.Weigher<Map<Track, CachedScore>> SCORES_WEIGHER =
+            new LRUCache.Weigher<Map<Track, CachedScore>>() {
+                public long getSize(Map<Track, CachedScore> scores) {
+                    // Map entry,  score and its settings string for each track
+                    return 64 + 128L * scores.size();
+                }
+            };
+    private static LRUCache<String, Map<Track, CachedScore>> cache =
+            new LRUCache<String, Map<Track, CachedScore>>(RegionScorer.class, MAX_CACHED_REGIONS, SCORES_WEIGHER);
+
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Return the region score of each track.  Scores that are NaN,  or that fail to compute,  are returned as
+     * -Float.MAX_VALUE so they sort last.
+     */
+    public static Map<Track, Float> getScores(Collection<Track> tracks, RegionOfInterest region,
+                                              RegionScoreType type, ReferenceFrame frame) {
+        return getScores(tracks, region, type, frame, Math.max(0, frame.getZoom()), frame.getName());
+    }
+
+    static Map<Track, Float> getScores(Collection<Track> tracks, RegionOfInterest region, RegionScoreType type,
+                                       ReferenceFrame frame, int zoom, String frameName) {
+
+        String key = type + "\t" + region.getChr() + ":" + region.getStart() + "-" + region.getEnd() + "\t" + zoom +
+                "\t" + frameName;
+
+        Map<Track, CachedScore> cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+            if (cached == null) {
+                cached = Collections.synchronizedMap(new WeakHashMap<Track, CachedScore>());
+                cache.put(key, cached);
+            }
+        }
+
+        Map<Track, Float> scores = new IdentityHashMap<Track, Float>(tracks.size() * 2);
+        Map<String, List<Track>> files = new LinkedHashMap<String, List<Track>>();
+        int nMissing = 0;
+        for (Track track : tracks) {
+            if (track == null || scores.containsKey(track)) {
+                continue;
+            }
+            CachedScore score = cached.get(track);
+            if (score != null && score.isValid(track)) {
+                scores.put(track, score.score);
+                continue;
+            }
+            scores.put(track, -Float.MAX_VALUE);
+
+            ResourceLocator locator = track.getResourceLocator();
+            String file = locator == null || locator.getPath() == null ?
+                    "track:" + System.identityHashCode(track) : locator.getPath();
+            List<Track> fileTracks = files.get(file);
+            if (fileTracks == null) {
+                fileTracks = new ArrayList<Track>();
+                files.put(file, fileTracks);
+            }
+            fileTracks.add(track);
+            nMissing++;
+        }
+
+        if (nMissing > 0) {
+            long t0 = System.currentTimeMillis();
+            List<FileTask> tasks = new ArrayList<FileTask>(files.size());
+            for (List<Track> fileTracks : files.values()) {
+                tasks.add(new FileTask(fileTracks, region, zoom, type, frame));
+            }
+            getPool().invoke(new FilesTask(tasks));
+
+            for (FileTask task : tasks) {
+                for (int i = 0; i < task.tracks.size(); i++) {
+                    Track track = task.tracks.get(i);
+                    scores.put(track, task.scores[i]);
+                    cached.put(track, new CachedScore(task.scores[i], task.settings[i]));
+                }
+            }
+            synchronized (cache) {
+                // Put again so the cache weighs the new scores
+                if (cache.get(key) == cached) {
+                    cache.put(key, cached);
+                }
+            }
+            log.debug("Scored " + nMissing + " tracks from " + files.size() + " files in " +
+                    (System.currentTimeMillis() - t0) + " ms");
+        }
+        return scores;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            final AtomicInteger count = new AtomicInteger(0);
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                            thread.setName("region-score-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, null, false);
+        }
+        return pool;
+    }
+
+    private static float score(Track track, RegionOfInterest region, int zoom, RegionScoreType type,
+                               ReferenceFrame frame) {
+        try {
+            float score = track.getRegionScore(region.getChr(), region.getStart(), region.getEnd(), zoom, type, frame);
+            return Float.isNaN(score) ? -Float.MAX_VALUE : score;
+        } catch (Exception e) {
+            log.error("Error scoring track " + track.getName() + ". Sort might not be accurate.", e);
+            return -Float.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Settings of a track that change its scores without a reload
+     */
+    private static String getSettings(Track track) {
+        String settings = String.valueOf(track.getWindowFunction());
+        if (track instanceof AbstractTrack) {
+            settings += "\t" + ((AbstractTrack) track).isLogNormalized();
+        }
+        if (track instanceof DataSourceTrack) {
+            settings += "\t" + ((DataSourceTrack) track).normalize;
+        }
+        return settings;
+    }
+
+    private static class CachedScore {
+
+        final float score;
+        final String settings;
+
+        CachedScore(float score, String settings) {
+            this.score = score;
+            this.settings = settings;
+        }
+
+        boolean isValid(Track track) {
+            return settings.equals(getSettings(track));
+        }
+    }
+
+    private static class FilesTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final List<FileTask> tasks;
+
+        FilesTask(List<FileTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        protected void compute() {
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Scores the tracks of one file,  in order.
+     */
+    private static class FileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final List<Track> tracks;
+        final float[] scores;
+        final String[] settings;
+        final RegionOfInterest region;
+        final int zoom;
+        final RegionScoreType type;
+        final ReferenceFrame frame;
+
+        FileTask(List<Track> tracks, RegionOfInterest region, int zoom, RegionScoreType type, ReferenceFrame frame) {
+            this.tracks = tracks;
+            this.scores = new float[tracks.size()];
+            this.settings = new String[tracks.size()];
+            this.region = region;
+            this.zoom = zoom;
+            this.type = type;
+            this.frame = frame;
+        }
+
+        protected void compute() {
+            for (int i = 0; i < tracks.size(); i++) {
+                settings[i] = getSettings(tracks.get(i));
+                scores[i] = score(tracks.get(i), region, zoom, type, frame);
+            }
+        }
+    }
+}
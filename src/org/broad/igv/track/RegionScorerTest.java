@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.track;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.util.ResourceLocator;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegionScorerTest {
+
+    /**
+     * Track state behind a proxy,  counting the scores computed
+     */
+    static class ScoredTrack implements InvocationHandler {
+
+        final String name;
+        final ResourceLocator locator;
+        final float score;
+        volatile WindowFunction windowFunction = WindowFunction.mean;
+        final AtomicInteger scoreCount = new AtomicInteger();
+        final Track track;
+
+        // Tracks scored concurrently,  per file
+        final AtomicInteger active;
+        final AtomicInteger maxActive;
+
+        ScoredTrack(String name, String path, float score, AtomicInteger active, AtomicInteger maxActive) {
+            this.name = name;
+            this.locator = path == null ? null : new ResourceLocator(path);
+            this.score = score;
+            this.active = active;
+            this.maxActive = maxActive;
+            track = (Track) Proxy.newProxyInstance(Track.class.getClassLoader(), new Class[]{Track.class}, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+            String m = method.getName();
+            if (m.equals("getName") || m.equals("toString")) return name;
+            if (m.equals("getResourceLocator")) return locator;
+            if (m.equals("getWindowFunction")) return windowFunction;
+            if (m.equals("hashCode")) return System.identityHashCode(proxy);
+            if (m.equals("equals")) return proxy == args[0];
+            if (m.equals("getRegionScore")) {
+                scoreCount.incrementAndGet();
+                if (active != null) {
+                    int n = active.incrementAndGet();
+                    synchronized (maxActive) {
+                        maxActive.set(Math.max(maxActive.get(), n));
+                    }
+                    Thread.sleep(2);
+                    active.decrementAndGet();
+                }
+                return score;
+            }
+            return null;
+        }
+    }
+
+    private static final RegionOfInterest REGION = new RegionOfInterest("test", "chr1", 100, 200, null);
+
+    private static Map<Track, Float> getScores(List<ScoredTrack> tracks, RegionOfInterest region) {
+        List<Track> list = new ArrayList<Track>();
+        for (ScoredTrack t : tracks) {
+            list.add(t.track);
+        }
+        return RegionScorer.getScores(list, region, RegionScoreType.SCORE, null, 0, "test");
+    }
+
+    private static int getScoreCount(List<ScoredTrack> tracks) {
+        int n = 0;
+        for (ScoredTrack t : tracks) {
+            n += t.scoreCount.get();
+        }
+        return n;
+    }
+
+    @Before
+    public void setUp() {
+        RegionScorer.clearCache();
+    }
+
+    @Test
+    public void testCache() {
+        ScoredTrack a = new ScoredTrack("a", "a.wig", 1, null, null);
+        ScoredTrack b = new ScoredTrack("b", "b.wig", 2, null, null);
+        ScoredTrack c = new ScoredTrack("c", null, Float.NaN, null, null);
+        List<ScoredTrack> tracks = new ArrayList<ScoredTrack>(Arrays.asList(a, b, c));
+
+        Map<Track, Float> scores = getScores(tracks, REGION);
+        assertEquals(1f, scores.get(a.track), 0);
+        assertEquals(2f, scores.get(b.track), 0);
+        assertEquals(-Float.MAX_VALUE, scores.get(c.track), 0);
+        assertEquals(3, getScoreCount(tracks));
+
+        // Hit,  nothing is scored again
+        scores = getScores(tracks, REGION);
+        assertEquals(2f, scores.get(b.track), 0);
+        assertEquals(3, getScoreCount(tracks));
+
+        // Only the added track is scored
+        ScoredTrack d = new ScoredTrack("d", "a.wig", 4, null, null);
+        tracks.add(d);
+        scores = getScores(tracks, REGION);
+        assertEquals(4f, scores.get(d.track), 0);
+        assertEquals(4, getScoreCount(tracks));
+
+        // Miss for another region
+        getScores(tracks, new RegionOfInterest("test", "chr1", 300, 400, null));
+        assertEquals(8, getScoreCount(tracks));
+
+        RegionScorer.clearCache();
+        getScores(tracks, REGION);
+        assertEquals(12, getScoreCount(tracks));
+    }
+
+    @Test
+    public void testSettingsChange() {
+        ScoredTrack a = new ScoredTrack("a", "a.wig", 1, null, null);
+        ScoredTrack b = new ScoredTrack("b", "a.wig", 2, null, null);
+        List<ScoredTrack> tracks = Arrays.asList(a, b);
+        getScores(tracks, REGION);
+
+        // Changing the window function invalidates the cached score of that track only
+        a.windowFunction = WindowFunction.max;
+        getScores(tracks, REGION);
+        assertEquals(2, a.scoreCount.get());
+        assertEquals(1, b.scoreCount.get());
+
+        getScores(tracks, REGION);
+        assertEquals(2, a.scoreCount.get());
+    }
+
+    @Test
+    public void testTracksOfAFileScoredSerially() {
+        Map<String, AtomicInteger> maxActive = new HashMap<String, AtomicInteger>();
+        List<ScoredTrack> tracks = new ArrayList<ScoredTrack>();
+        for (String path : new String[]{"a.tdf", "b.tdf", "c.tdf"}) {
+            AtomicInteger active = new AtomicInteger();
+            AtomicInteger max = new AtomicInteger();
+            maxActive.put(path, max);
+            for (int i = 0; i < 20; i++) {
+                tracks.add(new ScoredTrack(path + i, path, i, active, max));
+            }
+        }
+
+        Map<Track, Float> scores = getScores(tracks, REGION);
+        for (ScoredTrack t : tracks) {
+            assertEquals(t.score, scores.get(t.track), 0);
+        }
+        for (AtomicInteger max : maxActive.values()) {
+            assertEquals(1, max.get());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.broad.igv.track;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A provider able to evaluate an attribute for many tracks in one call. Used by SoftAttributeManager
+ * when the attribute is configured with <key>.batch=true
+ */
+public interface SoftAttributeBatchProvider extends SoftAttributeProvider {
+
+	/**
+	 * @return the attribute values keyed by track. tracks missing from the map get a null value
+	 */
+	Map<AbstractTrack, String>	getAttributes(List<AbstractTrack> tracks, String attrName, String providerParam, String locus) throws Exception;
+}
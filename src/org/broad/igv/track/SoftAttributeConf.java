@@ -1,5 +1,8 @@
 package org.broad.igv.track;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
@@ -15,6 +18,7 @@ public class SoftAttributeConf {
 	private boolean					visible;
 	private boolean					longRunning;
 	private boolean					locusDependant;
+	private boolean					batch;
 	
 	private SoftAttributeProvider	provider;
 
@@ -27,6 +31,7 @@ public class SoftAttributeConf {
 		visible = Boolean.parseBoolean(conf.getProperty(key + ".visible", "true").trim());
 		longRunning = Boolean.parseBoolean(conf.getProperty(key + ".longRunning", "false").trim());
 		locusDependant = Boolean.parseBoolean(conf.getProperty(key + ".locusDependant", "false").trim());
+		batch = Boolean.parseBoolean(conf.getProperty(key + ".batch", "false").trim());
 		
 		try
 		{
@@ -52,6 +57,26 @@ public class SoftAttributeConf {
 		}
 	}
 
+	public Map<AbstractTrack, String> getAttributes(List<AbstractTrack> tracks, String attrName, String locus) {
+		
+		// batch capable providers get all tracks at once
+		if ( batch && provider instanceof SoftAttributeBatchProvider )
+		{
+			try {
+				return ((SoftAttributeBatchProvider)provider).getAttributes(tracks, attrName, providerParam, locus);
+			} catch (Exception e) {
+				log.warn("provider throw exception:", e);
+				return new LinkedHashMap<AbstractTrack, String>();
+			}
+		}
+		
+		// otherwise, one track at a time
+		Map<AbstractTrack, String>		values = new LinkedHashMap<AbstractTrack, String>();
+		for ( AbstractTrack track : tracks )
+			values.put(track, getAttribute(track, attrName, locus));
+		return values;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -100,6 +125,14 @@ public class SoftAttributeConf {
 		this.locusDependant = locusDependant;
 	}
 
+	public boolean isBatch() {
+		return batch;
+	}
+
+	public void setBatch(boolean batch) {
+		this.batch = batch;
+	}
+
 	public SoftAttributeProvider getProvider() {
 		return provider;
 	}
@@ -3,20 +3,31 @@ package org.broad.igv.track;
 import java.io.File;
 import java.io.FileInputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
 import org.broad.igv.batch.CommandListener;
+import org.broad.igv.ui.IGV;
+import org.broad.igv.ui.WaitCursorManager;
 import org.broad.igv.ui.panel.FrameManager;
+import org.broad.igv.ui.util.UIUtilities;
+import org.broad.igv.util.NamedThreadFactory;
 
 public class SoftAttributeManager {
 	
@@ -27,10 +38,23 @@ public class SoftAttributeManager {
 	static private int							CACHE_PRUNE_THRESHOLD = 1000;
 	static private int							CACHE_PRUNE_LEAVE = 100;
 	
+	static private int							WORKER_THREADS = 4;
+	static private long							BATCH_DELAY_MILLI = 20;
+	
+	// shown in the attribute panel while a value is being evaluated in the background
+	static public final String					PENDING_VALUE = "...";
+	
     static private Logger 						log = Logger.getLogger(SoftAttributeManager.class);
     
     private Map<String, SoftAttributeConf>		attrConfs = new LinkedHashMap<String, SoftAttributeConf>();
     private Map<String, SoftAttributeCachedValue> attrCache = new LinkedHashMap<String, SoftAttributeCachedValue>();
+    private Map<String, PendingBatch>			pendingBatches = new LinkedHashMap<String, PendingBatch>();
+    private Set<String>							inFlight = new HashSet<String>();
+    
+    static private ScheduledExecutorService		executor;
+    
+    // locus of locus dependant attributes, the default frame's locus unless set
+    private String								fixedLocus;
 	
 	static synchronized SoftAttributeManager getInstance()
 	{
@@ -109,47 +133,256 @@ public class SoftAttributeManager {
 		}
 	}
 
-	public synchronized String getAttribute(AbstractTrack track, String attrName)
+	/**
+	 * @return the value of a soft attribute, or null if it is not defined. a value not evaluated yet is evaluated
+	 * inline, sorting, grouping and filtering need the real value
+	 */
+	public String getAttribute(AbstractTrack track, String attrName)
+	{
+		return getAttribute(track, attrName, false);
+	}
+	
+	/**
+	 * @return the value of a soft attribute for display, PENDING_VALUE while it is being evaluated
+	 */
+	public String getDisplayAttribute(AbstractTrack track, String attrName)
+	{
+		return getAttribute(track, attrName, true);
+	}
+	
+	private String getAttribute(AbstractTrack track, String attrName, boolean display)
 	{
 		if ( track == null || track.getResourceLocator() == null || track.getResourceLocator().getPath() == null )
 			return null;
 		
 		String						trackKey = track.getResourceLocator().getPath();
+		SoftAttributeConf			attrConf;
+		String						locus = "";
+		SoftAttributeCachedValue	cv;
 		
-		SoftAttributeConf			attrConf = attrConfs.get(attrName.toUpperCase());
-		if ( attrConf == null )
-			return null;
-		
-		// get locus
-		String locus = "";
-		if ( attrConf.isLocusDependant() )
-			locus = FrameManager.getDefaultFrame().getFormattedLocusString();		
-
-		// find out if not already in cache
-		SoftAttributeCachedValue	cv = new SoftAttributeCachedValue(attrConf, trackKey, locus);
-		String						key = cv.getKey();
-		if ( attrCache.containsKey(key) )
+		synchronized (this)
 		{
-			SoftAttributeCachedValue	cv1 = attrCache.get(key);
+			attrConf = attrConfs.get(attrName.toUpperCase());
+			if ( attrConf == null )
+				return null;
 			
-			cv1.setDate(new Date());
+			// get locus
+			if ( attrConf.isLocusDependant() )
+				locus = getLocus();
+	
+			// find out if not already in cache
+			cv = new SoftAttributeCachedValue(attrConf, trackKey, locus);
+			String						key = cv.getKey();
+			if ( attrCache.containsKey(key) )
+			{
+				SoftAttributeCachedValue	cv1 = attrCache.get(key);
+				
+				cv1.setDate(new Date());
+				
+				log.debug("[" + attrCache.size() + "] cache hit for: " + cv1.getKey());
+				
+				return cv1.getValue();
+			}
 			
-			log.debug("[" + attrCache.size() + "] cache hit for: " + cv1.getKey());
+			// for display, expensive attributes are evaluated in the background, batched by attribute and locus.
+			// batch mode needs the real value for snapshots, so it always evaluates inline
+			if ( display && isAsync(attrConf) )
+			{
+				if ( inFlight.add(key) )
+					enqueue(attrConf, attrName, locus, track);
+				
+				return PENDING_VALUE;
+			}
+		}
+		
+		// calculate outside of the lock and enter into cache
+		cv.setValue(attrConf.getAttribute(track, attrName, locus));
+		putCachedValue(cv);
+		
+		return cv.getValue();
+	}
+	
+	/**
+	 * evaluate a soft attribute for all tracks that have no value yet, one batch per call, showing progress.
+	 * sorting, grouping and filtering call this first so that they do not evaluate track by track
+	 */
+	public void evaluate(Collection<? extends Track> tracks, String attrName)
+	{
+		SoftAttributeConf			attrConf;
+		String						locus = "";
+		List<AbstractTrack>			missing = new ArrayList<AbstractTrack>();
+		
+		synchronized (this)
+		{
+			attrConf = attrConfs.get(attrName.toUpperCase());
+			if ( attrConf == null )
+				return;
+			
+			if ( attrConf.isLocusDependant() )
+				locus = getLocus();
 			
-			return cv1.getValue();
+			for ( Track track : tracks )
+			{
+				if ( !(track instanceof AbstractTrack) || track.getResourceLocator() == null || track.getResourceLocator().getPath() == null )
+					continue;
+				String		key = new SoftAttributeCachedValue(attrConf, track.getResourceLocator().getPath(), locus).getKey();
+				if ( !attrCache.containsKey(key) )
+					missing.add((AbstractTrack)track);
+			}
 		}
+		if ( missing.isEmpty() )
+			return;
 		
+		WaitCursorManager.CursorToken	token = IGV.hasInstance() ? WaitCursorManager.showWaitCursor() : null;
+		if ( IGV.hasInstance() )
+			IGV.getStatusTracker().startActivity(attrName, "evaluating");
+		long						startMilli = System.currentTimeMillis();
+		Map<AbstractTrack, String>	values = null;
+		try
+		{
+			values = attrConf.getAttributes(missing, attrName, locus);
+		}
+		finally
+		{
+			for ( AbstractTrack track : missing )
+			{
+				SoftAttributeCachedValue	cv = new SoftAttributeCachedValue(attrConf, track.getResourceLocator().getPath(), locus);
+				cv.setValue(values != null ? values.get(track) : null);
+				putCachedValue(cv);
+			}
+			if ( token != null )
+			{
+				IGV.getStatusTracker().finishActivity(attrName, "evaluating", System.currentTimeMillis() - startMilli);
+				WaitCursorManager.removeWaitCursor(token);
+			}
+		}
+		log.debug("evaluated " + attrName + " for " + missing.size() + " tracks in " + (System.currentTimeMillis() - startMilli) + "ms");
+	}
+	
+	private String getLocus()
+	{
+		return fixedLocus != null ? fixedLocus : FrameManager.getDefaultFrame().getFormattedLocusString();
+	}
+	
+	/**
+	 * fix the locus of locus dependant attributes, instead of the default frame's. null restores the default
+	 */
+	synchronized void setLocus(String locus)
+	{
+		fixedLocus = locus;
+	}
+	
+	synchronized void addAttributeConf(SoftAttributeConf attrConf)
+	{
+		attrConfs.put(attrConf.getName().toUpperCase(), attrConf);
+	}
+	
+	private boolean isAsync(SoftAttributeConf attrConf)
+	{
+		return !Globals.isBatch() && (attrConf.isLongRunning() || attrConf.isLocusDependant());
+	}
+	
+	private synchronized void putCachedValue(SoftAttributeCachedValue cv)
+	{
 		// prune?
 		if ( attrCache.size() >= CACHE_PRUNE_THRESHOLD )
 			pruneCache();
 		
-		// calculate and enter into cache
-		cv.setValue(attrConf.getAttribute(track, attrName, locus));
-		attrCache.put(key, cv);
+		attrCache.put(cv.getKey(), cv);
 
 		log.debug("[" + attrCache.size() + "] cache added for: " + cv.getKey());
+	}
+	
+	/**
+	 * add a track to the pending batch of its (attribute, locus), scheduling the batch if it is new. called
+	 * with the lock held
+	 */
+	private void enqueue(SoftAttributeConf attrConf, String attrName, String locus, AbstractTrack track)
+	{
+		String				batchKey = attrConf.getKey() + "|" + locus;
+		PendingBatch		batch = pendingBatches.get(batchKey);
+		if ( batch == null )
+		{
+			batch = new PendingBatch(attrConf, attrName, locus);
+			pendingBatches.put(batchKey, batch);
+			
+			// a short delay lets a single paint pass queue all of its tracks into the batch
+			final String	scheduledKey = batchKey;
+			getExecutor().schedule(new Runnable() {
+				
+				@Override
+				public void run() {
+					evaluate(scheduledKey);
+				}
+			}, BATCH_DELAY_MILLI, TimeUnit.MILLISECONDS);
+		}
+		batch.tracks.put(track.getResourceLocator().getPath(), track);
+	}
+	
+	private void evaluate(String batchKey)
+	{
+		PendingBatch		batch;
+		synchronized (this)
+		{
+			batch = pendingBatches.remove(batchKey);
+		}
+		if ( batch == null )
+			return;
 		
-		return cv.getValue();
+		List<AbstractTrack>			tracks = new ArrayList<AbstractTrack>(batch.tracks.values());
+		long						startMilli = System.currentTimeMillis();
+		Map<AbstractTrack, String>	values = null;
+		try
+		{
+			values = batch.conf.getAttributes(tracks, batch.attrName, batch.locus);
+		}
+		finally
+		{
+			// enter results (even if failed, so the same request is not retried on every paint)
+			synchronized (this)
+			{
+				for ( AbstractTrack track : tracks )
+				{
+					SoftAttributeCachedValue	cv = new SoftAttributeCachedValue(batch.conf, track.getResourceLocator().getPath(), batch.locus);
+					cv.setValue(values != null ? values.get(track) : null);
+					putCachedValue(cv);
+					inFlight.remove(cv.getKey());
+				}
+			}
+		}
+		log.debug("evaluated " + batchKey + " for " + tracks.size() + " tracks in " + (System.currentTimeMillis() - startMilli) + "ms");
+		
+		if ( IGV.hasInstance() )
+			UIUtilities.invokeOnEventThread(new Runnable() {
+				
+				@Override
+				public void run() {
+					IGV.getInstance().repaintDataAndHeaderPanels(false);
+				}
+			});
+	}
+	
+	static private synchronized ScheduledExecutorService getExecutor()
+	{
+		if ( executor == null )
+			executor = Executors.newScheduledThreadPool(WORKER_THREADS, new NamedThreadFactory("soft-attribute"));
+		
+		return executor;
+	}
+	
+	private static class PendingBatch {
+		
+		SoftAttributeConf						conf;
+		String									attrName;
+		String									locus;
+		Map<String, AbstractTrack>				tracks = new LinkedHashMap<String, AbstractTrack>();
+		
+		PendingBatch(SoftAttributeConf conf, String attrName, String locus)
+		{
+			this.conf = conf;
+			this.attrName = attrName;
+			this.locus = locus;
+		}
 	}
 	
 	public synchronized void pruneCache()
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.track;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.broad.igv.renderer.Renderer;
+import org.broad.igv.util.ResourceLocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SoftAttributeManagerTest {
+
+    private SoftAttributeManager manager;
+
+    /**
+     * Provider whose value depends on the locus,  ten minus the track number on chr2.
+     */
+    public static class LocusProvider implements SoftAttributeProvider {
+
+        static final AtomicInteger calls = new AtomicInteger();
+
+        public String getAttribute(AbstractTrack track, String attrName, String providerParam, String locus) {
+            calls.incrementAndGet();
+            int n = Integer.parseInt(track.getName().substring(5));
+            return String.valueOf(locus.startsWith("chr2:") ? 10 - n : n);
+        }
+    }
+
+    static class TestTrack extends AbstractTrack {
+
+        TestTrack(String name) {
+            super(new ResourceLocator("/data/" + name + ".bed"), name, name);
+        }
+
+        public void render(RenderContext context, Rectangle rect) {
+        }
+
+        public Renderer getRenderer() {
+            return null;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        AttributeManager.getInstance();
+        manager = SoftAttributeManager.getInstance();
+
+        Properties conf = new Properties();
+        conf.setProperty("score", "SCORE");
+        conf.setProperty("score.className", LocusProvider.class.getName());
+        conf.setProperty("score.locusDependant", "true");
+        conf.setProperty("score.longRunning", "true");
+        manager.addAttributeConf(new SoftAttributeConf(conf, "score"));
+        LocusProvider.calls.set(0);
+    }
+
+    @After
+    public void tearDown() {
+        manager.setLocus(null);
+        manager.load();
+    }
+
+    private List<String> names(TrackGroup group) {
+        List<String> names = new ArrayList<String>();
+        for (Track track : group.getTracks()) {
+            names.add(track.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testSortOnLocusDependantAttribute() {
+        TrackGroup group = new TrackGroup();
+        for (int i : new int[]{3, 1, 4, 2, 5}) {
+            group.add(new TestTrack("track" + i));
+        }
+
+        // The first sort at a locus sees every value,  not values still being evaluated
+        manager.setLocus("chr1:1-100");
+        group.sortByAttributes(new String[]{"SCORE"}, new boolean[]{true}, false);
+        assertEquals(Arrays.asList("track1", "track2", "track3", "track4", "track5"), names(group));
+        assertEquals(5, LocusProvider.calls.get());
+
+        // At a new locus the values are evaluated again
+        manager.setLocus("chr2:1-100");
+        group.sortByAttributes(new String[]{"SCORE"}, new boolean[]{true}, false);
+        assertEquals(Arrays.asList("track5", "track4", "track3", "track2", "track1"), names(group));
+        assertEquals(10, LocusProvider.calls.get());
+
+        // Cached values are reused
+        group.sortByAttributes(new String[]{"SCORE"}, new boolean[]{false}, false);
+        assertEquals(Arrays.asList("track1", "track2", "track3", "track4", "track5"), names(group));
+        assertEquals(10, LocusProvider.calls.get());
+    }
+
+    @Test
+    public void testAttributeValueIsEvaluatedInline() {
+        manager.setLocus("chr1:1-100");
+        TestTrack track = new TestTrack("track7");
+        assertEquals("7", track.getAttributeValue("score"));
+        manager.setLocus("chr2:1-100");
+        assertEquals("3", track.getAttributeValue("SCORE"));
+    }
+}
@@ -2,7 +2,6 @@ package org.broad.igv.track;
 
 import java.awt.Color;
 import java.util.Iterator;
-import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.BasicFeature;
@@ -30,24 +29,18 @@ public class SoftAttributeProvider_ByFeatures implements SoftAttributeProvider {
 		int				start = Integer.parseInt(locusToks1[0].replace(",", ""));
 		int				end = Integer.parseInt(locusToks1[Math.max(1, locusToks1.length - 1)].replace(",", ""));
 		
-		// get packed features
-		PackedFeatures<Feature> 	pf;
-		@SuppressWarnings("unchecked")
+		// the features are consumed straight from the source, in order, up to the limit. there is no need to pack them into rows
 		long						startMilli = System.currentTimeMillis();
-		Iterator<Feature> iter = featureTrack.getSource().getFeatures(chr, start, end);
+		Iterator<Feature> 			iter = featureTrack.getSource().getFeatures(chr, start, end);
 		log.debug("iter: " + (System.currentTimeMillis() - startMilli));
-        if (iter == null) 
-        	pf = new PackedFeatures<Feature>(chr, start, end);
-        else
-        	pf = new PackedFeatures<Feature>(chr, start, end, iter, track.getName());
-		log.debug("new PackedFeatures: " + (System.currentTimeMillis() - startMilli));
 		
-        // make value string from packed features
-        List<Feature>		features = pf.getFeatures();
+        // make value string from features
         StringBuilder		textEncoding = new StringBuilder();
         int					featureLimit = Integer.parseInt(providerParam);
-        for ( Feature feature : features )
+        while ( iter != null && iter.hasNext() )
         {
+        	Feature		feature = iter.next();
+        	
         	if ( featureLimit-- <= 0 )
         		break;
         	
@@ -2,12 +2,15 @@ package org.broad.igv.track;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
-public class SoftAttributeProvider_Shell implements SoftAttributeProvider {
+public class SoftAttributeProvider_Shell implements SoftAttributeBatchProvider {
 	
     static private Logger 						log = Logger.getLogger(SoftAttributeProvider_Shell.class);
 
@@ -44,4 +47,44 @@ public class SoftAttributeProvider_Shell implements SoftAttributeProvider {
 		
 		return value;
 	}
+
+	/**
+	 * one invocation for many tracks: the command is called with the arguments: locus trackKey1 trackKey2 ... attrName,
+	 * the same order as the per-track call, and should print one line per track, in the same order
+	 */
+	public Map<AbstractTrack, String> getAttributes(List<AbstractTrack> tracks, String attrName, String providerParam, String locus) throws Exception
+	{
+		log.debug("Shell provider: batch of " + tracks.size() + ", attrName: " + attrName + ", providerParam: " + providerParam + ", locus:" + locus);
+		
+		Map<AbstractTrack, String>	values = new LinkedHashMap<AbstractTrack, String>();
+		if ( providerParam == null || providerParam.length() == 0 )
+			return values;
+		
+		List<String>		cmd = new ArrayList<String>();
+		for ( String tok : providerParam.split("\\s+") )
+			cmd.add(tok);
+		cmd.add(locus);
+		for ( AbstractTrack track : tracks )
+			cmd.add(track.getResourceLocator().getPath());
+		cmd.add(attrName);
+		log.debug("cmd: " + cmd);
+		
+		// read all output before waiting, a large batch might otherwise fill the pipe and block the process
+		Process 			pr = new ProcessBuilder(cmd).start();
+		try
+		{
+			BufferedReader 	buf = new BufferedReader(new InputStreamReader(pr.getInputStream()));
+			String			line;
+			int				index = 0;
+			while ( (line = buf.readLine()) != null && index < tracks.size() ) 
+				values.put(tracks.get(index++), line);
+			pr.waitFor();
+		}
+		finally
+		{
+			pr.destroy();
+		}
+		
+		return values;
+	}
 }
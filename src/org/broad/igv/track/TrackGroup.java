@@ -28,6 +28,7 @@ import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -154,6 +155,22 @@ public class TrackGroup {
         return score;
     }
 
+    /**
+     * Return the maximum precomputed region score of the visible tracks of the group,  see RegionScorer.
+     */
+    public float getRegionScore(Map<Track, Float> scores) {
+        float score = -Float.MAX_VALUE;
+        for (Track track : tracks) {
+            if (track.isVisible()) {
+                Float s = scores.get(track);
+                if (s != null) {
+                    score = Math.max(score, s);
+                }
+            }
+        }
+        return score;
+    }
+
 
     public String getName() {
         return name;
@@ -210,67 +227,6 @@ public class TrackGroup {
     public void sortByAttributes(final String attributeNames[],
                                  final boolean[] ascending, boolean sortVariants) {
         if ((tracks != null) && !tracks.isEmpty()) {
-            Comparator comparator = new Comparator() {
-
-                public int compare(Object arg0, Object arg1) {
-                    Track t1 = (Track) arg0;
-                    Track t2 = (Track) arg1;
-
-                    // Loop through the attributes in order (primary, secondary, tertiary, ...).  The
-                    // first attribute to yield a non-zero comparison wins
-                    for (int i = 0; i < attributeNames.length; i++) {
-                        String attName = attributeNames[i];
-
-                        if (attName != null) {
-                            String value1 = t1.getAttributeValue(attName);
-
-                            if (value1 == null) {
-                                value1 = "";
-                            }
-
-                            value1 = value1.toLowerCase();
-                            String value2 = t2.getAttributeValue(attName);
-
-                            if (value2 == null) {
-                                value2 = "";
-                            }
-                            value2 = value2.toLowerCase();
-
-                            boolean isNumeric = AttributeManager.getInstance().isNumeric(attName);
-
-                            int c = 0;
-                            if (isNumeric) {
-                                double d1;
-                                try {
-                                    d1 = Double.parseDouble(value1);
-                                }
-                                catch (NumberFormatException e) {
-                                    d1 = Double.MIN_VALUE;
-                                }
-                                double d2;
-                                try {
-                                    d2 = Double.parseDouble(value2);
-                                }
-                                catch (NumberFormatException e) {
-                                    d2 = Double.MIN_VALUE;
-                                }
-                                if (d2 > d1) c = 1;
-                                else if (d2 < d1) c = -1;
-                            } else {
-                                c = value1.compareTo(value2);
-                            }
-
-                            if (c != 0) {
-                                return ascending[i] ? c : -c;
-                            }
-
-                        }
-                    }
-
-                    // All compares are equal
-                    return 0;
-                }
-            };
 
             // Step 1,  remove non-sortable tracks and remember position
             List<Track> unsortableTracks = new ArrayList();
@@ -285,7 +241,7 @@ public class TrackGroup {
             }
 
             // Step 2,  sort "sortable" tracks
-            Collections.sort(tracks, comparator);
+            sortByAttributeKeys(tracks, attributeNames, ascending);
 
             // Step 3, put unortable tracks back in original order
             if (unsortableTracks.size() > 0) {
@@ -306,10 +262,69 @@ public class TrackGroup {
     }
 
 
+    /**
+     * Sort tracks by the array of attribute names.  The values of each attribute are fetched once per track and
+     * converted to sort keys (see AttributeManager.getSortKeys()),  the tracks are then ordered by comparing keys.
+     */
+    private static void sortByAttributeKeys(List<Track> tracks, String[] attributeNames, final boolean[] ascending) {
+
+        int n = tracks.size();
+        final double[][] keys = new double[attributeNames.length][];
+        for (int a = 0; a < attributeNames.length; a++) {
+            if (attributeNames[a] != null) {
+                AttributeManager.getInstance().evaluateSoftAttribute(tracks, attributeNames[a]);
+                String[] values = new String[n];
+                for (int i = 0; i < n; i++) {
+                    values[i] = tracks.get(i).getAttributeValue(attributeNames[a]);
+                }
+                keys[a] = AttributeManager.getInstance().getSortKeys(attributeNames[a], values);
+            }
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        // Loop through the attributes in order (primary, secondary, tertiary, ...).  The
+        // first attribute to yield a non-zero comparison wins
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                for (int a = 0; a < keys.length; a++) {
+                    if (keys[a] != null) {
+                        int c = Double.compare(keys[a][i1], keys[a][i2]);
+                        if (c != 0) {
+                            return ascending[a] ? c : -c;
+                        }
+                    }
+                }
+                return 0;
+            }
+        });
+
+        List<Track> sorted = new ArrayList(n);
+        for (Integer i : order) {
+            sorted.add(tracks.get(i));
+        }
+        tracks.clear();
+        tracks.addAll(sorted);
+    }
+
+
     public void sortGroup(final RegionOfInterest region,
                           String linkingAtt,
                           final RegionScoreType type,
                           final ReferenceFrame frame) {
+        Map<Track, Float> scores = region == null ? Collections.<Track, Float>emptyMap() :
+                RegionScorer.getScores(getTracks(), region, type, frame);
+        sortGroup(linkingAtt, type, scores);
+    }
+
+    /**
+     * Sort the group by precomputed region scores,  see RegionScorer.  Tracks that do not support the score type
+     * are ordered by the linking attribute of the sorted tracks.
+     */
+    public void sortGroup(String linkingAtt, final RegionScoreType type, final Map<Track, Float> scores) {
         // Step 1,  remove non-sortable tracks and remember position
         List<Track> unsortableTracks = new ArrayList();
         Map<Track, Integer> trackIndeces = new HashMap();
@@ -332,7 +347,7 @@ public class TrackGroup {
             }
         }
 
-        sortByRegionScore(tracksWithScore, region, type, frame);
+        sortByRegionScore(tracksWithScore, scores);
         List<String> sortedAttributes = new ArrayList();
         for (Track t : tracksWithScore) {
             String att = t.getAttributeValue(linkingAtt);
@@ -361,43 +376,34 @@ public class TrackGroup {
     public void sortByRegionScore(final RegionOfInterest region,
                                   final RegionScoreType type,
                                   final ReferenceFrame frame) {
-        sortByRegionScore(tracks, region, type, frame);
+        if (region != null) {
+            sortByRegionScore(tracks, RegionScorer.getScores(tracks, region, type, frame));
+        }
+    }
+
+    /**
+     * Sort the tracks of the group by precomputed region scores,  highest first.
+     */
+    public void sortByRegionScore(Map<Track, Float> scores) {
+        sortByRegionScore(tracks, scores);
     }
 
 
-    private void sortByRegionScore(List<Track> tracks,
-                                   final RegionOfInterest region,
-                                   final RegionScoreType type,
-                                   final ReferenceFrame frame) {
-        if ((tracks != null) && (region != null) && !tracks.isEmpty()) {
-            final int zoom = Math.max(0, frame.getZoom());
-            final String chr = region.getChr();
-            final int start = region.getStart();
-            final int end = region.getEnd();
+    private void sortByRegionScore(List<Track> tracks, final Map<Track, Float> scores) {
+        if ((tracks != null) && !tracks.isEmpty()) {
 
             Comparator<Track> c = new Comparator<Track>() {
 
                 public int compare(Track t1, Track t2) {
-                    try {
-                        if (t1 == null && t2 == null) return 0;
-                        if (t1 == null) return 1;
-                        if (t2 == null) return -1;
-
-                        float s1 = t1.getRegionScore(chr, start, end, zoom, type, frame);
-                        float s2 = t2.getRegionScore(chr, start, end, zoom, type, frame);
-
-                        if (s2 > s1) {
-                            return 1;
-                        } else if (s1 < s2) {
-                            return -1;
-                        } else {
-                            return 0;
-                        }
-                    } catch (Exception e) {
-                        log.error("Error sorting tracks. Sort might not be accurate.", e);
-                        return 0;
-                    }
+                    if (t1 == null && t2 == null) return 0;
+                    if (t1 == null) return 1;
+                    if (t2 == null) return -1;
+                    return Float.compare(getScore(t2), getScore(t1));
+                }
 
+                private float getScore(Track t) {
+                    Float score = scores.get(t);
+                    return score == null ? -Float.MAX_VALUE : score;
                 }
             };
             Collections.sort(tracks, c);
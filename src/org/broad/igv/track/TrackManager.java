@@ -55,6 +55,7 @@ import org.broad.igv.ui.panel.ReferenceFrame;
 import org.broad.igv.ui.panel.TrackPanel;
 import org.broad.igv.ui.panel.TrackPanelScrollPane;
 import org.broad.igv.ui.util.MessageUtils;
+import org.broad.igv.ui.util.UIUtilities;
 import org.broad.igv.util.LongRunningTask;
 import org.broad.igv.util.NamedRunnable;
 import org.broad.igv.util.ResourceLocator;
@@ -334,6 +335,7 @@ public class TrackManager {
      */
 
     public List<Track> load(ResourceLocator locator) {
+        RegionScorer.clearCache();
 
         try {
         	
@@ -669,6 +671,7 @@ public class TrackManager {
      */
     public void reloadTracks(Collection<Track> tracksToReload) {
     	
+    	RegionScorer.clearCache();
     	for ( Track track : tracksToReload )
     		track.reload();
 
@@ -680,6 +683,7 @@ public class TrackManager {
      */
     public void refreshData() {
 
+        RegionScorer.clearCache();
         long t0 = System.currentTimeMillis();
         for (Track track : getAllTracks(false)) {
             track.refreshData(t0);
@@ -777,11 +781,26 @@ public class TrackManager {
             }
 
             public void run() {
+
+                // Score all tracks in parallel,  then apply the sort on the event thread in one step so a partially
+                // sorted panel is never painted.
+                final List<TrackPanel> panels = new ArrayList();
+                List<Track> tracks = new ArrayList();
                 for (TrackPanelScrollPane tsp : getTrackPanelScrollPanes()) {
                     TrackPanel tsv = tsp.getTrackPanel();
-                    tsv.sortByRegionsScore(r, type, frame);
+                    panels.add(tsv);
+                    tracks.addAll(tsv.getTracks());
                 }
-                IGV.getMainFrame().repaint();
+                final Map<Track, Float> scores = RegionScorer.getScores(tracks, r, type, frame);
+
+                UIUtilities.invokeAndWaitOnEventThread(new Runnable() {
+                    public void run() {
+                        for (TrackPanel tsv : panels) {
+                            tsv.sortByRegionsScore(type, scores);
+                        }
+                        IGV.getMainFrame().repaint();
+                    }
+                });
             }
         };
 
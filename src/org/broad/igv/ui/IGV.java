@@ -190,6 +190,7 @@ public class IGV {
     // Misc state
     private LinkedList<String> recentSessionList = new LinkedList<String>();
     private boolean isExportingSnapshot = false;
+    private volatile boolean isRenderingSnapshots = false;
     private boolean startupComplete = false;
     
     // auto refresh
@@ -1089,6 +1090,21 @@ public class IGV {
         return isExportingSnapshot;
     }
 
+    /**
+     * @return true while the HeadlessSnapshotRenderer is drawing tracks.  The data panels are not painted meanwhile,
+     *         they would read the same files as the snapshot workers.
+     */
+    public boolean isRenderingSnapshots() {
+        return isRenderingSnapshots;
+    }
+
+    public void setRenderingSnapshots(boolean renderingSnapshots) {
+        isRenderingSnapshots = renderingSnapshots;
+        if (!renderingSnapshots) {
+            mainFrame.repaint();
+        }
+    }
+
     final public void createSnapshot(final Component target, final File defaultFile) {
 
         CursorToken token = WaitCursorManager.showWaitCursor();
@@ -30,6 +30,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
+import org.broad.igv.track.AttributeManager;
 import org.broad.igv.track.Track;
 import org.broad.igv.util.Filter;
 import org.broad.igv.util.FilterElement;
@@ -93,6 +94,17 @@ public class TrackFilter extends Filter {
 
         boolean filterEnabled = isEnabled();
 
+        // Evaluate soft attributes for all tracks at once,  rather than track by track
+        if (filterEnabled) {
+            Iterator iterator = getFilterElements();
+            while (iterator.hasNext()) {
+                String attributeKey = ((FilterElement) iterator.next()).getSelectedItem();
+                if (attributeKey != null) {
+                    AttributeManager.getInstance().evaluateSoftAttribute(currentTrackList, attributeKey);
+                }
+            }
+        }
+
         for (Track track : currentTrackList) {
 
             // Must start as null which means no previous results
@@ -166,6 +166,9 @@ public class DataPanel extends JComponent implements Paintable {
 	    	log.debug("start painting: " + getLogTrack());
 	    	
 	        super.paintComponent(g);
+	        if (IGV.getInstance().isRenderingSnapshots()) {
+	            return;
+	        }
 	        RenderContext context = null;
 	        try {
 	
@@ -127,7 +127,7 @@ public class DataPanelPainter {
         }
     }
 
-    final private void draw(Track track, Rectangle rect, RenderContext context) {
+    protected void draw(Track track, Rectangle rect, RenderContext context) {
 
     	long		started = System.currentTimeMillis();
     	log.debug("rendering: " + track.getName());
@@ -36,7 +36,9 @@ import java.util.Map;
 import org.apache.log4j.Logger;
 import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.track.AttributeManager;
 import org.broad.igv.track.RegionScoreType;
+import org.broad.igv.track.RegionScorer;
 import org.broad.igv.track.Track;
 import org.broad.igv.track.TrackGroup;
 import org.broad.igv.ui.IGV;
@@ -244,6 +246,7 @@ public class TrackPanel extends IGVPanel {
             trackGroups.add(nullGroup);
         } else {
             Map<String, TrackGroup> groupMap = new HashMap();
+            AttributeManager.getInstance().evaluateSoftAttribute(tracks, attribute);
             for (Track track : tracks) {
                 String attributeValue = track.getAttributeValue(attribute);
 
@@ -291,19 +294,32 @@ public class TrackPanel extends IGVPanel {
      */
     public void sortByRegionsScore(final RegionOfInterest region, final RegionScoreType type,
                                    final ReferenceFrame frame) {
+        if (region != null) {
+            sortByRegionsScore(type, RegionScorer.getScores(getTracks(), region, type, frame));
+        }
+    }
+
+    /**
+     * Sort all groups by precomputed region scores,  see RegionScorer.  The scores must include every track of
+     * the panel.
+     *
+     * @param type
+     * @param scores
+     */
+    public void sortByRegionsScore(final RegionScoreType type, final Map<Track, Float> scores) {
 
         boolean useLinkedSorting = PreferenceManager.getInstance().getAsBoolean(PreferenceManager.ENABLE_LINKED_SORTING);
         String linkingAtt = IGV.getInstance().getSession().getOverlayAttribute();
 
-        sortGroupsByRegionScore(trackGroups, region, type, frame);
+        sortGroupsByRegionScore(trackGroups, scores);
 
         for (TrackGroup group : trackGroups) {
             // If there is a non-null linking attribute
             // Segregate tracks into 2 sub-groups, those matching the score type and those that do not
             if (linkingAtt != null && !useLinkedSorting) {
-                group.sortByRegionScore(region, type, frame);
+                group.sortByRegionScore(scores);
             } else {
-                group.sortGroup(region, linkingAtt, type, frame);
+                group.sortGroup(linkingAtt, type, scores);
             }
 
         }
@@ -313,32 +329,14 @@ public class TrackPanel extends IGVPanel {
      * Sort groups by a score (not the tracks within the group).
      *
      * @param groups
-     * @param region
-     * @param type
+     * @param scores
      */
-    private void sortGroupsByRegionScore(List<TrackGroup> groups,
-                                         final RegionOfInterest region,
-                                         final RegionScoreType type,
-                                         final ReferenceFrame frame) {
-        if ((groups != null) && (region != null) && !groups.isEmpty()) {
-            final int zoom = Math.max(0, frame.getZoom());
-            final String chr = region.getChr();
-            final int start = region.getStart();
-            final int end = region.getEnd();
+    private void sortGroupsByRegionScore(List<TrackGroup> groups, final Map<Track, Float> scores) {
+        if ((groups != null) && !groups.isEmpty()) {
             Comparator<TrackGroup> c = new Comparator<TrackGroup>() {
 
                 public int compare(TrackGroup group1, TrackGroup group2) {
-                    float s1 = group1.getRegionScore(chr, start, end, zoom, type, frame);
-                    float s2 = group2.getRegionScore(chr, start, end, zoom, type, frame);
-
-                    if (s2 > s1) {
-                        return 1;
-                    } else if (s1 < s2) {
-                        return -1;
-                    } else {
-                        return 0;
-                    }
-
+                    return Float.compare(group2.getRegionScore(scores), group1.getRegionScore(scores));
                 }
             };
 
@@ -0,0 +1,646 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.ui.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.imageio.ImageIO;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.track.AbstractTrack;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.Track;
+import org.broad.igv.track.TrackGroup;
+import org.broad.igv.track.TrackManager;
+import org.broad.igv.ui.IGV;
+import org.broad.igv.ui.UIConstants;
+import org.broad.igv.ui.panel.DataPanelPainter;
+import org.broad.igv.ui.panel.FrameManager;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.broad.igv.ui.panel.RulerPanel;
+import org.broad.igv.ui.panel.TrackPanel;
+import org.broad.igv.util.NamedThreadFactory;
+import org.broad.igv.util.ParsingUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+
+/**
+ * Renders snapshots of many loci without going through the main panel.  Each locus is drawn into an offscreen
+ * image from its own ReferenceFrame and the current track stack,  so snapshots are not limited to the locus shown
+ * and several loci are rendered at once on a pool of worker threads.  Encoding and writing the images runs on a
+ * separate writer thread,  overlapping with rendering.
+ * <p/>
+ * Each worker keeps one frame,  named for the worker thread,  for all the loci it renders.  Tracks cache their
+ * loaded data by frame name,  so the data caches hold at most one interval per worker.  Tracks loaded from the same
+ * file share readers and caches,  so they are never rendered by two workers at once;  workers rendering different
+ * files run concurrently.  The main window's data panels are not painted during a render.  The data loaded for
+ * the worker frames is released when the snapshots are done.
+ */
+public class HeadlessSnapshotRenderer {
+
+    private static Logger log = Logger.getLogger(HeadlessSnapshotRenderer.class);
+
+    private static final int HEADER_HEIGHT = 40;
+    private static final int PANEL_GAP = 5;
+    private static final int DEFAULT_DATA_WIDTH = 1000;
+
+    // Marks the end of the snapshots for the writer thread
+    private static final Snapshot END = new Snapshot(null, null, null);
+
+    private final File directory;
+    private final boolean svg;
+    private final int nThreads;
+    private final int namePanelWidth;
+    private final int dataWidth;
+
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<String, ReentrantLock>();
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final Set<String> frameNames = Collections.synchronizedSet(new HashSet<String>());
+    private volatile boolean cancelled;
+
+    /**
+     * @param directory the directory to write snapshots to
+     * @param svg       write svg files if true,  png otherwise
+     */
+    public HeadlessSnapshotRenderer(File directory, boolean svg) {
+        this(directory, svg,
+                PreferenceManager.getInstance().getAsInt(PreferenceManager.SNAPSHOT_THREADS),
+                PreferenceManager.getInstance().getAsInt(PreferenceManager.NAME_PANEL_WIDTH),
+                FrameManager.getDefaultFrame().getWidthInPixels());
+    }
+
+    HeadlessSnapshotRenderer(File directory, boolean svg, int nThreads, int namePanelWidth, int dataWidth) {
+        this.directory = directory;
+        this.svg = svg;
+        this.nThreads = Math.max(1, nThreads);
+        this.namePanelWidth = namePanelWidth;
+        this.dataWidth = dataWidth > 0 ? dataWidth : DEFAULT_DATA_WIDTH;
+    }
+
+    /**
+     * Render a snapshot of each region of a bed file.  Regions are widened by the flanking region preference,  as
+     * for gene lists.  Files are named for the bed name column if present,  for the locus otherwise.
+     *
+     * @return "OK",  or an error message
+     */
+    public String renderBed(String bedPath) {
+        List<Region> regions;
+        try {
+            regions = readBed(bedPath, IGV.getInstance().getGenomeManager().getCurrentGenome());
+        } catch (IOException e) {
+            log.error("Error reading " + bedPath, e);
+            return "ERROR: could not read " + bedPath + ": " + e.getMessage();
+        }
+        return render(regions);
+    }
+
+    String render(List<Region> regions) {
+
+        if (regions.isEmpty()) {
+            return "ERROR: no loci";
+        }
+
+        long t0 = System.currentTimeMillis();
+        cancelled = false;
+        final BlockingQueue<Snapshot> output = new ArrayBlockingQueue<Snapshot>(2 * nThreads);
+        Thread writer = new NamedThreadFactory("snapshot-write").newThread(new Runnable() {
+            public void run() {
+                write(output);
+            }
+        });
+        writer.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads, new NamedThreadFactory("snapshot"));
+        setExportingSnapshot(true);
+        boolean interrupted = false;
+        String error = null;
+        try {
+            List<Future> futures = new ArrayList(regions.size());
+            for (final Region region : regions) {
+                futures.add(pool.submit(new Runnable() {
+                    public void run() {
+                        if (cancelled) {
+                            return;
+                        }
+                        try {
+                            // Worker frames are named for their thread
+                            frameNames.add(Thread.currentThread().getName());
+                            Snapshot snapshot = renderRegion(region);
+                            output.put(snapshot);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                            log.error("Error rendering " + region.getFileName(), e);
+                        }
+                    }
+                }));
+            }
+            for (Future future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            log.error("Error creating snapshots", e);
+            interrupted = e instanceof InterruptedException;
+            error = "ERROR: " + e.toString();
+            cancelled = true;
+        } finally {
+            // Workers are not interrupted,  an interrupt closes the file channels of the readers they are using.
+            // Queued loci are skipped once cancelled,  loci being rendered are finished before the frames they
+            // hold are released.
+            pool.shutdown();
+            interrupted |= awaitTermination(pool);
+            interrupted |= finishWriter(output, writer);
+            clearFrameCaches();
+            setExportingSnapshot(false);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (error != null) {
+            return error;
+        }
+
+        log.info("Rendered " + regions.size() + " snapshots in " + (System.currentTimeMillis() - t0) + " ms");
+        int n = errors.get();
+        return n == 0 ? "OK" : "ERROR: " + n + " of " + regions.size() + " snapshots failed";
+    }
+
+    /**
+     * Wait for the workers to finish,  without giving up on an interrupt.
+     *
+     * @return true if the calling thread was interrupted while waiting
+     */
+    private static boolean awaitTermination(ExecutorService pool) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    return interrupted;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    /**
+     * Signal the end of the snapshots to the writer and wait for it to write the ones queued.
+     *
+     * @return true if the calling thread was interrupted while waiting
+     */
+    private static boolean finishWriter(BlockingQueue<Snapshot> output, Thread writer) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                output.put(END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (true) {
+            try {
+                writer.join();
+                return interrupted;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    Snapshot renderRegion(Region region) {
+
+        Worker worker = workers.get();
+        if (worker == null) {
+            worker = new Worker(Thread.currentThread().getName());
+            workers.set(worker);
+        }
+        ReferenceFrame frame = worker.frame;
+        frame.setInterval(region.chr, region.start, region.end);
+
+        // The track stack,  taken once for the whole snapshot
+        List<Collection<TrackGroup>> panels = new ArrayList();
+        List<Integer> heights = new ArrayList();
+        int height = HEADER_HEIGHT;
+        for (TrackPanel panel : IGV.getInstance().getTrackPanels()) {
+            if (panel.getTracks().isEmpty()) {
+                continue;
+            }
+            Collection<TrackGroup> groups = new ArrayList(panel.getGroups());
+            int panelHeight = Math.min(SnapshotUtilities.MAX_PANEL_HEIGHT, getHeight(groups));
+            panels.add(groups);
+            heights.add(panelHeight);
+            height += PANEL_GAP + panelHeight;
+        }
+        int width = namePanelWidth + dataWidth;
+
+        Graphics2D g;
+        BufferedImage image = null;
+        SVGGraphics2D svgGenerator = null;
+        if (svg) {
+            DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
+            Document document = domImpl.createDocument("http://www.w3.org/2000/svg", "svg", null);
+            svgGenerator = new SVGGraphics2D(document);
+            g = svgGenerator;
+        } else {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            g = image.createGraphics();
+        }
+
+        try {
+            g.setColor(Color.white);
+            g.fillRect(0, 0, width, height);
+
+            // Header,  the locus and a ruler
+            g.setColor(Color.black);
+            g.drawString(region.getLabel(), 5, HEADER_HEIGHT / 2);
+            worker.ruler.setSize(dataWidth, HEADER_HEIGHT);
+            Graphics2D rulerGraphics = (Graphics2D) g.create(namePanelWidth, 0, dataWidth, HEADER_HEIGHT);
+            try {
+                worker.ruler.paint(rulerGraphics);
+            } finally {
+                rulerGraphics.dispose();
+            }
+
+            String genomeId = IGV.getInstance().getGenomeManager().getGenomeId();
+            int y = HEADER_HEIGHT;
+            for (int i = 0; i < panels.size(); i++) {
+                y += PANEL_GAP;
+                Collection<TrackGroup> groups = panels.get(i);
+                int panelHeight = heights.get(i);
+
+                Graphics2D nameGraphics = (Graphics2D) g.create(0, y, namePanelWidth, panelHeight);
+                try {
+                    paintNames(nameGraphics, groups, new Rectangle(0, 0, namePanelWidth, panelHeight));
+                } finally {
+                    nameGraphics.dispose();
+                }
+
+                Rectangle rect = new Rectangle(0, 0, dataWidth, panelHeight);
+                Graphics2D dataGraphics = (Graphics2D) g.create(namePanelWidth, y, dataWidth, panelHeight);
+                RenderContext context = new RenderContext(genomeId, null, dataGraphics, frame, rect);
+                try {
+                    worker.painter.paint(groups, context, dataWidth, panelHeight, Color.white, rect);
+                } finally {
+                    context.dispose();
+                    dataGraphics.dispose();
+                }
+                y += panelHeight;
+            }
+        } finally {
+            if (image != null) {
+                g.dispose();
+            }
+        }
+
+        return new Snapshot(getFile(region), image, svgGenerator);
+    }
+
+    File getFile(Region region) {
+        return new File(directory, region.getFileName() + (svg ? ".svg" : ".png"));
+    }
+
+    /**
+     * Set the snapshot flags for the duration of a render.  The main data panels are not painted meanwhile,  they
+     * would read the files the workers are reading without taking their locks.
+     */
+    void setExportingSnapshot(boolean exportingSnapshot) {
+        if (exportingSnapshot) {
+            IGV.getInstance().setRenderingSnapshots(true);
+            IGV.getInstance().setExportingSnapshot(true);
+        } else {
+            IGV.getInstance().setExportingSnapshot(false);
+            IGV.getInstance().setRenderingSnapshots(false);
+        }
+    }
+
+    /**
+     * Returns all tracks,  including overlays.
+     */
+    Collection<Track> getTracks() {
+        TrackManager trackManager = IGV.getInstance().getTrackManager();
+        Set<Track> tracks = new LinkedHashSet<Track>();
+        for (Track track : trackManager.getAllTracks(true)) {
+            tracks.add(track);
+            List<Track> overlays = trackManager.getOverlayTracks(track);
+            if (overlays != null) {
+                tracks.addAll(overlays);
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * Release the data tracks have loaded for the worker frames.  The frames are not drawn again,  the next render
+     * runs on new worker threads.
+     */
+    private void clearFrameCaches() {
+        synchronized (frameNames) {
+            for (Track track : getTracks()) {
+                if (track instanceof AbstractTrack) {
+                    for (String frameName : frameNames) {
+                        ((AbstractTrack) track).clearFrameCache(frameName);
+                    }
+                }
+            }
+            frameNames.clear();
+        }
+    }
+
+    private static int getHeight(Collection<TrackGroup> groups) {
+        int height = 0;
+        for (TrackGroup group : groups) {
+            if (group.isVisible()) {
+                if (groups.size() > 1) {
+                    height += UIConstants.groupGap;
+                }
+                for (Track track : group.getTracks(true)) {
+                    if (track != null && track.isVisible()) {
+                        height += track.getHeight();
+                    }
+                }
+            }
+        }
+        return Math.max(1, height);
+    }
+
+    private static void paintNames(Graphics2D g, Collection<TrackGroup> groups, Rectangle visibleRect) {
+        int y = 0;
+        for (TrackGroup group : groups) {
+            if (group.isVisible()) {
+                if (groups.size() > 1) {
+                    y += UIConstants.groupGap;
+                }
+                for (Track track : group.getTracks(true)) {
+                    if (track != null && track.isVisible()) {
+                        int trackHeight = track.getHeight();
+                        if (y > visibleRect.getMaxY()) {
+                            return;
+                        }
+                        track.renderName(g, new Rectangle(0, y, visibleRect.width, trackHeight), visibleRect);
+                        y += trackHeight;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write snapshots from the queue until the END marker.
+     */
+    private void write(BlockingQueue<Snapshot> output) {
+        while (true) {
+            Snapshot snapshot;
+            try {
+                snapshot = output.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (snapshot == END) {
+                return;
+            }
+            if (cancelled) {
+                continue;
+            }
+            try {
+                if (snapshot.svg != null) {
+                    Writer out = new BufferedWriter(new FileWriter(snapshot.file));
+                    try {
+                        snapshot.svg.stream(out, true);
+                    } finally {
+                        out.close();
+                    }
+                } else {
+                    ImageIO.write(snapshot.image, "png", snapshot.file);
+                }
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                log.error("Error creating: " + snapshot.file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the file a track is loaded from.
+     */
+    private static String getLockKey(Track track) {
+        ResourceLocator locator = track.getResourceLocator();
+        return locator == null || locator.getPath() == null ?
+                "track:" + System.identityHashCode(track) : locator.getPath();
+    }
+
+    private ReentrantLock getLock(String key) {
+        ReentrantLock lock = locks.get(key);
+        if (lock == null) {
+            synchronized (locks) {
+                lock = locks.get(key);
+                if (lock == null) {
+                    lock = new ReentrantLock();
+                    locks.put(key, lock);
+                }
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Read the regions of a bed file,  skipping lines on chromosomes not in the genome if one is given.
+     */
+    List<Region> readBed(String path, Genome genome) throws IOException {
+
+        int flankingRegion = PreferenceManager.getInstance().getAsInt(PreferenceManager.FLANKING_REGION);
+
+        List<Region> regions = new ArrayList();
+        Set<String> names = new HashSet();
+        BufferedReader reader = null;
+        try {
+            reader = ParsingUtils.openBufferedReader(path);
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                if (nextLine.startsWith("#") || nextLine.startsWith("track") || nextLine.startsWith("browser") ||
+                        nextLine.trim().length() == 0) {
+                    continue;
+                }
+                String[] tokens = Globals.tabPattern.split(nextLine, -1);
+                if (tokens.length < 3) {
+                    log.info("Skipping bed line: " + nextLine);
+                    continue;
+                }
+                String chr = genome == null ? tokens[0] : genome.getChromosomeAlias(tokens[0]);
+                if (genome != null && genome.getChromosome(chr) == null) {
+                    log.info("Skipping bed line,  unknown chromosome: " + nextLine);
+                    continue;
+                }
+                int start;
+                int end;
+                try {
+                    start = Integer.parseInt(tokens[1].trim());
+                    end = Integer.parseInt(tokens[2].trim());
+                } catch (NumberFormatException e) {
+                    log.info("Skipping bed line: " + nextLine);
+                    continue;
+                }
+                start = Math.max(0, start - flankingRegion);
+                end = Math.max(start + 1, end + flankingRegion);
+
+                String name = tokens.length > 3 && tokens[3].trim().length() > 0 ? tokens[3].trim() : null;
+                String fileName = name == null ? chr + "_" + (start + 1) + "_" + end : name;
+                fileName = fileName.replaceAll("[^\\w.-]", "_");
+                String uniqueName = fileName;
+                for (int i = 2; !names.add(uniqueName); i++) {
+                    uniqueName = fileName + "_" + i;
+                }
+                regions.add(new Region(chr, start, end, name, uniqueName));
+            }
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Per worker thread state.  The frame is named for the thread so track caches keyed by frame name are reused
+     * from one locus to the next.
+     */
+    private class Worker {
+
+        final ReferenceFrame frame;
+        final RulerPanel ruler;
+        final DataPanelPainter painter;
+
+        Worker(String name) {
+            frame = new ReferenceFrame(name);
+            frame.setBounds(0, dataWidth);
+            ruler = new RulerPanel(frame);
+            ruler.setBackground(Color.white);
+            painter = new LockingPainter();
+        }
+    }
+
+    /**
+     * Draws each track holding the locks of its file and of the files of its overlays.  Locks are taken in key
+     * order so workers cannot deadlock.
+     */
+    private class LockingPainter extends DataPanelPainter {
+
+        @Override
+        protected void draw(Track track, Rectangle rect, RenderContext context) {
+            TreeSet<String> keys = new TreeSet<String>();
+            keys.add(getLockKey(track));
+            List<Track> overlays = IGV.getInstance().getTrackManager().getOverlayTracks(track);
+            if (overlays != null) {
+                for (Track overlay : overlays) {
+                    keys.add(getLockKey(overlay));
+                }
+            }
+            List<ReentrantLock> held = new ArrayList(keys.size());
+            try {
+                for (String key : keys) {
+                    ReentrantLock lock = getLock(key);
+                    lock.lock();
+                    held.add(lock);
+                }
+                super.draw(track, rect, context);
+            } finally {
+                for (ReentrantLock lock : held) {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * A locus to render.  Coordinates are 0 based,  end exclusive,  as in bed files.
+     */
+    static class Region {
+
+        final String chr;
+        final int start;
+        final int end;
+        final String name;
+        final String fileName;
+
+        Region(String chr, int start, int end, String name, String fileName) {
+            this.chr = chr;
+            this.start = start;
+            this.end = end;
+            this.name = name;
+            this.fileName = fileName;
+        }
+
+        String getFileName() {
+            return fileName;
+        }
+
+        String getLabel() {
+            String locus = chr + ":" + (start + 1) + "-" + end;
+            return name == null ? locus : name + "  " + locus;
+        }
+    }
+
+    static class Snapshot {
+
+        final File file;
+        final BufferedImage image;
+        final SVGGraphics2D svg;
+
+        Snapshot(File file, BufferedImage image, SVGGraphics2D svg) {
+            this.file = file;
+            this.image = image;
+            this.svg = svg;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.ui.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import javax.imageio.ImageIO;
+
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.renderer.Renderer;
+import org.broad.igv.track.AbstractTrack;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.Track;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeadlessSnapshotRendererTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("snapshots", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Renderer that draws a blank image for each region,  recording the worker threads.  The region named "bad"
+     * fails,  the region named "slow" waits for slowRelease.
+     */
+    static class TestRenderer extends HeadlessSnapshotRenderer {
+
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final List<Boolean> exporting = new ArrayList<Boolean>();
+        final TestTrack track = new TestTrack();
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch slowRelease = new CountDownLatch(1);
+        volatile boolean slowInterrupted;
+        volatile boolean slowDone;
+        volatile Boolean slowDoneAtClear;
+
+        TestRenderer(File directory, int nThreads) {
+            super(directory, false, nThreads, 50, 100);
+        }
+
+        @Override
+        Snapshot renderRegion(Region region) {
+            if (region.name != null && region.name.equals("bad")) {
+                throw new RuntimeException("bad region");
+            }
+            threads.add(Thread.currentThread().getName());
+            if (region.name != null && region.name.equals("slow")) {
+                slowStarted.countDown();
+                try {
+                    slowRelease.await();
+                } catch (InterruptedException e) {
+                    slowInterrupted = true;
+                }
+                slowDone = true;
+            }
+            BufferedImage image = new BufferedImage(150, 20, BufferedImage.TYPE_INT_RGB);
+            return new Snapshot(getFile(region), image, null);
+        }
+
+        @Override
+        void setExportingSnapshot(boolean exportingSnapshot) {
+            exporting.add(exportingSnapshot);
+        }
+
+        @Override
+        Collection<Track> getTracks() {
+            slowDoneAtClear = slowDone;
+            return Arrays.<Track>asList(track);
+        }
+    }
+
+    static class TestTrack extends AbstractTrack {
+
+        final Set<String> cleared = Collections.synchronizedSet(new HashSet<String>());
+
+        TestTrack() {
+            super("test");
+        }
+
+        @Override
+        public void clearFrameCache(String frameName) {
+            cleared.add(frameName);
+        }
+
+        public void render(RenderContext context, Rectangle rect) {
+        }
+
+        public Renderer getRenderer() {
+            return null;
+        }
+    }
+
+    private File writeBed(String... lines) throws IOException {
+        File bed = new File(directory, "loci.bed");
+        PrintWriter pw = new PrintWriter(new FileWriter(bed));
+        for (String line : lines) {
+            pw.println(line);
+        }
+        pw.close();
+        return bed;
+    }
+
+    @Test
+    public void testReadBed() throws IOException {
+        LinkedHashMap<String, Chromosome> chromosomeMap = new LinkedHashMap<String, Chromosome>();
+        chromosomeMap.put("chr1", new Chromosome("chr1", 1000000));
+        chromosomeMap.put("chr2", new Chromosome("chr2", 1000000));
+        Genome genome = new Genome("test", "test", null, false, null);
+        genome.setChromosomeMap(chromosomeMap, true);
+        int flank = PreferenceManager.getInstance().getAsInt(PreferenceManager.FLANKING_REGION);
+
+        File bed = writeBed(
+                "track name=loci",
+                "#comment",
+                "chr1\t1000\t2000\tEGFR",
+                "2\t5000\t6000",
+                "chr3\t100\t200\tunknown",
+                "chr1\tx\t200\tnotanumber",
+                "chr1\t10\t20\tEGFR",
+                "chr1\t30\t40\ta/b c",
+                "chr1\t50",
+                "");
+
+        HeadlessSnapshotRenderer renderer = new HeadlessSnapshotRenderer(directory, true, 1, 50, 100);
+        List<HeadlessSnapshotRenderer.Region> regions = renderer.readBed(bed.getAbsolutePath(), genome);
+        assertEquals(4, regions.size());
+
+        HeadlessSnapshotRenderer.Region region = regions.get(0);
+        assertEquals("chr1", region.chr);
+        assertEquals(Math.max(0, 1000 - flank), region.start);
+        assertEquals(2000 + flank, region.end);
+        assertEquals("EGFR", region.getFileName());
+        assertEquals(new File(directory, "EGFR.svg"), renderer.getFile(region));
+
+        // Chromosome aliases are resolved,  unnamed regions are named for the locus
+        region = regions.get(1);
+        assertEquals("chr2", region.chr);
+        assertNull(region.name);
+        assertEquals("chr2_" + (region.start + 1) + "_" + region.end, region.getFileName());
+
+        // File names are unique and safe
+        assertEquals("EGFR_2", regions.get(2).getFileName());
+        assertEquals(Math.max(0, 10 - flank), regions.get(2).start);
+        assertEquals("a_b_c", regions.get(3).getFileName());
+
+        // Without a genome chromosomes are not checked
+        assertEquals(5, renderer.readBed(bed.getAbsolutePath(), null).size());
+    }
+
+    @Test
+    public void testRender() throws IOException {
+        List<HeadlessSnapshotRenderer.Region> regions = new ArrayList<HeadlessSnapshotRenderer.Region>();
+        for (int i = 0; i < 20; i++) {
+            regions.add(new HeadlessSnapshotRenderer.Region("chr1", i * 1000, i * 1000 + 500, null, "locus" + i));
+        }
+
+        TestRenderer renderer = new TestRenderer(directory, 4);
+        assertEquals("OK", renderer.render(regions));
+        for (int i = 0; i < 20; i++) {
+            BufferedImage image = ImageIO.read(new File(directory, "locus" + i + ".png"));
+            assertEquals(150, image.getWidth());
+        }
+        assertEquals(Arrays.asList(true, false), renderer.exporting);
+
+        // The data loaded for each worker frame is released
+        assertFalse(renderer.threads.isEmpty());
+        assertEquals(renderer.threads, renderer.track.cleared);
+
+        assertEquals("ERROR: no loci", renderer.render(new ArrayList<HeadlessSnapshotRenderer.Region>()));
+    }
+
+    @Test
+    public void testRenderError() {
+        List<HeadlessSnapshotRenderer.Region> regions = Arrays.asList(
+                new HeadlessSnapshotRenderer.Region("chr1", 0, 100, "good", "good"),
+                new HeadlessSnapshotRenderer.Region("chr1", 0, 100, "bad", "bad"));
+
+        TestRenderer renderer = new TestRenderer(directory, 2);
+        assertEquals("ERROR: 1 of 2 snapshots failed", renderer.render(regions));
+        assertTrue(new File(directory, "good.png").exists());
+        assertFalse(new File(directory, "bad.png").exists());
+        assertEquals(Arrays.asList(true, false), renderer.exporting);
+    }
+
+    @Test
+    public void testRenderInterrupted() throws Exception {
+        final List<HeadlessSnapshotRenderer.Region> regions = new ArrayList<HeadlessSnapshotRenderer.Region>();
+        regions.add(new HeadlessSnapshotRenderer.Region("chr1", 0, 100, "slow", "slow"));
+        for (int i = 0; i < 5; i++) {
+            regions.add(new HeadlessSnapshotRenderer.Region("chr1", 0, 100, null, "queued" + i));
+        }
+
+        final TestRenderer renderer = new TestRenderer(directory, 1);
+        final String[] result = new String[1];
+        Thread batch = new Thread(new Runnable() {
+            public void run() {
+                result[0] = renderer.render(regions);
+            }
+        });
+        batch.start();
+        renderer.slowStarted.await();
+        batch.interrupt();
+
+        // The render waits for the locus in progress
+        batch.join(500);
+        assertTrue(batch.isAlive());
+        renderer.slowRelease.countDown();
+        batch.join(10000);
+        assertFalse(batch.isAlive());
+
+        assertTrue(result[0].startsWith("ERROR: java.lang.InterruptedException"));
+        assertFalse(renderer.slowInterrupted);
+        assertEquals(Boolean.TRUE, renderer.slowDoneAtClear);
+        assertEquals(renderer.threads, renderer.track.cleared);
+        assertEquals(Arrays.asList(true, false), renderer.exporting);
+
+        // Queued loci are skipped,  and nothing is written once cancelled
+        assertEquals(0, directory.listFiles().length);
+    }
+}
@@ -32,6 +32,7 @@ import java.awt.Window;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
 
 import javax.swing.JColorChooser;
 import javax.swing.JDialog;
@@ -228,4 +229,25 @@ public class UIUtilities {
         }
 
     }
+
+    /**
+     * Run the runnable on the event dispatch thread and wait for it to complete.  If this is the event dispatch
+     * thread it is just run.
+     *
+     * @param runnable
+     */
+    public static void invokeAndWaitOnEventThread(Runnable runnable) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            runnable.run();
+        } else {
+            try {
+                SwingUtilities.invokeAndWait(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (InvocationTargetException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
 }
@@ -17,87 +17,349 @@
  */
 package org.broad.igv.util;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
 /**
+ * A least-recently-used cache.  Entries are bounded both by count,  per cache,  and by an estimated size in
+ * bytes against a memory budget shared by all caches.  When the budget is exceeded the entry least recently
+ * used across all caches is evicted,  so a single large entry does not flush unrelated caches wholesale.
+ * <p/>
+ * The budget defaults to a quarter of the maximum heap and can be set with the system property
+ * "igv.cache.budget.mb".
+ * <p/>
+ * Values are held softly,  so the garbage collector can still reclaim them if the heap runs short before the
+ * budget is reached.  A collected value is dropped from the cache,  and its size from the budget,  the next
+ * time the cache is used.
+ *
  * @author jrobinso
  */
 public class LRUCache<K, V> {
 
-    Logger log = Logger.getLogger(LRUCache.class);
+    static Logger log = Logger.getLogger(LRUCache.class);
+
+    /**
+     * Estimates the heap size,  in bytes,  of a cached value.
+     * <p/>
+     * A cache holds its weigher strongly.  Declare weighers as static fields (or static nested classes),  not
+     * as anonymous or inner classes of the cache owner,  otherwise the weigher pins the owner and the cache is
+     * never released from the global budget.
+     */
+    public interface Weigher<V> {
+        long getSize(V value);
+    }
 
+    public static final long DEFAULT_ENTRY_SIZE = 1024;
 
+    // All caches,  held weakly.  A cache is released from the global budget once it is no longer reachable,
+    // i.e. once its owner is garbage collected.
+    private static Set<LRUCache> instances = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<LRUCache, Boolean>()));
 
-    private static Map<Object, LRUCache> instances = Collections.synchronizedMap(new WeakHashMap<Object, LRUCache>());
+    private static final Object budgetLock = new Object();
+    private static long memoryBudget = defaultMemoryBudget();
+    private static AtomicLong totalSize = new AtomicLong(0);
+    private static AtomicLong clock = new AtomicLong(0);
+    private static AtomicLong totalHits = new AtomicLong(0);
+    private static AtomicLong totalMisses = new AtomicLong(0);
+    private static AtomicLong totalEvictions = new AtomicLong(0);
 
     public static void clearCaches() {
-        for (LRUCache cache : instances.values()) {
+        for (LRUCache cache : getInstances()) {
             if (cache != null) {
                 cache.clear();
             }
         }
     }
 
+    private static long defaultMemoryBudget() {
+        String mb = System.getProperty("igv.cache.budget.mb");
+        if (mb != null) {
+            try {
+                return Long.parseLong(mb.trim()) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                log.error("Invalid cache budget: " + mb);
+            }
+        }
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    public static long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public static void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+        enforceBudget();
+    }
+
+    /**
+     * @return the estimated size in bytes of all cached entries
+     */
+    public static long getTotalSize() {
+        return totalSize.get();
+    }
+
+    public static long getTotalHitCount() {
+        return totalHits.get();
+    }
+
+    public static long getTotalMissCount() {
+        return totalMisses.get();
+    }
+
+    public static long getTotalEvictionCount() {
+        return totalEvictions.get();
+    }
+
+    public static String getStatistics() {
+        return "Cache: " + (getTotalSize() / 1024) + " kb of " + (memoryBudget / 1024) + " kb, hits=" +
+                getTotalHitCount() + ", misses=" + getTotalMissCount() + ", evictions=" + getTotalEvictionCount();
+    }
+
+    private static List<LRUCache> getInstances() {
+        synchronized (instances) {
+            return new ArrayList<LRUCache>(instances);
+        }
+    }
+
+    /**
+     * Evict least recently used entries,  across all caches,  until the total size is within budget.
+     */
+    private static void enforceBudget() {
+        if (totalSize.get() <= memoryBudget) {
+            return;
+        }
+        synchronized (budgetLock) {
+            List<LRUCache> caches = getInstances();
+
+            // The running total still includes caches whose owners have been collected,  resynchronize first
+            long size = 0;
+            for (LRUCache cache : caches) {
+                size += cache.getSize();
+            }
+            totalSize.set(size);
+
+            while (totalSize.get() > memoryBudget) {
+                LRUCache oldest = null;
+                long oldestAccess = Long.MAX_VALUE;
+                for (LRUCache cache : caches) {
+                    long access = cache.getEldestAccess();
+                    if (access < oldestAccess) {
+                        oldestAccess = access;
+                        oldest = cache;
+                    }
+                }
+                if (oldest == null || !oldest.evictEldest()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static class Entry<K, V> {
+        final K key;
+        final SoftReference<V> value;   // null for a null value
+        long size;
+        long lastAccess;
+        boolean removed;
 
+        Entry(K key, V value, long size, ReferenceQueue<V> queue) {
+            this.key = key;
+            this.value = value == null ? null : new SoftValue<K, V>(this, value, queue);
+            this.size = size;
+            this.lastAccess = clock.incrementAndGet();
+        }
 
+        V getValue() {
+            return value == null ? null : value.get();
+        }
+    }
+
+    private static class SoftValue<K, V> extends SoftReference<V> {
+        final Entry<K, V> entry;
+
+        SoftValue(Entry<K, V> entry, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.entry = entry;
+        }
+    }
+
+    private final WeakReference<Object> source;
     private final int maxEntries;
+    private final Weigher<V> weigher;
 
-    private SoftReference<Map<K, V>> mapReference;
+    // Access ordered,  iteration starts with the least recently used entry
+    private final LinkedHashMap<K, Entry<K, V>> map = new LinkedHashMap<K, Entry<K, V>>(16, 0.75f, true);
+    private final ReferenceQueue<V> collected = new ReferenceQueue<V>();
+    private long size = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
 
 
     public LRUCache(Object source, int max) {
-    	synchronized (instances) {
-            instances.put(source, this);
-		}
+        this(source, max, null);
+    }
+
+    /**
+     * @param source  the owner of this cache.  The cache is released from the global budget once its owner is
+     *                garbage collected.  An owner may have several caches.
+     * @param max     maximum number of entries
+     * @param weigher estimates the size of entries,  if null every entry is counted as DEFAULT_ENTRY_SIZE bytes
+     */
+    public LRUCache(Object source, int max, Weigher<V> weigher) {
+        this.source = new WeakReference<Object>(source);
         this.maxEntries = max;
-        createMap();
+        this.weigher = weigher;
+        instances.add(this);
     }
 
-    private void createMap() {
-        mapReference = new SoftReference(Collections.synchronizedMap(
-                new LinkedHashMap<K, V>() {
-                    @Override
-                    protected boolean removeEldestEntry(Map.Entry eldest) {
-                        return (size() > maxEntries);
-                    }
-                }));
+    /**
+     * @return the owner of this cache,  or null if it has been garbage collected
+     */
+    public Object getSource() {
+        return source.get();
     }
 
-    private Map<K, V> getMap() {
-        if (mapReference == null || mapReference.get() == null) {
-            createMap();
+    public V put(K k, V v) {
+        long entrySize = (weigher == null || v == null) ? DEFAULT_ENTRY_SIZE : Math.max(1, weigher.getSize(v));
+        Entry<K, V> old;
+        synchronized (this) {
+            removeCollected();
+            old = map.put(k, new Entry<K, V>(k, v, entrySize, collected));
+            if (old != null) {
+                old.removed = true;
+            }
+            long delta = entrySize - (old == null ? 0 : old.size);
+            size += delta;
+            totalSize.addAndGet(delta);
+            while (map.size() > maxEntries) {
+                evictEldest();
+            }
         }
-        return mapReference.get();
+        enforceBudget();
+        return old == null ? null : old.getValue();
     }
 
-    public V put(K k, V v) {
-        return getMap().put(k, v);
+    public synchronized V get(Object key) {
+        removeCollected();
+        Entry<K, V> entry = map.get(key);
+        V value = entry == null ? null : entry.getValue();
+        if (entry == null || (value == null && entry.value != null)) {
+            if (entry != null) {
+                remove(entry);
+            }
+            misses++;
+            totalMisses.incrementAndGet();
+            return null;
+        }
+        hits++;
+        totalHits.incrementAndGet();
+        entry.lastAccess = clock.incrementAndGet();
+        return value;
     }
 
-    public V get(Object key) {
-        return getMap().get(key);
+    public synchronized boolean containsKey(Object o) {
+        removeCollected();
+        return map.containsKey(o);
     }
 
-    public boolean containsKey(Object o) {
-        return getMap().containsKey(o);
+    public synchronized boolean isEmpty() {
+        return map.isEmpty();
     }
 
-    public boolean isEmpty() {
-        return getMap().isEmpty();    //To change body of overridden methods use File | Settings | File Templates.
+    public synchronized void clear() {
+        for (Entry<K, V> entry : map.values()) {
+            entry.removed = true;
+        }
+        totalSize.addAndGet(-size);
+        size = 0;
+        map.clear();
     }
 
-    public void clear() {
-        getMap().clear();
+    public synchronized int getEntryCount() {
+        return map.size();
     }
 
+    /**
+     * @return the estimated size in bytes of the entries in this cache
+     */
+    public synchronized long getSize() {
+        removeCollected();
+        return size;
+    }
 
+    public synchronized long getHitCount() {
+        return hits;
+    }
 
+    public synchronized long getMissCount() {
+        return misses;
+    }
 
-}
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
 
+    private synchronized long getEldestAccess() {
+        return map.isEmpty() ? Long.MAX_VALUE : map.values().iterator().next().lastAccess;
+    }
+
+    /**
+     * Drop entries whose values have been garbage collected.
+     */
+    private synchronized void removeCollected() {
+        SoftValue<K, V> ref;
+        while ((ref = (SoftValue<K, V>) collected.poll()) != null) {
+            if (!ref.entry.removed) {
+                remove(ref.entry);
+            }
+        }
+    }
+
+    private synchronized void remove(Entry<K, V> entry) {
+        entry.removed = true;
+        map.remove(entry.key);
+        size -= entry.size;
+        totalSize.addAndGet(-entry.size);
+    }
+
+    /**
+     * Simulates the garbage collector clearing the value for key.  For tests.
+     */
+    synchronized void collect(Object key) {
+        Entry<K, V> entry = map.get(key);
+        if (entry != null && entry.value != null) {
+            entry.value.clear();
+            entry.value.enqueue();
+        }
+    }
+
+    private synchronized boolean evictEldest() {
+        Iterator<Entry<K, V>> iter = map.values().iterator();
+        if (!iter.hasNext()) {
+            return false;
+        }
+        Entry<K, V> eldest = iter.next();
+        iter.remove();
+        eldest.removed = true;
+        size -= eldest.size;
+        totalSize.addAndGet(-eldest.size);
+        evictions++;
+        totalEvictions.incrementAndGet();
+        return true;
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+public class LRUCacheTest {
+
+    @Test
+    public void testAccessOrder() {
+        LRUCache<String, String> cache = new LRUCache(this, 2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+
+        // Touching "a" makes "b" the least recently used entry
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C");
+
+        assertTrue(cache.containsKey("a"));
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("c"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testGlobalBudget() {
+        long budget = LRUCache.getMemoryBudget();
+        LRUCache.Weigher<byte[]> weigher = new LRUCache.Weigher<byte[]>() {
+            public long getSize(byte[] value) {
+                return value.length;
+            }
+        };
+        Object owner1 = new Object();
+        Object owner2 = new Object();
+        LRUCache<String, byte[]> cache1 = new LRUCache(owner1, 100, weigher);
+        LRUCache<String, byte[]> cache2 = new LRUCache(owner2, 100, weigher);
+        try {
+            LRUCache.clearCaches();
+            LRUCache.setMemoryBudget(3000);
+            cache1.put("x", new byte[1000]);
+            cache2.put("y", new byte[1000]);
+            cache1.get("x");
+
+            // Exceeds the budget,  the least recently used entry across both caches ("y") is evicted
+            cache1.put("z", new byte[1500]);
+            assertTrue(cache1.containsKey("x"));
+            assertTrue(cache1.containsKey("z"));
+            assertFalse(cache2.containsKey("y"));
+            assertEquals(2500, cache1.getSize());
+            assertEquals(1, cache1.getHitCount());
+        } finally {
+            cache1.clear();
+            cache2.clear();
+            LRUCache.setMemoryBudget(budget);
+        }
+    }
+
+    private static final LRUCache.Weigher<byte[]> BYTES = new LRUCache.Weigher<byte[]>() {
+        public long getSize(byte[] value) {
+            return value.length;
+        }
+    };
+
+    @Test
+    public void testCachesWithSameOwner() {
+        long budget = LRUCache.getMemoryBudget();
+        Object owner = new Object();
+        LRUCache<String, byte[]> cache1 = new LRUCache(owner, 100, BYTES);
+        LRUCache<String, byte[]> cache2 = new LRUCache(owner, 100, BYTES);
+        try {
+            LRUCache.clearCaches();
+            LRUCache.setMemoryBudget(3000);
+            cache1.put("x", new byte[1000]);
+            cache2.put("y", new byte[1000]);
+
+            // Both caches count against the budget,  the second does not replace the first
+            assertEquals(2000, LRUCache.getTotalSize());
+            cache2.put("z", new byte[1500]);
+            assertFalse(cache1.containsKey("x"));
+            assertTrue(cache2.containsKey("y"));
+            assertTrue(cache2.containsKey("z"));
+
+            LRUCache.clearCaches();
+            assertTrue(cache2.isEmpty());
+        } finally {
+            cache1.clear();
+            cache2.clear();
+            LRUCache.setMemoryBudget(budget);
+        }
+    }
+
+    @Test
+    public void testOwnerCollected() throws Exception {
+        Object owner = new Object();
+        LRUCache<String, byte[]> cache = new LRUCache(owner, 100, BYTES);
+        cache.put("x", new byte[1000]);
+        WeakReference<Object> ownerRef = new WeakReference<Object>(owner);
+        WeakReference<LRUCache> cacheRef = new WeakReference<LRUCache>(cache);
+        assertTrue(cache.getSource() == owner);
+
+        owner = null;
+        cache = null;
+        for (int i = 0; i < 50 && (ownerRef.get() != null || cacheRef.get() != null); i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(ownerRef.get());
+        assertNull(cacheRef.get());
+    }
+
+    @Test
+    public void testCollectedValue() {
+        Object owner = new Object();
+        LRUCache<String, byte[]> cache = new LRUCache(owner, 100, BYTES);
+        cache.put("x", new byte[1000]);
+        cache.put("y", new byte[500]);
+        long total = LRUCache.getTotalSize();
+
+        // A value reclaimed by the garbage collector is a miss,  and no longer counts against the budget
+        cache.collect("x");
+        assertNull(cache.get("x"));
+        assertFalse(cache.containsKey("x"));
+        assertEquals(500, cache.getSize());
+        assertEquals(total - 1000, LRUCache.getTotalSize());
+        assertEquals(1, cache.getMissCount());
+
+        cache.collect("y");
+        cache.put("y", new byte[200]);
+        assertEquals(200, cache.getSize());
+        cache.clear();
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.variant;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.broad.igv.track.PackedFeatures;
+import org.broad.igv.track.Track;
+
+/**
+ * Genotype colors for the variants of one loaded interval,  decoded once per (interval, color mode) rather than
+ * on every repaint,  and a raster of the genotype band for the rows last drawn.  The raster is keyed by the locus
+ * window (origin, scale and width),  the sample rows and the display mode,  so repaints without a change in any of
+ * these draw a single image.  Scrolling or sorting samples re-rasters from the decoded colors,  genotypes are not
+ * decoded again.
+ * <p/>
+ * Colors are indexed by variant,  in the order of the loaded features,  and by sample column,  a fixed index per
+ * sample name.  A color of 0 marks a sample with no genotype.
+ */
+class GenotypeBandCache {
+
+    private static final int NO_GENOTYPE = 0;
+
+    // Key
+    private final PackedFeatures packedFeatures;
+    private final VariantTrack.ColorMode coloring;
+    private final boolean hideFiltered;
+    private final String coloringCustom;
+    private final Set<String> sampleSet;
+    private final Color[] genotypeColors;
+
+    private final VariantRenderer renderer;
+    private final Map<String, Integer> columns = new HashMap();       // Fixed at construction
+    private final List<String> columnSamples = new ArrayList();
+
+    // Per variant,  decoded on first use
+    private final int[][] colors1;
+    private final int[][] colors2;
+    private final double[][] lengths;         // LN field per column,  null if no genotype of the variant has it
+    private final double[] maxLengths;
+    private final Map<Color, Integer>[] bandCounts;
+
+    // Raster of the rows last drawn
+    private BufferedImage raster;
+    private double rasterOrigin;
+    private double rasterScale;
+    private int rasterX;
+    private int rasterWidth;
+    private int rasterBandHeight;
+    private Track.DisplayMode rasterDisplayMode;
+    private List<String> rasterSamples;
+    private int[] rasterRowOffsets;
+    private int rasterFirstRow;
+    private int rasterLastRow;
+
+    GenotypeBandCache(PackedFeatures packedFeatures, VariantTrack.ColorMode coloring, boolean hideFiltered,
+                      String coloringCustom, List<String> samples, VariantRenderer renderer) {
+        this.packedFeatures = packedFeatures;
+        this.coloring = coloring;
+        this.hideFiltered = hideFiltered;
+        this.coloringCustom = coloringCustom;
+        this.renderer = renderer;
+        this.sampleSet = new HashSet(samples);
+        this.genotypeColors = VariantRenderer.getGenotypeColors();
+        for (String sample : samples) {
+            getColumn(sample);
+        }
+        int n = packedFeatures.getFeatures().size();
+        colors1 = new int[n][];
+        colors2 = new int[n][];
+        lengths = new double[n][];
+        maxLengths = new double[n];
+        bandCounts = new Map[n];
+    }
+
+    /**
+     * @return true if the cache is for the given features and color mode,  for the same set of samples,  and the
+     *         genotype colors have not changed since it was built.  The order of the samples does not matter.
+     */
+    boolean isValid(PackedFeatures packedFeatures, VariantTrack.ColorMode coloring, boolean hideFiltered,
+                    String coloringCustom, List<String> samples) {
+        if (this.packedFeatures != packedFeatures || this.coloring != coloring || this.hideFiltered != hideFiltered ||
+                !(this.coloringCustom == null ? coloringCustom == null : this.coloringCustom.equals(coloringCustom))) {
+            return false;
+        }
+        if (!Arrays.equals(genotypeColors, VariantRenderer.getGenotypeColors())) {
+            return false;
+        }
+        if (samples.size() != sampleSet.size()) {
+            return false;
+        }
+        for (String sample : samples) {
+            if (!sampleSet.contains(sample)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode the genotypes of variant,  at index variantIndex of the loaded features,  for all samples.  Genotype
+     * colors are taken from the states in matrix,  other color modes need the genotypes.
+     */
+    void decode(int variantIndex, Variant variant, GenotypeMatrix matrix) {
+
+        if (colors1[variantIndex] != null) {
+            return;
+        }
+
+        boolean isFiltered = variant.isFiltered() && hideFiltered;
+        int nColumns = columnSamples.size();
+        int[] c1 = new int[nColumns];
+        int[] c2 = coloring == VariantTrack.ColorMode.ALLELE ? new int[nColumns] : c1;
+        double[] ln = null;
+        double maxLength = -1;
+        Map<Color, Integer> counts = new LinkedHashMap();
+
+        byte[] states = null;
+        double[] matrixLengths = null;
+        if (coloring == VariantTrack.ColorMode.GENOTYPE) {
+            states = matrix.getStates(variant);
+            matrixLengths = matrix.getLengths(variant);
+        }
+
+        for (int column = 0; column < nColumns; column++) {
+            String sample = columnSamples.get(column);
+            int ordinal = states == null ? -1 : matrix.getOrdinal(sample);
+
+            Color color1;
+            Color color2;
+            double length;
+            if (ordinal >= 0) {
+                byte state = states[ordinal];
+                if (state == GenotypeMatrix.NONE) {
+                    continue;
+                }
+                color1 = color2 = renderer.getGenotypeColor(state, isFiltered);
+                length = matrixLengths == null ? -1 : matrixLengths[ordinal];
+            } else {
+                Genotype genotype = variant.getGenotype(sample);
+                if (genotype == null) {
+                    continue;
+                }
+                Color[] colors = renderer.getGenotypeBandColors(genotype, coloring, isFiltered);
+                color1 = colors[0];
+                color2 = colors[1];
+                length = VariantRenderer.getLength(genotype);
+            }
+            c1[column] = toRGB(color1);
+            if (c2 != c1) {
+                c2[column] = toRGB(color2);
+            }
+
+            if (length >= 0) {
+                if (ln == null) {
+                    ln = new double[nColumns];
+                    Arrays.fill(ln, -1);
+                }
+                ln[column] = length;
+                maxLength = Math.max(maxLength, length);
+            }
+
+            Integer count = counts.get(color1);
+            counts.put(color1, count != null ? (count + 1) : 1);
+        }
+
+        colors2[variantIndex] = c2;
+        lengths[variantIndex] = ln;
+        maxLengths[variantIndex] = maxLength;
+        bandCounts[variantIndex] = counts;
+        colors1[variantIndex] = c1;
+    }
+
+    /**
+     * @return counts of the genotype colors of all samples for the variant,  for the summary band
+     */
+    Map<Color, Integer> getBandCounts(int variantIndex) {
+        return bandCounts[variantIndex];
+    }
+
+    /**
+     * @return the widest genotype cell of the variant,  allowing for the LN field
+     */
+    int getBandWidth(int variantIndex, int dX, double scale) {
+        double maxLength = maxLengths[variantIndex];
+        return maxLength >= 0 ? (int) Math.max(dX, Math.ceil(maxLength / scale)) : dX;
+    }
+
+    /**
+     * Return a raster of the genotype cells of rows firstRow ... lastRow,  for the given variants,  reusing the
+     * last raster if the window and rows have not changed.  Row offsets are relative to the top of the first row
+     * of the band.  The raster origin is (x, top of firstRow).
+     *
+     * @param variantIndexes index of each visible variant in the loaded features
+     * @param xs             left of each visible variant
+     * @param widths         width of each visible variant,  before allowing for the LN field
+     */
+    BufferedImage getRaster(double origin, double scale, int x, int width, int bandHeight,
+                            Track.DisplayMode displayMode, List<String> samples, int[] rowOffsets,
+                            int firstRow, int lastRow,
+                            int[] variantIndexes, int[] xs, int[] widths, int nVariants) {
+
+        if (raster != null && rasterOrigin == origin && rasterScale == scale && rasterX == x &&
+                rasterWidth == width && rasterBandHeight == bandHeight && rasterDisplayMode == displayMode &&
+                rasterFirstRow == firstRow && rasterLastRow == lastRow &&
+                Arrays.equals(rasterRowOffsets, rowOffsets) && rasterSamples.equals(samples)) {
+            return raster;
+        }
+
+        int y0 = rowOffsets[firstRow];
+        int height = rowOffsets[lastRow] + bandHeight - y0;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        BufferedImage image = raster != null && raster.getWidth() == width && raster.getHeight() == height ?
+                raster : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = new int[width * height];
+
+        boolean expanded = displayMode == Track.DisplayMode.EXPANDED;
+        int cellTop = expanded ? 1 : 0;
+        int cellHeight = Math.max(1, expanded ? bandHeight - 2 : bandHeight);
+        // Cells are drawn in two halves except when coloring by genotype
+        boolean split = coloring != VariantTrack.ColorMode.GENOTYPE && coloring != VariantTrack.ColorMode.CUSTOM;
+
+        int[] rowColumns = new int[lastRow - firstRow + 1];
+        for (int r = firstRow; r <= lastRow; r++) {
+            Integer column = columns.get(samples.get(r));
+            rowColumns[r - firstRow] = column == null ? Integer.MAX_VALUE : column;
+        }
+
+        for (int v = 0; v < nVariants; v++) {
+            int vi = variantIndexes[v];
+            int[] c1 = colors1[vi];
+            int[] c2 = colors2[vi];
+            double[] ln = lengths[vi];
+            int pX0 = xs[v] - x;
+            for (int r = firstRow; r <= lastRow; r++) {
+                int column = rowColumns[r - firstRow];
+                if (column >= c1.length || c1[column] == NO_GENOTYPE) {
+                    continue;
+                }
+                int dX = widths[v];
+                if (ln != null && ln[column] >= 0) {
+                    dX = (int) Math.max(dX, Math.ceil(ln[column] / scale));
+                }
+                int top = rowOffsets[r] - y0 + cellTop;
+                if (split) {
+                    fill(pixels, width, height, pX0, top, dX / 2, cellHeight, c1[column]);
+                    fill(pixels, width, height, pX0 + (dX / 2), top, dX / 2, cellHeight, c2[column]);
+                } else {
+                    fill(pixels, width, height, pX0, top, dX, cellHeight, c1[column]);
+                }
+            }
+        }
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+
+        raster = image;
+        rasterOrigin = origin;
+        rasterScale = scale;
+        rasterX = x;
+        rasterWidth = width;
+        rasterBandHeight = bandHeight;
+        rasterDisplayMode = displayMode;
+        rasterSamples = new ArrayList(samples);
+        rasterRowOffsets = rowOffsets.clone();
+        rasterFirstRow = firstRow;
+        rasterLastRow = lastRow;
+        return raster;
+    }
+
+    private int getColumn(String sample) {
+        Integer column = columns.get(sample);
+        if (column == null) {
+            column = columnSamples.size();
+            columns.put(sample, column);
+            columnSamples.add(sample);
+        }
+        return column;
+    }
+
+    /**
+     * Fill a rectangle of the raster,  compositing colors that are not opaque over the pixels already drawn.
+     */
+    private static void fill(int[] pixels, int width, int height, int x, int y, int w, int h, int argb) {
+        int alpha = argb >>> 24;
+        if (alpha == 0) {
+            return;
+        }
+        int x0 = Math.max(0, x);
+        int x1 = Math.min(width, x + w);
+        int y1 = Math.min(height, y + h);
+        for (int row = Math.max(0, y); row < y1; row++) {
+            int offset = row * width;
+            if (alpha == 255) {
+                Arrays.fill(pixels, offset + x0, offset + Math.max(x0, x1), argb);
+            } else {
+                for (int i = offset + x0; i < offset + x1; i++) {
+                    pixels[i] = blend(argb, pixels[i]);
+                }
+            }
+        }
+    }
+
+    private static int blend(int src, int dst) {
+        int sa = src >>> 24;
+        int da = dst >>> 24;
+        int outA = sa + da * (255 - sa) / 255;
+        if (outA == 0) {
+            return 0;
+        }
+        int rgb = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            int sc = (src >> shift) & 0xff;
+            int dc = (dst >> shift) & 0xff;
+            int c = (sc * sa + dc * da * (255 - sa) / 255) / outA;
+            rgb |= (c & 0xff) << shift;
+        }
+        return (outA << 24) | rgb;
+    }
+
+    private static int toRGB(Color color) {
+        // A null color draws nothing
+        return color == null ? NO_GENOTYPE : color.getRGB();
+    }
+}
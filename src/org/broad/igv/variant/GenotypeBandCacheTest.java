@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.variant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.track.PackedFeatures;
+import org.broad.igv.track.Track;
+import org.junit.Test;
+
+public class GenotypeBandCacheTest {
+
+    private static PackedFeatures pack(List<Variant> variants) throws Exception {
+        Constructor<PackedFeatures> constructor = PackedFeatures.class.getDeclaredConstructor(
+                String.class, int.class, int.class, Iterator.class, String.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance("chr1", 0, 1000, variants.iterator(), "test");
+    }
+
+    @Test
+    public void testDecodeAndRaster() throws Exception {
+        Map<String, Genotype> g0 = new HashMap<String, Genotype>();
+        g0.put("a", GenotypeMatrixTest.genotype("HOM_REF"));
+        g0.put("b", GenotypeMatrixTest.genotype("HET"));
+        Map<String, Genotype> g1 = new HashMap<String, Genotype>();
+        g1.put("a", GenotypeMatrixTest.genotype("HOM_VAR", "LN", "40"));
+        g1.put("b", GenotypeMatrixTest.genotype("HET"));
+        g1.put("c", GenotypeMatrixTest.genotype("HET"));
+        List<Variant> variants = Arrays.asList(GenotypeMatrixTest.variant(100, g0), GenotypeMatrixTest.variant(200, g1));
+        PackedFeatures packedFeatures = pack(variants);
+
+        List<String> samples = Arrays.asList("a", "b", "c");
+        VariantRenderer renderer = new VariantRenderer(null);
+        GenotypeMatrix matrix = new GenotypeMatrix(packedFeatures, samples);
+        GenotypeBandCache cache = new GenotypeBandCache(packedFeatures, VariantTrack.ColorMode.GENOTYPE, false, null,
+                samples, renderer);
+        for (int i = 0; i < variants.size(); i++) {
+            cache.decode(i, variants.get(i), matrix);
+        }
+
+        Color homRef = renderer.getGenotypeColor(GenotypeMatrix.HOM_REF, false);
+        Color het = renderer.getGenotypeColor(GenotypeMatrix.HET, false);
+        Color homVar = renderer.getGenotypeColor(GenotypeMatrix.HOM_VAR, false);
+
+        // Sample c has no genotype for the first variant and is not counted
+        Map<Color, Integer> counts = cache.getBandCounts(0);
+        assertEquals(1, (int) counts.get(homRef));
+        assertEquals(1, (int) counts.get(het));
+        assertEquals(2, (int) cache.getBandCounts(1).get(het));
+
+        // LN widens the band,  in bp at the given scale
+        assertEquals(5, cache.getBandWidth(0, 5, 1.0));
+        assertEquals(20, cache.getBandWidth(1, 5, 2.0));
+
+        int bandHeight = 10;
+        int[] rowOffsets = {0, 10, 20};
+        int[] variantIndexes = {0, 1};
+        int[] xs = {0, 10};
+        int[] widths = {10, 10};
+        BufferedImage raster = cache.getRaster(0, 100.0, 0, 20, bandHeight, Track.DisplayMode.EXPANDED, samples,
+                rowOffsets, 0, 2, variantIndexes, xs, widths, 2);
+        assertEquals(30, raster.getHeight());
+        assertEquals(homRef.getRGB(), raster.getRGB(5, 5));
+        assertEquals(het.getRGB(), raster.getRGB(5, 15));
+        assertEquals(0, raster.getRGB(5, 25));
+        assertEquals(homVar.getRGB(), raster.getRGB(15, 5));
+        assertEquals(het.getRGB(), raster.getRGB(15, 25));
+        // Expanded cells leave a 1 pixel gap between rows
+        assertEquals(0, raster.getRGB(5, 0));
+
+        // Unchanged window and rows reuse the raster
+        assertSame(raster, cache.getRaster(0, 100.0, 0, 20, bandHeight, Track.DisplayMode.EXPANDED, samples,
+                rowOffsets, 0, 2, variantIndexes, xs, widths, 2));
+
+        // Sorted samples are drawn from the decoded colors
+        List<String> sorted = Arrays.asList("c", "b", "a");
+        assertTrue(cache.isValid(packedFeatures, VariantTrack.ColorMode.GENOTYPE, false, null, sorted));
+        BufferedImage sortedRaster = cache.getRaster(0, 100.0, 0, 20, bandHeight, Track.DisplayMode.EXPANDED,
+                sorted, rowOffsets, 0, 2, variantIndexes, xs, widths, 2);
+        assertEquals(0, sortedRaster.getRGB(5, 5));
+        assertEquals(homRef.getRGB(), sortedRaster.getRGB(5, 25));
+
+        // A window showing only the last row
+        BufferedImage lastRow = cache.getRaster(0, 100.0, 0, 20, bandHeight, Track.DisplayMode.EXPANDED, samples,
+                rowOffsets, 2, 2, variantIndexes, xs, widths, 2);
+        assertNotSame(sortedRaster, lastRow);
+        assertEquals(10, lastRow.getHeight());
+        assertEquals(het.getRGB(), lastRow.getRGB(15, 5));
+    }
+
+    @Test
+    public void testIsValid() throws Exception {
+        PackedFeatures packedFeatures = pack(Arrays.<Variant>asList());
+        List<String> samples = Arrays.asList("a", "b");
+        GenotypeBandCache cache = new GenotypeBandCache(packedFeatures, VariantTrack.ColorMode.CUSTOM, false, "CO",
+                samples, new VariantRenderer(null));
+
+        assertTrue(cache.isValid(packedFeatures, VariantTrack.ColorMode.CUSTOM, false, "CO", Arrays.asList("b", "a")));
+        assertFalse(cache.isValid(pack(Arrays.<Variant>asList()), VariantTrack.ColorMode.CUSTOM, false, "CO", samples));
+        assertFalse(cache.isValid(packedFeatures, VariantTrack.ColorMode.GENOTYPE, false, "CO", samples));
+        assertFalse(cache.isValid(packedFeatures, VariantTrack.ColorMode.CUSTOM, true, "CO", samples));
+        assertFalse(cache.isValid(packedFeatures, VariantTrack.ColorMode.CUSTOM, false, "GT", samples));
+        assertFalse(cache.isValid(packedFeatures, VariantTrack.ColorMode.CUSTOM, false, "CO", Arrays.asList("a")));
+        assertFalse(cache.isValid(packedFeatures, VariantTrack.ColorMode.CUSTOM, false, "CO", Arrays.asList("a", "c")));
+    }
+
+    @Test
+    public void testColorPreferenceChange() throws Exception {
+        PackedFeatures packedFeatures = pack(Arrays.<Variant>asList());
+        List<String> samples = Arrays.asList("a", "b");
+        VariantRenderer.loadColors();
+        GenotypeBandCache cache = new GenotypeBandCache(packedFeatures, VariantTrack.ColorMode.GENOTYPE, false, null,
+                samples, new VariantRenderer(null));
+        assertTrue(cache.isValid(packedFeatures, VariantTrack.ColorMode.GENOTYPE, false, null, samples));
+
+        PreferenceManager prefs = PreferenceManager.getInstance();
+        String previous = prefs.get(PreferenceManager.VR_COLOR_HET);
+        try {
+            prefs.put(PreferenceManager.VR_COLOR_HET, "10,20,30");
+            VariantRenderer.loadColors();
+            assertEquals(new Color(10, 20, 30), VariantRenderer.colorHet);
+            assertFalse(cache.isValid(packedFeatures, VariantTrack.ColorMode.GENOTYPE, false, null, samples));
+        } finally {
+            if (previous == null) {
+                prefs.remove(PreferenceManager.VR_COLOR_HET);
+            } else {
+                prefs.put(PreferenceManager.VR_COLOR_HET, previous);
+            }
+            VariantRenderer.loadColors();
+        }
+        assertTrue(cache.isValid(packedFeatures, VariantTrack.ColorMode.GENOTYPE, false, null, samples));
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.variant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.broad.tribble.Feature;
+
+/**
+ * Genotypes of the variants in a loaded interval,  stored column-wise as one byte coded genotype state per sample
+ * rather than one Genotype object per sample.  Sample sorting and genotype coloring read the states directly,  so
+ * wide cohorts are sorted and colored without creating a genotype wrapper or parsing attributes per comparison.
+ * <p/>
+ * Samples are indexed by ordinal,  their position in the sample list the matrix was created with.  The states of a
+ * variant,  and the length (LN) field if any sample has it,  are decoded on first use.  Read depth (DP) and genotype
+ * quality are optional columns,  packed into float arrays the first time they are asked for,  e.g. by a depth or
+ * quality sort.
+ * <p/>
+ * The matrix is the retained copy of the genotypes.  A variant's parsed genotypes are released once its column is
+ * built,  and parsed again from the VCF record only where a Genotype is needed,  e.g. for a popup or allele coloring.
+ */
+class GenotypeMatrix {
+
+    private static Logger log = Logger.getLogger(GenotypeMatrix.class);
+
+    // Genotype states.  NONE marks a sample with no genotype for the variant.
+    static final byte NONE = 0;
+    static final byte NO_CALL = 1;
+    static final byte HOM_REF = 2;
+    static final byte HET = 3;
+    static final byte HOM_VAR = 4;
+    static final byte OTHER = 5;          // Mixed or unavailable
+
+    /**
+     * Flag or-ed into the state of genotypes with a genotype error (GE) of 1 or more
+     */
+    static final byte ERROR_FLAG = 0x10;
+    private static final byte TYPE_MASK = 0x0F;
+
+    private static final String DEPTH_FIELD = "DP";
+
+    private final Object key;
+    private final List<String> samples;
+    private final Map<String, Integer> ordinals;
+    private final Map<Variant, Column> columns = new IdentityHashMap();
+
+    /**
+     * @param key     identifies the interval the matrix is for,  e.g. the PackedFeatures of a track
+     * @param samples the samples,  in ordinal order
+     */
+    GenotypeMatrix(Object key, List<String> samples) {
+        this.key = key;
+        this.samples = new ArrayList(samples);
+        this.ordinals = new HashMap(samples.size() * 2);
+        for (String sample : samples) {
+            if (!ordinals.containsKey(sample)) {
+                ordinals.put(sample, ordinals.size());
+            }
+        }
+    }
+
+    /**
+     * @return true if the matrix is for the interval key and the given samples
+     */
+    boolean isValid(Object key, List<String> samples) {
+        if (this.key != key || samples.size() != this.samples.size()) {
+            return false;
+        }
+        for (String sample : samples) {
+            if (!ordinals.containsKey(sample)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the ordinal of sample,  or -1 if it is not a sample of the matrix
+     */
+    int getOrdinal(String sample) {
+        Integer ordinal = ordinals.get(sample);
+        return ordinal == null ? -1 : ordinal.intValue();
+    }
+
+    /**
+     * Decode the states of all variants in features,  e.g. ahead of a sort.
+     */
+    void decode(List<Feature> features) {
+        for (Feature feature : features) {
+            if (feature instanceof Variant) {
+                getColumn((Variant) feature);
+            }
+        }
+    }
+
+    /**
+     * @return the state of each sample for variant,  by ordinal.  The array must not be modified.
+     */
+    byte[] getStates(Variant variant) {
+        return getColumn(variant).states;
+    }
+
+    byte getState(Variant variant, String sample) {
+        int ordinal = getOrdinal(sample);
+        return ordinal < 0 ? stateOf(variant.getGenotype(sample)) : getColumn(variant).states[ordinal];
+    }
+
+    /**
+     * @return the length (LN) field of each sample for variant,  by ordinal,  -1 if a sample does not have it.  Null
+     *         if no sample has it.  The array must not be modified.
+     */
+    double[] getLengths(Variant variant) {
+        return getColumn(variant).lengths;
+    }
+
+    /**
+     * @return the length (LN) field of sample for variant,  or -1 if it does not have it
+     */
+    double getLength(Variant variant, String sample) {
+        int ordinal = getOrdinal(sample);
+        if (ordinal < 0) {
+            Genotype genotype = variant.getGenotype(sample);
+            return genotype == null ? -1 : VariantRenderer.getLength(genotype);
+        }
+        double[] lengths = getColumn(variant).lengths;
+        return lengths == null ? -1 : lengths[ordinal];
+    }
+
+    /**
+     * @return the read depth (DP) of each sample for variant,  by ordinal.  Samples without a depth are -1.
+     */
+    float[] getDepths(Variant variant) {
+        Column column = getColumn(variant);
+        synchronized (column) {
+            if (column.depths == null) {
+                float[] depths = new float[samples.size()];
+                for (int i = 0; i < depths.length; i++) {
+                    depths[i] = column.states[i] == NONE ? -1 :
+                            (float) getDepth(variant.getGenotype(samples.get(i)));
+                }
+                column.depths = depths;
+                variant.releaseGenotypes();
+            }
+            return column.depths;
+        }
+    }
+
+    /**
+     * @return the phred scaled genotype quality of each sample for variant,  by ordinal.  Samples without a
+     *         genotype are 0.
+     */
+    float[] getQualities(Variant variant) {
+        Column column = getColumn(variant);
+        synchronized (column) {
+            if (column.qualities == null) {
+                float[] qualities = new float[samples.size()];
+                for (int i = 0; i < qualities.length; i++) {
+                    if (column.states[i] != NONE) {
+                        qualities[i] = (float) variant.getGenotype(samples.get(i)).getPhredScaledQual();
+                    }
+                }
+                column.qualities = qualities;
+                variant.releaseGenotypes();
+            }
+            return column.qualities;
+        }
+    }
+
+    private synchronized Column getColumn(Variant variant) {
+        Column column = columns.get(variant);
+        if (column == null) {
+            byte[] states = new byte[samples.size()];
+            double[] lengths = null;
+            for (int i = 0; i < states.length; i++) {
+                Genotype genotype = variant.getGenotype(samples.get(i));
+                states[i] = stateOf(genotype);
+                double length = genotype == null ? -1 : VariantRenderer.getLength(genotype);
+                if (length >= 0) {
+                    if (lengths == null) {
+                        lengths = new double[states.length];
+                        Arrays.fill(lengths, -1);
+                    }
+                    lengths[i] = length;
+                }
+            }
+            column = new Column(states, lengths);
+            columns.put(variant, column);
+            variant.releaseGenotypes();
+        }
+        return column;
+    }
+
+    /**
+     * @return the type of a state,  without the error flag
+     */
+    static byte getType(byte state) {
+        return (byte) (state & TYPE_MASK);
+    }
+
+    static boolean isError(byte state) {
+        return (state & ERROR_FLAG) != 0;
+    }
+
+    /**
+     * Return the byte coded state of genotype.
+     */
+    static byte stateOf(Genotype genotype) {
+
+        if (genotype == null) {
+            return NONE;
+        }
+
+        byte state;
+        if (genotype.isNoCall()) {
+            state = NO_CALL;
+        } else if (genotype.isHomRef()) {
+            state = HOM_REF;
+        } else if (genotype.isHomVar()) {
+            state = HOM_VAR;
+        } else if (genotype.isHet()) {
+            state = HET;
+        } else {
+            state = OTHER;
+        }
+
+        try {
+            String ge = genotype.getAttributeAsString("GE");
+            if (ge != null && ge.length() > 0 && ge.charAt(0) != '.' && Double.parseDouble(ge) >= 1) {
+                state |= ERROR_FLAG;
+            }
+        } catch (NumberFormatException e) {
+            log.error("Invalid genotype error (GE) value", e);
+        }
+        return state;
+    }
+
+    /**
+     * @return the read depth (DP) of genotype,  or -1 if it has none
+     */
+    static double getDepth(Genotype genotype) {
+        String depth = genotype == null ? null : genotype.getAttributeAsString(DEPTH_FIELD);
+        if (StringUtils.isEmpty(depth) || ".".equals(depth)) {
+            return -1;
+        }
+        try {
+            return Double.parseDouble(depth);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Column {
+
+        final byte[] states;
+        final double[] lengths;
+        float[] depths;
+        float[] qualities;
+
+        Column(byte[] states, double[] lengths) {
+            this.states = states;
+            this.lengths = lengths;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.variant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class GenotypeMatrixTest {
+
+    /**
+     * A genotype of the given type (HOM_REF, HET, HOM_VAR or NO_CALL) with attributes given as key, value pairs
+     */
+    static Genotype genotype(final String type, String... attributes) {
+        final Map<String, String> attrs = new HashMap<String, String>();
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            attrs.put(attributes[i], attributes[i + 1]);
+        }
+        return (Genotype) Proxy.newProxyInstance(Genotype.class.getClassLoader(), new Class[]{Genotype.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getType")) return type;
+                        if (name.equals("isHomRef")) return type.equals("HOM_REF");
+                        if (name.equals("isHet")) return type.equals("HET");
+                        if (name.equals("isHomVar")) return type.equals("HOM_VAR");
+                        if (name.equals("isNoCall")) return type.equals("NO_CALL");
+                        if (name.equals("getAttributeAsString")) return attrs.get(args[0]);
+                        if (name.equals("getPhredScaledQual")) {
+                            String gq = attrs.get("GQ");
+                            return gq == null ? -1.0 : Double.parseDouble(gq);
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    /**
+     * A variant with the genotypes of the given samples,  samples not in the map have no genotype
+     */
+    static Variant variant(final int start, final Map<String, Genotype> genotypes) {
+        return (Variant) Proxy.newProxyInstance(Variant.class.getClassLoader(), new Class[]{Variant.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getGenotype")) return genotypes.get(args[0]);
+                        if (name.equals("getSampleNames")) return genotypes.keySet();
+                        if (name.equals("isFiltered")) return false;
+                        if (name.equals("getChr")) return "chr1";
+                        if (name.equals("getStart")) return start;
+                        if (name.equals("getEnd")) return start + 1;
+                        if (name.equals("releaseGenotypes")) return null;
+                        if (name.equals("hashCode")) return System.identityHashCode(proxy);
+                        if (name.equals("equals")) return proxy == args[0];
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    @Test
+    public void testStates() {
+        Map<String, Genotype> genotypes = new HashMap<String, Genotype>();
+        genotypes.put("a", genotype("HOM_REF"));
+        genotypes.put("b", genotype("HET", "GE", "2"));
+        genotypes.put("c", genotype("HOM_VAR", "LN", "150"));
+        genotypes.put("d", genotype("NO_CALL", "GE", "."));
+        Variant variant = variant(100, genotypes);
+
+        List<String> samples = Arrays.asList("a", "b", "c", "d", "e");
+        GenotypeMatrix matrix = new GenotypeMatrix(this, samples);
+        assertTrue(matrix.isValid(this, Arrays.asList("e", "d", "c", "b", "a")));
+        assertFalse(matrix.isValid(samples, samples));
+
+        byte[] states = matrix.getStates(variant);
+        assertEquals(GenotypeMatrix.HOM_REF, states[0]);
+        assertEquals(GenotypeMatrix.HET, GenotypeMatrix.getType(states[1]));
+        assertTrue(GenotypeMatrix.isError(states[1]));
+        assertEquals(GenotypeMatrix.HOM_VAR, states[2]);
+        assertEquals(GenotypeMatrix.NO_CALL, states[3]);
+        assertEquals(GenotypeMatrix.NONE, states[4]);
+
+        // Samples outside the matrix are read from the variant
+        assertEquals(GenotypeMatrix.HOM_REF, matrix.getState(variant, "a"));
+        assertEquals(GenotypeMatrix.NONE, matrix.getState(variant, "x"));
+
+        double[] lengths = matrix.getLengths(variant);
+        assertEquals(-1, lengths[0], 0);
+        assertEquals(150, lengths[2], 0);
+
+        Map<String, Genotype> noLength = new HashMap<String, Genotype>();
+        noLength.put("a", genotype("HET"));
+        assertNull(matrix.getLengths(variant(200, noLength)));
+    }
+
+    @Test
+    public void testDepthsAndQualities() {
+        Map<String, Genotype> genotypes = new HashMap<String, Genotype>();
+        genotypes.put("a", genotype("HET", "DP", "12", "GQ", "40"));
+        genotypes.put("b", genotype("HET", "DP", "."));
+        genotypes.put("c", genotype("HET"));
+        genotypes.put("d", genotype("HET", "DP", "0"));
+        Variant variant = variant(100, genotypes);
+
+        GenotypeMatrix matrix = new GenotypeMatrix(this, Arrays.asList("a", "b", "c", "d", "e"));
+        float[] depths = matrix.getDepths(variant);
+
+        // A missing depth sorts below a depth of 0
+        assertEquals(12, depths[0], 0);
+        assertEquals(-1, depths[1], 0);
+        assertEquals(-1, depths[2], 0);
+        assertEquals(0, depths[3], 0);
+        assertEquals(-1, depths[4], 0);
+        assertEquals(-1, GenotypeMatrix.getDepth(null), 0);
+
+        float[] qualities = matrix.getQualities(variant);
+        assertEquals(40, qualities[0], 0);
+        assertEquals(0, qualities[4], 0);
+    }
+}
@@ -113,6 +113,12 @@ public interface Variant extends Feature {
      */
     Genotype getGenotype(String sample);
 
+    /**
+     * Release the decoded genotypes of this variant,  if they can be decoded again on demand.  Called once their
+     * states are held in a GenotypeMatrix.
+     */
+    void releaseGenotypes();
+
     /**
      * @return the list of filters applied to this variant.  Should not return null, return an empty collection if no filters.
      */
@@ -411,7 +411,7 @@ public class VariantMenu extends IGVPopupMenu {
         if (variant != null) {
             item.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent evt) {
-                    DepthComparator compare = new DepthComparator(variant);
+                    DepthComparator compare = new DepthComparator(variant, track.getGenotypeMatrix());
                     depthSortingDirection = !depthSortingDirection;
                     track.sortSamples(compare);
                     IGV.getInstance().getContentPane().repaint();
@@ -429,7 +429,7 @@ public class VariantMenu extends IGVPopupMenu {
             if (quality > -1) {
                 item.addActionListener(new ActionListener() {
                     public void actionPerformed(ActionEvent evt) {
-                        QualityComparator compare = new QualityComparator(variant);
+                        QualityComparator compare = new QualityComparator(variant, track.getGenotypeMatrix());
                         qualitySortingDirection = !qualitySortingDirection;
                         track.sortSamples(compare);
                         IGV.getInstance().getContentPane().repaint();
@@ -568,22 +568,21 @@ public class VariantMenu extends IGVPopupMenu {
      class GenotypeComparator implements Comparator<String> {
 
         Variant variant;
+        GenotypeMatrix matrix;
 
         GenotypeComparator(Variant variant) {
             this.variant = variant;
+            this.matrix = track.getGenotypeMatrix();
         }
 
         public int compare(String e1, String e2) {
 
         	ColorMode		colorMode = track.getColorMode();
-        	Genotype		g1 = variant.getGenotype(e1);
-        	Genotype		g2 = variant.getGenotype(e2);
-        	
         	
         	if ( colorMode != ColorMode.CUSTOM )
         	{
-	            int genotype1 = classifyGenotype(g1);
-	            int genotype2 = classifyGenotype(g2);
+	            int genotype1 = classifyGenotype(matrix.getState(variant, e1));
+	            int genotype2 = classifyGenotype(matrix.getState(variant, e2));
 	
 	            if (genotype2 == genotype1) {
 	                return 0;
@@ -597,8 +596,8 @@ public class VariantMenu extends IGVPopupMenu {
         	{
             	String		field = track.getColoringCustom();
             	
-            	String		c1 = g1.getAttributeAsString(field);
-            	String		c2 = g2.getAttributeAsString(field);
+            	String		c1 = variant.getGenotype(e1).getAttributeAsString(field);
+            	String		c2 = variant.getGenotype(e2).getAttributeAsString(field);
 
             	if ( c1 == null )
             		c1 = "";
@@ -614,16 +613,17 @@ public class VariantMenu extends IGVPopupMenu {
         }
 
 
-        private int classifyGenotype(Genotype genotype) {
+        private int classifyGenotype(byte state) {
 
-            if (genotype.isNoCall()) {
-                return genotypeSortingDirection ? 1 : 10;
-            } else if (genotype.isHomVar()) {
-                return 4;
-            } else if (genotype.isHet()) {
-                return 3;
-            } else if (genotype.isHomRef()) {
-                return genotypeSortingDirection ? 2 : 9;
+            switch (GenotypeMatrix.getType(state)) {
+                case GenotypeMatrix.NO_CALL:
+                    return genotypeSortingDirection ? 1 : 10;
+                case GenotypeMatrix.HOM_VAR:
+                    return 4;
+                case GenotypeMatrix.HET:
+                    return 3;
+                case GenotypeMatrix.HOM_REF:
+                    return genotypeSortingDirection ? 2 : 9;
             }
             return -1; //Unknown
         }
@@ -633,19 +633,19 @@ public class VariantMenu extends IGVPopupMenu {
     static class DepthComparator implements Comparator<String> {
 
         Variant variant;
+        GenotypeMatrix matrix;
+        float[] depths;
 
-        DepthComparator(Variant variant) {
+        DepthComparator(Variant variant, GenotypeMatrix matrix) {
             this.variant = variant;
+            this.matrix = matrix;
+            this.depths = matrix.getDepths(variant);
         }
 
         public int compare(String s1, String s2) {
 
-
-            Double readDepth1 = variant.getGenotype(s1).  getAttributeAsDouble("DP");
-            Double readDepth2 = variant.getGenotype(s2).getAttributeAsDouble("DP");
-
-            double depth1 = readDepth1 == null ? -1 : readDepth1.doubleValue();
-            double depth2  = readDepth2 == null ? -1 : readDepth2.doubleValue();
+            double depth1 = getDepth(s1);
+            double depth2 = getDepth(s2);
             if (depth2 == depth1) {
                 return 0;
             } else if (depth2 < depth1) {
@@ -654,20 +654,32 @@ public class VariantMenu extends IGVPopupMenu {
                 return depthSortingDirection ? 1 : 1;
             }
         }
+
+        private double getDepth(String sample) {
+            int ordinal = matrix.getOrdinal(sample);
+            if (ordinal >= 0) {
+                return depths[ordinal];
+            }
+            return GenotypeMatrix.getDepth(variant.getGenotype(sample));
+        }
     }
 
     static class QualityComparator implements Comparator<String> {
 
         Variant variant;
+        GenotypeMatrix matrix;
+        float[] qualities;
 
-        QualityComparator(Variant variant) {
+        QualityComparator(Variant variant, GenotypeMatrix matrix) {
             this.variant = variant;
+            this.matrix = matrix;
+            this.qualities = matrix.getQualities(variant);
         }
 
         public int compare(String s1, String s2) {
 
-            double qual1 = variant.getGenotype(s1).getPhredScaledQual();
-            double qual2 = variant.getGenotype(s2).getPhredScaledQual();
+            double qual1 = getQuality(s1);
+            double qual2 = getQuality(s2);
 
             if (qual2 == qual1) {
                 return 0;
@@ -677,6 +689,11 @@ public class VariantMenu extends IGVPopupMenu {
                 return qualitySortingDirection ? 1 : 1;
             }
         }
+
+        private double getQuality(String sample) {
+            int ordinal = matrix.getOrdinal(sample);
+            return ordinal >= 0 ? qualities[ordinal] : variant.getGenotype(sample).getPhredScaledQual();
+        }
     }
 
     static public class AttributesComparator implements Comparator<String> {
@@ -49,6 +49,11 @@ public class VariantRenderer { //extends FeatureRenderer {
     private static Logger log = Logger.getLogger(VariantRenderer.class);
 
     private static float alphaValue = 0.2f;
+    private static final Color DEFAULT_HOM_REF = new Color(235, 235, 235);
+    private static final Color DEFAULT_HOM_VAR = new Color(0, 245, 255);
+    private static final Color DEFAULT_HET = Color.blue.brighter();
+    private static final Color DEFAULT_NO_CALL = Color.white;
+    private static final Color DEFAULT_ERROR = Color.black;
     public static Color colorHomRef = new Color(235, 235, 235);
     public static Color colorHomRefAlpha = ColorUtilities.getCompositeColor(colorHomRef.getColorComponents(null), alphaValue);
     public static Color colorHomVar = new Color(0, 245, 255);
@@ -99,21 +104,37 @@ public class VariantRenderer { //extends FeatureRenderer {
         nucleotideColors.put('n', colorAlleleRef);
         nucleotideColors.put('.', colorAlleleRef);
         nucleotideColors.put(null, Color.BLACK);
-        
-        // load dynamic colors
+
+        loadColors();
+    }
+
+    /**
+     * Load the genotype colors from the preferences.  Called before each render of the genotype band,  so that edits
+     * to the VR_COLOR preferences take effect on the next repaint.
+     */
+    static synchronized void loadColors() {
         PreferenceManager		pm = PreferenceManager.getInstance();
-        colorHomRef = pm.getAsColor(PreferenceManager.VR_COLOR_HOM_REF, colorHomRef);
+        colorHomRef = pm.getAsColor(PreferenceManager.VR_COLOR_HOM_REF, DEFAULT_HOM_REF);
         colorHomRefAlpha = pm.getAsColor(PreferenceManager.VR_COLOR_HOM_REF_FILTERED, ColorUtilities.getCompositeColor(colorHomRef.getColorComponents(null), alphaValue));
-        colorHomVar = pm.getAsColor(PreferenceManager.VR_COLOR_HOM_VAR, colorHomVar);
+        colorHomVar = pm.getAsColor(PreferenceManager.VR_COLOR_HOM_VAR, DEFAULT_HOM_VAR);
         colorHomVarAlpha = pm.getAsColor(PreferenceManager.VR_COLOR_HOM_VAR_FILTERED, ColorUtilities.getCompositeColor(colorHomVar.getColorComponents(null), alphaValue));
-        colorHet = pm.getAsColor(PreferenceManager.VR_COLOR_HET, colorHet);
+        colorHet = pm.getAsColor(PreferenceManager.VR_COLOR_HET, DEFAULT_HET);
         colorHetAlpha = pm.getAsColor(PreferenceManager.VR_COLOR_HET_FILTERED, ColorUtilities.getCompositeColor(colorHet.getColorComponents(null), alphaValue));
-        colorNoCall = pm.getAsColor(PreferenceManager.VR_COLOR_NO_CALL, colorNoCall);
+        colorNoCall = pm.getAsColor(PreferenceManager.VR_COLOR_NO_CALL, DEFAULT_NO_CALL);
         colorNoCallAlpha = pm.getAsColor(PreferenceManager.VR_COLOR_NO_CALL_FILTERED, ColorUtilities.getCompositeColor(colorNoCall.getColorComponents(null), alphaValue));
-        colorError = pm.getAsColor(PreferenceManager.VR_COLOR_ERROR, colorError);
+        colorError = pm.getAsColor(PreferenceManager.VR_COLOR_ERROR, DEFAULT_ERROR);
         colorErrorAlpha = pm.getAsColor(PreferenceManager.VR_COLOR_ERROR_FILTERED, ColorUtilities.getCompositeColor(colorError.getColorComponents(null), alphaValue));
     }
 
+    /**
+     * @return the current genotype colors,  unfiltered and filtered,  for checking whether colors decoded earlier
+     *         are still current
+     */
+    static synchronized Color[] getGenotypeColors() {
+        return new Color[]{colorHomRef, colorHomRefAlpha, colorHomVar, colorHomVarAlpha, colorHet, colorHetAlpha,
+                colorNoCall, colorNoCallAlpha, colorError, colorErrorAlpha};
+    }
+
     public VariantRenderer(VariantTrack track) {
         this.track = track;
     }
@@ -222,61 +243,19 @@ public class VariantRenderer { //extends FeatureRenderer {
         if (genotype == null) {
             log.error("Now what?");
         } else {
-            Color b1Color = Color.gray;
-            Color b2Color = Color.gray;
+            Color[] colors = getGenotypeBandColors(genotype, coloring, isFiltered);
+            Color b1Color = colors[0];
+            Color b2Color = colors[1];
             char b1 = ' ';
             char b2 = ' ';
-            //Assign proper coloring
-            switch (coloring) {
-                case GENOTYPE:
-
-                    b1Color = getGenotypeColor(genotype, isFiltered);
-                    b2Color = b1Color;
-                    break;
-
-                case ALLELE:
-                    final List<Allele> alleleList = genotype.getAlleles();
-                    if (alleleList.size() > 0) {
-                        b1 = getFirstBase(alleleList.get(0));
-                        b1Color = nucleotideColors.get(b1);
-                    }
-                    if (alleleList.size() > 1) {
-                        b2 = getFirstBase(alleleList.get(1));
-                        b2Color = nucleotideColors.get(b2);
-                    }
-                    break;
-                case METHYLATION_RATE:
-
-                    final Double goodBaseCount = genotype.getAttributeAsDouble("GB");
-
-                    final Double value = genotype.getAttributeAsDouble("MR");
-                    if (goodBaseCount < 10 || value == null) {
-                        b1Color = colorNoCall;
-                        b2Color = b1Color;
-
-                    } else {
-                        float mr = (float) value.doubleValue();
-                        //   System.out.printf("position %d methylation-rate: %f%n", variant.getStart(), mr);
-                        mr /= 100f;
-                        b1Color = convertMethylationRateToColor(mr);
-                        b2Color = b1Color;
-                    }
-                    break;
-
-                case CUSTOM:
-
-                	if ( isFiltered || ((b1Color = getCustomColor(genotype)) == null) )
-                		b1Color = getGenotypeColor(genotype, isFiltered);
-                    if (b1Color.equals(Color.white)) { // white color actually means we do not want
-                                                       // to draw a rectangle, i.e. use "transparent" color
-                      b1Color = whiteTransparent;
-                    }
-                    b2Color = b1Color;
-                    break;
-
-                default:
-                    b1Color = colorNoCall;
-                    b2Color = b1Color;
+            if (coloring == VariantTrack.ColorMode.ALLELE) {
+                final List<Allele> alleleList = genotype.getAlleles();
+                if (alleleList.size() > 0) {
+                    b1 = getFirstBase(alleleList.get(0));
+                }
+                if (alleleList.size() > 1) {
+                    b2 = getFirstBase(alleleList.get(1));
+                }
             }
 
 
@@ -329,26 +308,103 @@ public class VariantRenderer { //extends FeatureRenderer {
 //        g.dispose();
     }
 
+    /**
+     * Return the colors of the two halves of a genotype cell.  They are the same unless coloring by allele.
+     *
+     * @param isFiltered true if the variant is filtered and filtered variants are hidden
+     */
+    Color[] getGenotypeBandColors(Genotype genotype, VariantTrack.ColorMode coloring, boolean isFiltered) {
+
+        Color b1Color = Color.gray;
+        Color b2Color = Color.gray;
+        //Assign proper coloring
+        switch (coloring) {
+            case GENOTYPE:
+
+                b1Color = getGenotypeColor(genotype, isFiltered);
+                b2Color = b1Color;
+                break;
+
+            case ALLELE:
+                final List<Allele> alleleList = genotype.getAlleles();
+                if (alleleList.size() > 0) {
+                    b1Color = nucleotideColors.get(getFirstBase(alleleList.get(0)));
+                }
+                if (alleleList.size() > 1) {
+                    b2Color = nucleotideColors.get(getFirstBase(alleleList.get(1)));
+                }
+                break;
+            case METHYLATION_RATE:
+
+                final Double goodBaseCount = genotype.getAttributeAsDouble("GB");
+
+                final Double value = genotype.getAttributeAsDouble("MR");
+                if (goodBaseCount < 10 || value == null) {
+                    b1Color = colorNoCall;
+                    b2Color = b1Color;
+
+                } else {
+                    float mr = (float) value.doubleValue();
+                    //   System.out.printf("position %d methylation-rate: %f%n", variant.getStart(), mr);
+                    mr /= 100f;
+                    b1Color = convertMethylationRateToColor(mr);
+                    b2Color = b1Color;
+                }
+                break;
+
+            case CUSTOM:
+
+            	if ( isFiltered || ((b1Color = getCustomColor(genotype)) == null) )
+            		b1Color = getGenotypeColor(genotype, isFiltered);
+                if (b1Color.equals(Color.white)) { // white color actually means we do not want
+                                                   // to draw a rectangle, i.e. use "transparent" color
+                  b1Color = whiteTransparent;
+                }
+                b2Color = b1Color;
+                break;
+
+            default:
+                b1Color = colorNoCall;
+                b2Color = b1Color;
+        }
+        return new Color[]{b1Color, b2Color};
+    }
+
     static public int adjustLength(int dX, Genotype genotype, RenderContext context, int x, Variant variant) 
+    {
+        return adjustLength(dX, getLength(genotype), context, x, variant);
+    }
+
+    /**
+     * Widen dX to the genotype length (LN) field,  if it is set (length >= 0).
+     */
+    static int adjustLength(int dX, double length, RenderContext context, int x, Variant variant)
     {
     	int			org_dX = dX;
     	
-        String	lengthAttr = genotype.getAttributeAsString(LENGTH_FIELD);
-        if ( !StringUtils.isEmpty(lengthAttr) && !".".equals(lengthAttr) )
+        if ( length >= 0 )
         {
-        	double	length = Double.parseDouble(lengthAttr);
-        	if ( length >= 0 )
-        	{
-        		dX = (int)Math.max(dX, Math.ceil(length / context.getScale()));
+        	dX = (int)Math.max(dX, Math.ceil(length / context.getScale()));
         	
-        		if ( log.isDebugEnabled() )
-        			log.debug("start " + variant.getStart() + " x " + x + " dX " + org_dX + " -> " + dX);
-        	}
+        	if ( log.isDebugEnabled() )
+        		log.debug("start " + variant.getStart() + " x " + x + " dX " + org_dX + " -> " + dX);
         }
         
         return dX;
 	}
 
+    /**
+     * @return the value of the genotype length (LN) field,  or -1 if it is not set
+     */
+    static double getLength(Genotype genotype)
+    {
+        String	lengthAttr = genotype.getAttributeAsString(LENGTH_FIELD);
+        if ( !StringUtils.isEmpty(lengthAttr) && !".".equals(lengthAttr) )
+        	return Double.parseDouble(lengthAttr);
+        else
+        	return -1;
+    }
+
 
 	private Color getCustomColor(Genotype genotype) 
     {
@@ -384,25 +440,27 @@ public class VariantRenderer { //extends FeatureRenderer {
     }
 
     public Color getGenotypeColor(Genotype genotype, boolean isFiltered) {
-    	
-    	try
-    	{
-	    	String				ge = genotype.getAttributeAsString("GE");
-	    	if ( ge != null && ge.length() > 0 && ge.charAt(0) != '.' && Double.parseDouble(ge) >= 1 )
-	            return isFiltered ? colorErrorAlpha : colorError;
-    	} catch (NumberFormatException e)
-    	{
-    		e.printStackTrace();
-    	}
-    	
-        if (genotype.isNoCall()) {
-            return isFiltered ? colorNoCallAlpha : colorNoCall;
-        } else if (genotype.isHomRef()) {
-            return isFiltered ? colorHomRefAlpha : colorHomRef;
-        } else if (genotype.isHomVar()) {
-            return isFiltered ? colorHomVarAlpha : colorHomVar;
-        } else if (genotype.isHet()) {
-            return isFiltered ? colorHetAlpha : colorHet;
+        return getGenotypeColor(GenotypeMatrix.stateOf(genotype), isFiltered);
+    }
+
+    /**
+     * Return the color of a genotype from its state in a GenotypeMatrix.
+     */
+    Color getGenotypeColor(byte state, boolean isFiltered) {
+
+        if (GenotypeMatrix.isError(state)) {
+            return isFiltered ? colorErrorAlpha : colorError;
+        }
+
+        switch (GenotypeMatrix.getType(state)) {
+            case GenotypeMatrix.NO_CALL:
+                return isFiltered ? colorNoCallAlpha : colorNoCall;
+            case GenotypeMatrix.HOM_REF:
+                return isFiltered ? colorHomRefAlpha : colorHomRef;
+            case GenotypeMatrix.HOM_VAR:
+                return isFiltered ? colorHomVarAlpha : colorHomVar;
+            case GenotypeMatrix.HET:
+                return isFiltered ? colorHetAlpha : colorHet;
         }
         return Color.white;
     }
@@ -439,6 +497,16 @@ public class VariantRenderer { //extends FeatureRenderer {
 		bandColorsWidth = 0;
 	}
 	
+	/**
+	 * Set the summary band colors from counts collected elsewhere,  e.g. cached by the track,  in place of the
+	 * counts collected by renderGenotypeBandSNP.
+	 */
+	void setBandColors(Map<Color, Integer> counts, int colorWidth) {
+		bandColors.clear();
+		bandColors.putAll(counts);
+		bandColorsWidth = colorWidth;
+	}
+	
 	private void addBandColor(Color color, int colorWidth)
 	{
 		Integer		count = bandColors.get(color);
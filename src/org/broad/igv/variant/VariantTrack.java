@@ -25,6 +25,7 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.awt.event.MouseEvent;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -38,6 +39,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.PreferenceManager;
@@ -62,6 +64,7 @@ import org.broad.igv.ui.panel.MouseableRegion;
 import org.broad.igv.ui.panel.ReferenceFrame;
 import org.broad.igv.util.FilterElement;
 import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.collections.IntArrayList;
 import org.broad.igv.variant.VariantMenu.AttributesComparator;
 import org.broad.igv.variant.vcf.VCFGenotype;
 import org.broad.tribble.Feature;
@@ -174,6 +177,14 @@ public class VariantTrack extends FeatureTrack {
      * would be faster.
      */
     private List<SampleBounds> sampleBounds = new ArrayList();
+
+    /**
+     * Decoded genotype colors and raster of the genotype band,  and genotype matrix,  for the features last rendered
+     * in each frame.  Keyed by frame name,  as are the packed features.
+     */
+    private Map<String, GenotypeBandCache> genotypeBandCaches = new ConcurrentHashMap();
+    private Map<String, GenotypeMatrix> genotypeMatrices = new ConcurrentHashMap();
+    private volatile GenotypeMatrix lastGenotypeMatrix;
 //    private ZygosityCount zygosityCount;
     
     
@@ -431,13 +442,24 @@ public class VariantTrack extends FeatureTrack {
 
             final double locScale = context.getScale();
             final double origin = context.getOrigin();
-            ;
-            int lastPX = -1;
             final double pXMin = rect.getMinX();
             final double pXMax = rect.getMaxX();
 
+            // Collect the variants in view,  with their index in the loaded features
+            int nFeatures = features.size();
+            Variant[] variants = new Variant[nFeatures];
+            int[] variantIndexes = new int[nFeatures];
+            int[] xs = new int[nFeatures];
+            int[] ws = new int[nFeatures];
+            int[] orgWs = new int[nFeatures];
+            int nVisible = 0;
+            int featureIndex = -1;
+            String frameName = context.getReferenceFrame().getName();
+            GenotypeMatrix matrix = getGenotypeMatrix(frameName, packedFeatures);
+
             for (Feature feature : features) {
 
+                featureIndex++;
                 Variant variant = (Variant) feature;
                 //char ref = getReference(variant, windowStart, reference);
 
@@ -454,9 +476,9 @@ public class VariantTrack extends FeatureTrack {
                 int		org_dX = dX;
                 if ( allSamples.size() > 0 )
                 {
-                    Genotype genotype = variant.getGenotype(allSamples.get(0));
+                    double length = matrix.getLength(variant, allSamples.get(0));
 
-                	dX = VariantRenderer.adjustLength(dX, genotype, context, pX, variant);
+                	dX = VariantRenderer.adjustLength(dX, length, context, pX, variant);
                 }
 
                 if (pX + dX < pXMin) {
@@ -473,54 +495,49 @@ public class VariantTrack extends FeatureTrack {
                     x--;
                 }
 
-//                if (pX + dX > lastPX) {  // draw rectangle only if its endpoint is bigger than last endpoint.
-
-                    rect.y = top;
-                    rect.height = variantBandHeight;
-                    Rectangle	variantBandRect = new Rectangle(rect);	// save for later drawing
-                    renderer.resetBandColors();
-                    
-                    if (getDisplayMode() != Track.DisplayMode.COLLAPSED) {
-                        rect.y += rect.height;
-                        rect.height = getGenotypeBandHeight();
-
-                        // Loop through groups
-                        if (grouped) {
-                            for (Map.Entry<String, List<String>> entry : samplesByGroups.entrySet()) {
-                                for (String sample : entry.getValue()) {
-                                    renderer.renderGenotypeBandSNP(variant, context, rect, x, org_w, sample, coloring,
-                                            hideFiltered, !rect.intersects(visibleRectangle));
-                                    rect.y += rect.height;
-                                }
-                                g2D.setColor(OFF_WHITE);
-                                g2D.fillRect(rect.x, rect.y, rect.width, GROUP_BORDER_WIDTH);
-                                rect.y += GROUP_BORDER_WIDTH;
-                            }
-                        } else {
-                            for (String sample : allSamples) {
-                                renderer.renderGenotypeBandSNP(variant, context, rect, x, org_w, sample, coloring,
-                                        hideFiltered, !rect.intersects(visibleRectangle));
-                                rect.y += rect.height;
-                            }
-
-                        }
-                    }
+                variants[nVisible] = variant;
+                variantIndexes[nVisible] = featureIndex;
+                xs[nVisible] = x;
+                ws[nVisible] = w;
+                orgWs[nVisible] = org_w;
+                nVisible++;
+            }
 
+            // Genotypes.  All samples are decoded,  for the summary band colors,  but only rows in view are drawn.
+            GenotypeBandCache cache = null;
+            if (getDisplayMode() != Track.DisplayMode.COLLAPSED && nVisible > 0) {
+                cache = getGenotypeBandCache(frameName, packedFeatures);
+                for (int v = 0; v < nVisible; v++) {
+                    cache.decode(variantIndexes[v], variants[v], matrix);
+                }
+                renderGenotypeBand(context, trackRectangle, visibleRectangle, cache, variants, variantIndexes,
+                        xs, orgWs, nVisible);
+            }
 
-                    if (floatingHeader || variantBandRect.intersects(visibleRectangle)) {
-                        renderer.renderVariantBand(variant, variantBandRect, x, w, context, hideFiltered, floatingHeader ? visibleRectangle : null);
-                    }
+            for (int v = 0; v < nVisible; v++) {
 
-                    boolean isSelected = selectedVariant != null && selectedVariant == variant;
-                    if (isSelected) {
-                        Graphics2D selectionGraphics = context.getGraphic2DForColor(Color.black);
-                        selectionGraphics.drawRect(x, top, w, getHeight());
-                    }
+                Variant variant = variants[v];
+                int x = xs[v];
+                int w = ws[v];
 
-                    lastPX = pX + dX;
+                rect.y = top;
+                rect.height = variantBandHeight;
+                Rectangle	variantBandRect = new Rectangle(rect);
+                renderer.resetBandColors();
+                if (cache != null) {
+                    renderer.setBandColors(cache.getBandCounts(variantIndexes[v]),
+                            cache.getBandWidth(variantIndexes[v], orgWs[v], locScale));
+                }
 
-//                }
+                if (floatingHeader || variantBandRect.intersects(visibleRectangle)) {
+                    renderer.renderVariantBand(variant, variantBandRect, x, w, context, hideFiltered, floatingHeader ? visibleRectangle : null);
+                }
 
+                boolean isSelected = selectedVariant != null && selectedVariant == variant;
+                if (isSelected) {
+                    Graphics2D selectionGraphics = context.getGraphic2DForColor(Color.black);
+                    selectionGraphics.drawRect(x, top, w, getHeight());
+                }
             }
         } else {
             rect.height = variantBandHeight;
@@ -548,6 +565,123 @@ public class VariantTrack extends FeatureTrack {
     }
 
 
+    /**
+     * Return the genotype matrix of the interval last rendered,  for sorting samples by the genotypes of a variant.
+     * Variants outside the interval are decoded on demand.
+     */
+    GenotypeMatrix getGenotypeMatrix() {
+        GenotypeMatrix matrix = lastGenotypeMatrix;
+        if (matrix == null) {
+            matrix = new GenotypeMatrix(null, allSamplesUnfiltered);
+            lastGenotypeMatrix = matrix;
+        }
+        return matrix;
+    }
+
+    private GenotypeMatrix getGenotypeMatrix(String frameName, PackedFeatures packedFeatures) {
+        GenotypeMatrix matrix = genotypeMatrices.get(frameName);
+        if (matrix == null || !matrix.isValid(packedFeatures, allSamplesUnfiltered)) {
+            matrix = new GenotypeMatrix(packedFeatures, allSamplesUnfiltered);
+            genotypeMatrices.put(frameName, matrix);
+        }
+        lastGenotypeMatrix = matrix;
+        return matrix;
+    }
+
+    private GenotypeBandCache getGenotypeBandCache(String frameName, PackedFeatures packedFeatures) {
+        VariantRenderer.loadColors();
+        GenotypeBandCache cache = genotypeBandCaches.get(frameName);
+        if (cache == null || !cache.isValid(packedFeatures, coloring, hideFiltered, coloringCustom, allSamples)) {
+            cache = new GenotypeBandCache(packedFeatures, coloring, hideFiltered, coloringCustom, allSamples, renderer);
+            genotypeBandCaches.put(frameName, cache);
+        }
+        return cache;
+    }
+
+    @Override
+    public void clearFrameCache(String frameName) {
+        super.clearFrameCache(frameName);
+        genotypeBandCaches.remove(frameName);
+        genotypeMatrices.remove(frameName);
+    }
+
+    /**
+     * Draw the genotype cells of the visible variants,  for the sample rows that intersect the visible rectangle.
+     * Cells are drawn from a raster of decoded colors unless allele letters are drawn in them.
+     */
+    private void renderGenotypeBand(RenderContext context, Rectangle trackRectangle, Rectangle visibleRectangle,
+                                    GenotypeBandCache cache, Variant[] variants, int[] variantIndexes,
+                                    int[] xs, int[] widths, int nVisible) {
+
+        final int bandHeight = getGenotypeBandHeight();
+        final int bandTop = top + variantBandHeight;
+
+        // Row layout,  offsets are relative to the top of the genotype band
+        List<String> rowSamples = new ArrayList(allSamples.size());
+        IntArrayList offsets = new IntArrayList(allSamples.size());
+        IntArrayList groupBorders = new IntArrayList();
+        int offset = 0;
+        if (grouped) {
+            for (List<String> groupSamples : samplesByGroups.values()) {
+                for (String sample : groupSamples) {
+                    rowSamples.add(sample);
+                    offsets.add(offset);
+                    offset += bandHeight;
+                }
+                groupBorders.add(offset);
+                offset += GROUP_BORDER_WIDTH;
+            }
+        } else {
+            for (String sample : allSamples) {
+                rowSamples.add(sample);
+                offsets.add(offset);
+                offset += bandHeight;
+            }
+        }
+        int[] rowOffsets = offsets.toArray();
+
+        // Rows in view
+        int firstRow = 0;
+        while (firstRow < rowOffsets.length && bandTop + rowOffsets[firstRow] + bandHeight <= visibleRectangle.y) {
+            firstRow++;
+        }
+        int lastRow = firstRow - 1;
+        while (lastRow + 1 < rowOffsets.length && bandTop + rowOffsets[lastRow + 1] < visibleRectangle.getMaxY()) {
+            lastRow++;
+        }
+
+        if (firstRow <= lastRow) {
+            if (coloring == ColorMode.ALLELE && bandHeight >= 18) {
+                Rectangle rect = new Rectangle(trackRectangle);
+                rect.height = bandHeight;
+                for (int v = 0; v < nVisible; v++) {
+                    for (int r = firstRow; r <= lastRow; r++) {
+                        rect.y = bandTop + rowOffsets[r];
+                        renderer.renderGenotypeBandSNP(variants[v], context, rect, xs[v], widths[v],
+                                rowSamples.get(r), coloring, hideFiltered, false);
+                    }
+                }
+            } else {
+                BufferedImage image = cache.getRaster(context.getOrigin(), context.getScale(), trackRectangle.x,
+                        trackRectangle.width, bandHeight, getDisplayMode(), rowSamples, rowOffsets, firstRow, lastRow,
+                        variantIndexes, xs, widths, nVisible);
+                if (image != null) {
+                    context.getGraphics().drawImage(image, trackRectangle.x, bandTop + rowOffsets[firstRow], null);
+                }
+            }
+        }
+
+        Graphics2D g2D = context.getGraphics();
+        g2D.setColor(OFF_WHITE);
+        for (int i = 0; i < groupBorders.size(); i++) {
+            int y = bandTop + groupBorders.get(i);
+            if (y + GROUP_BORDER_WIDTH > visibleRectangle.y && y < visibleRectangle.getMaxY()) {
+                g2D.fillRect(trackRectangle.x, y, trackRectangle.width, GROUP_BORDER_WIDTH);
+            }
+        }
+    }
+
+
     /**
      * Render the name panel.
      * <p/>
@@ -30,6 +30,8 @@ import org.broad.igv.feature.tribble.VCFWrapperCodec.FractionVariantContext;
 import org.broad.igv.variant.Allele;
 import org.broad.igv.variant.Genotype;
 import org.broad.igv.variant.Variant;
+import org.broadinstitute.sting.utils.variantcontext.GenotypesContext;
+import org.broadinstitute.sting.utils.variantcontext.LazyGenotypesContext;
 import org.broadinstitute.sting.utils.variantcontext.VariantContext;
 
 /**
@@ -54,6 +56,7 @@ public class VCFVariant implements Variant {
                 Genotype genotype = getGenotype(sample);
                 zygosityCount.incrementCount(genotype);
             }
+            releaseGenotypes();
     }
     
     @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -182,6 +185,17 @@ public class VCFVariant implements Variant {
         return new VCFGenotype(variantContext.getGenotype(sample));
     }
 
+    /**
+     * Drop the parsed genotypes,  keeping the unparsed genotype fields of the VCF record they are parsed again from
+     * on the next call to getGenotype.
+     */
+    public void releaseGenotypes() {
+        GenotypesContext genotypes = variantContext.getGenotypes();
+        if (genotypes instanceof LazyGenotypesContext) {
+            ((LazyGenotypesContext) genotypes).release();
+        }
+    }
+
     public Collection<String> getFilters() {
         return variantContext.getFilters();
     }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2007-2011 by The Broad Institute of MIT and Harvard.  All Rights Reserved.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS." THE BROAD AND MIT MAKE NO REPRESENTATIONS OR
+ * WARRANTES OF ANY KIND CONCERNING THE SOFTWARE, EXPRESS OR IMPLIED, INCLUDING,
+ * WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER
+ * OR NOT DISCOVERABLE.  IN NO EVENT SHALL THE BROAD OR MIT, OR THEIR RESPECTIVE
+ * TRUSTEES, DIRECTORS, OFFICERS, EMPLOYEES, AND AFFILIATES BE LIABLE FOR ANY DAMAGES
+ * OF ANY KIND, INCLUDING, WITHOUT LIMITATION, INCIDENTAL OR CONSEQUENTIAL DAMAGES,
+ * ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER
+ * THE BROAD OR MIT SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT
+ * SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+
+import org.broad.tribble.readers.AsciiLineReader;
+import org.broadinstitute.sting.utils.codecs.vcf.VCFCodec;
+import org.broadinstitute.sting.utils.variantcontext.LazyGenotypesContext;
+import org.broadinstitute.sting.utils.variantcontext.VariantContext;
+import org.junit.Test;
+
+public class VCFVariantTest {
+
+    private static final String HEADER =
+            "##fileformat=VCFv4.1\n" +
+            "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n" +
+            "##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read Depth\">\n" +
+            "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\ts1\ts2\ts3\n";
+
+    private static VariantContext decode(String line) {
+        VCFCodec codec = new VCFCodec();
+        codec.readHeader(new AsciiLineReader(new ByteArrayInputStream(HEADER.getBytes())));
+        return (VariantContext) codec.decode(line);
+    }
+
+    @Test
+    public void testGenotypesReleasedAfterCounting() {
+        VariantContext vc = decode("chr1\t100\t.\tA\tG\t50\tPASS\t.\tGT:DP\t0/0:10\t0/1:12\t1/1:.");
+        LazyGenotypesContext genotypes = (LazyGenotypesContext) vc.getGenotypes();
+
+        VCFVariant variant = new VCFVariant(vc);
+        assertEquals(1, variant.getHomRefCount());
+        assertEquals(1, variant.getHetCount());
+        assertEquals(1, variant.getHomVarCount());
+
+        // Released,  the unparsed fields are kept to decode from again
+        assertNotNull(genotypes.getUnparsedGenotypeData());
+
+        assertEquals("HET", variant.getGenotype("s2").getType());
+        assertEquals("12", variant.getGenotype("s2").getAttributeAsString("DP"));
+        assertNull(genotypes.getUnparsedGenotypeData());
+
+        variant.releaseGenotypes();
+        assertNotNull(genotypes.getUnparsedGenotypeData());
+        assertEquals("HOM_VAR", variant.getGenotype("s3").getType());
+    }
+}
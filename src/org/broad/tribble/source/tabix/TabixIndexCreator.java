@@ -0,0 +1,381 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2009 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.tribble.source.tabix;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.broad.tribble.TribbleException;
+import org.broad.tribble.util.BlockCompressedOutputStream;
+import org.broad.tribble.util.LittleEndianOutputStream;
+
+/**
+ * Builds a tabix (.tbi) index for a sorted,  BGZF compressed,  tab delimited file,  in the format read by
+ * TabixReader.  Lines are added in file order with their start and end offsets.  Offsets are either virtual file
+ * pointers,  when indexing an existing compressed file,  or positions in the uncompressed stream of a
+ * BlockCompressedOutputStream,  when indexing while compressing.  The latter are converted when the index is
+ * written.
+ * <p/>
+ * Intervals are parsed as TabixReader parses them,  so queries see the same coordinates the index was built
+ * with.  Records must be grouped by sequence and sorted by start within a sequence.
+ */
+public class TabixIndexCreator {
+
+    // Presets,  the "format" field of the index
+    public static final int PRESET_GENERIC = 0;
+    public static final int PRESET_SAM = 1;
+    public static final int PRESET_VCF = 2;
+    public static final int FLAG_UCSC = 0x10000;     // 0 based,  half open coordinates
+
+    private static final byte[] MAGIC = {'T', 'B', 'I', 1};
+    private static final int LINEAR_SHIFT = 14;       // TAD_LIDX_SHIFT
+
+    private final int preset;
+    private final int seqCol;
+    private final int begCol;
+    private final int endCol;
+    private final char meta;
+    private final int skip;
+
+    private final Map<String, SequenceIndex> sequences = new LinkedHashMap();
+    private SequenceIndex current;
+    private int lineCount;
+    private int lastBeg;
+
+    /**
+     * @param seqCol column of the sequence name,  1 based
+     * @param begCol column of the start position,  1 based
+     * @param endCol column of the end position,  1 based,  0 if there is none
+     * @param meta   lines starting with this character are not indexed
+     * @param skip   number of lines to skip at the start of the file
+     */
+    public TabixIndexCreator(int preset, int seqCol, int begCol, int endCol, char meta, int skip) {
+        this.preset = preset;
+        this.seqCol = seqCol;
+        this.begCol = begCol;
+        this.endCol = endCol;
+        this.meta = meta;
+        this.skip = skip;
+    }
+
+    /**
+     * Return an index creator with the tabix preset for the file type,  or null if the type is not supported.
+     * A ".gz" extension is ignored.
+     */
+    public static TabixIndexCreator getCreator(String path) {
+        String fn = path.toLowerCase();
+        if (fn.endsWith(".gz")) {
+            fn = fn.substring(0, fn.length() - 3);
+        }
+        if (fn.endsWith(".txt")) {
+            fn = fn.substring(0, fn.length() - 4);
+        }
+        if (fn.endsWith(".bed")) {
+            return new TabixIndexCreator(PRESET_GENERIC | FLAG_UCSC, 1, 2, 3, '#', 0);
+        } else if (fn.endsWith(".gff") || fn.endsWith(".gff3") || fn.endsWith(".gtf")) {
+            return new TabixIndexCreator(PRESET_GENERIC, 1, 4, 5, '#', 0);
+        } else if (fn.endsWith(".vcf")) {
+            return new TabixIndexCreator(PRESET_VCF, 1, 2, 0, '#', 0);
+        } else if (fn.endsWith(".psl") || fn.endsWith(".pslx")) {
+            return new TabixIndexCreator(PRESET_GENERIC | FLAG_UCSC, 14, 16, 17, '#', 0);
+        }
+        return null;
+    }
+
+    /**
+     * Add a line of the file.  Header lines,  i.e. lines skipped or starting with the meta character,  and
+     * "track" and "browser" lines are not indexed.
+     *
+     * @param startOffset offset of the first character of the line
+     * @param endOffset   offset following the line terminator
+     */
+    public void addLine(String line, long startOffset, long endOffset) {
+
+        lineCount++;
+        if (lineCount <= skip || line.length() == 0 || line.charAt(0) == meta ||
+                line.startsWith("track") || line.startsWith("browser")) {
+            return;
+        }
+
+        String seq = null;
+        boolean hasBeg = false;
+        int beg = -1;
+        int end = -1;
+        int col = 0;
+        int pos = 0;
+        while (pos <= line.length()) {
+            int tab = line.indexOf('\t', pos);
+            if (tab < 0) {
+                tab = line.length();
+            }
+            col++;
+            if (col == seqCol) {
+                seq = line.substring(pos, tab);
+            } else if (col == begCol) {
+                int value = parseInt(line, pos, tab);
+                hasBeg = true;
+                if ((preset & FLAG_UCSC) != 0) {
+                    beg = value;
+                    end = value + 1;
+                } else {
+                    beg = value - 1;
+                    end = value;
+                }
+            } else if ((preset & 0xffff) == PRESET_GENERIC && col == endCol) {
+                end = parseInt(line, pos, tab);
+            } else if ((preset & 0xffff) == PRESET_VCF) {
+                if (col == 4 && tab > pos) {
+                    end = beg + (tab - pos);
+                } else if (col == 8) {
+                    int infoEnd = getInfoEnd(line.substring(pos, tab));
+                    if (infoEnd >= 0) {
+                        end = infoEnd;
+                    }
+                }
+            }
+            pos = tab + 1;
+        }
+
+        if (seq == null || !hasBeg) {
+            throw new TribbleException.MalformedFeatureFile("Too few columns for indexing: " + line, null);
+        }
+        if (beg < 0) {
+            beg = 0;
+        }
+        if (end < 1) {
+            end = 1;
+        }
+        if (end <= beg) {
+            end = beg + 1;
+        }
+
+        if (current == null || !current.name.equals(seq)) {
+            if (sequences.containsKey(seq)) {
+                throw new TribbleException.MalformedFeatureFile("Records are not grouped by sequence, " + seq +
+                        " appears again at line " + lineCount, null);
+            }
+            current = new SequenceIndex(seq);
+            sequences.put(seq, current);
+            lastBeg = 0;
+        } else if (beg < lastBeg) {
+            throw new TribbleException.MalformedFeatureFile("Records are not sorted by start position at line " +
+                    lineCount + ": " + seq + ":" + (beg + 1), null);
+        }
+        lastBeg = beg;
+
+        current.add(beg, end, startOffset, endOffset);
+    }
+
+    private static int parseInt(String line, int start, int end) {
+        try {
+            return Integer.parseInt(line.substring(start, end).trim());
+        } catch (NumberFormatException e) {
+            throw new TribbleException.MalformedFeatureFile("Invalid position: " + line.substring(start, end), null);
+        }
+    }
+
+    /**
+     * @return the value of an END= field,  or -1
+     */
+    private static int getInfoEnd(String info) {
+        int offset = -1;
+        if (info.startsWith("END=")) {
+            offset = 4;
+        } else {
+            int i = info.indexOf(";END=");
+            if (i >= 0) {
+                offset = i + 5;
+            }
+        }
+        if (offset < 0) {
+            return -1;
+        }
+        int i = info.indexOf(';', offset);
+        try {
+            return Integer.parseInt(i > offset ? info.substring(offset, i) : info.substring(offset));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Write the index.  Offsets are virtual file pointers.
+     */
+    public void write(File file) throws IOException {
+        write(file, null);
+    }
+
+    /**
+     * Write the index for a file written with data.  Offsets are positions in the uncompressed stream of data,
+     * which must have been flushed.
+     */
+    public void write(File file, BlockCompressedOutputStream data) throws IOException {
+
+        LittleEndianOutputStream los = new LittleEndianOutputStream(new BlockCompressedOutputStream(file));
+        try {
+            los.write(MAGIC);
+            los.writeInt(sequences.size());
+            los.writeInt(preset);
+            los.writeInt(seqCol);
+            los.writeInt(begCol);
+            los.writeInt(endCol);
+            los.writeInt(meta);
+            los.writeInt(skip);
+
+            int namesLength = 0;
+            List<byte[]> names = new ArrayList(sequences.size());
+            for (String name : sequences.keySet()) {
+                byte[] bytes = name.getBytes();
+                names.add(bytes);
+                namesLength += bytes.length + 1;
+            }
+            los.writeInt(namesLength);
+            for (byte[] bytes : names) {
+                los.write(bytes);
+                los.write(0);
+            }
+
+            for (SequenceIndex seq : sequences.values()) {
+                seq.write(los, data);
+            }
+        } finally {
+            los.close();
+        }
+    }
+
+    /**
+     * Bin of the UCSC binning scheme containing [beg, end),  as in tabix ti_reg2bin
+     */
+    static int reg2bin(int beg, int end) {
+        --end;
+        if (beg >> 14 == end >> 14) return 4681 + (beg >> 14);
+        if (beg >> 17 == end >> 17) return 585 + (beg >> 17);
+        if (beg >> 20 == end >> 20) return 73 + (beg >> 20);
+        if (beg >> 23 == end >> 23) return 9 + (beg >> 23);
+        if (beg >> 26 == end >> 26) return 1 + (beg >> 26);
+        return 0;
+    }
+
+    private static long toVirtualOffset(long offset, BlockCompressedOutputStream data) {
+        return data == null ? offset : data.getVirtualOffset(offset);
+    }
+
+    /**
+     * Binning and linear index of one sequence.  Consecutive records in the same bin form one chunk.
+     */
+    private static class SequenceIndex {
+
+        final String name;
+        final Map<Integer, List<long[]>> bins = new TreeMap();
+        long[] linear = new long[16];
+        int linearSize;
+
+        int chunkBin = -1;
+        long chunkStart;
+        long chunkEnd;
+
+        SequenceIndex(String name) {
+            this.name = name;
+        }
+
+        void add(int beg, int end, long startOffset, long endOffset) {
+
+            int bin = reg2bin(beg, end);
+            if (bin != chunkBin) {
+                closeChunk();
+                chunkBin = bin;
+                chunkStart = startOffset;
+            }
+            chunkEnd = endOffset;
+
+            int first = beg >> LINEAR_SHIFT;
+            int last = (end - 1) >> LINEAR_SHIFT;
+            if (last >= linear.length) {
+                linear = Arrays.copyOf(linear, Math.max(last + 1, linear.length * 2));
+            }
+            for (int w = first; w <= last; w++) {
+                if (linear[w] == 0) {
+                    linear[w] = startOffset + 1;      // + 1 so offset 0 is distinguished from an empty window
+                }
+            }
+            linearSize = Math.max(linearSize, last + 1);
+        }
+
+        private void closeChunk() {
+            if (chunkBin >= 0) {
+                List<long[]> chunks = bins.get(chunkBin);
+                if (chunks == null) {
+                    chunks = new ArrayList();
+                    bins.put(chunkBin, chunks);
+                }
+                chunks.add(new long[]{chunkStart, chunkEnd});
+            }
+        }
+
+        void write(LittleEndianOutputStream los, BlockCompressedOutputStream data) throws IOException {
+
+            closeChunk();
+            chunkBin = -1;
+
+            los.writeInt(bins.size());
+            for (Map.Entry<Integer, List<long[]>> entry : bins.entrySet()) {
+                List<long[]> merged = new ArrayList();
+                for (long[] chunk : entry.getValue()) {
+                    long start = toVirtualOffset(chunk[0], data);
+                    long end = toVirtualOffset(chunk[1], data);
+                    long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                    if (last != null && last[1] >> 16 == start >> 16) {
+                        // Chunks meet in the same compressed block
+                        last[1] = end;
+                    } else {
+                        merged.add(new long[]{start, end});
+                    }
+                }
+                los.writeInt(entry.getKey());
+                los.writeInt(merged.size());
+                for (long[] chunk : merged) {
+                    los.writeLong(chunk[0]);
+                    los.writeLong(chunk[1]);
+                }
+            }
+
+            // Empty windows take the offset of the preceding window
+            los.writeInt(linearSize);
+            long previous = 0;
+            for (int w = 0; w < linearSize; w++) {
+                long offset = linear[w] == 0 ? previous : toVirtualOffset(linear[w] - 1, data);
+                los.writeLong(offset);
+                previous = offset;
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2009 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.tribble.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/*
+ * Writer for BGZF block compressed files,  the counterpart of BlockCompressedInputStream.  Data is cut into blocks
+ * of at most UNCOMPRESSED_BLOCK_SIZE bytes,  each written as a separate gzip member with the BGZF extra field,  and
+ * the file is terminated with the empty gzip block.  The output can be read by BlockCompressedInputStream,  bgzip
+ * and tabix.
+ *
+ * Blocks are independent,  so they can be deflated in parallel.  With more than one thread full blocks are handed to
+ * a pool of deflaters and written in order as they complete.  The number of blocks in flight is bounded so memory
+ * use does not depend on the speed of the output.
+ *
+ * Virtual file pointers of the written data (compressed block address << 16 | offset in block) are not known until
+ * a block is compressed.  Callers record positions in the uncompressed stream with getPosition() and convert them
+ * with getVirtualOffset() once the data has been flushed.
+ *
+ * c.f. http://samtools.sourceforge.net/SAM1.pdf for details of BGZF format
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+    /**
+     * Uncompressed bytes per block.  This is the block size used by bgzip,  small enough that the deflated block
+     * always fits in MAX_COMPRESSED_BLOCK_SIZE.
+     */
+    public static final int UNCOMPRESSED_BLOCK_SIZE = 0xff00;
+
+    private static final int BLOCK_OVERHEAD =
+            BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH + BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+
+    private final OutputStream out;
+    private final int compressionLevel;
+    private final ExecutorService executor;
+    private final int maxBlocksInFlight;
+    private final LinkedList<Future<byte[]>> pending = new LinkedList();
+    private final Deflater deflater;       // Used when deflating on the calling thread
+    private final CRC32 crc32 = new CRC32();
+
+    private byte[] buffer = new byte[UNCOMPRESSED_BLOCK_SIZE];
+    private int bufferSize;
+    private long position;                 // Uncompressed bytes written to this stream
+
+    // Position of the first uncompressed byte of each block submitted,  and the address of each block written
+    private long[] blockPositions = new long[64];
+    private long[] blockAddresses = new long[64];
+    private int blockCount;
+    private int writtenBlockCount;
+    private long address;                  // Compressed bytes written
+    private long flushedPosition;          // Uncompressed bytes in the blocks written
+
+    private boolean closed;
+
+    public BlockCompressedOutputStream(File file) throws IOException {
+        this(file, 1);
+    }
+
+    public BlockCompressedOutputStream(File file, int nThreads) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(file)),
+                BlockCompressedStreamConstants.DEFAULT_COMPRESSION_LEVEL, nThreads);
+    }
+
+    /**
+     * @param out      the stream compressed blocks are written to.  It is closed when this stream is closed.
+     * @param nThreads number of threads deflating blocks,  1 to deflate on the calling thread
+     */
+    public BlockCompressedOutputStream(OutputStream out, int compressionLevel, int nThreads) {
+        this.out = out;
+        this.compressionLevel = compressionLevel;
+        if (nThreads > 1) {
+            executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "bgzf-deflate");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            maxBlocksInFlight = 2 * nThreads;
+            deflater = null;
+        } else {
+            executor = null;
+            maxBlocksInFlight = 0;
+            deflater = new Deflater(compressionLevel, true);
+        }
+    }
+
+    public void write(int b) throws IOException {
+        if (bufferSize == buffer.length) {
+            submitBlock();
+        }
+        buffer[bufferSize++] = (byte) b;
+        position++;
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (bufferSize == buffer.length) {
+                submitBlock();
+            }
+            int n = Math.min(length, buffer.length - bufferSize);
+            System.arraycopy(bytes, offset, buffer, bufferSize, n);
+            bufferSize += n;
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * @return the number of uncompressed bytes written so far,  i.e. the position of the next byte
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Convert a position in the uncompressed stream to a virtual file pointer.  The position must be in data that
+     * has been flushed.  A position at the end of a block is returned as the start of the next block,  as
+     * BlockCompressedInputStream.getFilePointer() does.
+     */
+    public long getVirtualOffset(long uncompressedPosition) {
+        if (uncompressedPosition < 0 || uncompressedPosition > flushedPosition) {
+            throw new IllegalArgumentException("Position has not been flushed: " + uncompressedPosition);
+        }
+        if (uncompressedPosition == flushedPosition) {
+            return address << 16;
+        }
+        // Last block starting at or before the position
+        int idx = Arrays.binarySearch(blockPositions, 0, writtenBlockCount, uncompressedPosition);
+        if (idx < 0) {
+            idx = -idx - 2;
+        }
+        return (blockAddresses[idx] << 16) | (uncompressedPosition - blockPositions[idx]);
+    }
+
+    /**
+     * Write all buffered data as compressed blocks.  This ends the current block.
+     */
+    public void flush() throws IOException {
+        if (bufferSize > 0) {
+            submitBlock();
+        }
+        while (!pending.isEmpty()) {
+            writeBlock(pending.removeFirst());
+        }
+        out.flush();
+    }
+
+    /**
+     * Flush,  write the terminating empty block,  and close the underlying stream.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+            out.close();
+        } finally {
+            closed = true;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private void submitBlock() throws IOException {
+
+        if (blockCount == blockPositions.length) {
+            blockPositions = Arrays.copyOf(blockPositions, blockCount * 2);
+            blockAddresses = Arrays.copyOf(blockAddresses, blockCount * 2);
+        }
+        blockPositions[blockCount++] = position - bufferSize;
+
+        if (executor == null) {
+            byte[] block = compressBlock(buffer, bufferSize, deflater, crc32);
+            bufferSize = 0;
+            writeBlock(block);
+            return;
+        }
+
+        final byte[] data = buffer;
+        final int length = bufferSize;
+        buffer = new byte[UNCOMPRESSED_BLOCK_SIZE];
+        bufferSize = 0;
+        pending.add(executor.submit(new Callable<byte[]>() {
+            public byte[] call() {
+                Deflater threadDeflater = new Deflater(compressionLevel, true);
+                try {
+                    return compressBlock(data, length, threadDeflater, new CRC32());
+                } finally {
+                    threadDeflater.end();
+                }
+            }
+        }));
+        while (pending.size() > maxBlocksInFlight) {
+            writeBlock(pending.removeFirst());
+        }
+    }
+
+    private void writeBlock(Future<byte[]> future) throws IOException {
+        try {
+            writeBlock(future.get());
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while compressing block");
+        } catch (ExecutionException e) {
+            IOException ex = new IOException("Error compressing block");
+            ex.initCause(e.getCause());
+            throw ex;
+        }
+    }
+
+    /**
+     * Write the next block in order,  and record its address.
+     */
+    private void writeBlock(byte[] block) throws IOException {
+        int idx = writtenBlockCount++;
+        blockAddresses[idx] = address;
+        out.write(block);
+        address += block.length;
+        flushedPosition = writtenBlockCount < blockCount ? blockPositions[writtenBlockCount] : position - bufferSize;
+    }
+
+    /**
+     * Compress length bytes of data as a single BGZF block.  If the data does not compress to fit in a block it is
+     * stored uncompressed,  which always fits for UNCOMPRESSED_BLOCK_SIZE bytes.
+     */
+    private static byte[] compressBlock(byte[] data, int length, Deflater deflater, CRC32 crc32) {
+
+        byte[] compressed = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE - BLOCK_OVERHEAD];
+        int compressedLength = deflate(data, length, deflater, compressed);
+        if (compressedLength < 0) {
+            Deflater store = new Deflater(Deflater.NO_COMPRESSION, true);
+            try {
+                compressedLength = deflate(data, length, store, compressed);
+            } finally {
+                store.end();
+            }
+            if (compressedLength < 0) {
+                throw new IllegalStateException("Block does not fit in " +
+                        BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE + " bytes");
+            }
+        }
+
+        crc32.reset();
+        crc32.update(data, 0, length);
+
+        int blockLength = compressedLength + BLOCK_OVERHEAD;
+        byte[] block = new byte[blockLength];
+        byte[] preamble = BlockCompressedStreamConstants.GZIP_BLOCK_PREAMBLE;
+        System.arraycopy(preamble, 0, block, 0, preamble.length);
+        int offset = preamble.length;
+        offset = packInt16(block, offset, blockLength - 1);
+        System.arraycopy(compressed, 0, block, offset, compressedLength);
+        offset += compressedLength;
+        offset = packInt32(block, offset, (int) crc32.getValue());
+        packInt32(block, offset, length);
+        return block;
+    }
+
+    /**
+     * @return the number of compressed bytes,  or -1 if they do not fit in output
+     */
+    private static int deflate(byte[] data, int length, Deflater deflater, byte[] output) {
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        int n = deflater.deflate(output, 0, output.length);
+        return deflater.finished() ? n : -1;
+    }
+
+    private static int packInt16(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        return offset + 2;
+    }
+
+    private static int packInt32(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+        return offset + 4;
+    }
+}
@@ -639,7 +639,10 @@ public abstract class AbstractVCFCodec implements FeatureCodec, NameAwareCodec {
       }
 
       public LazyGenotypesContext.LazyData parse(Object data) {
-         return AbstractVCFCodec.this.createGenotypeMap((String)data, this.alleles, this.contig, this.start);
+         // Released genotypes are parsed again off the reading thread,  and the codec's split buffers are shared
+         synchronized (AbstractVCFCodec.this) {
+            return AbstractVCFCodec.this.createGenotypeMap((String)data, this.alleles, this.contig, this.start);
+         }
       }
    }
 }
@@ -11,6 +11,9 @@ public class LazyGenotypesContext extends GenotypesContext {
    Object unparsedGenotypeData;
    final int nUnparsedGenotypes;
    boolean loaded = false;
+   // The unparsed data of decoded genotypes,  kept so they can be released and decoded again.  Null once the
+   // genotypes have been modified.
+   Object releasableGenotypeData;
    private static final ArrayList EMPTY = new ArrayList(0);
 
    @Requires({"parser != null", "unparsedGenotypeData != null", "nUnparsedGenotypes >= 0"})
@@ -22,23 +25,38 @@ public class LazyGenotypesContext extends GenotypesContext {
    }
 
    @Ensures({"result != null"})
-   protected ArrayList getGenotypes() {
+   protected synchronized ArrayList getGenotypes() {
       this.decode();
       return this.notToBeDirectlyAccessedGenotypes;
    }
 
-   public void decode() {
+   public synchronized void decode() {
       if (!this.loaded) {
          LazyGenotypesContext.LazyData parsed = this.parser.parse(this.unparsedGenotypeData);
          this.notToBeDirectlyAccessedGenotypes = parsed.genotypes;
          this.sampleNamesInOrder = parsed.sampleNamesInOrder;
          this.sampleNameToOffset = parsed.sampleNameToOffset;
          this.loaded = true;
+         this.releasableGenotypeData = this.unparsedGenotypeData;
          this.unparsedGenotypeData = null;
       }
 
    }
 
+   /**
+    * Drop the decoded genotypes,  they are decoded again from the unparsed data on next access.  Genotypes that
+    * have been modified are kept.
+    */
+   public synchronized void release() {
+      if (this.loaded && this.releasableGenotypeData != null) {
+         this.unparsedGenotypeData = this.releasableGenotypeData;
+         this.releasableGenotypeData = null;
+         this.notToBeDirectlyAccessedGenotypes = EMPTY;
+         this.loaded = false;
+      }
+
+   }
+
    protected synchronized void ensureSampleNameMap() {
       if (!this.loaded) {
          this.decode();
@@ -57,19 +75,21 @@ public class LazyGenotypesContext extends GenotypesContext {
 
    }
 
-   protected void invalidateSampleNameMap() {
+   protected synchronized void invalidateSampleNameMap() {
       if (!this.loaded) {
          this.decode();
       }
 
+      this.releasableGenotypeData = null;
       super.invalidateSampleNameMap();
    }
 
-   protected void invalidateSampleOrdering() {
+   protected synchronized void invalidateSampleOrdering() {
       if (!this.loaded) {
          this.decode();
       }
 
+      this.releasableGenotypeData = null;
       super.invalidateSampleOrdering();
    }
 
@@ -81,7 +101,7 @@ public class LazyGenotypesContext extends GenotypesContext {
       return this.loaded ? super.size() : this.nUnparsedGenotypes;
    }
 
-   public Object getUnparsedGenotypeData() {
+   public synchronized Object getUnparsedGenotypeData() {
       return this.unparsedGenotypeData;
    }
 